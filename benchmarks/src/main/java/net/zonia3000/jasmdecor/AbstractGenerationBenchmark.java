@@ -0,0 +1,63 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import net.zonia3000.jasmdecor.benchmarks.SyntheticClassLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures separately the generation of a plain decorator and its
+ * verification, for a synthetic hierarchy defined by the subclasses. The
+ * generator has no cache, so each generation reads and parses again all the
+ * classes of the hierarchy.
+ * <p>
+ * The generation benchmarks are in the jasmdecor package because the
+ * generation steps are package-private. Run them with <code>-prof gc</code>
+ * for reporting the allocation rate.
+ *
+ * @author zonia3000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class AbstractGenerationBenchmark {
+
+    private DecoratorGenerator generator;
+    private byte[] decoratorBytes;
+
+    @Setup
+    public void setup() throws Exception {
+        SyntheticClassLoader classLoader = new SyntheticClassLoader();
+        generator = new DecoratorGenerator(createWrappedType(classLoader), "synthetic.Decorator", classLoader);
+        decoratorBytes = generator.getDecoratorBytes();
+    }
+
+    protected abstract Class<?> createWrappedType(SyntheticClassLoader classLoader) throws ClassNotFoundException;
+
+    @Benchmark
+    public byte[] getDecoratorBytes() throws IOException {
+        return generator.getDecoratorBytes();
+    }
+
+    @Benchmark
+    public void checkIfClassIsValid() {
+        DecoratorGenerator.checkIfClassIsValid(decoratorBytes);
+    }
+
+    @Benchmark
+    public void checkClassStructure() {
+        DecoratorGenerator.checkClassStructure(decoratorBytes);
+    }
+}
@@ -0,0 +1,23 @@
+package net.zonia3000.jasmdecor;
+
+import net.zonia3000.jasmdecor.benchmarks.SyntheticClassLoader;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Generation of the decorator of a class at the end of a long chain of
+ * superclasses, each one declaring 10 methods.
+ *
+ * @author zonia3000
+ */
+public class DeepHierarchyBenchmark extends AbstractGenerationBenchmark {
+
+    private static final int METHODS_PER_CLASS = 10;
+
+    @Param({"1", "10", "100", "1000"})
+    private int depth;
+
+    @Override
+    protected Class<?> createWrappedType(SyntheticClassLoader classLoader) throws ClassNotFoundException {
+        return classLoader.deepClass(depth, METHODS_PER_CLASS);
+    }
+}
@@ -0,0 +1,24 @@
+package net.zonia3000.jasmdecor;
+
+import net.zonia3000.jasmdecor.benchmarks.SyntheticClassLoader;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Generation of the decorator of an interface extending a graph of diamonds:
+ * the number of interfaces grows linearly with the layers, the number of paths
+ * in the graph exponentially.
+ *
+ * @author zonia3000
+ */
+public class DiamondHierarchyBenchmark extends AbstractGenerationBenchmark {
+
+    private static final int METHODS_PER_INTERFACE = 5;
+
+    @Param({"2", "4", "8", "12", "16"})
+    private int layers;
+
+    @Override
+    protected Class<?> createWrappedType(SyntheticClassLoader classLoader) throws ClassNotFoundException {
+        return classLoader.diamondInterface(layers, METHODS_PER_INTERFACE);
+    }
+}
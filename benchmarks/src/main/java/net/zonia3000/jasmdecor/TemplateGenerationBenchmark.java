@@ -0,0 +1,71 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import net.zonia3000.jasmdecor.benchmarks.SyntheticClassLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Generation of many template based decorators of the same synthetic
+ * interface, sharing a cache. Each template overrides a tenth of the
+ * interface methods. Times are for generating all the templates.
+ *
+ * @author zonia3000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateGenerationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int methods;
+
+    @Param({"1", "10", "100"})
+    private int templates;
+
+    private DecoratorGenerator[] generators;
+
+    @Setup
+    public void setup() throws Exception {
+        SyntheticClassLoader classLoader = new SyntheticClassLoader();
+        Class<?> wrappedType = classLoader.wideInterface(methods);
+        GeneratorCache cache = new GeneratorCache();
+
+        generators = new DecoratorGenerator[templates];
+        for (int i = 0; i < templates; i++) {
+            Class<?> templateType = classLoader.template("Template" + i, wrappedType, methods / 10);
+            generators[i] = new DecoratorGenerator(wrappedType, templateType, classLoader);
+            generators[i].setCache(cache);
+            // fills the cache
+            generators[i].writeTemplate();
+        }
+    }
+
+    @Benchmark
+    public void writeTemplate(Blackhole blackhole) throws IOException {
+        for (int i = 0; i < templates; i++) {
+            blackhole.consume(generators[i].writeTemplate());
+        }
+    }
+
+    @Benchmark
+    public void generateDecoratorClass(Blackhole blackhole) throws IOException {
+        for (DecoratorGenerator generator : generators) {
+            blackhole.consume(generator.generateDecoratorClass());
+        }
+    }
+}
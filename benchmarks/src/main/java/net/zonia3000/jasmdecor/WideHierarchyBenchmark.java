@@ -0,0 +1,20 @@
+package net.zonia3000.jasmdecor;
+
+import net.zonia3000.jasmdecor.benchmarks.SyntheticClassLoader;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Generation of the decorator of an interface having many methods.
+ *
+ * @author zonia3000
+ */
+public class WideHierarchyBenchmark extends AbstractGenerationBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int methods;
+
+    @Override
+    protected Class<?> createWrappedType(SyntheticClassLoader classLoader) throws ClassNotFoundException {
+        return classLoader.wideInterface(methods);
+    }
+}
@@ -0,0 +1,18 @@
+package net.zonia3000.jasmdecor.benchmarks;
+
+/**
+ * Decorated interface, having methods with the different kinds of arguments
+ * handled by the delegation methods (int, long, double and array slots).
+ *
+ * @author zonia3000
+ */
+public interface Calculator {
+
+    int add(int a, int b);
+
+    long addLong(long a, long b);
+
+    double multiply(double a, double b);
+
+    int sum(int[] values);
+}
@@ -0,0 +1,34 @@
+package net.zonia3000.jasmdecor.benchmarks;
+
+/**
+ * Decorated implementation, also used as concrete target (decorators extending
+ * it call the wrapped instance with <code>INVOKEVIRTUAL</code>).
+ *
+ * @author zonia3000
+ */
+public class CalculatorImpl implements Calculator {
+
+    @Override
+    public int add(int a, int b) {
+        return a + b;
+    }
+
+    @Override
+    public long addLong(long a, long b) {
+        return a + b;
+    }
+
+    @Override
+    public double multiply(double a, double b) {
+        return a * b;
+    }
+
+    @Override
+    public int sum(int[] values) {
+        int sum = 0;
+        for (int value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,67 @@
+package net.zonia3000.jasmdecor.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of calling a method through a decorator of a concrete class, whose
+ * delegation methods use <code>INVOKEVIRTUAL</code>.
+ *
+ * @author zonia3000
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ConcreteCallBenchmark {
+
+    @Param({"NONE", "GENERATED", "HANDWRITTEN"})
+    private DecoratorKind kind;
+
+    private CalculatorImpl calculator;
+
+    private int i1 = 3;
+    private int i2 = 4;
+    private long l1 = 3L;
+    private long l2 = 4L;
+    private double d1 = 3.0;
+    private double d2 = 4.0;
+    private int[] values = {1, 2, 3, 4};
+
+    @Setup
+    public void setup() {
+        calculator = kind.wrapConcrete(new CalculatorImpl());
+    }
+
+    @Benchmark
+    public int intArgs() {
+        return calculator.add(i1, i2);
+    }
+
+    @Benchmark
+    public long longArgs() {
+        return calculator.addLong(l1, l2);
+    }
+
+    @Benchmark
+    public double doubleArgs() {
+        return calculator.multiply(d1, d2);
+    }
+
+    @Benchmark
+    public int arrayArg() {
+        return calculator.sum(values);
+    }
+}
@@ -0,0 +1,26 @@
+package net.zonia3000.jasmdecor.benchmarks;
+
+/**
+ * Template counting the additions, outermost layer of the stacked decorators.
+ *
+ * @author zonia3000
+ */
+public abstract class CountingCalculator implements Calculator {
+
+    private final Calculator wrapped;
+    private int additions;
+
+    public CountingCalculator(Calculator wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    @Override
+    public int add(int a, int b) {
+        additions++;
+        return wrapped.add(a, b);
+    }
+
+    public int getAdditions() {
+        return additions;
+    }
+}
@@ -0,0 +1,153 @@
+package net.zonia3000.jasmdecor.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import net.zonia3000.jasmdecor.DecoratorFactory;
+import net.zonia3000.jasmdecor.DecoratorGenerator;
+
+/**
+ * The compared ways of decorating an instance.
+ *
+ * @author zonia3000
+ */
+public enum DecoratorKind {
+
+    /**
+     * No decorator: baseline.
+     */
+    NONE,
+    /**
+     * Plain decorator generated by jasmdecor.
+     */
+    GENERATED,
+    HANDWRITTEN,
+    /**
+     * <code>java.lang.reflect.Proxy</code> invoking the wrapped instance
+     * through reflection.
+     */
+    PROXY,
+    METHOD_HANDLE,
+    /**
+     * Plain decorator generated by jasmdecor, recording metrics.
+     */
+    METRICS,
+    /**
+     * Handwritten decorator whose target is read from a volatile field.
+     */
+    SWAPPABLE,
+    /**
+     * Hot-swappable decorator generated by jasmdecor.
+     */
+    HOT_SWAP,
+    /**
+     * Three decorators generated from templates, wrapping each other.
+     */
+    STACKED,
+    /**
+     * Single decorator generated fusing the templates of {@link #STACKED}.
+     */
+    FUSED;
+
+    private static final DecoratorFactory DECORATOR_FACTORY = new DecoratorFactory();
+
+    public Calculator wrap(Calculator wrapped) {
+        switch (this) {
+            case NONE:
+                return wrapped;
+            case GENERATED:
+                return getGeneratedDecorator(Calculator.class, wrapped);
+            case HANDWRITTEN:
+                return new HandwrittenDecorator(wrapped);
+            case PROXY:
+                return (Calculator) Proxy.newProxyInstance(Calculator.class.getClassLoader(), new Class<?>[]{Calculator.class},
+                        (proxy, method, args) -> {
+                            try {
+                                return method.invoke(wrapped, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        });
+            case METHOD_HANDLE:
+                return new MethodHandleDecorator(wrapped);
+            case METRICS:
+                return getConfiguredDecorator(Calculator.class, wrapped, "Metrics", g -> g.setMetricsEnabled(true));
+            case SWAPPABLE:
+                return new SwappableDecorator(wrapped);
+            case HOT_SWAP:
+                return getConfiguredDecorator(Calculator.class, wrapped, "HotSwap", g -> g.setHotSwappable(true));
+            case STACKED:
+                return wrapLayer(CountingCalculator.class,
+                        wrapLayer(ValidatingCalculator.class,
+                                wrapLayer(RecordingCalculator.class, wrapped)));
+            case FUSED:
+                String decoratorName = "net.zonia3000.jasmdecor.generated.FusedCalculator";
+                return define(new DecoratorGenerator(Calculator.class, decoratorName,
+                        Arrays.asList(CountingCalculator.class, ValidatingCalculator.class, RecordingCalculator.class)),
+                        decoratorName, Calculator.class, wrapped);
+            default:
+                throw new AssertionError(this);
+        }
+    }
+
+    /**
+     * Decorates a concrete class. Proxies support only interfaces.
+     */
+    public CalculatorImpl wrapConcrete(CalculatorImpl wrapped) {
+        switch (this) {
+            case NONE:
+                return wrapped;
+            case GENERATED:
+                return getGeneratedDecorator(CalculatorImpl.class, wrapped);
+            case HANDWRITTEN:
+                return new HandwrittenConcreteDecorator(wrapped);
+            default:
+                throw new UnsupportedOperationException(this + " can't decorate classes");
+        }
+    }
+
+    private static <T> T getConfiguredDecorator(Class<T> wrappedType, T wrapped, String prefix, Consumer<DecoratorGenerator> configuration) {
+        String decoratorName = "net.zonia3000.jasmdecor.generated." + prefix + wrappedType.getSimpleName();
+        DecoratorGenerator generator = new DecoratorGenerator(wrappedType, decoratorName);
+        configuration.accept(generator);
+        return define(generator, decoratorName, wrappedType, wrapped);
+    }
+
+    private static <T> T define(DecoratorGenerator generator, String decoratorName, Class<T> wrappedType, T wrapped) {
+        try {
+            byte[] classBytes = generator.generateDecoratorClass();
+            Class<?> decoratorClass = new ClassLoader(wrappedType.getClassLoader()) {
+                Class<?> define() {
+                    return defineClass(decoratorName, classBytes, 0, classBytes.length);
+                }
+            }.define();
+            return wrappedType.cast(decoratorClass.getConstructor(wrappedType).newInstance(wrapped));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decorates an instance with one of the templates of {@link #STACKED}.
+     */
+    public static Calculator wrapLayer(Class<?> templateType, Calculator wrapped) {
+        try {
+            return DECORATOR_FACTORY.getFactory(Calculator.class, templateType).apply(wrapped);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static <T> T getGeneratedDecorator(Class<T> wrappedType, T wrapped) {
+        try {
+            return DECORATOR_FACTORY.getFactory(wrappedType).apply(wrapped);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
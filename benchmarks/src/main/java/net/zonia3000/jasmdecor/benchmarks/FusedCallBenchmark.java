@@ -0,0 +1,88 @@
+package net.zonia3000.jasmdecor.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of three template layers (counting, validating, recording): nested
+ * generated decorators, each one calling the next through the interface,
+ * compared with a single decorator fusing the templates. The
+ * <code>sum</code> method is defined by no template, so it measures the
+ * plain delegation through the layers.
+ * <p>
+ * When the decorators are shared, the same decorator classes also wrap other
+ * implementations and the layers are used alone before the measurement, so
+ * the calls to the wrapped instances see many receiver types, as in an
+ * application decorating many services.
+ *
+ * @author zonia3000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FusedCallBenchmark {
+
+    private static final int POLLUTING_CALLS = 20000;
+
+    @Param({"STACKED", "FUSED"})
+    private DecoratorKind kind;
+
+    @Param({"false", "true"})
+    private boolean shared;
+
+    private Calculator calculator;
+
+    // not final, so that the JIT can't fold them
+    private int i1 = 3;
+    private int i2 = 4;
+    private int[] values = {1, 2, 3, 4};
+
+    @Setup
+    public void setup() {
+        calculator = kind.wrap(new CalculatorImpl());
+        if (shared) {
+            List<Calculator> others = new ArrayList<>(Arrays.asList(
+                    kind.wrap(new OtherCalculators.Negated()),
+                    kind.wrap(new OtherCalculators.Doubled()),
+                    kind.wrap(new OtherCalculators.Incremented())));
+            if (kind == DecoratorKind.STACKED) {
+                others.add(DecoratorKind.wrapLayer(CountingCalculator.class, new CalculatorImpl()));
+                others.add(DecoratorKind.wrapLayer(ValidatingCalculator.class, new OtherCalculators.Negated()));
+                others.add(DecoratorKind.wrapLayer(RecordingCalculator.class, new OtherCalculators.Doubled()));
+            }
+            // profiled by the interpreter and the first compilations
+            for (int i = 0; i < POLLUTING_CALLS; i++) {
+                for (Calculator other : others) {
+                    other.add(i1, i2);
+                    other.sum(values);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int add() {
+        return calculator.add(i1, i2);
+    }
+
+    @Benchmark
+    public int sum() {
+        return calculator.sum(values);
+    }
+}
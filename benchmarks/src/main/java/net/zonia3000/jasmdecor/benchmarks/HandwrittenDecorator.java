@@ -0,0 +1,35 @@
+package net.zonia3000.jasmdecor.benchmarks;
+
+/**
+ * Handwritten equivalent of a generated plain decorator of {@link Calculator}.
+ *
+ * @author zonia3000
+ */
+public class HandwrittenDecorator implements Calculator {
+
+    private final Calculator wrapped;
+
+    public HandwrittenDecorator(Calculator wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    @Override
+    public int add(int a, int b) {
+        return wrapped.add(a, b);
+    }
+
+    @Override
+    public long addLong(long a, long b) {
+        return wrapped.addLong(a, b);
+    }
+
+    @Override
+    public double multiply(double a, double b) {
+        return wrapped.multiply(a, b);
+    }
+
+    @Override
+    public int sum(int[] values) {
+        return wrapped.sum(values);
+    }
+}
@@ -0,0 +1,57 @@
+package net.zonia3000.jasmdecor.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import net.zonia3000.jasmdecor.HotSwap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of calling a target replaced for all the decorator instances: through
+ * the call site of a hot-swappable generated decorator, through a volatile
+ * field of a handwritten decorator, compared with the plain generated
+ * decorator calling its wrapped instance.
+ *
+ * @author zonia3000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HotSwapCallBenchmark {
+
+    @Param({"GENERATED", "SWAPPABLE", "HOT_SWAP"})
+    private DecoratorKind kind;
+
+    private Calculator calculator;
+
+    // not final, so that the JIT can't fold them
+    private int i1 = 3;
+    private int i2 = 4;
+
+    @Setup
+    public void setup() {
+        calculator = kind.wrap(new CalculatorImpl());
+        // all the calls go to the replacement
+        if (kind == DecoratorKind.SWAPPABLE) {
+            SwappableDecorator.swap(new CalculatorImpl());
+        } else if (kind == DecoratorKind.HOT_SWAP) {
+            HotSwap.of(calculator.getClass()).swap(new CalculatorImpl());
+        }
+    }
+
+    @Benchmark
+    public int add() {
+        return calculator.add(i1, i2);
+    }
+}
@@ -0,0 +1,73 @@
+package net.zonia3000.jasmdecor.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of calling decorators wrapping four different implementations. The
+ * call site inside the decorator (and for NONE the benchmark one) sees more
+ * receiver types than the JIT can inline.
+ *
+ * @author zonia3000
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MegamorphicCallBenchmark {
+
+    private static final int IMPLEMENTATIONS = 4;
+
+    @Param({"NONE", "GENERATED", "HANDWRITTEN", "PROXY", "METHOD_HANDLE"})
+    private DecoratorKind kind;
+
+    private Calculator[] calculators;
+
+    private int i1 = 3;
+    private int i2 = 4;
+    private double d1 = 3.0;
+    private double d2 = 4.0;
+
+    @Setup
+    public void setup() {
+        calculators = new Calculator[]{
+            kind.wrap(new CalculatorImpl()),
+            kind.wrap(new OtherCalculators.Negated()),
+            kind.wrap(new OtherCalculators.Doubled()),
+            kind.wrap(new OtherCalculators.Incremented())
+        };
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IMPLEMENTATIONS)
+    public int intArgs() {
+        int result = 0;
+        for (Calculator calculator : calculators) {
+            result += calculator.add(i1, i2);
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IMPLEMENTATIONS)
+    public double doubleArgs() {
+        double result = 0;
+        for (Calculator calculator : calculators) {
+            result += calculator.multiply(d1, d2);
+        }
+        return result;
+    }
+}
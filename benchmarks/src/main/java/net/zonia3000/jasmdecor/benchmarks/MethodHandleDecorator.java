@@ -0,0 +1,66 @@
+package net.zonia3000.jasmdecor.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Decorator delegating through MethodHandles bound to the wrapped instance.
+ *
+ * @author zonia3000
+ */
+public class MethodHandleDecorator implements Calculator {
+
+    private final MethodHandle add;
+    private final MethodHandle addLong;
+    private final MethodHandle multiply;
+    private final MethodHandle sum;
+
+    public MethodHandleDecorator(Calculator wrapped) {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        try {
+            add = lookup.findVirtual(Calculator.class, "add", MethodType.methodType(int.class, int.class, int.class)).bindTo(wrapped);
+            addLong = lookup.findVirtual(Calculator.class, "addLong", MethodType.methodType(long.class, long.class, long.class)).bindTo(wrapped);
+            multiply = lookup.findVirtual(Calculator.class, "multiply", MethodType.methodType(double.class, double.class, double.class)).bindTo(wrapped);
+            sum = lookup.findVirtual(Calculator.class, "sum", MethodType.methodType(int.class, int[].class)).bindTo(wrapped);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int add(int a, int b) {
+        try {
+            return (int) add.invokeExact(a, b);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override
+    public long addLong(long a, long b) {
+        try {
+            return (long) addLong.invokeExact(a, b);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override
+    public double multiply(double a, double b) {
+        try {
+            return (double) multiply.invokeExact(a, b);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override
+    public int sum(int[] values) {
+        try {
+            return (int) sum.invokeExact(values);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package net.zonia3000.jasmdecor.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import net.zonia3000.jasmdecor.DecoratorMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead of recording the metrics of a call, compared with the plain
+ * generated decorator, on a method doing almost nothing, measuring the latency
+ * of all the calls or of a sample of them. The threaded variant shows the
+ * contention on the counters shared by all the threads.
+ *
+ * @author zonia3000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MetricsCallBenchmark {
+
+    @Param({"GENERATED", "METRICS"})
+    private DecoratorKind kind;
+
+    @Param({"1", "64"})
+    private int latencySampling;
+
+    private Calculator calculator;
+
+    // not final, so that the JIT can't fold them
+    private int i1 = 3;
+    private int i2 = 4;
+
+    @Setup
+    public void setup() {
+        calculator = kind.wrap(new CalculatorImpl());
+        if (kind == DecoratorKind.METRICS) {
+            DecoratorMetrics.of(calculator.getClass()).setLatencySampling(latencySampling);
+        }
+    }
+
+    @Benchmark
+    public int singleThread() {
+        return calculator.add(i1, i2);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int fourThreads() {
+        return calculator.add(i1, i2);
+    }
+}
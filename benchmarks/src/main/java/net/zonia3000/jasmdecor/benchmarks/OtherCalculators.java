@@ -0,0 +1,51 @@
+package net.zonia3000.jasmdecor.benchmarks;
+
+/**
+ * Additional implementations, used for making the call sites megamorphic.
+ *
+ * @author zonia3000
+ */
+public final class OtherCalculators {
+
+    private OtherCalculators() {
+    }
+
+    public static class Negated extends CalculatorImpl {
+
+        @Override
+        public int add(int a, int b) {
+            return -super.add(a, b);
+        }
+
+        @Override
+        public double multiply(double a, double b) {
+            return -super.multiply(a, b);
+        }
+    }
+
+    public static class Doubled extends CalculatorImpl {
+
+        @Override
+        public int add(int a, int b) {
+            return 2 * super.add(a, b);
+        }
+
+        @Override
+        public double multiply(double a, double b) {
+            return 2 * super.multiply(a, b);
+        }
+    }
+
+    public static class Incremented extends CalculatorImpl {
+
+        @Override
+        public int add(int a, int b) {
+            return super.add(a, b) + 1;
+        }
+
+        @Override
+        public double multiply(double a, double b) {
+            return super.multiply(a, b) + 1;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package net.zonia3000.jasmdecor.benchmarks;
+
+/**
+ * Template keeping the last result, innermost layer of the stacked
+ * decorators.
+ *
+ * @author zonia3000
+ */
+public abstract class RecordingCalculator implements Calculator {
+
+    private final Calculator wrapped;
+    private int lastResult;
+
+    public RecordingCalculator(Calculator wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    @Override
+    public int add(int a, int b) {
+        int result = wrapped.add(a, b);
+        lastResult = result;
+        return result;
+    }
+
+    public int getLastResult() {
+        return lastResult;
+    }
+}
@@ -0,0 +1,96 @@
+package net.zonia3000.jasmdecor.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.zonia3000.jasmdecor.DecoratorGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of calling a chain of generated decorators, each one a different class
+ * also used for wrapping other implementations, so that the calls to the
+ * wrapped instances are megamorphic. The specialized decorators check the
+ * exact class of the next element of the chain and call it directly.
+ *
+ * @author zonia3000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SpecializedCallBenchmark {
+
+    private static final int POLLUTING_CALLS = 20000;
+
+    @Param({"false", "true"})
+    private boolean specialized;
+
+    @Param({"1", "4"})
+    private int depth;
+
+    private Calculator calculator;
+
+    // not final, so that the JIT can't fold them
+    private int i1 = 3;
+    private int i2 = 4;
+
+    @Setup
+    public void setup() throws Exception {
+        ChainClassLoader classLoader = new ChainClassLoader();
+        List<Calculator> others = new ArrayList<>();
+        calculator = new CalculatorImpl();
+        for (int i = 0; i < depth; i++) {
+            String decoratorName = "net.zonia3000.jasmdecor.generated." + (specialized ? "Specialized" : "Chained") + i + "Calculator";
+            DecoratorGenerator generator = new DecoratorGenerator(Calculator.class, decoratorName);
+            if (specialized) {
+                generator.setSpecializedTarget(calculator.getClass());
+            }
+            Class<?> decoratorClass = classLoader.define(decoratorName, generator);
+            calculator = (Calculator) decoratorClass.getConstructor(Calculator.class).newInstance(calculator);
+
+            others.add((Calculator) decoratorClass.getConstructor(Calculator.class).newInstance(new OtherCalculators.Negated()));
+            others.add((Calculator) decoratorClass.getConstructor(Calculator.class).newInstance(new OtherCalculators.Doubled()));
+            others.add((Calculator) decoratorClass.getConstructor(Calculator.class).newInstance(new OtherCalculators.Incremented()));
+        }
+        // profiled by the interpreter and the first compilations
+        for (int i = 0; i < POLLUTING_CALLS; i++) {
+            for (Calculator other : others) {
+                other.add(i1, i2);
+            }
+        }
+    }
+
+    @Benchmark
+    public int add() {
+        return calculator.add(i1, i2);
+    }
+
+    /**
+     * Defines all the decorators of a chain, so that each one can reference
+     * the previous one.
+     */
+    private static class ChainClassLoader extends ClassLoader {
+
+        ChainClassLoader() {
+            super(Calculator.class.getClassLoader());
+        }
+
+        Class<?> define(String name, DecoratorGenerator generator) throws IOException {
+            byte[] classBytes = generator.generateDecoratorClass();
+            return defineClass(name, classBytes, 0, classBytes.length);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package net.zonia3000.jasmdecor.benchmarks;
+
+/**
+ * Handwritten decorator of {@link Calculator} whose target can be replaced
+ * for all the instances, reading it from a volatile field at each call.
+ *
+ * @author zonia3000
+ */
+public class SwappableDecorator implements Calculator {
+
+    private static volatile Calculator target;
+
+    private final Calculator wrapped;
+
+    public SwappableDecorator(Calculator wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    public static void swap(Calculator newTarget) {
+        target = newTarget;
+    }
+
+    private Calculator getTarget() {
+        Calculator current = target;
+        return current == null ? wrapped : current;
+    }
+
+    @Override
+    public int add(int a, int b) {
+        return getTarget().add(a, b);
+    }
+
+    @Override
+    public long addLong(long a, long b) {
+        return getTarget().addLong(a, b);
+    }
+
+    @Override
+    public double multiply(double a, double b) {
+        return getTarget().multiply(a, b);
+    }
+
+    @Override
+    public int sum(int[] values) {
+        return getTarget().sum(values);
+    }
+}
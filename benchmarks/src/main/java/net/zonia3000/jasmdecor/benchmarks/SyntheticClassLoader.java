@@ -0,0 +1,210 @@
+package net.zonia3000.jasmdecor.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * ClassLoader of class files synthesized with ASM, used for measuring the
+ * generation of decorators of hierarchies having arbitrary shapes. The class
+ * files are also exposed as resources, like the classpath ones, so that the
+ * generator can read them.
+ *
+ * @author zonia3000
+ */
+public class SyntheticClassLoader extends ClassLoader {
+
+    private static final String PACKAGE = "synthetic/";
+
+    // the method descriptors cycle through all the kinds of argument slots
+    private static final String[] DESCRIPTORS = {
+        "()V",
+        "(I)I",
+        "(JJ)J",
+        "(DLjava/lang/String;)D",
+        "([ILjava/lang/Object;)Ljava/lang/Object;",
+        "(ZBCSF)F"
+    };
+
+    private final Map<String, byte[]> classes = new HashMap<>();
+
+    public SyntheticClassLoader() {
+        super(SyntheticClassLoader.class.getClassLoader());
+    }
+
+    /**
+     * @return an interface declaring the given number of methods
+     */
+    public Class<?> wideInterface(int methods) throws ClassNotFoundException {
+        String name = PACKAGE + "Wide";
+        define(name, writeInterface(name, new String[]{}, "wide", methods));
+        return load(name);
+    }
+
+    /**
+     * @return the last of a chain of classes, each one extending the previous
+     * one and declaring the given number of concrete methods
+     */
+    public Class<?> deepClass(int depth, int methodsPerClass) throws ClassNotFoundException {
+        String superName = "java/lang/Object";
+        String name = null;
+        for (int i = 0; i < depth; i++) {
+            name = PACKAGE + "Deep" + i;
+            define(name, writeClass(name, superName, "deep" + i, methodsPerClass));
+            // loads the chain from the top, otherwise loading the last class
+            // would recursively load all the superclasses
+            load(name);
+            superName = name;
+        }
+        return load(name);
+    }
+
+    /**
+     * @return the interface at the top of a stack of layers of two interfaces,
+     * each one extending both the interfaces of the layer below, so the number
+     * of paths to the bottom layer doubles at each layer
+     */
+    public Class<?> diamondInterface(int layers, int methodsPerInterface) throws ClassNotFoundException {
+        String[] below = {};
+        for (int layer = 0; layer < layers; layer++) {
+            String[] current = new String[2];
+            for (int i = 0; i < current.length; i++) {
+                current[i] = PACKAGE + "Diamond" + layer + "_" + i;
+                define(current[i], writeInterface(current[i], below, "diamond" + layer + "_" + i, methodsPerInterface));
+                load(current[i]);
+            }
+            below = current;
+        }
+        String name = PACKAGE + "DiamondTop";
+        define(name, writeInterface(name, below, "top", methodsPerInterface));
+        return load(name);
+    }
+
+    /**
+     * @return an abstract template decorating the given interface and
+     * overriding its first methods
+     */
+    public Class<?> template(String simpleName, Class<?> wrappedInterface, int overriddenMethods) throws ClassNotFoundException {
+        String name = PACKAGE + simpleName;
+        String wrappedDescriptor = Type.getDescriptor(wrappedInterface);
+
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_8, ACC_PUBLIC + ACC_SUPER + ACC_ABSTRACT, name, null, "java/lang/Object",
+                new String[]{Type.getInternalName(wrappedInterface)});
+        cw.visitField(ACC_PRIVATE + ACC_FINAL, "wrapped", wrappedDescriptor, null, null).visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "(" + wrappedDescriptor + ")V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitFieldInsn(PUTFIELD, name, "wrapped", wrappedDescriptor);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        Method[] methods = wrappedInterface.getMethods();
+        for (int i = 0; i < overriddenMethods && i < methods.length; i++) {
+            writeConstantMethod(cw, methods[i].getName(), Type.getMethodDescriptor(methods[i]));
+        }
+
+        cw.visitEnd();
+        define(name, cw.toByteArray());
+        return load(name);
+    }
+
+    private byte[] writeInterface(String name, String[] interfaces, String methodsPrefix, int methods) {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_8, ACC_PUBLIC + ACC_ABSTRACT + ACC_INTERFACE, name, null, "java/lang/Object", interfaces);
+        for (int i = 0; i < methods; i++) {
+            cw.visitMethod(ACC_PUBLIC + ACC_ABSTRACT, methodsPrefix + "_" + i, DESCRIPTORS[i % DESCRIPTORS.length], null, null).visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private byte[] writeClass(String name, String superName, String methodsPrefix, int methods) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_8, ACC_PUBLIC + ACC_SUPER, name, null, superName, null);
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        for (int i = 0; i < methods; i++) {
+            writeConstantMethod(cw, methodsPrefix + "_" + i, DESCRIPTORS[i % DESCRIPTORS.length]);
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Writes a method returning the default value of its return type.
+     */
+    private void writeConstantMethod(ClassWriter cw, String name, String descriptor) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, name, descriptor, null, null);
+        mv.visitCode();
+        Type returnType = Type.getReturnType(descriptor);
+        switch (returnType.getSort()) {
+            case Type.VOID:
+                break;
+            case Type.LONG:
+                mv.visitInsn(LCONST_0);
+                break;
+            case Type.FLOAT:
+                mv.visitInsn(FCONST_0);
+                break;
+            case Type.DOUBLE:
+                mv.visitInsn(DCONST_0);
+                break;
+            case Type.OBJECT:
+            case Type.ARRAY:
+                mv.visitInsn(ACONST_NULL);
+                break;
+            default:
+                mv.visitInsn(ICONST_0);
+        }
+        mv.visitInsn(returnType.getOpcode(IRETURN));
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private synchronized void define(String internalName, byte[] classBytes) {
+        classes.put(internalName, classBytes);
+    }
+
+    private Class<?> load(String internalName) throws ClassNotFoundException {
+        return Class.forName(internalName.replace('/', '.'), false, this);
+    }
+
+    @Override
+    protected synchronized Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] classBytes = classes.get(name.replace('.', '/'));
+        if (classBytes == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return defineClass(name, classBytes, 0, classBytes.length);
+    }
+
+    @Override
+    public synchronized InputStream getResourceAsStream(String name) {
+        if (name.endsWith(".class")) {
+            byte[] classBytes = classes.get(name.substring(0, name.length() - ".class".length()));
+            if (classBytes != null) {
+                return new ByteArrayInputStream(classBytes);
+            }
+        }
+        return super.getResourceAsStream(name);
+    }
+}
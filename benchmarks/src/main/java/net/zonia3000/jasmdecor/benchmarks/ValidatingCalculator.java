@@ -0,0 +1,24 @@
+package net.zonia3000.jasmdecor.benchmarks;
+
+/**
+ * Template rejecting negative operands, middle layer of the stacked
+ * decorators.
+ *
+ * @author zonia3000
+ */
+public abstract class ValidatingCalculator implements Calculator {
+
+    private final Calculator wrapped;
+
+    public ValidatingCalculator(Calculator wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    @Override
+    public int add(int a, int b) {
+        if (a < 0 || b < 0) {
+            throw new IllegalArgumentException("Negative operand");
+        }
+        return wrapped.add(a, b);
+    }
+}
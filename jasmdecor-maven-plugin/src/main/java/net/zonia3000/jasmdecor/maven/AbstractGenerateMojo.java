@@ -0,0 +1,144 @@
+package net.zonia3000.jasmdecor.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import net.zonia3000.jasmdecor.DecoratorGenerator;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Generates the configured decorators inside a classes directory. Decorators
+ * whose inputs didn't change since the previous build are not generated
+ * again.
+ *
+ * @author zonia3000
+ */
+public abstract class AbstractGenerateMojo extends AbstractMojo {
+
+    /**
+     * The decorators to generate.
+     */
+    @Parameter(required = true)
+    private List<Decorator> decorators;
+
+    /**
+     * Skips the generation.
+     */
+    @Parameter(property = "jasmdecor.skip", defaultValue = "false")
+    private boolean skip;
+
+    /**
+     * Generates all the decorators, ignoring the manifest of the previous
+     * build.
+     */
+    @Parameter(property = "jasmdecor.force", defaultValue = "false")
+    private boolean force;
+
+    @Parameter(defaultValue = "${project.build.directory}/jasmdecor", readonly = true)
+    private File manifestDirectory;
+
+    @Parameter(defaultValue = "${plugin.version}", readonly = true)
+    private String pluginVersion;
+
+    /**
+     * @return the directory where the decorators are written
+     */
+    protected abstract File getOutputDirectory();
+
+    /**
+     * @return the classpath used for loading decorated classes and templates
+     */
+    protected abstract List<String> getClasspathElements();
+
+    /**
+     * @return the name of the manifest file
+     */
+    protected abstract String getManifestName();
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip) {
+            getLog().info("Skipping decorators generation");
+            return;
+        }
+
+        try (URLClassLoader classLoader = createClassLoader()) {
+            DecoratorManifest manifest = new DecoratorManifest(new File(manifestDirectory, getManifestName()));
+            int generated = 0;
+            for (Decorator decorator : decorators) {
+                if (generate(decorator, classLoader, manifest)) {
+                    generated++;
+                }
+            }
+            manifest.save();
+            getLog().info("Generated " + generated + " decorators (" + (decorators.size() - generated) + " up to date)");
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to generate decorators", e);
+        }
+    }
+
+    /**
+     * @return true if the decorator has been generated, false if it was
+     * already up to date
+     */
+    private boolean generate(Decorator decorator, ClassLoader classLoader, DecoratorManifest manifest) throws IOException, MojoExecutionException {
+        if (decorator.getWrapped() == null || (decorator.getTemplate() == null) == (decorator.getName() == null)) {
+            throw new MojoExecutionException("Invalid " + decorator + ": set <wrapped> and either <template> or <name>");
+        }
+
+        String decoratorName = decorator.getDecoratorName();
+        File outputFile = new File(getOutputDirectory(), decoratorName.replace('.', File.separatorChar) + ".class");
+        String configuration = decorator.toString() + " " + pluginVersion;
+        DecoratorManifest.ClassBytesReader reader = className -> classLoader.getResourceAsStream(className.replace('.', '/') + ".class");
+
+        if (!force && manifest.isUpToDate(decoratorName, configuration, outputFile, reader)) {
+            getLog().debug(decorator + " is up to date");
+            return false;
+        }
+
+        getLog().info("Generating " + decorator);
+        DecoratorGenerator generator = createGenerator(decorator, classLoader);
+        List<String> inputClassNames = generator.getInputClassNames();
+        // hashes must be computed before overwriting the template
+        String inputsHash = manifest.hashInputs(decoratorName, configuration, inputClassNames, reader);
+
+        outputFile.getParentFile().mkdirs();
+        generator.writeDecoratorClass(outputFile);
+        manifest.setGenerated(decoratorName, inputClassNames, inputsHash, outputFile);
+        return true;
+    }
+
+    private DecoratorGenerator createGenerator(Decorator decorator, ClassLoader classLoader) throws MojoExecutionException {
+        Class wrappedType = loadClass(decorator.getWrapped(), classLoader);
+        if (decorator.getTemplate() == null) {
+            return new DecoratorGenerator(wrappedType, decorator.getName(), classLoader);
+        }
+        return new DecoratorGenerator(wrappedType, loadClass(decorator.getTemplate(), classLoader), classLoader);
+    }
+
+    private Class loadClass(String className, ClassLoader classLoader) throws MojoExecutionException {
+        try {
+            // classes are not initialized
+            return Class.forName(className, false, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new MojoExecutionException("Class not found: " + className, e);
+        }
+    }
+
+    /**
+     * Project classes are isolated from the plugin classes.
+     */
+    private URLClassLoader createClassLoader() throws MalformedURLException {
+        List<String> classpathElements = getClasspathElements();
+        URL[] urls = new URL[classpathElements.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = new File(classpathElements.get(i)).toURI().toURL();
+        }
+        return new URLClassLoader(urls, ClassLoader.getSystemClassLoader().getParent());
+    }
+}
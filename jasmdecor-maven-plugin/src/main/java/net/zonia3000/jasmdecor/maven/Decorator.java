@@ -0,0 +1,64 @@
+package net.zonia3000.jasmdecor.maven;
+
+/**
+ * A decorator declared in the plugin configuration. It must specify the class
+ * to decorate and either a template class or the name of a plain decorator.
+ *
+ * @author zonia3000
+ */
+public class Decorator {
+
+    /**
+     * The class/interface to decorate.
+     */
+    private String wrapped;
+
+    /**
+     * The template class (the generated decorator will have its name).
+     */
+    private String template;
+
+    /**
+     * The complete name of a plain decorator.
+     */
+    private String name;
+
+    public String getWrapped() {
+        return wrapped;
+    }
+
+    public void setWrapped(String wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    public void setTemplate(String template) {
+        this.template = template;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the name of the generated class
+     */
+    String getDecoratorName() {
+        return template == null ? name : template;
+    }
+
+    @Override
+    public String toString() {
+        if (template == null) {
+            return "decorator " + name + " of " + wrapped;
+        }
+        return "decorator " + template + " (template) of " + wrapped;
+    }
+}
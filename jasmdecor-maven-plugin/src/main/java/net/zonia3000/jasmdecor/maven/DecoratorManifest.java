@@ -0,0 +1,156 @@
+package net.zonia3000.jasmdecor.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Stores, for each generated decorator, the content hashes of its inputs (the
+ * classes of the wrapped hierarchy and the template) and of its output, so
+ * that a decorator is generated again only when they change.
+ * <p>
+ * When the decorator is based on a template, the template class file is
+ * overwritten by the decorator: in that case the template is checked through
+ * the hash of the output, which changes when the compiler writes the template
+ * again.
+ *
+ * @author zonia3000
+ */
+class DecoratorManifest {
+
+    /**
+     * Reads the bytes of an input class.
+     */
+    interface ClassBytesReader {
+
+        InputStream open(String className) throws IOException;
+    }
+
+    private static final String INPUTS = ".inputs";
+    private static final String INPUTS_HASH = ".inputsHash";
+    private static final String OUTPUT_HASH = ".outputHash";
+
+    private final File file;
+    private final Properties previous = new Properties();
+    private final Properties current = new Properties();
+
+    DecoratorManifest(File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                previous.load(in);
+            }
+        }
+    }
+
+    /**
+     * Checks if a decorator generated by a previous build is still valid. In
+     * that case the decorator is kept in the manifest.
+     *
+     * @param configuration a string identifying the configuration of the
+     * decorator
+     */
+    boolean isUpToDate(String decoratorName, String configuration, File outputFile, ClassBytesReader reader) throws IOException {
+        String inputs = previous.getProperty(decoratorName + INPUTS);
+        String inputsHash = previous.getProperty(decoratorName + INPUTS_HASH);
+        String outputHash = previous.getProperty(decoratorName + OUTPUT_HASH);
+        if (inputs == null || inputsHash == null || outputHash == null || !outputFile.exists()) {
+            return false;
+        }
+        if (!outputHash.equals(hash(outputFile))) {
+            return false;
+        }
+        List<String> inputClassNames = inputs.isEmpty() ? Arrays.asList() : Arrays.asList(inputs.split(","));
+        if (!inputsHash.equals(hashInputs(decoratorName, configuration, inputClassNames, reader))) {
+            return false;
+        }
+        current.setProperty(decoratorName + INPUTS, inputs);
+        current.setProperty(decoratorName + INPUTS_HASH, inputsHash);
+        current.setProperty(decoratorName + OUTPUT_HASH, outputHash);
+        return true;
+    }
+
+    /**
+     * Records a decorator generated by the current build. The input hashes
+     * must be computed before writing the output.
+     */
+    void setGenerated(String decoratorName, List<String> inputClassNames, String inputsHash, File outputFile) throws IOException {
+        current.setProperty(decoratorName + INPUTS, String.join(",", inputClassNames));
+        current.setProperty(decoratorName + INPUTS_HASH, inputsHash);
+        current.setProperty(decoratorName + OUTPUT_HASH, hash(outputFile));
+    }
+
+    /**
+     * Computes a single hash of the decorator configuration and of all its
+     * inputs, except the output class itself (see class description).
+     */
+    String hashInputs(String decoratorName, String configuration, List<String> inputClassNames, ClassBytesReader reader) throws IOException {
+        MessageDigest digest = newDigest();
+        digest.update(configuration.getBytes("UTF-8"));
+        for (String className : inputClassNames) {
+            if (className.equals(decoratorName)) {
+                continue;
+            }
+            digest.update(className.getBytes("UTF-8"));
+            try (InputStream in = reader.open(className)) {
+                if (in == null) {
+                    // the class has been removed
+                    digest.update((byte) 0);
+                } else {
+                    update(digest, in);
+                }
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private String hash(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            update(digest, in);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Writes the manifest. Decorators neither up to date nor generated are
+     * removed from it.
+     */
+    void save() throws IOException {
+        file.getParentFile().mkdirs();
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            current.store(out, "jasmdecor generated decorators");
+        }
+    }
+
+    private static void update(MessageDigest digest, InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        int nRead;
+        while ((nRead = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, nRead);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
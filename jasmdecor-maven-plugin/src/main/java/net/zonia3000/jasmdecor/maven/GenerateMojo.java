@@ -0,0 +1,39 @@
+package net.zonia3000.jasmdecor.maven;
+
+import java.io.File;
+import java.util.List;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+/**
+ * Generates decorators of the main classes.
+ *
+ * @author zonia3000
+ */
+@Mojo(name = "generate", defaultPhase = LifecyclePhase.PROCESS_CLASSES,
+        requiresDependencyResolution = ResolutionScope.COMPILE, threadSafe = true)
+public class GenerateMojo extends AbstractGenerateMojo {
+
+    @Parameter(defaultValue = "${project.build.outputDirectory}", required = true)
+    private File outputDirectory;
+
+    @Parameter(defaultValue = "${project.compileClasspathElements}", readonly = true)
+    private List<String> classpathElements;
+
+    @Override
+    protected File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    @Override
+    protected List<String> getClasspathElements() {
+        return classpathElements;
+    }
+
+    @Override
+    protected String getManifestName() {
+        return "generate.properties";
+    }
+}
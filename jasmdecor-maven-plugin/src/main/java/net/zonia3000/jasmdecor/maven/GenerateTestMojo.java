@@ -0,0 +1,39 @@
+package net.zonia3000.jasmdecor.maven;
+
+import java.io.File;
+import java.util.List;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+/**
+ * Generates decorators of the test classes.
+ *
+ * @author zonia3000
+ */
+@Mojo(name = "generate-test", defaultPhase = LifecyclePhase.PROCESS_TEST_CLASSES,
+        requiresDependencyResolution = ResolutionScope.TEST, threadSafe = true)
+public class GenerateTestMojo extends AbstractGenerateMojo {
+
+    @Parameter(defaultValue = "${project.build.testOutputDirectory}", required = true)
+    private File outputDirectory;
+
+    @Parameter(defaultValue = "${project.testClasspathElements}", readonly = true)
+    private List<String> classpathElements;
+
+    @Override
+    protected File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    @Override
+    protected List<String> getClasspathElements() {
+        return classpathElements;
+    }
+
+    @Override
+    protected String getManifestName() {
+        return "generate-test.properties";
+    }
+}
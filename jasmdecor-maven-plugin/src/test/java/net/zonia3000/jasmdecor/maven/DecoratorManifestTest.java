@@ -0,0 +1,81 @@
+package net.zonia3000.jasmdecor.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the detection of the decorators to generate again.
+ *
+ * @author zonia3000
+ */
+public class DecoratorManifestTest {
+
+    private static final String DECORATOR = "a.Template";
+    private static final String CONFIGURATION = "decorator a.Template (template) of a.Iface";
+    private static final List<String> INPUTS = Arrays.asList("a.Iface", "java.lang.Object", DECORATOR);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, String> classes = new HashMap<>();
+
+    private final DecoratorManifest.ClassBytesReader reader = className -> classes.containsKey(className)
+            ? new ByteArrayInputStream(classes.get(className).getBytes(StandardCharsets.UTF_8)) : null;
+
+    @Test
+    public void testUpToDate() throws Exception {
+        File manifestFile = new File(folder.getRoot(), "manifest.properties");
+        File outputFile = folder.newFile("Template.class");
+        classes.put("a.Iface", "iface v1");
+        classes.put("java.lang.Object", "object");
+
+        // first build
+        DecoratorManifest manifest = new DecoratorManifest(manifestFile);
+        assertFalse(manifest.isUpToDate(DECORATOR, CONFIGURATION, outputFile, reader));
+        generate(manifest, outputFile);
+        manifest.save();
+
+        // no-op build
+        manifest = new DecoratorManifest(manifestFile);
+        assertTrue(manifest.isUpToDate(DECORATOR, CONFIGURATION, outputFile, reader));
+        manifest.save();
+
+        // changed configuration
+        assertFalse(new DecoratorManifest(manifestFile).isUpToDate(DECORATOR, CONFIGURATION + " 0.2.0", outputFile, reader));
+
+        // changed input
+        classes.put("a.Iface", "iface v2");
+        assertFalse(new DecoratorManifest(manifestFile).isUpToDate(DECORATOR, CONFIGURATION, outputFile, reader));
+    }
+
+    @Test
+    public void testRecompiledTemplate() throws Exception {
+        File manifestFile = new File(folder.getRoot(), "manifest.properties");
+        File outputFile = folder.newFile("Template.class");
+        classes.put("a.Iface", "iface");
+
+        DecoratorManifest manifest = new DecoratorManifest(manifestFile);
+        generate(manifest, outputFile);
+        manifest.save();
+
+        // the compiler overwrote the generated decorator with the template
+        Files.write(outputFile.toPath(), "template v2".getBytes(StandardCharsets.UTF_8));
+        assertFalse(new DecoratorManifest(manifestFile).isUpToDate(DECORATOR, CONFIGURATION, outputFile, reader));
+    }
+
+    private void generate(DecoratorManifest manifest, File outputFile) throws Exception {
+        String inputsHash = manifest.hashInputs(DECORATOR, CONFIGURATION, INPUTS, reader);
+        Files.write(outputFile.toPath(), "generated decorator".getBytes(StandardCharsets.UTF_8));
+        manifest.setGenerated(DECORATOR, INPUTS, inputsHash, outputFile);
+    }
+}
@@ -0,0 +1,132 @@
+package net.zonia3000.jasmdecor;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates methods handing the delegated call to the {@link AsyncOffloader}
+ * of the decorator. The arguments are captured by a lambda (created through
+ * <code>invokedynamic</code>, like the ones compiled by javac) calling a
+ * static synthetic method:
+ * <pre>
+ * public void aMethod(args) {
+ *     OFFLOADER.execute(() -&gt; wrapped.aMethod(args));
+ * }
+ *
+ * public CompletableFuture aMethodAsync(args) {
+ *     return OFFLOADER.submit(() -&gt; wrapped.aMethod(args));
+ * }
+ * </pre>
+ * The second form is the companion of methods returning a value, which are
+ * still delegated synchronously. The static methods write the field holding
+ * the offloader and its initialization.
+ *
+ * @author zonia3000
+ */
+class AsyncMethodAdapter extends DelegationMethodAdapter {
+
+    static final String OFFLOADER_FIELD = "jasmdecor$offloader";
+    private static final String CREATE_OFFLOADER_METHOD = "jasmdecor$createOffloader";
+    static final String COMPANION_SUFFIX = "Async";
+    static final String COMPANION_RETURN_DESCRIPTOR = "Ljava/util/concurrent/CompletableFuture;";
+
+    private static final String OFFLOADER_INTERNAL_NAME = Type.getInternalName(AsyncOffloader.class);
+    private static final String OFFLOADER_DESCRIPTOR = Type.getDescriptor(AsyncOffloader.class);
+
+    private final String implementationName;
+    private final boolean companion;
+
+    /**
+     * @param descriptor the descriptor of the wrapped method
+     * @param implementationName the name of the static method calling the
+     * wrapped instance
+     * @param companion true for writing the companion returning a
+     * CompletableFuture, false for writing a void method
+     */
+    AsyncMethodAdapter(String decoratorInternalName, String wrappedInternalName, boolean wrappedInterface,
+            MethodVisitor writer, String methodName, String descriptor, String implementationName, boolean companion) {
+        super(decoratorInternalName, wrappedInternalName, wrappedInterface, writer, methodName, descriptor);
+        this.implementationName = implementationName;
+        this.companion = companion;
+    }
+
+    /**
+     * @return the descriptor of the companion of a method returning a value
+     */
+    static String getCompanionDescriptor(String descriptor) {
+        return descriptor.substring(0, descriptor.indexOf(')') + 1) + COMPANION_RETURN_DESCRIPTOR;
+    }
+
+    @Override
+    public void visitCode() {
+        writer.visitFieldInsn(GETSTATIC, decoratorInternalName, OFFLOADER_FIELD, OFFLOADER_DESCRIPTOR);
+        int varIndex = loadWrappedAndArguments();
+
+        String capturedArguments = "(L" + wrappedInternalName + ";" + descriptor.substring(1, descriptor.indexOf(')') + 1);
+        Handle implementation = new Handle(H_INVOKESTATIC, decoratorInternalName, implementationName, getImplementationDescriptor(), false);
+        if (companion) {
+            Type call = Type.getMethodType("()Ljava/lang/Object;");
+            writer.visitInvokeDynamicInsn("call", capturedArguments + "Ljava/util/concurrent/Callable;", LAMBDA_METAFACTORY, call, implementation, call);
+            writer.visitMethodInsn(INVOKEVIRTUAL, OFFLOADER_INTERNAL_NAME, "submit", "(Ljava/util/concurrent/Callable;)" + COMPANION_RETURN_DESCRIPTOR, false);
+            writer.visitInsn(ARETURN);
+        } else {
+            Type run = Type.getMethodType("()V");
+            writer.visitInvokeDynamicInsn("run", capturedArguments + "Ljava/lang/Runnable;", LAMBDA_METAFACTORY, run, implementation, run);
+            writer.visitMethodInsn(INVOKEVIRTUAL, OFFLOADER_INTERNAL_NAME, "execute", "(Ljava/lang/Runnable;)V", false);
+            writer.visitInsn(RETURN);
+        }
+        // the offloader, the wrapped instance and the arguments
+        writer.visitMaxs(varIndex + 2, varIndex + 1);
+    }
+
+    private String getImplementationDescriptor() {
+        return "(L" + wrappedInternalName + ";" + descriptor.substring(1);
+    }
+
+    /**
+     * Writes the static method called by the lambda. Its first argument is the
+     * wrapped instance, so the arguments have the same local variables of the
+     * delegation method.
+     */
+    void visitImplementation(ClassVisitor cv) {
+        MethodVisitor mv = cv.visitMethod(ACC_PRIVATE + ACC_STATIC + ACC_SYNTHETIC, implementationName, getImplementationDescriptor(), null, null);
+        mv.visitCode();
+        new DelegationMethodAdapter(decoratorInternalName, wrappedInternalName, wrappedInterface, mv, methodName, descriptor) {
+            @Override
+            protected void loadWrapped() {
+                writer.visitVarInsn(ALOAD, 0);
+            }
+        }.visitCode();
+        mv.visitEnd();
+    }
+
+    /**
+     * Writes the initialization of the offloader field, to be placed at the
+     * beginning of the static initializer.
+     */
+    static void visitInitialization(MethodVisitor mv, String decoratorInternalName) {
+        mv.visitMethodInsn(INVOKESTATIC, decoratorInternalName, CREATE_OFFLOADER_METHOD, "()" + OFFLOADER_DESCRIPTOR, false);
+        mv.visitFieldInsn(PUTSTATIC, decoratorInternalName, OFFLOADER_FIELD, OFFLOADER_DESCRIPTOR);
+    }
+
+    /**
+     * Writes the offloader field and the method creating the offloader.
+     */
+    static void visitOffloaderMembers(ClassVisitor cv, String decoratorInternalName, int maxPendingTasks) {
+        cv.visitField(ACC_PRIVATE + ACC_STATIC + ACC_FINAL + ACC_SYNTHETIC, OFFLOADER_FIELD, OFFLOADER_DESCRIPTOR, null, null).visitEnd();
+
+        MethodVisitor mv = cv.visitMethod(ACC_PRIVATE + ACC_STATIC + ACC_SYNTHETIC, CREATE_OFFLOADER_METHOD, "()" + OFFLOADER_DESCRIPTOR, null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(NEW, OFFLOADER_INTERNAL_NAME);
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn(decoratorInternalName.replace('/', '.'));
+        pushInt(mv, maxPendingTasks);
+        mv.visitMethodInsn(INVOKESPECIAL, OFFLOADER_INTERNAL_NAME, "<init>", "(Ljava/lang/String;I)V", false);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(4, 0);
+        mv.visitEnd();
+    }
+}
@@ -0,0 +1,216 @@
+package net.zonia3000.jasmdecor;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the calls offloaded by the asynchronous methods of a decorator (see
+ * {@link DecoratorGenerator#addAsyncMethod(String)}) on an Executor.
+ * <p>
+ * The number of pending calls is bounded: when it is reached, the calling
+ * threads wait until a call completes, so a slow wrapped instance slows down
+ * the callers instead of filling the memory. By default the calls run on
+ * virtual threads when the JVM supports them (Java 21+), otherwise on a
+ * shared pool of daemon threads, one for each processor.
+ *
+ * @author zonia3000
+ */
+public class AsyncOffloader {
+
+    private static final Logger LOG = Logger.getLogger(AsyncOffloader.class.getName());
+
+    public static final int DEFAULT_MAX_PENDING_TASKS = 1024;
+
+    private final String decoratorName;
+    private final int maxPendingTasks;
+    private final Semaphore permits;
+    private volatile Executor executor;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+
+    /**
+     * Called by the generated decorators.
+     *
+     * @param decoratorName the binary name of the decorator
+     * @param maxPendingTasks the maximum number of calls submitted and not
+     * yet completed
+     */
+    public AsyncOffloader(String decoratorName, int maxPendingTasks) {
+        if (maxPendingTasks <= 0) {
+            throw new IllegalArgumentException("The maximum number of pending tasks must be positive");
+        }
+        this.decoratorName = decoratorName;
+        this.maxPendingTasks = maxPendingTasks;
+        this.permits = new Semaphore(maxPendingTasks);
+    }
+
+    /**
+     * @param decoratorClass a decorator class having asynchronous methods
+     * @return the offloader of the decorator, or null if the decorator has no
+     * asynchronous methods
+     */
+    public static AsyncOffloader of(Class<?> decoratorClass) {
+        try {
+            Field field = decoratorClass.getDeclaredField(AsyncMethodAdapter.OFFLOADER_FIELD);
+            field.setAccessible(true);
+            return (AsyncOffloader) field.get(null);
+        } catch (NoSuchFieldException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param executor the Executor running the calls, or null for the default
+     * one
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Runs a call of a void method. Exceptions thrown by the call are logged.
+     */
+    public void execute(Runnable task) {
+        offload(() -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                failed.increment();
+                LOG.log(Level.WARNING, "Asynchronous call of " + decoratorName + " failed", t);
+            }
+        });
+    }
+
+    /**
+     * Runs a call of a method returning a value.
+     *
+     * @return a future completed with the result of the call
+     */
+    public CompletableFuture<Object> submit(Callable<?> task) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        offload(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                failed.increment();
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    private void offload(Runnable task) {
+        if (!permits.tryAcquire()) {
+            blocked.increment();
+            permits.acquireUninterruptibly();
+        }
+        submitted.increment();
+        try {
+            getExecutor().execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private Executor getExecutor() {
+        Executor current = executor;
+        return current == null ? DefaultExecutor.INSTANCE : current;
+    }
+
+    /**
+     * Waits until all the submitted calls have completed.
+     *
+     * @return false if the timeout elapsed before
+     */
+    public boolean awaitPendingTasks(long timeout, TimeUnit unit) throws InterruptedException {
+        if (permits.tryAcquire(maxPendingTasks, timeout, unit)) {
+            permits.release(maxPendingTasks);
+            return true;
+        }
+        return false;
+    }
+
+    public String getDecoratorName() {
+        return decoratorName;
+    }
+
+    public int getMaxPendingTasks() {
+        return maxPendingTasks;
+    }
+
+    /**
+     * @return the number of calls submitted and not yet completed
+     */
+    public int getPendingCount() {
+        return maxPendingTasks - permits.availablePermits();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    /**
+     * @return the number of calls that threw an exception
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * @return the number of calls whose caller had to wait because too many
+     * calls were pending
+     */
+    public long getBlockedCount() {
+        return blocked.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncOffloader{" + decoratorName + ", pending=" + getPendingCount() + ", submitted=" + getSubmittedCount()
+                + ", failed=" + getFailedCount() + ", blocked=" + getBlockedCount() + "}";
+    }
+
+    /**
+     * Created only when a decorator doesn't have its own Executor.
+     */
+    private static class DefaultExecutor {
+
+        static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            try {
+                // Java 21+
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                AtomicInteger threadNumber = new AtomicInteger();
+                return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                    Thread thread = new Thread(r, "jasmdecor-async-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+    }
+}
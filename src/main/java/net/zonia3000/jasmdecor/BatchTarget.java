@@ -0,0 +1,50 @@
+package net.zonia3000.jasmdecor;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a template receiving the batches of the calls of a single
+ * item method of the wrapped type. The generated decorator collects the
+ * arguments of the calls in a {@link CallBatcher} and passes them to the
+ * annotated method, which usually calls the bulk method of the wrapped
+ * instance:
+ * <pre>
+ * &#64;BatchTarget(value = "save", maxSize = 100, maxDelayMillis = 10)
+ * protected void saveBatch(List&lt;Item&gt; items) {
+ *     wrapped.saveAll(items);
+ * }
+ * </pre>
+ * The annotated method must take a single <code>List</code> (or
+ * <code>Collection</code>) argument and return void; the batched method must
+ * take a single argument and return void. Pending calls are flushed when the
+ * batch is full, when the maximum delay expires or when the
+ * <code>flush()</code> method of the decorator is called.
+ *
+ * @author zonia3000
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface BatchTarget {
+
+    /**
+     * @return the name of the batched method, or its name followed by the
+     * descriptor for selecting a single overload
+     */
+    String value();
+
+    /**
+     * @return the maximum number of calls in a batch
+     */
+    int maxSize() default Batching.DEFAULT_MAX_SIZE;
+
+    /**
+     * @return the maximum milliseconds a call waits before being flushed, or
+     * 0 for flushing only full batches and on explicit flushes
+     */
+    long maxDelayMillis() default Batching.DEFAULT_MAX_DELAY_MILLIS;
+}
@@ -0,0 +1,83 @@
+package net.zonia3000.jasmdecor;
+
+/**
+ * Verification settings of a batch generation (see
+ * {@link DecoratorGenerator#generateAll(java.util.List, java.util.concurrent.ExecutorService, GeneratorCache, BatchVerification)}).
+ * <p>
+ * Each decorator is verified during its generation using the configured
+ * {@link VerificationMode}. When this mode is cheaper than
+ * {@link VerificationMode#FULL}, a sample of the generated decorators can be
+ * fully verified afterwards, synchronously (failed verifications turn the
+ * results into failures) or asynchronously (see
+ * {@link GenerationResult#getDeferredVerification()}). Note that decorators
+ * having an output file are written before the sampled verification.
+ *
+ * @author zonia3000
+ */
+public class BatchVerification {
+
+    private final VerificationStats stats = new VerificationStats();
+
+    private VerificationMode mode = VerificationMode.FULL;
+    private double fullVerificationRate;
+    private boolean async;
+
+    public VerificationMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @param mode the verification performed during each generation
+     */
+    public void setMode(VerificationMode mode) {
+        this.mode = mode;
+    }
+
+    public double getFullVerificationRate() {
+        return fullVerificationRate;
+    }
+
+    /**
+     * @param fullVerificationRate the fraction (between 0 and 1) of the
+     * decorators to verify also with {@link VerificationMode#FULL}; ignored
+     * when the mode is already FULL
+     */
+    public void setFullVerificationRate(double fullVerificationRate) {
+        if (fullVerificationRate < 0 || fullVerificationRate > 1) {
+            throw new IllegalArgumentException("The full verification rate must be between 0 and 1");
+        }
+        this.fullVerificationRate = fullVerificationRate;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * @param async true if the sampled full verifications must not be awaited
+     * by the batch
+     */
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    /**
+     * @return the timings of all the verifications of the batches using these
+     * settings
+     */
+    public VerificationStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Spreads the sampled decorators evenly along the batch.
+     *
+     * @param index the position of the decorator inside the batch
+     */
+    boolean isSampled(int index) {
+        if (mode == VerificationMode.FULL) {
+            return false;
+        }
+        return Math.floor((index + 1) * fullVerificationRate) > Math.floor(index * fullVerificationRate);
+    }
+}
@@ -0,0 +1,70 @@
+package net.zonia3000.jasmdecor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of a batched method, read from a {@link BatchTarget} annotation of
+ * the template.
+ *
+ * @author zonia3000
+ */
+class Batching {
+
+    static final int DEFAULT_MAX_SIZE = 100;
+    static final long DEFAULT_MAX_DELAY_MILLIS = 10;
+
+    private final String method;
+    private final String targetName;
+    private final String targetDescriptor;
+    private final boolean targetPrivate;
+    private final int maxSize;
+    private final long maxDelay;
+
+    Batching(String method, String targetName, String targetDescriptor, boolean targetPrivate, int maxSize, long maxDelayMillis) {
+        this.method = method;
+        this.targetName = targetName;
+        this.targetDescriptor = targetDescriptor;
+        this.targetPrivate = targetPrivate;
+        this.maxSize = maxSize;
+        this.maxDelay = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+    }
+
+    /**
+     * @return true if the batched method has the given name and descriptor
+     */
+    boolean matches(String name, String descriptor) {
+        return method.equals(name) || method.equals(name + descriptor);
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    String getTargetName() {
+        return targetName;
+    }
+
+    String getTargetDescriptor() {
+        return targetDescriptor;
+    }
+
+    boolean isTargetPrivate() {
+        return targetPrivate;
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the maximum nanoseconds a call waits before being flushed
+     */
+    long getMaxDelay() {
+        return maxDelay;
+    }
+
+    @Override
+    public String toString() {
+        return "Batching{" + method + " -> " + targetName + targetDescriptor + ", maxSize=" + maxSize + ", maxDelay=" + maxDelay + "ns}";
+    }
+}
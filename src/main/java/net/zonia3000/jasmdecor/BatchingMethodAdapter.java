@@ -0,0 +1,129 @@
+package net.zonia3000.jasmdecor;
+
+import java.util.List;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates the batched methods, adding their argument to the
+ * {@link CallBatcher} of the decorator instance:
+ * <pre>
+ * public void save(Item item) {
+ *     this.batcher.add(item);
+ * }
+ * </pre>
+ * and the <code>flush()</code> method, which flushes all the batchers before
+ * delegating the call (if the wrapped type has a <code>flush()</code> method
+ * too). The static methods write the batcher fields and their initialization
+ * in the constructors of the template.
+ *
+ * @author zonia3000
+ */
+class BatchingMethodAdapter extends DelegationMethodAdapter {
+
+    static final String FLUSH_METHOD = "flush";
+    static final String FLUSH_DESCRIPTOR = "()V";
+    private static final String BATCHER_FIELD_PREFIX = "jasmdecor$batcher$";
+
+    private static final String BATCHER_INTERNAL_NAME = Type.getInternalName(CallBatcher.class);
+    private static final String BATCHER_DESCRIPTOR = Type.getDescriptor(CallBatcher.class);
+
+    // the id of the batcher, or -1 for the flush() method
+    private final int batcherId;
+    private final int batchersCount;
+
+    BatchingMethodAdapter(String decoratorInternalName, String wrappedInternalName, boolean wrappedInterface,
+            MethodVisitor writer, String methodName, String descriptor, int batcherId, int batchersCount) {
+        super(decoratorInternalName, wrappedInternalName, wrappedInterface, writer, methodName, descriptor);
+        this.batcherId = batcherId;
+        this.batchersCount = batchersCount;
+    }
+
+    /**
+     * @return true if the method can be batched
+     */
+    static boolean isBatchable(String descriptor) {
+        return Type.getReturnType(descriptor) == Type.VOID_TYPE && Type.getArgumentTypes(descriptor).length == 1;
+    }
+
+    /**
+     * @return true if the method can receive the batches
+     */
+    static boolean isBatchTarget(String descriptor) {
+        return "(Ljava/util/List;)V".equals(descriptor) || "(Ljava/util/Collection;)V".equals(descriptor);
+    }
+
+    @Override
+    public void visitCode() {
+        if (batcherId < 0) {
+            visitFlushes(writer, decoratorInternalName, batchersCount);
+            invokeWrapped();
+        } else {
+            Type argumentType = Type.getArgumentTypes(descriptor)[0];
+            writer.visitVarInsn(ALOAD, 0);
+            writer.visitFieldInsn(GETFIELD, decoratorInternalName, BATCHER_FIELD_PREFIX + batcherId, BATCHER_DESCRIPTOR);
+            writer.visitVarInsn(argumentType.getOpcode(ILOAD), 1);
+            MemoizingMethodAdapter.box(writer, argumentType);
+            writer.visitMethodInsn(INVOKEVIRTUAL, BATCHER_INTERNAL_NAME, "add", "(Ljava/lang/Object;)V", false);
+        }
+        writer.visitInsn(RETURN);
+        // computed by the ClassWriter
+        writer.visitMaxs(0, 0);
+    }
+
+    private static void visitFlushes(MethodVisitor mv, String decoratorInternalName, int batchersCount) {
+        for (int i = 0; i < batchersCount; i++) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, decoratorInternalName, BATCHER_FIELD_PREFIX + i, BATCHER_DESCRIPTOR);
+            mv.visitMethodInsn(INVOKEVIRTUAL, BATCHER_INTERNAL_NAME, "flush", "()V", false);
+        }
+    }
+
+    /**
+     * Writes the <code>flush()</code> method of decorators whose wrapped type
+     * doesn't have it.
+     */
+    static void visitFlushMethod(ClassVisitor cv, String decoratorInternalName, int batchersCount) {
+        MethodVisitor mv = cv.visitMethod(ACC_PUBLIC, FLUSH_METHOD, FLUSH_DESCRIPTOR, null, null);
+        if (mv != null) {
+            mv.visitCode();
+            visitFlushes(mv, decoratorInternalName, batchersCount);
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+    }
+
+    /**
+     * Writes the creation of the batchers, to be placed at the end of the
+     * constructors. The targets are passed as lambdas bound to the decorator
+     * instance.
+     */
+    static void visitInitialization(MethodVisitor mv, String decoratorInternalName, List<Batching> batchings) {
+        for (int i = 0; i < batchings.size(); i++) {
+            Batching batching = batchings.get(i);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitTypeInsn(NEW, BATCHER_INTERNAL_NAME);
+            mv.visitInsn(DUP);
+            mv.visitLdcInsn(batching.getMethod());
+            mv.visitVarInsn(ALOAD, 0);
+            Handle target = new Handle(batching.isTargetPrivate() ? H_INVOKESPECIAL : H_INVOKEVIRTUAL,
+                    decoratorInternalName, batching.getTargetName(), batching.getTargetDescriptor(), false);
+            mv.visitInvokeDynamicInsn("accept", "(L" + decoratorInternalName + ";)Ljava/util/function/Consumer;", LAMBDA_METAFACTORY,
+                    Type.getMethodType("(Ljava/lang/Object;)V"), target, Type.getMethodType("(Ljava/util/List;)V"));
+            pushInt(mv, batching.getMaxSize());
+            mv.visitLdcInsn(batching.getMaxDelay());
+            mv.visitMethodInsn(INVOKESPECIAL, BATCHER_INTERNAL_NAME, "<init>", "(Ljava/lang/String;Ljava/util/function/Consumer;IJ)V", false);
+            mv.visitFieldInsn(PUTFIELD, decoratorInternalName, BATCHER_FIELD_PREFIX + i, BATCHER_DESCRIPTOR);
+        }
+    }
+
+    static void visitBatcherFields(ClassVisitor cv, int batchersCount) {
+        for (int i = 0; i < batchersCount; i++) {
+            cv.visitField(ACC_PRIVATE + ACC_FINAL + ACC_SYNTHETIC, BATCHER_FIELD_PREFIX + i, BATCHER_DESCRIPTOR, null, null).visitEnd();
+        }
+    }
+}
@@ -2,6 +2,14 @@ package net.zonia3000.jasmdecor;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
@@ -29,33 +37,109 @@ public class CLI {
     private Class templateType;
     private File outputFile;
 
+    // jar mode
+    private Path outputJar;
+    private Path specFile;
+    private Path scannedJar;
+    private VerificationMode verificationMode = VerificationMode.FULL;
+
+    // daemon and client modes
+    private boolean daemon;
+    private boolean client;
+    private boolean stopDaemon;
+    private int port = GenerationDaemon.DEFAULT_PORT;
+    private long idleTimeoutMillis = GenerationDaemon.DEFAULT_IDLE_TIMEOUT_MILLIS;
+    private String classpath = System.getProperty("java.class.path");
+    private String wrappedName;
+
     private CLI(String[] args) {
         processArgs(args);
     }
 
     private void execute() throws IOException {
         setLogging();
-        DecoratorGenerator generator = getDecoratorGenerator();
-        generator.writeDecoratorClass(outputFile);
+        if (daemon) {
+            new GenerationDaemon(port, idleTimeoutMillis).run();
+        } else if (client) {
+            sendToDaemon();
+        } else if (outputJar != null) {
+            writeJar();
+        } else {
+            DecoratorGenerator generator = getDecoratorGenerator();
+            generator.setVerificationMode(verificationMode);
+            generator.writeDecoratorClass(outputFile);
+        }
     }
 
     private void processArgs(String[] args) {
 
-        if (args.length < 3) {
-            System.out.println("Usage: java -jar jasmdecor.jar <class-to-decorate> <decorator-name-or-template> <output-file>");
-            System.exit(0);
-        }
-
-        for (String arg : args) {
+        List<String> positionalArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
             if (arg.startsWith("--")) {
                 if ("--debug".equals(arg)) {
                     debug = true;
+                } else if ("--jar".equals(arg)) {
+                    outputJar = Paths.get(getFlagValue(args, ++i, arg));
+                } else if ("--specs".equals(arg)) {
+                    specFile = Paths.get(getFlagValue(args, ++i, arg));
+                } else if ("--scan".equals(arg)) {
+                    scannedJar = Paths.get(getFlagValue(args, ++i, arg));
+                } else if ("--verify".equals(arg)) {
+                    verificationMode = getVerificationMode(getFlagValue(args, ++i, arg));
+                } else if ("--daemon".equals(arg)) {
+                    daemon = true;
+                } else if ("--client".equals(arg)) {
+                    client = true;
+                } else if ("--stop".equals(arg)) {
+                    stopDaemon = true;
+                } else if ("--port".equals(arg)) {
+                    port = getNumber(getFlagValue(args, ++i, arg), arg);
+                } else if ("--idle-timeout".equals(arg)) {
+                    idleTimeoutMillis = TimeUnit.SECONDS.toMillis(getNumber(getFlagValue(args, ++i, arg), arg));
+                } else if ("--cp".equals(arg)) {
+                    classpath = getFlagValue(args, ++i, arg);
                 } else {
                     System.err.println("Unrecognized flag " + arg);
                     System.exit(1);
                 }
-                continue;
+            } else {
+                positionalArgs.add(arg);
+            }
+        }
+
+        if (daemon) {
+            return;
+        }
+        if (client) {
+            if (stopDaemon) {
+                return;
+            }
+            if (positionalArgs.size() < 3) {
+                printUsage();
+                System.exit(0);
+            }
+            // the classes are resolved by the daemon
+            wrappedName = positionalArgs.get(0);
+            decoratorName = positionalArgs.get(1);
+            outputFile = new File(positionalArgs.get(2));
+            return;
+        }
+
+        if (outputJar != null) {
+            if (specFile == null && scannedJar == null) {
+                System.err.println("--jar requires --specs or --scan");
+                System.exit(1);
             }
+            return;
+        }
+
+        if (positionalArgs.size() < 3) {
+            printUsage();
+            System.exit(0);
+        }
+
+        for (String arg : positionalArgs) {
 
             if (wrappedType == null) {
                 wrappedType = getClass(arg);
@@ -76,6 +160,102 @@ public class CLI {
         }
     }
 
+    private String getFlagValue(String[] args, int index, String flag) {
+        if (index >= args.length) {
+            System.err.println("Missing value for flag " + flag);
+            System.exit(1);
+        }
+        return args[index];
+    }
+
+    private int getNumber(String value, String flag) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value " + value + " for flag " + flag);
+            System.exit(1);
+            return 0;
+        }
+    }
+
+    private VerificationMode getVerificationMode(String value) {
+        try {
+            return VerificationMode.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid verification mode " + value + " (expected none, structural or full)");
+            System.exit(1);
+            return null;
+        }
+    }
+
+    private void printUsage() {
+        System.out.println("Usage: java -jar jasmdecor.jar [--verify none|structural|full] <class-to-decorate> <decorator-name-or-template> <output-file>");
+        System.out.println("   or: java -jar jasmdecor.jar --jar <output-jar> [--specs <spec-file>] [--scan <templates-jar>] [--verify none|structural|full]");
+        System.out.println("   or: java -jar jasmdecor.jar --daemon [--port <port>] [--idle-timeout <seconds>]");
+        System.out.println("   or: java -jar jasmdecor.jar --client [--port <port>] [--cp <classpath>] [--verify none|structural|full] <class-to-decorate> <decorator-name-or-template> <output-file>");
+        System.out.println("   or: java -jar jasmdecor.jar --client [--port <port>] --stop");
+    }
+
+    /**
+     * Sends the generation request (or the stop request) to the daemon,
+     * printing the time it took.
+     */
+    private void sendToDaemon() throws IOException {
+        String request = stopDaemon ? GenerationDaemon.STOP
+                : GenerationDaemon.generateRequest(verificationMode, classpath, wrappedName, decoratorName, outputFile);
+        String response;
+        try {
+            response = GenerationDaemon.send(port, request);
+        } catch (ConnectException e) {
+            System.err.println("No daemon listening on port " + port + " (start it with --daemon)");
+            System.exit(1);
+            return;
+        }
+        if (response.startsWith(GenerationDaemon.ERROR)) {
+            System.err.println(response.substring(GenerationDaemon.ERROR.length()).trim());
+            System.exit(1);
+        }
+        if (!stopDaemon) {
+            long micros = Long.parseLong(response.substring(GenerationDaemon.OK.length()).trim());
+            System.out.println("Generated " + outputFile.getAbsolutePath() + " in " + (micros / 1000.0) + " ms");
+        }
+    }
+
+    /**
+     * Generates all the decorators listed in the spec file or found in the
+     * scanned jar, writing them inside the output jar.
+     */
+    private void writeJar() throws IOException {
+        ClassLoader classLoader = CLI.class.getClassLoader();
+        if (scannedJar != null) {
+            URL scannedJarUrl = scannedJar.toUri().toURL();
+            classLoader = new URLClassLoader(new URL[]{scannedJarUrl}, classLoader);
+        }
+
+        DecoratorJarWriter jarWriter = new DecoratorJarWriter(classLoader, new GeneratorCache());
+        jarWriter.setVerificationMode(verificationMode);
+        List<DecoratorSpec> specs = new ArrayList<>();
+        if (specFile != null) {
+            specs.addAll(jarWriter.readSpecs(specFile));
+        }
+        if (scannedJar != null) {
+            specs.addAll(jarWriter.scanTemplates(scannedJar));
+        }
+
+        int failures = 0;
+        List<GenerationResult> results = jarWriter.write(specs, outputJar);
+        for (GenerationResult result : results) {
+            if (!result.isSuccessful()) {
+                System.err.println("Unable to generate " + result.getSpec() + ": " + result.getError());
+                failures++;
+            }
+        }
+        if (failures > 0) {
+            System.err.println(failures + " of " + results.size() + " decorators not generated");
+            System.exit(1);
+        }
+    }
+
     private Class getClass(String className) {
         try {
             return Class.forName(className);
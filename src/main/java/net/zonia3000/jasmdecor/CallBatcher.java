@@ -0,0 +1,251 @@
+package net.zonia3000.jasmdecor;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects the calls of a batched method of a decorator instance and passes
+ * them to the {@link BatchTarget} method of the template.
+ * <p>
+ * Calls are added to a lock-free queue; the thread adding the call that fills
+ * a batch flushes it, and a shared background thread flushes the calls that
+ * have been waiting for the maximum delay. Batches are passed to the target
+ * one at a time, in the order of the calls. When the target throws an
+ * exception the calls of the batch are discarded: the exception is thrown to
+ * the caller that triggered the flush, or logged when the flush was triggered
+ * by the delay.
+ *
+ * @author zonia3000
+ */
+public class CallBatcher {
+
+    private static final Logger LOG = Logger.getLogger(CallBatcher.class.getName());
+
+    private final String method;
+    private final Consumer<List<Object>> target;
+    private final int maxSize;
+    private final long maxDelay;
+
+    private final Queue<Object> calls = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedCalls = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder sizeFlushes = new LongAdder();
+    private final LongAdder delayFlushes = new LongAdder();
+    private final LongAdder explicitFlushes = new LongAdder();
+    private final LongAdder targetTime = new LongAdder();
+
+    /**
+     * Called by the generated decorators.
+     *
+     * @param method the name of the batched method
+     * @param target receives the batches
+     * @param maxSize the maximum number of calls in a batch
+     * @param maxDelay the maximum nanoseconds a call waits before being
+     * flushed, or 0 for flushing only full batches
+     */
+    public CallBatcher(String method, Consumer<List<Object>> target, int maxSize, long maxDelay) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive");
+        }
+        this.method = method;
+        this.target = target;
+        this.maxSize = maxSize;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * @param decorator an instance of a decorator having batched methods
+     * @return the batchers of the decorator, by batched method name
+     */
+    public static Map<String, CallBatcher> of(Object decorator) {
+        Map<String, CallBatcher> batchers = new LinkedHashMap<>();
+        try {
+            for (Field field : decorator.getClass().getDeclaredFields()) {
+                if (field.getType() == CallBatcher.class) {
+                    field.setAccessible(true);
+                    CallBatcher batcher = (CallBatcher) field.get(decorator);
+                    batchers.put(batcher.getMethod(), batcher);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return batchers;
+    }
+
+    /**
+     * Called by the batched method.
+     */
+    public void add(Object call) {
+        calls.offer(call);
+        if (pending.incrementAndGet() >= maxSize) {
+            sizeFlushes.increment();
+            flushBatches();
+        } else if (maxDelay > 0 && !flushScheduled.get() && flushScheduled.compareAndSet(false, true)) {
+            Scheduler.INSTANCE.schedule(this::flushDelayed, maxDelay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Passes all the pending calls to the target. Called by the
+     * <code>flush()</code> method of the decorator.
+     */
+    public void flush() {
+        explicitFlushes.increment();
+        flushBatches();
+    }
+
+    private void flushDelayed() {
+        flushScheduled.set(false);
+        delayFlushes.increment();
+        try {
+            flushBatches();
+        } catch (RuntimeException | Error e) {
+            LOG.log(Level.WARNING, "Unable to flush the calls of " + method, e);
+        }
+        // calls added while flushing
+        if (pending.get() > 0 && flushScheduled.compareAndSet(false, true)) {
+            Scheduler.INSTANCE.schedule(this::flushDelayed, maxDelay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flushBatches() {
+        flushLock.lock();
+        try {
+            List<Object> batch;
+            while (!(batch = pollBatch()).isEmpty()) {
+                pending.addAndGet(-batch.size());
+                long start = System.nanoTime();
+                try {
+                    target.accept(batch);
+                } catch (RuntimeException | Error e) {
+                    failedBatches.increment();
+                    throw e;
+                } finally {
+                    targetTime.add(System.nanoTime() - start);
+                    batches.increment();
+                    batchedCalls.add(batch.size());
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private List<Object> pollBatch() {
+        List<Object> batch = new ArrayList<>(Math.min(maxSize, Math.max(1, pending.get())));
+        Object call;
+        while (batch.size() < maxSize && (call = calls.poll()) != null) {
+            batch.add(call);
+        }
+        return batch;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of calls not yet passed to the target
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * @return the number of batches passed to the target
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return the number of calls passed to the target
+     */
+    public long getBatchedCallCount() {
+        return batchedCalls.sum();
+    }
+
+    /**
+     * @return the number of batches whose target threw an exception
+     */
+    public long getFailedBatchCount() {
+        return failedBatches.sum();
+    }
+
+    public double getAverageBatchSize() {
+        long count = getBatchCount();
+        return count == 0 ? 0 : (double) getBatchedCallCount() / count;
+    }
+
+    /**
+     * @return the nanoseconds spent in the target
+     */
+    public long getTotalTargetTime() {
+        return targetTime.sum();
+    }
+
+    /**
+     * @return the number of flushes triggered by full batches
+     */
+    public long getSizeFlushCount() {
+        return sizeFlushes.sum();
+    }
+
+    /**
+     * @return the number of flushes triggered by the maximum delay
+     */
+    public long getDelayFlushCount() {
+        return delayFlushes.sum();
+    }
+
+    /**
+     * @return the number of flushes requested calling <code>flush()</code>
+     */
+    public long getExplicitFlushCount() {
+        return explicitFlushes.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CallBatcher{" + method + ", pending=" + getPendingCount() + ", batches=" + getBatchCount()
+                + ", averageBatchSize=" + getAverageBatchSize() + ", failedBatches=" + getFailedBatchCount() + "}";
+    }
+
+    /**
+     * Thread flushing the calls waiting for the maximum delay, created by the
+     * first batcher having a delay.
+     */
+    private static class Scheduler {
+
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jasmdecor-batch-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,52 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Provides the class files read by the generator, so that decorators can be
+ * generated from class names without loading the classes into the JVM (e.g.
+ * reading them from jars or from a build output directory).
+ * <p>
+ * Generators sharing a {@link GeneratorCache} share the classes read from the
+ * same source instance, so a source should be reused between generations.
+ *
+ * @author zonia3000
+ */
+@FunctionalInterface
+public interface ClassBytesSource {
+
+    /**
+     * @param internalName the internal name of the class (e.g.
+     * <code>java/lang/Object</code>)
+     * @return the bytes of the class file, or null if the class is not
+     * available
+     * @throws IOException if the class file can't be read
+     */
+    byte[] getClassBytes(String internalName) throws IOException;
+
+    /**
+     * @param classLoader the ClassLoader whose resources contain the class
+     * files, or null for the system ClassLoader
+     * @return a source reading the class files as resources of the ClassLoader
+     */
+    static ClassBytesSource fromClassLoader(ClassLoader classLoader) {
+        ClassLoader resourcesClassLoader = classLoader == null ? ClassLoader.getSystemClassLoader() : classLoader;
+        return internalName -> {
+            InputStream classStream = resourcesClassLoader.getResourceAsStream(internalName + ".class");
+            if (classStream == null) {
+                return null;
+            }
+            try (InputStream in = classStream;
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+                int nRead;
+                byte[] data = new byte[1024];
+                while ((nRead = in.read(data, 0, data.length)) != -1) {
+                    baos.write(data, 0, nRead);
+                }
+                return baos.toByteArray();
+            }
+        };
+    }
+}
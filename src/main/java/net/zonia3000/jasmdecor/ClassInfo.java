@@ -0,0 +1,242 @@
+package net.zonia3000.jasmdecor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Header and method table of a class of the wrapped hierarchy. It stores only
+ * the information needed by {@link DecoratorClassAdapter}, so it can be kept
+ * in cache and replayed for every decorator of the hierarchy without parsing
+ * the class again.
+ *
+ * @author zonia3000
+ */
+class ClassInfo {
+
+    private static final String MEMOIZE_DESCRIPTOR = Type.getDescriptor(Memoize.class);
+    private static final String BATCH_TARGET_DESCRIPTOR = Type.getDescriptor(BatchTarget.class);
+    private static final String GUARDED_DESCRIPTOR = Type.getDescriptor(Guarded.class);
+
+    private int version;
+    private int access;
+    private String name;
+    private String signature;
+    private String superName;
+    private String[] interfaces;
+    private final List<MethodInfo> methods = new ArrayList<>();
+    private Map<String, Memoization> memoizedMethods = Collections.emptyMap();
+    private List<Batching> batchings = Collections.emptyList();
+    private PatternLockingRule lockingRule;
+
+    /**
+     * Reads the class skipping the methods code.
+     */
+    static ClassInfo read(ClassReader classReader) {
+        ClassInfo classInfo = new ClassInfo();
+        classReader.accept(new ClassVisitor(ASM6) {
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                classInfo.version = version;
+                classInfo.access = access;
+                classInfo.name = name;
+                classInfo.signature = signature;
+                classInfo.superName = superName;
+                classInfo.interfaces = interfaces;
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String annotationDescriptor, boolean visible) {
+                if (GUARDED_DESCRIPTOR.equals(annotationDescriptor)) {
+                    return classInfo.readGuarded();
+                }
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                classInfo.methods.add(new MethodInfo(access, name, descriptor, signature, exceptions));
+                return new MethodVisitor(ASM6) {
+                    @Override
+                    public AnnotationVisitor visitAnnotation(String annotationDescriptor, boolean visible) {
+                        if (MEMOIZE_DESCRIPTOR.equals(annotationDescriptor)) {
+                            return classInfo.readMemoize(name + descriptor);
+                        }
+                        if (BATCH_TARGET_DESCRIPTOR.equals(annotationDescriptor)) {
+                            return classInfo.readBatchTarget(access, name, descriptor);
+                        }
+                        return null;
+                    }
+                };
+            }
+        }, ClassReader.SKIP_CODE + ClassReader.SKIP_DEBUG + ClassReader.SKIP_FRAMES);
+        return classInfo;
+    }
+
+    /**
+     * Reads the values of a {@link Memoize} annotation, using the defaults
+     * of the missing ones (they are not stored in the class file).
+     */
+    private AnnotationVisitor readMemoize(String method) {
+        return new AnnotationVisitor(ASM6) {
+            private int maxEntries = Memoization.DEFAULT_MAX_ENTRIES;
+            private long expireAfterWriteMillis;
+
+            @Override
+            public void visit(String name, Object value) {
+                if ("maxEntries".equals(name)) {
+                    maxEntries = (Integer) value;
+                } else if ("expireAfterWriteMillis".equals(name)) {
+                    expireAfterWriteMillis = (Long) value;
+                }
+            }
+
+            @Override
+            public void visitEnd() {
+                if (memoizedMethods.isEmpty()) {
+                    memoizedMethods = new HashMap<>();
+                }
+                memoizedMethods.put(method, new Memoization(maxEntries, expireAfterWriteMillis, TimeUnit.MILLISECONDS));
+            }
+        };
+    }
+
+    /**
+     * Reads the values of a {@link BatchTarget} annotation, using the
+     * defaults of the missing ones.
+     */
+    private AnnotationVisitor readBatchTarget(int targetAccess, String targetName, String targetDescriptor) {
+        return new AnnotationVisitor(ASM6) {
+            private String method;
+            private int maxSize = Batching.DEFAULT_MAX_SIZE;
+            private long maxDelayMillis = Batching.DEFAULT_MAX_DELAY_MILLIS;
+
+            @Override
+            public void visit(String name, Object value) {
+                if ("value".equals(name)) {
+                    method = (String) value;
+                } else if ("maxSize".equals(name)) {
+                    maxSize = (Integer) value;
+                } else if ("maxDelayMillis".equals(name)) {
+                    maxDelayMillis = (Long) value;
+                }
+            }
+
+            @Override
+            public void visitEnd() {
+                if (batchings.isEmpty()) {
+                    batchings = new ArrayList<>();
+                }
+                batchings.add(new Batching(method, targetName, targetDescriptor, (targetAccess & ACC_PRIVATE) != 0, maxSize, maxDelayMillis));
+            }
+        };
+    }
+
+    /**
+     * Reads the patterns of a {@link Guarded} annotation.
+     */
+    private AnnotationVisitor readGuarded() {
+        lockingRule = new PatternLockingRule();
+        return new AnnotationVisitor(ASM6) {
+            @Override
+            public void visitEnum(String name, String descriptor, String value) {
+                if ("others".equals(name)) {
+                    lockingRule.setDefaultMode(LockMode.valueOf(value));
+                }
+            }
+
+            @Override
+            public AnnotationVisitor visitArray(String name) {
+                return new AnnotationVisitor(ASM6) {
+                    @Override
+                    public void visit(String ignored, Object value) {
+                        if ("optimisticRead".equals(name)) {
+                            lockingRule.addOptimisticReadMethods((String) value);
+                        } else if ("read".equals(name)) {
+                            lockingRule.addReadMethods((String) value);
+                        } else if ("write".equals(name)) {
+                            lockingRule.addWriteMethods((String) value);
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the settings of the methods annotated with {@link Memoize}, by
+     * method name and descriptor
+     */
+    Map<String, Memoization> getMemoizedMethods() {
+        return memoizedMethods;
+    }
+
+    /**
+     * @return the settings of the batched methods, read from the methods
+     * annotated with {@link BatchTarget}
+     */
+    List<Batching> getBatchings() {
+        return batchings;
+    }
+
+    /**
+     * @return the locking rule of a template annotated with {@link Guarded},
+     * or null
+     */
+    PatternLockingRule getLockingRule() {
+        return lockingRule;
+    }
+
+    int getMethodsCount() {
+        return methods.size();
+    }
+
+    /**
+     * Visits the class header and its methods in the same order a ClassReader
+     * would do. Like a ClassReader, <code>visitCode()</code> is invoked only
+     * on methods having a body.
+     */
+    void accept(ClassVisitor classVisitor) {
+        classVisitor.visit(version, access, name, signature, superName, interfaces);
+        for (MethodInfo method : methods) {
+            MethodVisitor mv = classVisitor.visitMethod(method.access, method.name, method.descriptor, method.signature, method.exceptions);
+            if (mv != null) {
+                if ((method.access & (ACC_ABSTRACT | ACC_NATIVE)) == 0) {
+                    mv.visitCode();
+                }
+                mv.visitEnd();
+            }
+        }
+        classVisitor.visitEnd();
+    }
+
+    private static class MethodInfo {
+
+        private final int access;
+        private final String name;
+        private final String descriptor;
+        private final String signature;
+        private final String[] exceptions;
+
+        MethodInfo(int access, String name, String descriptor, String signature, String[] exceptions) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.signature = signature;
+            this.exceptions = exceptions;
+        }
+    }
+}
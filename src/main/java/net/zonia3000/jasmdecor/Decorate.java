@@ -0,0 +1,34 @@
+package net.zonia3000.jasmdecor;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a template class, specifying the class/interface it decorates. The CLI
+ * can scan a jar for annotated templates and generate all their decorators.
+ * <p>
+ * Annotated templates are also processed at compile time by
+ * {@link DecorateProcessor}, which generates a decorator extending the
+ * template (see {@link #name()}).
+ *
+ * @author zonia3000
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Decorate {
+
+    /**
+     * @return the class/interface to decorate
+     */
+    Class<?> value();
+
+    /**
+     * @return the complete name of the decorator generated by the annotation
+     * processor; by default it is the template name followed by "Impl"
+     */
+    String name() default "";
+}
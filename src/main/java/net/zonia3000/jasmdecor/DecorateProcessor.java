@@ -0,0 +1,394 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Annotation processor generating, at compile time, the decorators of the
+ * templates annotated with {@link Decorate}. Methods to delegate are found
+ * from the javac metadata of the wrapped type, so no class needs to be read
+ * or loaded and the class file is written through the Filer.
+ * <p>
+ * The Filer can't replace the class file of a template being compiled, so the
+ * generated decorator <em>extends</em> the template instead of being merged
+ * with it: it has its own <code>wrapped</code> field, a constructor for each
+ * template constructor having the wrapped instance as first parameter and
+ * delegation methods for all the methods not implemented by the template. For
+ * this reason the template must be an extendable class and, when the wrapped
+ * type is a class, it must extend it.
+ *
+ * @author zonia3000
+ */
+@SupportedAnnotationTypes("net.zonia3000.jasmdecor.Decorate")
+public class DecorateProcessor extends AbstractProcessor {
+
+    private static final String OBJECT = "java.lang.Object";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    error("@Decorate can be used only on template classes", element);
+                    continue;
+                }
+                TypeElement template = (TypeElement) element;
+                AnnotationMirror decorate = getDecorateAnnotation(template, annotation);
+                try {
+                    processTemplate(template, decorate);
+                } catch (IllegalArgumentException e) {
+                    error(e.getMessage(), template);
+                } catch (IOException e) {
+                    error("Unable to write decorator of " + template + ": " + e, template);
+                }
+            }
+        }
+        return true;
+    }
+
+    private AnnotationMirror getDecorateAnnotation(TypeElement template, TypeElement annotation) {
+        for (AnnotationMirror mirror : template.getAnnotationMirrors()) {
+            if (mirror.getAnnotationType().asElement().equals(annotation)) {
+                return mirror;
+            }
+        }
+        throw new IllegalStateException("@Decorate not found on " + template);
+    }
+
+    private void processTemplate(TypeElement template, AnnotationMirror decorate) throws IOException {
+        TypeElement wrapped = null;
+        String decoratorName = "";
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : processingEnv.getElementUtils().getElementValuesWithDefaults(decorate).entrySet()) {
+            String attribute = entry.getKey().getSimpleName().toString();
+            if ("value".equals(attribute)) {
+                wrapped = (TypeElement) ((DeclaredType) entry.getValue().getValue()).asElement();
+            } else if ("name".equals(attribute)) {
+                decoratorName = (String) entry.getValue().getValue();
+            }
+        }
+        if (decoratorName.isEmpty()) {
+            decoratorName = getBinaryName(template) + "Impl";
+        }
+
+        checkTemplate(template, wrapped);
+
+        byte[] classBytes = new DecoratorWriter(template, wrapped, decoratorName.replace('.', '/')).write();
+
+        JavaFileObject classFile = processingEnv.getFiler().createClassFile(decoratorName, template);
+        try (OutputStream out = classFile.openOutputStream()) {
+            out.write(classBytes);
+        }
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Generated decorator " + decoratorName, template);
+    }
+
+    private void checkTemplate(TypeElement template, TypeElement wrapped) {
+        if (template.getModifiers().contains(Modifier.FINAL)) {
+            throw new IllegalArgumentException("The template can't be final");
+        }
+        if (!template.getModifiers().contains(Modifier.PUBLIC)) {
+            throw new IllegalArgumentException("The template must be public");
+        }
+        if (template.getNestingKind().isNested() && !template.getModifiers().contains(Modifier.STATIC)) {
+            throw new IllegalArgumentException("The template can't be an inner class");
+        }
+        if (!isInterface(wrapped) && !processingEnv.getTypeUtils().isSubtype(
+                erasure(template.asType()), erasure(wrapped.asType()))) {
+            throw new IllegalArgumentException("The template must extend the decorated class " + wrapped);
+        }
+    }
+
+    private void error(String message, Element element) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * Writes the bytes of a decorator extending the template.
+     */
+    private class DecoratorWriter {
+
+        private final TypeElement template;
+        private final TypeElement wrapped;
+        private final String decoratorInternalName;
+        private final String templateInternalName;
+        private final String wrappedInternalName;
+        private final ClassWriter classWriter;
+
+        DecoratorWriter(TypeElement template, TypeElement wrapped, String decoratorInternalName) {
+            this.template = template;
+            this.wrapped = wrapped;
+            this.decoratorInternalName = decoratorInternalName;
+            this.templateInternalName = getInternalName(template);
+            this.wrappedInternalName = getInternalName(wrapped);
+            // maxs are computed without loading classes, frames are not needed
+            this.classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        }
+
+        byte[] write() {
+            String[] interfaces = isInterface(wrapped) ? new String[]{wrappedInternalName} : new String[]{};
+            classWriter.visit(V1_8, ACC_PUBLIC + ACC_SUPER, decoratorInternalName, null, templateInternalName, interfaces);
+            classWriter.visitField(ACC_PRIVATE + ACC_FINAL, "wrapped", "L" + wrappedInternalName + ";", null, null).visitEnd();
+
+            writeConstructors();
+            writeDelegationMethods();
+
+            classWriter.visitEnd();
+            return classWriter.toByteArray();
+        }
+
+        /**
+         * Writes a constructor for each template constructor having the wrapped
+         * type as first parameter.
+         */
+        private void writeConstructors() {
+            boolean constructorFound = false;
+            for (ExecutableElement constructor : ElementFilter.constructorsIn(template.getEnclosedElements())) {
+                List<? extends VariableElement> parameters = constructor.getParameters();
+                if (constructor.getModifiers().contains(Modifier.PRIVATE) || parameters.isEmpty()
+                        || !processingEnv.getTypeUtils().isSameType(erasure(parameters.get(0).asType()), erasure(wrapped.asType()))) {
+                    continue;
+                }
+                constructorFound = true;
+                String descriptor = getDescriptor(constructor);
+                MethodVisitor mv = classWriter.visitMethod(ACC_PUBLIC, "<init>", descriptor, null, getExceptions(constructor));
+                mv.visitCode();
+                // super(args)
+                mv.visitVarInsn(ALOAD, 0);
+                int varIndex = 1;
+                for (Type argumentType : Type.getArgumentTypes(descriptor)) {
+                    mv.visitVarInsn(argumentType.getOpcode(ILOAD), varIndex);
+                    varIndex += argumentType.getSize();
+                }
+                mv.visitMethodInsn(INVOKESPECIAL, templateInternalName, "<init>", descriptor, false);
+                // this.wrapped = wrapped
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitFieldInsn(PUTFIELD, decoratorInternalName, "wrapped", "L" + wrappedInternalName + ";");
+                mv.visitInsn(RETURN);
+                mv.visitMaxs(0, 0);
+                mv.visitEnd();
+            }
+            if (!constructorFound) {
+                throw new IllegalArgumentException("The template must have a constructor having a "
+                        + wrapped.getQualifiedName() + " as first parameter");
+            }
+        }
+
+        /**
+         * Follows the same rules of {@link DecoratorClassAdapter} for choosing
+         * the methods to delegate, skipping the ones implemented by the
+         * template.
+         */
+        private void writeDelegationMethods() {
+            Map<String, List<ExecutableElement>> implementedMethods = getImplementedMethods();
+            Set<String> visitedMethods = new HashSet<>();
+
+            for (TypeElement type : getHierarchy()) {
+                boolean isObject = type.getQualifiedName().contentEquals(OBJECT);
+                for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                    Set<Modifier> modifiers = method.getModifiers();
+                    String name = method.getSimpleName().toString();
+                    String descriptor = getDescriptor(method);
+                    String key = name + descriptor;
+
+                    if (modifiers.contains(Modifier.FINAL) && !isObject) {
+                        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                                "Ignored final method " + type + "." + name + descriptor, template);
+                    }
+                    if (modifiers.contains(Modifier.FINAL) || modifiers.contains(Modifier.STATIC)
+                            || modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.NATIVE)
+                            || ("finalize".equals(name) && "()V".equals(descriptor))
+                            || !visitedMethods.add(key) || isImplemented(method, implementedMethods.get(name))) {
+                        continue;
+                    }
+
+                    int access = modifiers.contains(Modifier.PROTECTED) ? ACC_PROTECTED : ACC_PUBLIC;
+                    MethodVisitor mv = classWriter.visitMethod(access, name, descriptor, null, getExceptions(method));
+                    new DelegationMethodAdapter(decoratorInternalName, wrappedInternalName, isInterface(wrapped), mv, name, descriptor).visitCode();
+                    mv.visitEnd();
+                }
+            }
+        }
+
+        /**
+         * @return the non abstract methods of the template and of its
+         * superclasses (excluding Object), by name
+         */
+        private Map<String, List<ExecutableElement>> getImplementedMethods() {
+            Map<String, List<ExecutableElement>> implementedMethods = new HashMap<>();
+            TypeElement type = template;
+            while (type != null && !type.getQualifiedName().contentEquals(OBJECT)) {
+                for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                    if (!method.getModifiers().contains(Modifier.ABSTRACT)) {
+                        implementedMethods.computeIfAbsent(method.getSimpleName().toString(), k -> new ArrayList<>()).add(method);
+                    }
+                }
+                type = getSuperclass(type);
+            }
+            return implementedMethods;
+        }
+
+        /**
+         * Checks the overriding with the language rules instead of comparing
+         * the erased descriptors: a template method overriding a generic
+         * method (e.g. <code>compareTo(Foo)</code> for
+         * <code>Comparable&lt;Foo&gt;</code>) has a different descriptor, and
+         * javac writes a bridge method with the erased one in the template,
+         * which must not be overridden by a delegation method.
+         *
+         * @param implementedMethods the implemented methods having the same
+         * name, or null
+         */
+        private boolean isImplemented(ExecutableElement method, List<ExecutableElement> implementedMethods) {
+            if (implementedMethods != null) {
+                for (ExecutableElement implementedMethod : implementedMethods) {
+                    if (implementedMethod.equals(method)
+                            || processingEnv.getElementUtils().overrides(implementedMethod, method, template)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Same order of {@link DecoratorGenerator#getInputClassNames()}.
+         */
+        private Set<TypeElement> getHierarchy() {
+            Set<TypeElement> hierarchy = new LinkedHashSet<>();
+            fillHierarchy(wrapped, hierarchy);
+            if (isInterface(wrapped)) {
+                hierarchy.add(processingEnv.getElementUtils().getTypeElement(OBJECT));
+            }
+            return hierarchy;
+        }
+
+        private void fillHierarchy(TypeElement type, Set<TypeElement> hierarchy) {
+            hierarchy.add(type);
+            TypeElement superclass = getSuperclass(type);
+            if (superclass != null) {
+                fillHierarchy(superclass, hierarchy);
+            }
+            for (TypeMirror iface : type.getInterfaces()) {
+                fillHierarchy((TypeElement) processingEnv.getTypeUtils().asElement(iface), hierarchy);
+            }
+        }
+
+        private String[] getExceptions(ExecutableElement method) {
+            List<String> exceptions = new ArrayList<>();
+            for (TypeMirror thrownType : method.getThrownTypes()) {
+                exceptions.add(getDescriptor(thrownType));
+            }
+            if (exceptions.isEmpty()) {
+                return null;
+            }
+            String[] internalNames = new String[exceptions.size()];
+            for (int i = 0; i < internalNames.length; i++) {
+                // strips 'L' and ';'
+                String descriptor = exceptions.get(i);
+                internalNames[i] = descriptor.substring(1, descriptor.length() - 1);
+            }
+            return internalNames;
+        }
+    }
+
+    private TypeElement getSuperclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() == TypeKind.NONE) {
+            return null;
+        }
+        return (TypeElement) processingEnv.getTypeUtils().asElement(superclass);
+    }
+
+    private boolean isInterface(TypeElement type) {
+        return type.getKind().isInterface();
+    }
+
+    private TypeMirror erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type);
+    }
+
+    private String getBinaryName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    private String getInternalName(TypeElement type) {
+        return getBinaryName(type).replace('.', '/');
+    }
+
+    /**
+     * @return the descriptor of the erased method signature
+     */
+    private String getDescriptor(ExecutableElement method) {
+        StringBuilder sb = new StringBuilder("(");
+        for (VariableElement parameter : method.getParameters()) {
+            sb.append(getDescriptor(parameter.asType()));
+        }
+        return sb.append(')').append(getDescriptor(method.getReturnType())).toString();
+    }
+
+    private String getDescriptor(TypeMirror type) {
+        TypeMirror erasure = erasure(type);
+        switch (erasure.getKind()) {
+            case BOOLEAN:
+                return "Z";
+            case BYTE:
+                return "B";
+            case SHORT:
+                return "S";
+            case INT:
+                return "I";
+            case LONG:
+                return "J";
+            case CHAR:
+                return "C";
+            case FLOAT:
+                return "F";
+            case DOUBLE:
+                return "D";
+            case VOID:
+                return "V";
+            case ARRAY:
+                return "[" + getDescriptor(((ArrayType) erasure).getComponentType());
+            case DECLARED:
+                return "L" + getInternalName((TypeElement) ((DeclaredType) erasure).asElement()) + ";";
+            default:
+                throw new IllegalArgumentException("Unsupported type " + type);
+        }
+    }
+}
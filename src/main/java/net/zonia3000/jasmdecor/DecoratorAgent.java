@@ -0,0 +1,205 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.IOException;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.objectweb.asm.ClassReader;
+
+/**
+ * Java agent generating decorators of classes that can't be processed at build
+ * time (e.g. third party classes). The agent arguments are the comma separated
+ * names of the classes/interfaces to decorate:
+ * <pre>
+ * java -javaagent:jasmdecor.jar=com.example.Service,com.example.Repository ...
+ * </pre>
+ * When a watched type is loaded, its bytes and the bytes of its supertypes are
+ * captured by a ClassFileTransformer (without being modified) and stored in
+ * the {@link GeneratorCache}, so they are never read again from the
+ * classpath. Loading threads pay only the capture: each decorator is
+ * generated lazily, on the thread calling {@link #getFactory(Class)} for the
+ * first time, so the watched types that are never decorated don't pay for
+ * the generation.
+ * <p>
+ * The time added by the agent to the loading of each class and the time spent
+ * generating each decorator are recorded and available from
+ * {@link #getCaptureTimes()} and {@link #getGenerationTimes()}.
+ *
+ * @author zonia3000
+ */
+public class DecoratorAgent implements ClassFileTransformer {
+
+    private static final Logger LOG = Logger.getLogger(DecoratorAgent.class.getName());
+
+    private static volatile DecoratorAgent instance;
+
+    // internal names of the watched types and of their supertypes
+    private final Set<String> watchedTypes = ConcurrentHashMap.newKeySet();
+    private final Set<String> decoratedTypes = ConcurrentHashMap.newKeySet();
+
+    private final GeneratorCache cache;
+    private final DecoratorFactory decoratorFactory;
+
+    private final Map<String, Long> captureTimes = new ConcurrentHashMap<>();
+    private final Map<String, Long> generationTimes = new ConcurrentHashMap<>();
+
+    /**
+     * @param decoratedTypes the binary names of the classes/interfaces to
+     * decorate
+     * @param cache the cache where captured classes are stored
+     */
+    DecoratorAgent(List<String> decoratedTypes, GeneratorCache cache) {
+        for (String decoratedType : decoratedTypes) {
+            String internalName = decoratedType.replace('.', '/');
+            this.decoratedTypes.add(internalName);
+            this.watchedTypes.add(internalName);
+        }
+        this.cache = cache;
+        this.decoratorFactory = new DecoratorFactory(cache);
+    }
+
+    public static void premain(String agentArgs, Instrumentation inst) {
+        install(agentArgs, inst);
+    }
+
+    /**
+     * Called when the agent is attached to a running JVM. Watched types that
+     * are already loaded are retransformed (if supported), only for capturing
+     * their bytes.
+     */
+    public static void agentmain(String agentArgs, Instrumentation inst) {
+        DecoratorAgent agent = install(agentArgs, inst);
+        if (!inst.isRetransformClassesSupported()) {
+            return;
+        }
+        List<Class<?>> loadedTypes = new ArrayList<>();
+        for (Class<?> loadedClass : inst.getAllLoadedClasses()) {
+            if (agent.decoratedTypes.contains(loadedClass.getName().replace('.', '/'))) {
+                agent.addSupertypes(loadedClass, loadedTypes);
+            }
+        }
+        try {
+            inst.retransformClasses(loadedTypes.toArray(new Class<?>[loadedTypes.size()]));
+        } catch (UnmodifiableClassException e) {
+            LOG.log(Level.WARNING, "Unable to capture the already loaded classes", e);
+        }
+    }
+
+    private static synchronized DecoratorAgent install(String agentArgs, Instrumentation inst) {
+        if (instance != null) {
+            throw new IllegalStateException("jasmdecor agent already installed");
+        }
+        List<String> types = new ArrayList<>();
+        if (agentArgs != null) {
+            for (String type : agentArgs.split(",")) {
+                if (!type.trim().isEmpty()) {
+                    types.add(type.trim());
+                }
+            }
+        }
+        LOG.log(Level.INFO, "jasmdecor agent watching {0}", types);
+        DecoratorAgent agent = new DecoratorAgent(types, new GeneratorCache());
+        inst.addTransformer(agent, inst.isRetransformClassesSupported());
+        instance = agent;
+        return agent;
+    }
+
+    private void addSupertypes(Class<?> type, List<Class<?>> types) {
+        watchedTypes.add(type.getName().replace('.', '/'));
+        types.add(type);
+        if (type.getSuperclass() != null && type.getSuperclass() != Object.class) {
+            addSupertypes(type.getSuperclass(), types);
+        }
+        for (Class<?> iface : type.getInterfaces()) {
+            addSupertypes(iface, types);
+        }
+    }
+
+    /**
+     * @return the running agent, or null if the JVM hasn't been started with
+     * the jasmdecor agent
+     */
+    public static DecoratorAgent getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns a function wrapping instances inside a plain decorator. The
+     * decorator is generated at the first call for the wrapped type.
+     *
+     * @param wrappedType the class/interface to decorate
+     * @return a function creating a new decorator for each wrapped instance
+     * @throws IOException if a class of the hierarchy can't be read
+     */
+    public <T> Function<T, T> getFactory(Class<T> wrappedType) throws IOException {
+        String binaryName = wrappedType.getName();
+        if (generationTimes.containsKey(binaryName)) {
+            return decoratorFactory.getFactory(wrappedType);
+        }
+        long start = System.nanoTime();
+        Function<T, T> factory = decoratorFactory.getFactory(wrappedType);
+        long time = System.nanoTime() - start;
+        if (generationTimes.putIfAbsent(binaryName, time) == null) {
+            LOG.log(Level.FINE, "Generated decorator of {0} in {1} ns", new Object[]{binaryName, time});
+        }
+        return factory;
+    }
+
+    public GeneratorCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the nanoseconds added by the agent to the loading of each
+     * captured class, by class binary name
+     */
+    public Map<String, Long> getCaptureTimes() {
+        return Collections.unmodifiableMap(captureTimes);
+    }
+
+    /**
+     * @return the nanoseconds spent generating each decorator, by binary name
+     * of the decorated class
+     */
+    public Map<String, Long> getGenerationTimes() {
+        return Collections.unmodifiableMap(generationTimes);
+    }
+
+    /**
+     * Stores the bytes of the watched types and starts watching their
+     * supertypes, which are loaded after them. Classes are never modified and
+     * no decorator is generated here.
+     */
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        if (className == null || !watchedTypes.contains(className)) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            ClassReader classReader = new ClassReader(classfileBuffer);
+            if (classReader.getSuperName() != null && !"java/lang/Object".equals(classReader.getSuperName())) {
+                watchedTypes.add(classReader.getSuperName());
+            }
+            Collections.addAll(watchedTypes, classReader.getInterfaces());
+
+            cache.putClassReader(loader, className, classReader);
+            captureTimes.put(className.replace('/', '.'), System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            // exceptions thrown by transformers are ignored by the JVM
+            LOG.log(Level.WARNING, "Unable to capture class " + className, e);
+        }
+        return null;
+    }
+}
@@ -1,7 +1,11 @@
 package net.zonia3000.jasmdecor;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.objectweb.asm.ClassVisitor;
@@ -21,12 +25,12 @@ public class DecoratorClassAdapter extends ClassVisitor {
 
     private final String decoratorName;
     private final String decoratorInternalName;
-    private final Class wrappedType;
     private final String wrappedInternalName;
+    private final boolean wrappedInterface;
 
     // avoids writing duplicated methods (this can happen when multiple visits
     // of an overridden method are performed following the hierarchy)
-    private final Set<String> visitedMethods;
+    private final MethodSet visitedMethods;
 
     // ensures that the constructor is visited only once (necessary when multiple
     // visits are performed)
@@ -35,24 +39,209 @@ public class DecoratorClassAdapter extends ClassVisitor {
     // current visiting class name (used for logging purposes)
     private String visitingClass;
 
+    // delegation methods recording metrics, in order of method id (null when
+    // metrics are disabled)
+    private List<String> metricsMethods;
+
+    // memoization settings, by method name or by name and descriptor, and
+    // memoized methods in order of memoizer id
+    private Map<String, Memoization> memoizations;
+    private final List<MemoizingMethodAdapter.MemoizedMethod> memoizedMethods = new ArrayList<>();
+
+    // asynchronous methods, by method name or by name and descriptor, and
+    // number of written lambda implementations
+    private Set<String> asyncMethods;
+    private int asyncImplementations;
+
+    // batched methods, in order of batcher id, and ids of the ones found in
+    // the hierarchy
+    private List<Batching> batchings;
+    private final Set<Integer> batchedMethods = new HashSet<>();
+
+    // readers and writers of a thread-safe decorator (null when the
+    // delegation methods don't lock)
+    private LockingRule lockingRule;
+
+    // true when the delegation methods call the target of the HotSwap
+    private boolean hotSwappable;
+
+    // implementation called directly when it is the exact class of the
+    // target (null when the delegation methods are not specialized)
+    private String specializedInternalName;
+
+    // initialization of the instance fields, written in the generated
+    // constructor
+    private Consumer<MethodVisitor> instanceInitialization;
+
     public DecoratorClassAdapter(String decoratorName, Class wrappedType, ClassWriter cw) {
-        super(ASM6, cw);
+        this(decoratorName, Type.getInternalName(wrappedType), wrappedType.isInterface(), cw);
+    }
+
+    /**
+     * Used when the wrapped type is known only by name (e.g. when the
+     * decorator is generated without loading the wrapped type). The visitor
+     * can also be a {@link TemplateClassAdapter}, for writing the delegation
+     * methods directly inside the decorator based on the template.
+     */
+    public DecoratorClassAdapter(String decoratorName, String wrappedInternalName, boolean wrappedInterface, ClassVisitor cv) {
+        super(ASM6, cv);
         this.decoratorName = decoratorName;
         this.decoratorInternalName = decoratorName.replace(".", "/");
-        this.wrappedType = wrappedType;
-        this.wrappedInternalName = Type.getInternalName(wrappedType);
-        this.visitedMethods = new HashSet<>();
+        this.wrappedInternalName = wrappedInternalName;
+        this.wrappedInterface = wrappedInterface;
+        this.visitedMethods = new MethodSet();
+    }
+
+    /**
+     * Enables the generation of delegation methods recording their calls (see
+     * {@link MetricsMethodAdapter}).
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsMethods = metricsEnabled ? new ArrayList<>() : null;
+    }
+
+    /**
+     * @return the name and descriptor of the delegation methods recording
+     * metrics, in order of method id
+     */
+    public List<String> getMetricsMethods() {
+        return metricsMethods;
+    }
+
+    /**
+     * Enables the generation of delegation methods caching their results (see
+     * {@link MemoizingMethodAdapter}).
+     *
+     * @param memoizations the memoization settings, by method name or by
+     * method name followed by the descriptor
+     */
+    public void setMemoizations(Map<String, Memoization> memoizations) {
+        this.memoizations = memoizations;
+    }
+
+    /**
+     * @return the memoized methods, in order of memoizer id
+     */
+    List<MemoizingMethodAdapter.MemoizedMethod> getMemoizedMethods() {
+        return memoizedMethods;
+    }
+
+    /**
+     * Enables the generation of methods offloading the delegated calls (see
+     * {@link AsyncMethodAdapter}).
+     *
+     * @param asyncMethods the method names, or the method names followed by
+     * the descriptor
+     */
+    public void setAsyncMethods(Set<String> asyncMethods) {
+        this.asyncMethods = asyncMethods;
+    }
+
+    /**
+     * Enables the generation of methods collecting their calls in batches
+     * (see {@link BatchingMethodAdapter}).
+     */
+    void setBatchings(List<Batching> batchings) {
+        this.batchings = batchings;
+    }
+
+    /**
+     * Enables the generation of delegation methods running under the lock of
+     * the decorator instance (see {@link LockingMethodAdapter}). Visiting a
+     * locked method which is also memoized, asynchronous, batched or
+     * recording metrics throws an IllegalArgumentException.
+     */
+    public void setLockingRule(LockingRule lockingRule) {
+        this.lockingRule = lockingRule;
+    }
+
+    /**
+     * Enables the generation of delegation methods whose target can be
+     * replaced at runtime (see {@link HotSwap}).
+     */
+    public void setHotSwappable(boolean hotSwappable) {
+        this.hotSwappable = hotSwappable;
+    }
+
+    /**
+     * Enables the generation of public delegation methods calling directly
+     * the specified implementation of the wrapped type, when the target is
+     * exactly of that class (see
+     * {@link DelegationMethodAdapter#setSpecializedTarget(String)}).
+     */
+    public void setSpecializedTarget(String specializedInternalName) {
+        this.specializedInternalName = specializedInternalName;
+    }
+
+    /**
+     * @param instanceInitialization writes the initialization of the instance
+     * fields added to the decorator, in the generated constructor (see
+     * {@link DecoratorConstructorMethodAdapter#setInstanceInitialization(Consumer)})
+     */
+    public void setInstanceInitialization(Consumer<MethodVisitor> instanceInitialization) {
+        this.instanceInitialization = instanceInitialization;
+    }
+
+    private int getBatcherId(String name, String descriptor) {
+        if (batchings != null) {
+            for (int i = 0; i < batchings.size(); i++) {
+                if (batchings.get(i).matches(name, descriptor)) {
+                    if (BatchingMethodAdapter.isBatchable(descriptor)) {
+                        batchedMethods.add(i);
+                        return i;
+                    }
+                    LOG.log(Level.WARNING, "Ignored batching of {0}:{1}, only void methods having a single argument can be batched",
+                            new Object[]{name, descriptor});
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the batcher fields and, if neither the wrapped type nor the
+     * template define it, the <code>flush()</code> method.
+     */
+    void visitBatchingMembers() {
+        for (int i = 0; i < batchings.size(); i++) {
+            if (!batchedMethods.contains(i)) {
+                LOG.log(Level.WARNING, "Batched method {0} not found", batchings.get(i).getMethod());
+            }
+        }
+        BatchingMethodAdapter.visitBatcherFields(cv, batchings.size());
+        if (!visitedMethods.contains(BatchingMethodAdapter.FLUSH_METHOD, BatchingMethodAdapter.FLUSH_DESCRIPTOR)) {
+            BatchingMethodAdapter.visitFlushMethod(cv, decoratorInternalName, batchings.size());
+        }
+    }
+
+    private boolean isAsync(String name, String descriptor) {
+        return asyncMethods != null && (asyncMethods.contains(name + descriptor) || asyncMethods.contains(name));
+    }
+
+    private Memoization getMemoization(String name, String descriptor) {
+        if (memoizations == null || memoizations.isEmpty()) {
+            return null;
+        }
+        Memoization memoization = memoizations.get(name + descriptor);
+        if (memoization == null) {
+            memoization = memoizations.get(name);
+        }
+        if (memoization != null && !MemoizingMethodAdapter.isMemoizable(descriptor)) {
+            LOG.log(Level.WARNING, "Ignored memoization of void method {0}:{1}", new Object[]{name, descriptor});
+            return null;
+        }
+        return memoization;
     }
 
     private String getSuperType() {
-        if (wrappedType.isInterface()) {
+        if (wrappedInterface) {
             return Type.getInternalName(Object.class);
         }
         return wrappedInternalName;
     }
 
     private String[] getInterfacesArray() {
-        if (wrappedType.isInterface()) {
+        if (wrappedInterface) {
             return new String[]{wrappedInternalName};
         }
         return new String[]{};
@@ -62,6 +251,11 @@ public class DecoratorClassAdapter extends ClassVisitor {
     public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
         this.visitingClass = name;
 
+        if ((asyncMethods != null || hotSwappable) && (version & 0xFFFF) < V1_8) {
+            // the lambdas and the hot-swappable targets are obtained through
+            // invokedynamic
+            version = V1_8;
+        }
         super.visit(version, getAccessFlag(access), decoratorName, signature, getSuperType(), getInterfacesArray());
 
         if (!constructorGenerated) {
@@ -88,17 +282,49 @@ public class DecoratorClassAdapter extends ClassVisitor {
         if (skipMethod(access, name, descriptor)) {
             return null;
         }
-        visitedMethods.add(name + descriptor);
+        visitedMethods.add(name, descriptor);
 
         MethodVisitor mv = super.visitMethod(ACC_PUBLIC, name, descriptor, signature, exceptions);
+        if (mv == null) {
+            // method already defined by the template
+            return null;
+        }
 
         if ("<init>".equals(name)) { // build constructor
             LOG.log(Level.FINE, "Creating plain decorator constructor");
-            mv = new DecoratorConstructorMethodAdapter(decoratorInternalName, wrappedType, mv);
-            mv.visitCode();
+            DecoratorConstructorMethodAdapter constructorAdapter = new DecoratorConstructorMethodAdapter(decoratorInternalName,
+                    wrappedInternalName, wrappedInterface, mv);
+            constructorAdapter.setInstanceInitialization(instanceInitialization);
+            constructorAdapter.visitCode();
+            mv = constructorAdapter;
         } else { // build delegation method
-            LOG.log(Level.FINE, "Creating delegation method for {0}:{1}", new Object[]{name, descriptor});
-            mv = new DelegationMethodAdapter(decoratorInternalName, wrappedType, mv, name, descriptor);
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, "Creating delegation method for {0}:{1}", new Object[]{name, descriptor});
+            }
+            LockMode lockMode = lockingRule == null ? LockMode.NONE : lockingRule.getLockMode(name, descriptor);
+            int batcherId = getBatcherId(name, descriptor);
+            if (batcherId >= 0 || (batchings != null && BatchingMethodAdapter.FLUSH_METHOD.equals(name)
+                    && BatchingMethodAdapter.FLUSH_DESCRIPTOR.equals(descriptor))) {
+                checkNotLocked(lockMode, name, descriptor, "batched");
+                mv = new BatchingMethodAdapter(decoratorInternalName, wrappedInternalName, wrappedInterface, mv, name, descriptor, batcherId, batchings.size());
+            } else if (isAsync(name, descriptor) && Type.getReturnType(descriptor) == Type.VOID_TYPE) {
+                checkNotLocked(lockMode, name, descriptor, "asynchronous");
+                mv = newAsyncMethodAdapter(mv, name, descriptor, false);
+            } else {
+                if (isAsync(name, descriptor)) {
+                    // the companion calls the wrapped instance on another thread
+                    checkNotLocked(lockMode, name, descriptor, "asynchronous");
+                    visitAsyncCompanion(name, descriptor);
+                }
+                mv = newDelegationMethodAdapter(mv, name, descriptor, lockMode);
+            }
+            if (mv instanceof DelegationMethodAdapter) {
+                ((DelegationMethodAdapter) mv).setHotSwappable(hotSwappable);
+                if ((access & ACC_PUBLIC) != 0) {
+                    // protected methods can't be called on the implementation
+                    ((DelegationMethodAdapter) mv).setSpecializedTarget(specializedInternalName);
+                }
+            }
             // If the original method is abstract call visitCode()
             if ((access & ACC_ABSTRACT) == ACC_ABSTRACT) {
                 mv.visitCode();
@@ -108,6 +334,79 @@ public class DecoratorClassAdapter extends ClassVisitor {
         return mv;
     }
 
+    private MethodVisitor newDelegationMethodAdapter(MethodVisitor mv, String name, String descriptor, LockMode lockMode) {
+        Memoization memoization = getMemoization(name, descriptor);
+        if (memoization != null) {
+            checkNotLocked(lockMode, name, descriptor, "memoized");
+            MemoizingMethodAdapter.MemoizedMethod memoizedMethod = new MemoizingMethodAdapter.MemoizedMethod(name + descriptor,
+                    memoization, MemoizingMethodAdapter.hasPrimitiveKeys(descriptor));
+            mv = new MemoizingMethodAdapter(decoratorInternalName, wrappedInternalName, wrappedInterface, mv, name, descriptor, memoizedMethods.size());
+            memoizedMethods.add(memoizedMethod);
+            return mv;
+        }
+        if (lockMode != LockMode.NONE) {
+            if (metricsMethods != null) {
+                throw new IllegalArgumentException("The locked method " + name + descriptor
+                        + " can't record metrics: disable the metrics or classify it as LockMode.NONE");
+            }
+            return new LockingMethodAdapter(decoratorInternalName, wrappedInternalName, wrappedInterface, mv, name, descriptor, lockMode);
+        }
+        if (metricsMethods == null) {
+            return new DelegationMethodAdapter(decoratorInternalName, wrappedInternalName, wrappedInterface, mv, name, descriptor);
+        }
+        mv = new MetricsMethodAdapter(decoratorInternalName, wrappedInternalName, wrappedInterface, mv, name, descriptor, metricsMethods.size());
+        metricsMethods.add(name + descriptor);
+        return mv;
+    }
+
+    /**
+     * The memoizers, the asynchronous offloaders and the batchers call the
+     * wrapped instance outside of the delegation method (on a cache miss or
+     * from another thread), where it can't be locked: running them unlocked
+     * would race with the locked writers.
+     *
+     * @throws IllegalArgumentException if the method is locked
+     */
+    private static void checkNotLocked(LockMode lockMode, String name, String descriptor, String mode) {
+        if (lockMode != LockMode.NONE) {
+            throw new IllegalArgumentException("The method " + name + descriptor + " can't be both locked and " + mode
+                    + ": classify it as LockMode.NONE");
+        }
+    }
+
+    /**
+     * Creates the adapter of an asynchronous method, writing the static
+     * method called by its lambda.
+     */
+    private AsyncMethodAdapter newAsyncMethodAdapter(MethodVisitor mv, String name, String descriptor, boolean companion) {
+        String implementationName = "jasmdecor$async$" + name + "$" + asyncImplementations++;
+        AsyncMethodAdapter asyncAdapter = new AsyncMethodAdapter(decoratorInternalName, wrappedInternalName, wrappedInterface,
+                mv, name, descriptor, implementationName, companion);
+        asyncAdapter.visitImplementation(cv);
+        return asyncAdapter;
+    }
+
+    /**
+     * Writes the method offloading the call of a method returning a value,
+     * unless the template already defines it.
+     */
+    private void visitAsyncCompanion(String name, String descriptor) {
+        String companionName = name + AsyncMethodAdapter.COMPANION_SUFFIX;
+        String companionDescriptor = AsyncMethodAdapter.getCompanionDescriptor(descriptor);
+        if (!visitedMethods.add(companionName, companionDescriptor)) {
+            return;
+        }
+        MethodVisitor mv = super.visitMethod(ACC_PUBLIC, companionName, companionDescriptor, null, null);
+        if (mv != null) {
+            LOG.log(Level.FINE, "Creating asynchronous companion {0}:{1}", new Object[]{companionName, companionDescriptor});
+            mv.visitCode();
+            AsyncMethodAdapter companionAdapter = newAsyncMethodAdapter(mv, name, descriptor, true);
+            companionAdapter.setHotSwappable(hotSwappable);
+            companionAdapter.visitCode();
+            mv.visitEnd();
+        }
+    }
+
     private boolean skipMethod(int access, String name, String descriptor) {
 
         boolean isFinal = (access & ACC_FINAL) == ACC_FINAL;
@@ -122,7 +421,7 @@ public class DecoratorClassAdapter extends ClassVisitor {
                 // constructors
                 || (constructorGenerated && "<init>".equals(name))
                 // already visited methods
-                || visitedMethods.contains(name + descriptor)
+                || visitedMethods.contains(name, descriptor)
                 // finalize Object method
                 || ("finalize".equals(name) && "()V".equals(descriptor));
     }
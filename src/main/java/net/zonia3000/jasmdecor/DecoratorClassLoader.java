@@ -0,0 +1,20 @@
+package net.zonia3000.jasmdecor;
+
+/**
+ * ClassLoader used by {@link DecoratorFactory} for defining the generated
+ * classes directly from their bytes. Each generated decorator has its own
+ * DecoratorClassLoader, so decorators based on the same template (and then
+ * having the same name) can coexist.
+ *
+ * @author zonia3000
+ */
+class DecoratorClassLoader extends ClassLoader {
+
+    DecoratorClassLoader(ClassLoader parent) {
+        super(parent);
+    }
+
+    Class<?> define(String className, byte[] classBytes) {
+        return defineClass(className, classBytes, 0, classBytes.length);
+    }
+}
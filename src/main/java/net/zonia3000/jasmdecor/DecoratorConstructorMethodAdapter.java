@@ -1,5 +1,6 @@
 package net.zonia3000.jasmdecor;
 
+import java.util.function.Consumer;
 import org.objectweb.asm.MethodVisitor;
 import static org.objectweb.asm.Opcodes.*;
 import org.objectweb.asm.Type;
@@ -13,12 +14,28 @@ import org.objectweb.asm.Type;
 public class DecoratorConstructorMethodAdapter extends MethodVisitor {
 
     private final String decoratorInternalName;
-    private final Class wrappedType;
+    private final String wrappedInternalName;
+    private final boolean wrappedInterface;
+    private Consumer<MethodVisitor> instanceInitialization;
 
     public DecoratorConstructorMethodAdapter(String decoratorInternalName, Class wrappedType, MethodVisitor mv) {
+        this(decoratorInternalName, Type.getInternalName(wrappedType), wrappedType.isInterface(), mv);
+    }
+
+    public DecoratorConstructorMethodAdapter(String decoratorInternalName, String wrappedInternalName, boolean wrappedInterface, MethodVisitor mv) {
         super(ASM6, mv);
         this.decoratorInternalName = decoratorInternalName;
-        this.wrappedType = wrappedType;
+        this.wrappedInternalName = wrappedInternalName;
+        this.wrappedInterface = wrappedInterface;
+    }
+
+    /**
+     * @param instanceInitialization writes the initialization of the fields
+     * added to the decorator after setting the wrapped field. Its stack size
+     * must be computed by the ClassWriter.
+     */
+    public void setInstanceInitialization(Consumer<MethodVisitor> instanceInitialization) {
+        this.instanceInitialization = instanceInitialization;
     }
 
     @Override
@@ -26,14 +43,18 @@ public class DecoratorConstructorMethodAdapter extends MethodVisitor {
         // put this on the stack
         visitVarInsn(ALOAD, 0);
         // invoke super constructor
-        visitMethodInsn(INVOKESPECIAL, Type.getInternalName(wrappedType.isInterface() ? Object.class : wrappedType), "<init>", "()V", false);
+        visitMethodInsn(INVOKESPECIAL, wrappedInterface ? Type.getInternalName(Object.class) : wrappedInternalName, "<init>", "()V", false);
 
         // put this on the stack
         visitVarInsn(ALOAD, 0);
         // put wrapped on the stack
         visitVarInsn(ALOAD, 1);
         // set the wrapped field
-        visitFieldInsn(PUTFIELD, decoratorInternalName, "wrapped", "L" + Type.getInternalName(wrappedType) + ";");
+        visitFieldInsn(PUTFIELD, decoratorInternalName, "wrapped", "L" + wrappedInternalName + ";");
+
+        if (instanceInitialization != null) {
+            instanceInitialization.accept(this);
+        }
 
         visitInsn(RETURN);
 
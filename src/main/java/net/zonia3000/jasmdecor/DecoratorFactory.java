@@ -0,0 +1,330 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates decorators at runtime and defines them directly from their bytes,
+ * without writing class files. Each generated decorator class is cached, so it
+ * is generated only once for each (wrapped type, template) pair.
+ * <p>
+ * Decorators are created through a generated factory class, so wrapping an
+ * instance costs the same as a <code>new</code>:
+ * <pre>
+ * Function&lt;Iface, Iface&gt; factory = decoratorFactory.getFactory(Iface.class, DecoratorFromTemplate.class);
+ * Iface decorator = factory.apply(wrapped);
+ * </pre>
+ * Since generated classes are defined by a dedicated ClassLoader, the wrapped
+ * type and the template must be public.
+ * <p>
+ * By default generated classes are kept until the factory is discarded. In
+ * <em>unloadable</em> mode they are instead associated with the template
+ * class (or with the wrapped type for plain decorators) through a
+ * <code>ClassValue</code>, so they are unloaded together with the
+ * ClassLoader of the decorated types (e.g. when a plugin is unloaded), even if
+ * the factory is still in use. Every decorator is defined by its own
+ * throwaway ClassLoader, which is not referenced by the factory.
+ *
+ * @author zonia3000
+ */
+public class DecoratorFactory {
+
+    private static final Logger LOG = Logger.getLogger(DecoratorFactory.class.getName());
+
+    /**
+     * Package of the plain decorators generated by the factory (their names
+     * can't start with the package of the wrapped type, because it could be a
+     * <code>java.*</code> package).
+     */
+    static final String PLAIN_DECORATORS_PACKAGE = "net.zonia3000.jasmdecor.generated.";
+
+    private static final String FACTORY_SUFFIX = "$$Factory";
+
+    private final GeneratorCache cache;
+    private final boolean unloadable;
+
+    // decorators cached by the factory (not unloadable mode)
+    private final ConcurrentMap<Key, DecoratorClass> decorators = new ConcurrentHashMap<>();
+
+    // decorators cached by the classes owning them (unloadable mode)
+    private final ClassValue<ConcurrentMap<Key, DecoratorClass>> ownedDecorators = new ClassValue<ConcurrentMap<Key, DecoratorClass>>() {
+        @Override
+        protected ConcurrentMap<Key, DecoratorClass> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    public DecoratorFactory() {
+        this(new GeneratorCache());
+    }
+
+    /**
+     * @param cache the cache used for reading the hierarchy classes
+     */
+    public DecoratorFactory(GeneratorCache cache) {
+        this(cache, false);
+    }
+
+    /**
+     * @param cache the cache used for reading the hierarchy classes
+     * @param unloadable true if the generated classes must be unloaded
+     * together with the ClassLoader of the decorated types
+     */
+    public DecoratorFactory(GeneratorCache cache, boolean unloadable) {
+        this.cache = cache;
+        this.unloadable = unloadable;
+    }
+
+    public boolean isUnloadable() {
+        return unloadable;
+    }
+
+    /**
+     * Returns a function wrapping instances inside a plain decorator.
+     *
+     * @param wrappedType the class/interface to decorate
+     * @return a function creating a new decorator for each wrapped instance
+     * @throws IOException if a class of the hierarchy can't be read
+     */
+    public <T> Function<T, T> getFactory(Class<T> wrappedType) throws IOException {
+        return getFactory(wrappedType, null);
+    }
+
+    /**
+     * Returns a function wrapping instances inside a decorator based on a
+     * template class. The template must have a constructor taking only the
+     * wrapped instance.
+     *
+     * @param wrappedType the class/interface to decorate
+     * @param templateType a class to use as a template for building the
+     * decorator, or null for a plain decorator
+     * @return a function creating a new decorator for each wrapped instance
+     * @throws IOException if a class of the hierarchy can't be read
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Function<T, T> getFactory(Class<T> wrappedType, Class templateType) throws IOException {
+        DecoratorClass decoratorClass = getDecorator(wrappedType, templateType);
+        if (decoratorClass.factory == null) {
+            throw new IllegalArgumentException("Template " + templateType.getName()
+                    + " has no constructor taking only a " + wrappedType.getName());
+        }
+        return (Function<T, T>) decoratorClass.factory;
+    }
+
+    /**
+     * Returns the constructor of a decorator taking only the wrapped instance.
+     *
+     * @param wrappedType the class/interface to decorate
+     * @param templateType a class to use as a template for building the
+     * decorator, or null for a plain decorator
+     * @return a MethodHandle of type <code>(wrappedType)decorator</code>
+     * @throws IOException if a class of the hierarchy can't be read
+     */
+    public MethodHandle getConstructor(Class wrappedType, Class templateType) throws IOException {
+        return getConstructor(wrappedType, templateType, wrappedType);
+    }
+
+    /**
+     * Returns a constructor of a decorator, useful for templates whose
+     * constructors have additional parameters.
+     *
+     * @param wrappedType the class/interface to decorate
+     * @param templateType a class to use as a template for building the
+     * decorator, or null for a plain decorator
+     * @param parameterTypes the parameter types of the constructor
+     * @return a MethodHandle of type <code>(parameterTypes)decorator</code>
+     * @throws IOException if a class of the hierarchy can't be read
+     */
+    public MethodHandle getConstructor(Class wrappedType, Class templateType, Class... parameterTypes) throws IOException {
+        Class<?> decoratorClass = getDecoratorClass(wrappedType, templateType);
+        try {
+            return MethodHandles.publicLookup().findConstructor(decoratorClass, MethodType.methodType(void.class, parameterTypes));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Constructor not found in decorator " + decoratorClass.getName(), e);
+        }
+    }
+
+    /**
+     * @param wrappedType the class/interface to decorate
+     * @param templateType a class to use as a template for building the
+     * decorator, or null for a plain decorator
+     * @return the generated decorator class
+     * @throws IOException if a class of the hierarchy can't be read
+     */
+    public Class<?> getDecoratorClass(Class wrappedType, Class templateType) throws IOException {
+        return getDecorator(wrappedType, templateType).decoratorClass;
+    }
+
+    private DecoratorClass getDecorator(Class wrappedType, Class templateType) throws IOException {
+        ConcurrentMap<Key, DecoratorClass> decoratorsMap = decorators;
+        if (unloadable) {
+            // The decorator references the ClassLoader of its owner class, so
+            // the owner can't be weakly referenced by a map of the factory
+            // holding the decorator: the ClassValue stores the decorator
+            // inside the owner class itself.
+            decoratorsMap = ownedDecorators.get(templateType == null ? wrappedType : templateType);
+        }
+        try {
+            return decoratorsMap.computeIfAbsent(new Key(wrappedType, templateType), key -> {
+                try {
+                    return defineDecorator(wrappedType, templateType);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private DecoratorClass defineDecorator(Class wrappedType, Class templateType) throws IOException {
+        ClassLoader parent = templateType == null ? wrappedType.getClassLoader() : templateType.getClassLoader();
+
+        DecoratorGenerator generator;
+        String decoratorName;
+        if (templateType == null) {
+            decoratorName = PLAIN_DECORATORS_PACKAGE + wrappedType.getName() + "Decorator";
+            generator = new DecoratorGenerator(wrappedType, decoratorName, parent);
+        } else {
+            decoratorName = templateType.getName();
+            generator = new DecoratorGenerator(wrappedType, templateType, parent);
+        }
+        generator.setCache(cache);
+        if (cache != null) {
+            Set<Class<?>> visited = new HashSet<>();
+            shareDefinedClasses(wrappedType, parent, visited);
+            shareDefinedClasses(templateType, parent, visited);
+        }
+
+        DecoratorClassLoader classLoader = new DecoratorClassLoader(parent);
+        Class<?> decoratorClass = classLoader.define(decoratorName, generator.generateDecoratorClass());
+        LOG.log(Level.FINE, "Defined decorator class {0}", decoratorName);
+
+        Function<?, ?> factory = null;
+        if (hasWrappedConstructor(decoratorClass, wrappedType)) {
+            String factoryName = decoratorName + FACTORY_SUFFIX;
+            byte[] factoryBytes = generateFactoryClass(factoryName.replace('.', '/'),
+                    Type.getInternalName(decoratorClass), Type.getInternalName(wrappedType));
+            try {
+                factory = (Function<?, ?>) classLoader.define(factoryName, factoryBytes).newInstance();
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new IllegalStateException("Unable to instantiate decorator factory " + factoryName, e);
+            }
+        }
+
+        return new DecoratorClass(decoratorClass, factory);
+    }
+
+    /**
+     * The classes captured while being loaded (see {@link DecoratorAgent})
+     * are cached under the ClassLoader that defined them, while the generator
+     * looks all the classes up under the ClassLoader of the decorator: the
+     * cached supertypes defined by other ClassLoaders (e.g. by a parent of
+     * the ClassLoader of the template) are shared with it.
+     */
+    private void shareDefinedClasses(Class<?> type, ClassLoader classLoader, Set<Class<?>> visited) {
+        if (type == null || type == Object.class || !visited.add(type)) {
+            return;
+        }
+        if (type.getClassLoader() != classLoader) {
+            cache.shareClassReader(type.getClassLoader(), classLoader, Type.getInternalName(type));
+        }
+        shareDefinedClasses(type.getSuperclass(), classLoader, visited);
+        for (Class<?> iface : type.getInterfaces()) {
+            shareDefinedClasses(iface, classLoader, visited);
+        }
+    }
+
+    private boolean hasWrappedConstructor(Class<?> decoratorClass, Class wrappedType) {
+        try {
+            decoratorClass.getConstructor(wrappedType);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Generates a <code>java.util.function.Function</code> implementation
+     * whose <code>apply</code> method returns
+     * <code>new Decorator((Wrapped) wrapped)</code>.
+     */
+    private byte[] generateFactoryClass(String factoryInternalName, String decoratorInternalName, String wrappedInternalName) {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_8, ACC_PUBLIC + ACC_FINAL + ACC_SUPER, factoryInternalName, null,
+                "java/lang/Object", new String[]{"java/util/function/Function"});
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC, "apply", "(Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(NEW, decoratorInternalName);
+        mv.visitInsn(DUP);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, wrappedInternalName);
+        mv.visitMethodInsn(INVOKESPECIAL, decoratorInternalName, "<init>", "(L" + wrappedInternalName + ";)V", false);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(3, 2);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static class DecoratorClass {
+
+        private final Class<?> decoratorClass;
+        private final Function<?, ?> factory;
+
+        DecoratorClass(Class<?> decoratorClass, Function<?, ?> factory) {
+            this.decoratorClass = decoratorClass;
+            this.factory = factory;
+        }
+    }
+
+    private static class Key {
+
+        private final Class wrappedType;
+        private final Class templateType;
+
+        Key(Class wrappedType, Class templateType) {
+            this.wrappedType = wrappedType;
+            this.templateType = templateType;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return wrappedType == other.wrappedType && templateType == other.templateType;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * wrappedType.hashCode() + Objects.hashCode(templateType);
+        }
+    }
+}
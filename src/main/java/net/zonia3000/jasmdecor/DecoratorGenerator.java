@@ -1,21 +1,35 @@
 package net.zonia3000.jasmdecor;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassWriter;
-import static org.objectweb.asm.ClassWriter.COMPUTE_FRAMES;
-import static org.objectweb.asm.ClassWriter.COMPUTE_MAXS;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
 import org.objectweb.asm.util.CheckClassAdapter;
+import static org.objectweb.asm.ClassWriter.COMPUTE_FRAMES;
+import static org.objectweb.asm.Opcodes.ACC_INTERFACE;
+import static org.objectweb.asm.Opcodes.ACC_STATIC;
+import static org.objectweb.asm.Opcodes.RETURN;
 
 /**
  * Can generate a decorator from scratch (plain decorator) or using a template
@@ -31,11 +45,39 @@ public class DecoratorGenerator {
 
     private static final Logger LOG = Logger.getLogger(DecoratorGenerator.class.getName());
 
+    private static final String OBJECT_INTERNAL_NAME = "java/lang/Object";
+
+    // null when the decorator is generated from class names
     private final Class wrappedType;
+    private final String wrappedInternalName;
     private final String decoratorInternalName;
+    private final String templateInternalName;
+
+    private final ClassBytesSource classBytesSource;
+    // the ClassLoader or the source of the classes, used as cache key
+    private final Object cacheNamespace;
+
+    private Boolean wrappedInterface;
 
-    private Class templateType;
-    private ClassLoader classLoader;
+    // templates merged into a single template, from the outermost (null when
+    // the decorator has at most one template)
+    private List<String> fusedTemplateInternalNames;
+    private ClassReader fusedTemplate;
+
+    // optional cache shared with other generators
+    private GeneratorCache cache;
+    private VerificationMode verificationMode = VerificationMode.FULL;
+    private VerificationStats verificationStats;
+    private boolean metricsEnabled;
+    private final Map<String, Memoization> memoizations = new HashMap<>();
+    private final Set<String> asyncMethods = new HashSet<>();
+    private int asyncMaxPendingTasks = AsyncOffloader.DEFAULT_MAX_PENDING_TASKS;
+    private LockingRule lockingRule;
+    private boolean hotSwappable;
+    private String specializedInternalName;
+
+    // timings of the generation in progress (null outside of it)
+    private GenerationStats stats;
 
     /**
      * Initializes a generator for a decorator having no template class.
@@ -45,8 +87,7 @@ public class DecoratorGenerator {
      * also the package name
      */
     public DecoratorGenerator(Class wrappedType, String decoratorCompleteName) {
-        this.wrappedType = wrappedType;
-        this.decoratorInternalName = decoratorCompleteName.replace(".", "/");
+        this(wrappedType, decoratorCompleteName, (ClassLoader) null);
     }
 
     /**
@@ -60,8 +101,8 @@ public class DecoratorGenerator {
      * system ClassLoader).
      */
     public DecoratorGenerator(Class wrappedType, String decoratorCompleteName, ClassLoader classLoader) {
-        this(wrappedType, decoratorCompleteName);
-        this.classLoader = classLoader;
+        this(wrappedType, Type.getInternalName(wrappedType), decoratorCompleteName.replace(".", "/"), null,
+                ClassBytesSource.fromClassLoader(classLoader), classLoader);
     }
 
     /**
@@ -72,8 +113,7 @@ public class DecoratorGenerator {
      * decorator
      */
     public DecoratorGenerator(Class wrappedType, Class templateType) {
-        this(wrappedType, templateType.getCanonicalName());
-        this.templateType = templateType;
+        this(wrappedType, templateType, null);
     }
 
     /**
@@ -87,67 +127,640 @@ public class DecoratorGenerator {
      * system ClassLoader).
      */
     public DecoratorGenerator(Class wrappedType, Class templateType, ClassLoader classLoader) {
-        this(wrappedType, templateType.getCanonicalName());
-        this.templateType = templateType;
-        this.classLoader = classLoader;
+        this(wrappedType, Type.getInternalName(wrappedType), Type.getInternalName(templateType), Type.getInternalName(templateType),
+                ClassBytesSource.fromClassLoader(classLoader), classLoader);
+    }
+
+    /**
+     * Initializes a generator for a decorator merging a stack of templates
+     * into a single class. The generated decorator behaves like the wrapped
+     * instance decorated with the last template, then with the previous one
+     * and so on, but the calls pass from a template to the next one without
+     * interface dispatches (see {@link TemplateFuser} for the requirements of
+     * the templates).
+     *
+     * @param wrappedType the class/interface to decorate
+     * @param decoratorCompleteName the name of the class to generate, including
+     * also the package name
+     * @param templateTypes the templates, from the outermost to the innermost
+     */
+    public DecoratorGenerator(Class wrappedType, String decoratorCompleteName, List<Class> templateTypes) {
+        this(wrappedType, decoratorCompleteName, templateTypes, null);
+    }
+
+    /**
+     * Initializes a generator for a decorator merging a stack of templates
+     * into a single class (see
+     * {@link #DecoratorGenerator(Class, String, List)}).
+     *
+     * @param wrappedType the class/interface to decorate
+     * @param decoratorCompleteName the name of the class to generate, including
+     * also the package name
+     * @param templateTypes the templates, from the outermost to the innermost
+     * @param classLoader the ClassLoader to use for loading the decorated class
+     * and the templates
+     */
+    public DecoratorGenerator(Class wrappedType, String decoratorCompleteName, List<Class> templateTypes, ClassLoader classLoader) {
+        this(wrappedType, Type.getInternalName(wrappedType), decoratorCompleteName.replace(".", "/"), decoratorCompleteName.replace(".", "/"),
+                ClassBytesSource.fromClassLoader(classLoader), classLoader);
+        if (templateTypes.isEmpty()) {
+            throw new IllegalArgumentException("At least one template is required");
+        }
+        fusedTemplateInternalNames = new ArrayList<>();
+        for (Class templateType : templateTypes) {
+            fusedTemplateInternalNames.add(Type.getInternalName(templateType));
+        }
+    }
+
+    /**
+     * Initializes a generator for a decorator having no template class, which
+     * reads all the classes from a source without loading them. The hierarchy
+     * of the wrapped type is resolved from the class file headers.
+     *
+     * @param wrappedInternalName the internal name of the class/interface to
+     * decorate
+     * @param decoratorCompleteName the name of the class to generate, including
+     * also the package name
+     * @param classBytesSource the source of the wrapped type hierarchy
+     */
+    public DecoratorGenerator(String wrappedInternalName, String decoratorCompleteName, ClassBytesSource classBytesSource) {
+        this(null, wrappedInternalName, decoratorCompleteName.replace(".", "/"), null, classBytesSource, classBytesSource);
+    }
+
+    /**
+     * Initializes a generator for a decorator based on a template class, which
+     * reads all the classes from a source without loading them. The hierarchy
+     * of the wrapped type is resolved from the class file headers.
+     *
+     * @param classBytesSource the source of the wrapped type hierarchy and of
+     * the template
+     * @param wrappedInternalName the internal name of the class/interface to
+     * decorate
+     * @param templateInternalName the internal name of the template class
+     */
+    public DecoratorGenerator(ClassBytesSource classBytesSource, String wrappedInternalName, String templateInternalName) {
+        this(null, wrappedInternalName, templateInternalName, templateInternalName, classBytesSource, classBytesSource);
+    }
+
+    private DecoratorGenerator(Class wrappedType, String wrappedInternalName, String decoratorInternalName,
+            String templateInternalName, ClassBytesSource classBytesSource, Object cacheNamespace) {
+        this.wrappedType = wrappedType;
+        this.wrappedInternalName = wrappedInternalName;
+        this.decoratorInternalName = decoratorInternalName;
+        this.templateInternalName = templateInternalName;
+        this.classBytesSource = classBytesSource;
+        this.cacheNamespace = cacheNamespace;
+        if (wrappedType != null) {
+            this.wrappedInterface = wrappedType.isInterface();
+        }
+    }
+
+    /**
+     * Sets a cache shared with other generators, so that the classes of the
+     * hierarchy already read by them are not read again.
+     *
+     * @param cache the cache to use, or null for reading all the classes
+     */
+    public void setCache(GeneratorCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @param verificationMode how the generated class is verified, by default
+     * {@link VerificationMode#FULL}
+     */
+    public void setVerificationMode(VerificationMode verificationMode) {
+        this.verificationMode = verificationMode;
+    }
+
+    /**
+     * Enables the generation of delegation methods recording the number of
+     * calls, the number of errors and the latency of each call (see
+     * {@link DecoratorMetrics#of(Class)}). Methods defined by the template are
+     * not measured.
+     *
+     * @param metricsEnabled true for recording the calls
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    /**
+     * Caches the results of a delegation method, in addition to the methods
+     * annotated with {@link Memoize} in the wrapped type hierarchy (see
+     * {@link Memoizer#of(Class)}). Void methods and methods defined by the
+     * template are not memoized.
+     *
+     * @param method the method name, or the method name followed by its
+     * descriptor (e.g. <code>getInt(Ljava/lang/String;)I</code>) for
+     * selecting a single overload
+     * @param memoization the size and the expiration of the cache
+     */
+    public void addMemoizedMethod(String method, Memoization memoization) {
+        memoizations.put(method, memoization);
+    }
+
+    /**
+     * Offloads the calls of a delegation method to the {@link AsyncOffloader}
+     * of the decorator. Void methods return as soon as the call has been
+     * submitted. Methods returning a value are still delegated synchronously,
+     * and get a companion method having the <code>Async</code> suffix and
+     * returning a CompletableFuture (e.g.
+     * <code>CompletableFuture getIntAsync(String)</code>), which templates
+     * can expose declaring it in an interface.
+     *
+     * @param method the method name, or the method name followed by its
+     * descriptor for selecting a single overload
+     */
+    public void addAsyncMethod(String method) {
+        asyncMethods.add(method);
+    }
+
+    /**
+     * @param asyncMaxPendingTasks the maximum number of offloaded calls not
+     * yet completed, after which the callers wait
+     */
+    public void setAsyncMaxPendingTasks(int asyncMaxPendingTasks) {
+        if (asyncMaxPendingTasks <= 0) {
+            throw new IllegalArgumentException("The maximum number of pending tasks must be positive");
+        }
+        this.asyncMaxPendingTasks = asyncMaxPendingTasks;
+    }
+
+    /**
+     * Makes the decorator thread-safe: each decorator instance gets a
+     * <code>StampedLock</code> and the delegation methods run under its read
+     * or write lock, as classified by the rule (e.g.
+     * {@link PatternLockingRule#getters()}). Overrides the {@link Guarded}
+     * annotation of the template. Methods defined by the template are not
+     * locked. The generation fails if a locked method is also memoized,
+     * asynchronous, batched or recording metrics, since these modes call the
+     * wrapped instance where it can't be locked: such methods must be
+     * classified as {@link LockMode#NONE}.
+     *
+     * @param lockingRule the rule, or null for using the one of the template
+     */
+    public void setLockingRule(LockingRule lockingRule) {
+        this.lockingRule = lockingRule;
+    }
+
+    /**
+     * Makes the target of the delegation methods replaceable at runtime for
+     * all the decorator instances, through {@link HotSwap#of(Class)}. Until a
+     * target is set, the decorators delegate to their wrapped instances.
+     * Methods defined by the template keep using the wrapped field.
+     *
+     * @param hotSwappable true for generating a hot-swappable decorator
+     */
+    public void setHotSwappable(boolean hotSwappable) {
+        this.hotSwappable = hotSwappable;
+    }
+
+    /**
+     * Specializes the decorator for an implementation of the wrapped type,
+     * e.g. the only one used in production: when the target of a delegation
+     * method is exactly of that class, it is called with
+     * <code>INVOKEVIRTUAL</code> on the implementation, so the JIT can inline
+     * it even when the decorator class wraps many other implementations,
+     * which are still called through the wrapped type. Methods defined by
+     * the template and asynchronous or batched methods are not specialized.
+     *
+     * @param specializedTarget a public class implementing/extending the
+     * wrapped type, or null for not specializing the decorator
+     */
+    public void setSpecializedTarget(Class specializedTarget) {
+        if (specializedTarget == null) {
+            this.specializedInternalName = null;
+            return;
+        }
+        if (specializedTarget.isInterface() || !Modifier.isPublic(specializedTarget.getModifiers())) {
+            throw new IllegalArgumentException("The specialized target " + specializedTarget.getName() + " must be a public class");
+        }
+        if (wrappedType != null && !((Class<?>) wrappedType).isAssignableFrom(specializedTarget)) {
+            throw new IllegalArgumentException(specializedTarget.getName() + " is not a " + wrappedType.getName());
+        }
+        this.specializedInternalName = Type.getInternalName(specializedTarget);
+    }
+
+    /**
+     * @param verificationStats where the timings of the verifications are
+     * recorded, or null for not recording them
+     */
+    public void setVerificationStats(VerificationStats verificationStats) {
+        this.verificationStats = verificationStats;
+    }
+
+    /**
+     * Generates the decorators described by the given specs, running each
+     * generation in parallel on a dedicated fork-join pool. Classes of the
+     * wrapped hierarchies are read only once and shared between the specs.
+     *
+     * @param specs the decorators to generate
+     * @return the results, in the same order of the specs
+     */
+    public static List<GenerationResult> generateAll(List<DecoratorSpec> specs) {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return generateAll(specs, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Generates the decorators described by the given specs using the
+     * specified executor. A failure in one generation doesn't stop the others:
+     * it is reported inside the related {@link GenerationResult}.
+     *
+     * @param specs the decorators to generate
+     * @param executor the executor running the generations
+     * @return the results, in the same order of the specs
+     */
+    public static List<GenerationResult> generateAll(List<DecoratorSpec> specs, ExecutorService executor) {
+        return generateAll(specs, executor, new GeneratorCache());
+    }
+
+    /**
+     * Generates the decorators described by the given specs using the
+     * specified executor and cache. Passing the same cache to many batches
+     * avoids reading again the classes already read by the previous ones.
+     *
+     * @param specs the decorators to generate
+     * @param executor the executor running the generations
+     * @param cache the cache shared between the generations
+     * @return the results, in the same order of the specs
+     */
+    public static List<GenerationResult> generateAll(List<DecoratorSpec> specs, ExecutorService executor, GeneratorCache cache) {
+        return generateAll(specs, executor, cache, new BatchVerification());
+    }
+
+    /**
+     * Generates the decorators described by the given specs, verifying them
+     * as configured by the given settings.
+     *
+     * @param specs the decorators to generate
+     * @param executor the executor running the generations and the sampled
+     * verifications
+     * @param cache the cache shared between the generations
+     * @param verification the verification settings
+     * @return the results, in the same order of the specs
+     */
+    public static List<GenerationResult> generateAll(List<DecoratorSpec> specs, ExecutorService executor, GeneratorCache cache,
+            BatchVerification verification) {
+        List<Future<GenerationResult>> futures = new ArrayList<>();
+        for (DecoratorSpec spec : specs) {
+            futures.add(executor.submit(() -> generate(spec, cache, verification.getMode(), verification.getStats())));
+        }
+
+        List<GenerationResult> results = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                results.add(new GenerationResult(specs.get(i), e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(new GenerationResult(specs.get(i), e));
+            }
+        }
+
+        verifySample(results, executor, verification);
+        return results;
+    }
+
+    private static void verifySample(List<GenerationResult> results, ExecutorService executor, BatchVerification verification) {
+        List<Integer> sampled = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            GenerationResult result = results.get(i);
+            if (result.isSuccessful() && verification.isSampled(i)) {
+                byte[] classBytes = result.getClassBytes();
+                result.setDeferredVerification(CompletableFuture.runAsync(() -> {
+                    long start = System.nanoTime();
+                    checkIfClassIsValid(classBytes);
+                    verification.getStats().record(VerificationMode.FULL, System.nanoTime() - start);
+                }, executor));
+                sampled.add(i);
+            }
+        }
+        if (verification.isAsync()) {
+            return;
+        }
+        for (int i : sampled) {
+            GenerationResult result = results.get(i);
+            try {
+                result.getDeferredVerification().join();
+            } catch (CompletionException e) {
+                LOG.log(Level.SEVERE, "Invalid decorator " + result.getSpec(), e.getCause());
+                results.set(i, new GenerationResult(result.getSpec(), e.getCause()));
+            }
+        }
+    }
+
+    static GenerationResult generate(DecoratorSpec spec, GeneratorCache cache) {
+        return generate(spec, cache, VerificationMode.FULL, null);
+    }
+
+    static GenerationResult generate(DecoratorSpec spec, GeneratorCache cache, VerificationMode verificationMode,
+            VerificationStats verificationStats) {
+        try {
+            DecoratorGenerator generator = spec.createGenerator();
+            generator.setCache(cache);
+            generator.setVerificationMode(verificationMode);
+            generator.setVerificationStats(verificationStats);
+            GenerationStats generationStats;
+            if (spec.getOutputFile() == null) {
+                generationStats = generator.generateWithStats();
+            } else {
+                generationStats = generator.writeDecoratorClass(spec.getOutputFile());
+            }
+            return new GenerationResult(spec, generationStats);
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Unable to generate " + spec, e);
+            return new GenerationResult(spec, e);
+        }
     }
 
     /**
      * Generates the decorator class and writes it inside the specified file.
      *
      * @param file the file where write the class bytes
+     * @return the timings of the generation, including the bytes of the
+     * generated class
      * @throws IOException
      */
-    public void writeDecoratorClass(File file) throws IOException {
-        if (templateType == null) {
+    public GenerationStats writeDecoratorClass(File file) throws IOException {
+        GenerationStats generationStats = generateWithStats();
+        byte[] generatedClassBytes = generationStats.getClassBytes();
+
+        LOG.log(Level.INFO, "Writing class file to {0}", file.getAbsolutePath());
+
+        long start = System.nanoTime();
+        Object event = GenerationEvents.begin();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(generatedClassBytes);
+        }
+        long nanos = System.nanoTime() - start;
+        generationStats.record(GenerationPhase.FILE_WRITE, nanos);
+        generationStats.addTotalTime(nanos);
+        GenerationEvents.commit(event, GenerationPhase.FILE_WRITE, decoratorInternalName, 0, 0, generatedClassBytes.length);
+
+        return generationStats;
+    }
+
+    /**
+     * Generates the decorator class and verifies it according to the
+     * verification mode, without writing it.
+     *
+     * @return the bytes of the generated class
+     * @throws IOException
+     */
+    public byte[] generateDecoratorClass() throws IOException {
+        return generateWithStats().getClassBytes();
+    }
+
+    /**
+     * Generates and verifies the decorator class, timing the phases of the
+     * generation.
+     */
+    GenerationStats generateWithStats() throws IOException {
+        long start = System.nanoTime();
+        stats = new GenerationStats(decoratorInternalName.replace('/', '.'));
+        try {
+            stats.setClassBytes(generateAndVerify());
+            stats.addTotalTime(System.nanoTime() - start);
+            return stats;
+        } finally {
+            stats = null;
+        }
+    }
+
+    private byte[] generateAndVerify() throws IOException {
+        if (templateInternalName == null) {
             LOG.log(Level.INFO, "Starting the generation of a plain decorator class");
         } else {
-            LOG.log(Level.INFO, "Starting the generation of a decorator class based on {0} template", templateType.getCanonicalName());
+            LOG.log(Level.INFO, "Starting the generation of a decorator class based on {0} template", templateInternalName.replace('/', '.'));
+        }
+
+        byte[] generatedClassBytes;
+        if (templateInternalName == null) {
+            generatedClassBytes = getDecoratorBytes();
+        } else {
+            generatedClassBytes = writeTemplate();
         }
 
-        byte[] generatedClassBytes = getDecoratorBytes();
+        if (verificationMode != VerificationMode.NONE) {
+            long start = System.nanoTime();
+            Object event = GenerationEvents.begin();
+            if (verificationMode == VerificationMode.STRUCTURAL) {
+                checkClassStructure(generatedClassBytes);
+            } else {
+                checkIfClassIsValid(generatedClassBytes);
+            }
+            recordVerification(verificationMode, start);
+            endPhase(GenerationPhase.VERIFICATION, start, event, decoratorInternalName, generatedClassBytes, 0);
+        }
 
-        checkIfClassIsValid(generatedClassBytes);
+        return generatedClassBytes;
+    }
 
-        LOG.log(Level.INFO, "Writing class file to {0}", file.getAbsolutePath());
+    /**
+     * Generates the plain decorator. This and the following steps of the
+     * generation are package-private so that they can be measured separately
+     * by the generation benchmarks.
+     */
+    byte[] getDecoratorBytes() throws IOException {
+        List<ClassInfo> hierarchyClasses = getHierarchyClasses();
+        long start = System.nanoTime();
+        Object event = GenerationEvents.begin();
+        Map<String, Memoization> hierarchyMemoizations = getMemoizations(hierarchyClasses);
+        HierarchyClassWriter classWriter = newClassWriter(null,
+                metricsEnabled || !hierarchyMemoizations.isEmpty() || lockingRule != null || hotSwappable
+                || specializedInternalName != null);
+        ClassVisitor classVisitor = classWriter.getClassVisitor();
 
-        try (FileOutputStream out = new FileOutputStream(file)) {
-            out.write(generatedClassBytes);
+        DecoratorClassAdapter classAdapter = new DecoratorClassAdapter(decoratorInternalName, wrappedInternalName, isWrappedInterface(), classVisitor);
+        classAdapter.setMetricsEnabled(metricsEnabled);
+        classAdapter.setMemoizations(hierarchyMemoizations);
+        classAdapter.setHotSwappable(hotSwappable);
+        classAdapter.setSpecializedTarget(specializedInternalName);
+        if (!asyncMethods.isEmpty()) {
+            classAdapter.setAsyncMethods(asyncMethods);
+        }
+        if (lockingRule != null) {
+            classAdapter.setLockingRule(lockingRule);
+            classAdapter.setInstanceInitialization(mv -> LockingMethodAdapter.visitInitialization(mv, decoratorInternalName));
+        }
+        visitHierarchy(classAdapter, hierarchyClasses);
+        if (lockingRule != null) {
+            LockingMethodAdapter.visitLockField(classVisitor);
+        }
+
+        visitStaticMembers(classVisitor, classAdapter, !hierarchyMemoizations.isEmpty(), true);
+
+        byte[] classBytes = classWriter.toClassBytes();
+        endPhase(GenerationPhase.EMISSION, start, event, decoratorInternalName, classBytes, 0);
+        return classBytes;
+    }
+
+    /**
+     * Records the end of a phase in the stats and in its JFR event. The
+     * methods of the output class are counted only when the event is
+     * recorded.
+     *
+     * @param output the class written or verified by the phase, or null
+     */
+    private void endPhase(GenerationPhase phase, long start, Object event, String internalName, byte[] output, long inputBytes) {
+        if (stats != null) {
+            stats.record(phase, System.nanoTime() - start);
+        }
+        if (GenerationEvents.isRecording(event)) {
+            int methodCount = output == null ? 0 : GenerationStats.countMethods(output);
+            GenerationEvents.commit(event, phase, internalName, methodCount, inputBytes, output == null ? 0 : output.length);
         }
     }
 
-    private byte[] getDecoratorBytes() throws IOException {
-        ClassWriter classWriter = new ClassWriter(0);
+    /**
+     * Returns the memoization settings of the methods annotated in the
+     * hierarchy, overridden by the ones added to this generator. They are
+     * collected before generating the methods, since the initialization of
+     * the memoizers is written at the beginning of the template static
+     * initializer.
+     */
+    private Map<String, Memoization> getMemoizations(List<ClassInfo> hierarchyClasses) {
+        Map<String, Memoization> hierarchyMemoizations = new HashMap<>();
+        for (ClassInfo classInfo : hierarchyClasses) {
+            for (Map.Entry<String, Memoization> entry : classInfo.getMemoizedMethods().entrySet()) {
+                // the methods of the subclasses come first
+                hierarchyMemoizations.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+        hierarchyMemoizations.putAll(memoizations);
+        return hierarchyMemoizations;
+    }
 
-        DecoratorClassAdapter classAdapter = new DecoratorClassAdapter(decoratorInternalName, wrappedType, classWriter);
+    /**
+     * Writes the static fields used by the delegation methods, the methods
+     * creating them and, if requested, the static initializer.
+     */
+    private void visitStaticMembers(ClassVisitor classVisitor, DecoratorClassAdapter classAdapter, boolean memoized, boolean classInitializer) {
+        if (metricsEnabled) {
+            MetricsMethodAdapter.visitMetricsMembers(classVisitor, decoratorInternalName, classAdapter.getMetricsMethods());
+        }
+        if (memoized) {
+            MemoizingMethodAdapter.visitMemoizersMembers(classVisitor, classAdapter.getMemoizedMethods());
+        }
+        if (!asyncMethods.isEmpty()) {
+            AsyncMethodAdapter.visitOffloaderMembers(classVisitor, decoratorInternalName, asyncMaxPendingTasks);
+        }
+        if (classInitializer && (metricsEnabled || memoized || !asyncMethods.isEmpty())) {
+            MethodVisitor mv = classVisitor.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+            mv.visitCode();
+            visitClassInitialization(mv, memoized);
+            mv.visitInsn(RETURN);
+            // each initialization stores the result of a static method
+            mv.visitMaxs(1, 0);
+            mv.visitEnd();
+        }
+    }
 
-        // Read all classes/interfaces of the wrapped type hierarchy
-        for (Class type : getHierarchy()) {
-            LOG.log(Level.FINE, "Reading class {0}", type.getCanonicalName());
-            ClassReader classReader = getClassReader(type);
-            classReader.accept(classAdapter, 0);
+    private void visitClassInitialization(MethodVisitor mv, boolean memoized) {
+        if (metricsEnabled) {
+            MetricsMethodAdapter.visitInitialization(mv, decoratorInternalName);
         }
+        if (memoized) {
+            MemoizingMethodAdapter.visitInitialization(mv, decoratorInternalName);
+        }
+        if (!asyncMethods.isEmpty()) {
+            AsyncMethodAdapter.visitInitialization(mv, decoratorInternalName);
+        }
+    }
 
-        byte[] classBytes = classWriter.toByteArray();
+    /**
+     * Read all classes/interfaces of the wrapped type hierarchy
+     */
+    private List<ClassInfo> getHierarchyClasses() throws IOException {
+        long start = System.nanoTime();
+        Object event = GenerationEvents.begin();
+        List<ClassInfo> hierarchyClasses = new ArrayList<>();
+        for (String className : getHierarchy()) {
+            LOG.log(Level.FINE, "Reading class {0}", className);
+            hierarchyClasses.add(getClassInfo(className));
+        }
+        endPhase(GenerationPhase.HIERARCHY_RESOLUTION, start, event, wrappedInternalName, null, 0);
+        return hierarchyClasses;
+    }
 
-        if (templateType != null) {
-            classBytes = writeTemplate(classBytes);
+    private void visitHierarchy(DecoratorClassAdapter classAdapter, List<ClassInfo> hierarchyClasses) throws IOException {
+        try {
+            for (ClassInfo classInfo : hierarchyClasses) {
+                classInfo.accept(classAdapter);
+            }
+        } catch (IllegalArgumentException e) {
+            // incompatible modes of a method
+            throw new IOException(e.getMessage(), e);
         }
+    }
 
-        return classBytes;
+    /**
+     * Returns the names of all the classes read for generating the decorator:
+     * the classes of the wrapped type hierarchy and the template. The bytes of
+     * these classes are the only inputs of the generation, so they can be used
+     * for detecting when a decorator must be generated again.
+     *
+     * @return the binary names of the input classes
+     * @throws IOException if a class of the hierarchy can't be read
+     */
+    public List<String> getInputClassNames() throws IOException {
+        List<String> inputClassNames = new ArrayList<>();
+        for (String internalName : getHierarchy()) {
+            inputClassNames.add(internalName.replace('/', '.'));
+        }
+        if (fusedTemplateInternalNames != null) {
+            for (String internalName : fusedTemplateInternalNames) {
+                inputClassNames.add(internalName.replace('/', '.'));
+            }
+        } else if (templateInternalName != null) {
+            inputClassNames.add(templateInternalName.replace('/', '.'));
+        }
+        return inputClassNames;
+    }
+
+    private boolean isWrappedInterface() throws IOException {
+        if (wrappedInterface == null) {
+            wrappedInterface = (getClassReader(wrappedInternalName).getAccess() & ACC_INTERFACE) != 0;
+        }
+        return wrappedInterface;
     }
 
     /**
-     * @return the set of classes from which implement the decorator methods.
-     * The order of the elements in the set matters.
+     * @return the internal names of the classes from which implement the
+     * decorator methods. The order of the elements in the list matters.
      */
-    private Set<Class> getHierarchy() {
+    private List<String> getHierarchy() throws IOException {
+        if (wrappedType != null) {
+            // the classes are already loaded
+            if (cache != null) {
+                return cache.getHierarchy(wrappedType.getClassLoader(), wrappedInternalName, this::resolveHierarchy);
+            }
+            return resolveHierarchy();
+        }
+        if (cache != null) {
+            return cache.getHierarchy(cacheNamespace, wrappedInternalName, this::readHierarchy);
+        }
+        return readHierarchy();
+    }
+
+    private List<String> resolveHierarchy() {
         Set<Class> hierarchy = new LinkedHashSet<>();
         fillHierarchy(wrappedType, hierarchy);
         if (wrappedType.isInterface()) {
             hierarchy.add(Object.class);
         }
-        return hierarchy;
+        List<String> classNames = new ArrayList<>();
+        for (Class type : hierarchy) {
+            classNames.add(Type.getInternalName(type));
+        }
+        return classNames;
     }
 
     private void fillHierarchy(Class type, Set<Class> hierarchy) {
@@ -160,47 +773,198 @@ public class DecoratorGenerator {
         }
     }
 
-    private ClassReader getClassReader(Class type) throws IOException {
-        return getClassReader(type.getCanonicalName());
+    /**
+     * Resolves the hierarchy from the class file headers, in the same order
+     * of {@link #resolveHierarchy()}.
+     */
+    private List<String> readHierarchy() throws IOException {
+        Set<String> hierarchy = new LinkedHashSet<>();
+        fillHierarchy(wrappedInternalName, hierarchy);
+        if (isWrappedInterface()) {
+            hierarchy.add(OBJECT_INTERNAL_NAME);
+        }
+        return new ArrayList<>(hierarchy);
     }
 
-    private ClassReader getClassReader(String className) throws IOException {
-        if (classLoader == null) {
-            return new ClassReader(className);
-        } else {
-            return new ClassReader(getClassBytesFromClassLoader(className));
+    private void fillHierarchy(String internalName, Set<String> hierarchy) throws IOException {
+        if (!hierarchy.add(internalName)) {
+            // its supertypes have already been added
+            return;
+        }
+        ClassReader classReader = getClassReader(internalName);
+        // like Class.getSuperclass(), interfaces have no superclass
+        if (classReader.getSuperName() != null && (classReader.getAccess() & ACC_INTERFACE) == 0) {
+            fillHierarchy(classReader.getSuperName(), hierarchy);
+        }
+        for (String iface : classReader.getInterfaces()) {
+            fillHierarchy(iface, hierarchy);
+        }
+    }
+
+    /**
+     * Returns the header and the method table of a class of the hierarchy.
+     * Method bodies are not parsed.
+     */
+    private ClassInfo getClassInfo(String internalName) throws IOException {
+        if (isFusedTemplate(internalName)) {
+            return ClassInfo.read(getFusedTemplate());
         }
+        if (cache != null) {
+            return cache.getClassInfo(cacheNamespace, internalName, this::readClass);
+        }
+        return ClassInfo.read(readClass(internalName));
     }
 
-    private byte[] getClassBytesFromClassLoader(String className) throws IOException {
-        try (InputStream in = classLoader.getResourceAsStream(className.replace(".", File.separator) + ".class");
-                ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            int nRead;
-            byte[] data = new byte[1024];
-            while ((nRead = in.read(data, 0, data.length)) != -1) {
-                baos.write(data, 0, nRead);
+    private ClassReader getClassReader(String internalName) throws IOException {
+        if (isFusedTemplate(internalName)) {
+            return getFusedTemplate();
+        }
+        if (cache != null) {
+            return cache.getClassReader(cacheNamespace, internalName, this::readClass);
+        }
+        return readClass(internalName);
+    }
+
+    private boolean isFusedTemplate(String internalName) {
+        return fusedTemplateInternalNames != null && internalName.equals(templateInternalName);
+    }
+
+    /**
+     * Merges the templates into a single one, which is never cached since it
+     * is specific to this generator.
+     */
+    private ClassReader getFusedTemplate() throws IOException {
+        if (fusedTemplate == null) {
+            List<ClassReader> templates = new ArrayList<>();
+            for (String internalName : fusedTemplateInternalNames) {
+                templates.add(getClassReader(internalName));
             }
-            return baos.toByteArray();
+            long start = System.nanoTime();
+            Object event = GenerationEvents.begin();
+            HierarchyClassWriter classWriter = new HierarchyClassWriter(COMPUTE_FRAMES, classBytesSource, cacheNamespace);
+            new TemplateFuser(templateInternalName, wrappedInternalName, isWrappedInterface(), templates).accept(classWriter.getClassVisitor());
+            byte[] classBytes = classWriter.toClassBytes();
+            endPhase(GenerationPhase.TEMPLATE_MERGE, start, event, templateInternalName, classBytes, 0);
+            fusedTemplate = new ClassReader(classBytes);
+        }
+        return fusedTemplate;
+    }
+
+    private ClassReader readClass(String internalName) throws IOException {
+        long start = System.nanoTime();
+        Object event = GenerationEvents.begin();
+        byte[] classBytes = classBytesSource.getClassBytes(internalName);
+        if (classBytes == null) {
+            throw new IOException("Class not found: " + internalName.replace('/', '.'));
+        }
+        ClassReader classReader = new ClassReader(classBytes);
+        if (stats != null) {
+            stats.recordClassRead(classBytes.length);
+            stats.record(GenerationPhase.CLASS_READING, System.nanoTime() - start);
+        }
+        if (GenerationEvents.isRecording(event)) {
+            GenerationEvents.commit(event, GenerationPhase.CLASS_READING, internalName, GenerationStats.countMethods(classBytes), classBytes.length, 0);
         }
+        return classReader;
     }
 
-    private byte[] writeTemplate(byte[] classBytes) throws IOException {
-        ClassWriter classWriter = new ClassWriter(COMPUTE_MAXS + COMPUTE_FRAMES);
+    /**
+     * Generates the decorator based on the template in a single pass: the
+     * template is copied first, then the delegation methods of the methods it
+     * doesn't define are written directly into the same ClassWriter.
+     */
+    byte[] writeTemplate() throws IOException {
+        LOG.log(Level.FINE, "Reading template class {0}", templateInternalName);
+        ClassReader templateClassReader = getClassReader(templateInternalName);
+
+        List<ClassInfo> hierarchyClasses = getHierarchyClasses();
+        long start = System.nanoTime();
+        Object event = GenerationEvents.begin();
+        Map<String, Memoization> hierarchyMemoizations = getMemoizations(hierarchyClasses);
+        boolean memoized = !hierarchyMemoizations.isEmpty();
+        List<Batching> batchings = getBatchings();
+        LockingRule templateLockingRule = lockingRule != null ? lockingRule : getClassInfo(templateInternalName).getLockingRule();
 
-        // First it visits the template class
-        TemplateClassAdapter templateClassAdapter = new TemplateClassAdapter(wrappedType, classWriter);
-        LOG.log(Level.FINE, "Reading template class {0}", templateType.getCanonicalName());
-        ClassReader templateClassReader = getClassReader(templateType);
+        // Sharing the template constant pool, the template methods are copied
+        // as they are, without computing again their frames. The plain
+        // delegation methods are straight-line code, so they need no frames.
+        HierarchyClassWriter classWriter = newClassWriter(templateClassReader,
+                metricsEnabled || memoized || !batchings.isEmpty() || templateLockingRule != null || hotSwappable
+                || specializedInternalName != null);
+        ClassVisitor classVisitor = classWriter.getClassVisitor();
+
+        // First it visits the template class, collecting its methods
+        TemplateClassAdapter templateClassAdapter = new TemplateClassAdapter(wrappedInternalName, isWrappedInterface(), classVisitor);
+        if (metricsEnabled || memoized || !asyncMethods.isEmpty()) {
+            templateClassAdapter.setClassInitialization(mv -> visitClassInitialization(mv, memoized));
+        }
+        if (!batchings.isEmpty() || templateLockingRule != null) {
+            templateClassAdapter.setInstanceInitialization(mv -> {
+                if (templateLockingRule != null) {
+                    LockingMethodAdapter.visitInitialization(mv, decoratorInternalName);
+                }
+                if (!batchings.isEmpty()) {
+                    BatchingMethodAdapter.visitInitialization(mv, decoratorInternalName, batchings);
+                }
+            });
+        }
         templateClassReader.accept(templateClassAdapter, 0);
         templateClassAdapter.setTemplateVisited();
 
-        // Then it vists the generated plain decorator class. In this way we can
-        // exclude the template methods from the plain decorator methods.
-        LOG.log(Level.FINE, "Reading generated plain decorator class");
-        ClassReader generatedBytesClassReader = new ClassReader(classBytes);
-        generatedBytesClassReader.accept(templateClassAdapter, 0);
+        // Then it generates the delegation methods, excluding the template ones
+        LOG.log(Level.FINE, "Generating delegation methods");
+        DecoratorClassAdapter classAdapter = new DecoratorClassAdapter(decoratorInternalName, wrappedInternalName, isWrappedInterface(), templateClassAdapter);
+        classAdapter.setMetricsEnabled(metricsEnabled);
+        classAdapter.setMemoizations(hierarchyMemoizations);
+        classAdapter.setHotSwappable(hotSwappable);
+        classAdapter.setSpecializedTarget(specializedInternalName);
+        if (!asyncMethods.isEmpty()) {
+            classAdapter.setAsyncMethods(asyncMethods);
+        }
+        if (!batchings.isEmpty()) {
+            classAdapter.setBatchings(batchings);
+        }
+        if (templateLockingRule != null) {
+            classAdapter.setLockingRule(templateLockingRule);
+        }
+        visitHierarchy(classAdapter, hierarchyClasses);
+
+        visitStaticMembers(classVisitor, classAdapter, memoized, !templateClassAdapter.hasTemplateClassInitializer());
+        if (!batchings.isEmpty()) {
+            classAdapter.visitBatchingMembers();
+        }
+        if (templateLockingRule != null) {
+            LockingMethodAdapter.visitLockField(classVisitor);
+        }
+
+        byte[] classBytes = classWriter.toClassBytes();
+        endPhase(GenerationPhase.TEMPLATE_MERGE, start, event, decoratorInternalName, classBytes, 0);
+        return classBytes;
+    }
+
+    /**
+     * Returns the batched methods declared by the {@link BatchTarget} methods
+     * of the template.
+     */
+    private List<Batching> getBatchings() throws IOException {
+        List<Batching> batchings = getClassInfo(templateInternalName).getBatchings();
+        for (Batching batching : batchings) {
+            if (!BatchingMethodAdapter.isBatchTarget(batching.getTargetDescriptor())) {
+                throw new IOException("The batch target " + batching.getTargetName() + " of "
+                        + templateInternalName.replace('/', '.') + " must take a single List and return void");
+            }
+        }
+        return batchings;
+    }
 
-        return classWriter.toByteArray();
+    /**
+     * Returns a ClassWriter resolving the common superclasses from the class
+     * files of this generator. Frames are computed only when the generated
+     * methods have branches.
+     */
+    private HierarchyClassWriter newClassWriter(ClassReader classReader, boolean computeFrames) {
+        int flags = computeFrames ? COMPUTE_FRAMES : 0;
+        return new HierarchyClassWriter(classReader, flags, classBytesSource, cacheNamespace);
     }
 
     /**
@@ -209,7 +973,7 @@ public class DecoratorGenerator {
      *
      * @param classBytes the bytes of the generated decorator class
      */
-    private void checkIfClassIsValid(byte[] classBytes) {
+    static void checkIfClassIsValid(byte[] classBytes) {
         LOG.log(Level.FINE, "Checking class structure");
 
         StringWriter stringWriter = new StringWriter();
@@ -220,4 +984,27 @@ public class DecoratorGenerator {
             throw new RuntimeException(verificationOutput);
         }
     }
+
+    /**
+     * Checks the instructions and the descriptors of the generated class in a
+     * single pass, without the data-flow analysis of
+     * {@link #checkIfClassIsValid(byte[])}.
+     *
+     * @param classBytes the bytes of the generated decorator class
+     */
+    static void checkClassStructure(byte[] classBytes) {
+        LOG.log(Level.FINE, "Checking generated instructions");
+
+        try {
+            new ClassReader(classBytes).accept(new CheckClassAdapter(null, false), 0);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    private void recordVerification(VerificationMode mode, long start) {
+        if (verificationStats != null) {
+            verificationStats.record(mode, System.nanoTime() - start);
+        }
+    }
 }
@@ -0,0 +1,255 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Type;
+import static org.objectweb.asm.Opcodes.ASM6;
+
+/**
+ * Generates many decorators and streams them into a single jar. Decorators
+ * are generated in parallel and each class is written into the jar as soon as
+ * it and the previous ones are ready, so generation and writing overlap while
+ * the entries keep the order of the specs and the jar is reproducible.
+ * <p>
+ * Decorators can be listed in a spec file, having a line for each decorator in
+ * the format <code>&lt;class-to-decorate&gt;
+ * &lt;decorator-name-or-template&gt;</code> (empty lines and lines starting
+ * with <code>#</code> are ignored), or can be found scanning a jar for
+ * templates annotated with {@link Decorate}.
+ *
+ * @author zonia3000
+ */
+public class DecoratorJarWriter {
+
+    private static final Logger LOG = Logger.getLogger(DecoratorJarWriter.class.getName());
+
+    private static final String DECORATE_DESCRIPTOR = Type.getDescriptor(Decorate.class);
+
+    private final ClassLoader classLoader;
+    private final GeneratorCache cache;
+    private VerificationMode verificationMode = VerificationMode.FULL;
+
+    /**
+     * @param classLoader the ClassLoader used for loading the decorated classes
+     * and the templates
+     * @param cache the cache shared between the generations
+     */
+    public DecoratorJarWriter(ClassLoader classLoader, GeneratorCache cache) {
+        this.classLoader = classLoader;
+        this.cache = cache;
+    }
+
+    /**
+     * @param verificationMode how each generated decorator is verified, by
+     * default {@link VerificationMode#FULL}
+     */
+    public void setVerificationMode(VerificationMode verificationMode) {
+        this.verificationMode = verificationMode;
+    }
+
+    /**
+     * Reads the decorators listed inside a spec file.
+     *
+     * @param specFile the spec file
+     * @return the specs of the decorators to generate
+     * @throws IOException if the file can't be read or it contains an invalid
+     * line
+     */
+    public List<DecoratorSpec> readSpecs(Path specFile) throws IOException {
+        List<DecoratorSpec> specs = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(specFile, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            if (parts.length != 2) {
+                throw new IOException(specFile + ":" + lineNumber + ": expected <class-to-decorate> <decorator-name-or-template>");
+            }
+            Class wrappedType = loadClass(parts[0]);
+            if (wrappedType == null) {
+                throw new IOException(specFile + ":" + lineNumber + ": unable to find class to decorate " + parts[0]);
+            }
+            Class templateType = loadClass(parts[1]);
+            if (templateType == null) {
+                specs.add(new DecoratorSpec(wrappedType, parts[1], classLoader, null));
+            } else {
+                specs.add(new DecoratorSpec(wrappedType, templateType, classLoader, null));
+            }
+        }
+        return specs;
+    }
+
+    /**
+     * Finds the templates annotated with {@link Decorate} inside a jar. The
+     * jar must be visible from the ClassLoader of this writer.
+     *
+     * @param jar the jar to scan
+     * @return the specs of the decorators to generate
+     * @throws IOException if the jar can't be read or an annotated class can't
+     * be loaded
+     */
+    public List<DecoratorSpec> scanTemplates(Path jar) throws IOException {
+        List<DecoratorSpec> specs = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !entry.getName().endsWith(".class")) {
+                    continue;
+                }
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    DecoratedTypeFinder finder = new DecoratedTypeFinder();
+                    new ClassReader(in).accept(finder, ClassReader.SKIP_CODE + ClassReader.SKIP_DEBUG + ClassReader.SKIP_FRAMES);
+                    if (finder.decoratedType != null) {
+                        specs.add(getTemplateSpec(finder.templateName, finder.decoratedType.getClassName()));
+                    }
+                }
+            }
+        }
+        return specs;
+    }
+
+    private DecoratorSpec getTemplateSpec(String templateName, String wrappedName) throws IOException {
+        Class templateType = loadClass(templateName);
+        Class wrappedType = loadClass(wrappedName);
+        if (templateType == null || wrappedType == null) {
+            throw new IOException("Unable to load template " + templateName + " decorating " + wrappedName);
+        }
+        LOG.log(Level.FINE, "Found template {0} decorating {1}", new Object[]{templateName, wrappedName});
+        return new DecoratorSpec(wrappedType, templateType, classLoader, null);
+    }
+
+    private Class loadClass(String className) {
+        try {
+            return Class.forName(className, false, classLoader);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Generates the decorators and writes them inside a jar.
+     *
+     * @param specs the decorators to generate. When more specs have the same
+     * decorator name only the first one is generated
+     * @param outputJar the jar to write
+     * @return the results of the generations, in order of the specs
+     * @throws IOException if the jar can't be written
+     */
+    public List<GenerationResult> write(List<DecoratorSpec> specs, Path outputJar) throws IOException {
+        ExecutorService executor = new ForkJoinPool();
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(outputJar));
+                ZipOutputStream zip = new ZipOutputStream(out)) {
+            return write(specs, zip, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<GenerationResult> write(List<DecoratorSpec> specs, ZipOutputStream zip, ExecutorService executor) throws IOException {
+        List<Future<GenerationResult>> futures = new ArrayList<>();
+        for (DecoratorSpec spec : removeDuplicates(specs)) {
+            futures.add(executor.submit(() -> DecoratorGenerator.generate(spec, cache, verificationMode, null)));
+        }
+
+        List<GenerationResult> results = new ArrayList<>();
+        for (Future<GenerationResult> future : futures) {
+            GenerationResult result = getResult(future);
+            if (result.isSuccessful()) {
+                String entryName = result.getSpec().getDecoratorName().replace('.', '/') + ".class";
+                LOG.log(Level.INFO, "Writing jar entry {0}", entryName);
+                zip.putNextEntry(new ZipEntry(entryName));
+                zip.write(result.getClassBytes());
+                zip.closeEntry();
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * Keeps the first spec of each decorator name, since a jar can't have
+     * duplicated entries (e.g. a decorator listed in the spec file and found
+     * scanning the templates).
+     */
+    private static Collection<DecoratorSpec> removeDuplicates(List<DecoratorSpec> specs) {
+        Map<String, DecoratorSpec> specsByName = new LinkedHashMap<>();
+        for (DecoratorSpec spec : specs) {
+            if (specsByName.putIfAbsent(spec.getDecoratorName(), spec) != null) {
+                LOG.log(Level.WARNING, "Ignored duplicated decorator {0}", spec);
+            }
+        }
+        return specsByName.values();
+    }
+
+    private GenerationResult getResult(Future<GenerationResult> future) throws IOException {
+        try {
+            // generation errors are already reported inside the results
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating decorators", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Reads the value of the {@link Decorate} annotation.
+     */
+    private static class DecoratedTypeFinder extends ClassVisitor {
+
+        private String templateName;
+        private Type decoratedType;
+
+        DecoratedTypeFinder() {
+            super(ASM6);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            templateName = Type.getObjectType(name).getClassName();
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            if (!DECORATE_DESCRIPTOR.equals(descriptor)) {
+                return null;
+            }
+            return new AnnotationVisitor(ASM6) {
+                @Override
+                public void visit(String name, Object value) {
+                    if ("value".equals(name)) {
+                        decoratedType = (Type) value;
+                    }
+                }
+            };
+        }
+    }
+}
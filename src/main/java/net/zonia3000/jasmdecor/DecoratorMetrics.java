@@ -0,0 +1,193 @@
+package net.zonia3000.jasmdecor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of a decorator class generated with metrics enabled (see
+ * {@link DecoratorGenerator#setMetricsEnabled(boolean)}). The generated class
+ * creates its metrics when it is initialized and stores them in a static
+ * field; each delegation method records its calls into the
+ * {@link MethodMetrics} slot having the method id as index.
+ * <p>
+ * Calls are always counted, while their latency can be measured on a random
+ * sample only (see {@link #setLatencySampling(int)}), since reading the clock
+ * twice is the largest cost of the recording.
+ * <p>
+ * Metrics are obtained with {@link #of(Class)} and can be exposed through JMX
+ * with {@link #registerMBean()}.
+ *
+ * @author zonia3000
+ */
+public class DecoratorMetrics implements DecoratorMetricsMXBean {
+
+    // returned by start() for the calls whose latency is not measured
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private final String decoratorName;
+    private final MethodMetrics[] methods;
+
+    // the latency is measured when the random bits under the mask are zero
+    private int samplingMask;
+
+    /**
+     * Called by the generated decorators.
+     *
+     * @param decoratorName the binary name of the decorator class
+     * @param methods the name and descriptor of each delegation method, in
+     * the order of the method ids
+     */
+    public DecoratorMetrics(String decoratorName, String[] methods) {
+        this.decoratorName = decoratorName;
+        this.methods = new MethodMetrics[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            this.methods[i] = new MethodMetrics(methods[i]);
+        }
+    }
+
+    /**
+     * @param oneEvery measures the latency of one call every the given number
+     * of calls (on average), which must be a power of two; 1 (the default)
+     * measures all the calls
+     */
+    public void setLatencySampling(int oneEvery) {
+        if (oneEvery <= 0 || Integer.bitCount(oneEvery) != 1) {
+            throw new IllegalArgumentException("The latency sampling must be a power of two");
+        }
+        this.samplingMask = oneEvery - 1;
+    }
+
+    /**
+     * Called by the generated decorators at the beginning of each call.
+     *
+     * @return the start time of the call, if its latency must be measured
+     */
+    public long start() {
+        if (samplingMask == 0 || (ThreadLocalRandom.current().nextInt() & samplingMask) == 0) {
+            return System.nanoTime();
+        }
+        return NOT_SAMPLED;
+    }
+
+    /**
+     * Called by the generated decorators after a successful call.
+     *
+     * @param method the method id
+     * @param start the value returned by {@link #start()}
+     */
+    public void recordCall(int method, long start) {
+        MethodMetrics methodMetrics = methods[method];
+        methodMetrics.recordCall();
+        if (start != NOT_SAMPLED) {
+            methodMetrics.recordTime(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Called by the generated decorators when the wrapped instance throws an
+     * exception.
+     *
+     * @param method the method id
+     * @param start the value returned by {@link #start()}
+     */
+    public void recordError(int method, long start) {
+        recordCall(method, start);
+        methods[method].recordError();
+    }
+
+    /**
+     * @param decoratorClass a decorator class generated with metrics enabled
+     * @return the metrics of the decorator class
+     * @throws IllegalArgumentException if the class has been generated
+     * without metrics
+     */
+    public static DecoratorMetrics of(Class<?> decoratorClass) {
+        try {
+            Field field = decoratorClass.getDeclaredField(MetricsMethodAdapter.METRICS_FIELD);
+            field.setAccessible(true);
+            return (DecoratorMetrics) field.get(null);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalArgumentException(decoratorClass.getName() + " has been generated without metrics", e);
+        }
+    }
+
+    @Override
+    public String getDecoratorName() {
+        return decoratorName;
+    }
+
+    /**
+     * @return the metrics of all the delegation methods
+     */
+    public List<MethodMetrics> getMethodMetrics() {
+        List<MethodMetrics> list = new ArrayList<>();
+        Collections.addAll(list, methods);
+        return list;
+    }
+
+    /**
+     * @param method the method name followed by its descriptor (e.g.
+     * <code>getInt(Ljava/lang/String;)I</code>)
+     * @return the metrics of the method, or null if the method is not a
+     * delegation method of the decorator
+     */
+    public MethodMetrics getMethodMetrics(String method) {
+        for (MethodMetrics methodMetrics : methods) {
+            if (methodMetrics.getMethod().equals(method)) {
+                return methodMetrics;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Map<String, Long> getCallCounts() {
+        return toMap(MethodMetrics::getCallCount);
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        return toMap(MethodMetrics::getErrorCount);
+    }
+
+    @Override
+    public Map<String, Long> getAverageTimes() {
+        return toMap(MethodMetrics::getAverageTime);
+    }
+
+    private Map<String, Long> toMap(ToLongFunction<MethodMetrics> value) {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (MethodMetrics methodMetrics : methods) {
+            map.put(methodMetrics.getMethod(), value.applyAsLong(methodMetrics));
+        }
+        return map;
+    }
+
+    /**
+     * Registers the metrics in the platform MBeanServer, named
+     * <code>net.zonia3000.jasmdecor:type=DecoratorMetrics,name=&lt;decorator&gt;</code>.
+     *
+     * @return the name of the registered MBean
+     * @throws JMException if the MBean can't be registered (e.g. if it has
+     * already been registered)
+     */
+    public ObjectName registerMBean() throws JMException {
+        ObjectName name = new ObjectName("net.zonia3000.jasmdecor:type=DecoratorMetrics,name=" + ObjectName.quote(decoratorName));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return "DecoratorMetrics{" + decoratorName + ", methods=" + getMethodMetrics() + "}";
+    }
+}
@@ -0,0 +1,23 @@
+package net.zonia3000.jasmdecor;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link DecoratorMetrics} of a decorator class. Values are
+ * keyed by method name and descriptor.
+ *
+ * @author zonia3000
+ */
+public interface DecoratorMetricsMXBean {
+
+    String getDecoratorName();
+
+    Map<String, Long> getCallCounts();
+
+    Map<String, Long> getErrorCounts();
+
+    /**
+     * @return the average nanoseconds of the calls of each method
+     */
+    Map<String, Long> getAverageTimes();
+}
@@ -0,0 +1,113 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.File;
+
+/**
+ * Describes a decorator to generate inside a batch (see
+ * {@link DecoratorGenerator#generateAll(java.util.List)}).
+ *
+ * @author zonia3000
+ */
+public class DecoratorSpec {
+
+    private final Class wrappedType;
+    private final String decoratorName;
+    private final Class templateType;
+    private final ClassLoader classLoader;
+    private final File outputFile;
+
+    /**
+     * Describes a decorator having no template class.
+     *
+     * @param wrappedType the class/interface to decorate
+     * @param decoratorCompleteName the name of the class to generate, including
+     * also the package name
+     * @param outputFile the file where write the class bytes; if null the
+     * generated bytes are only returned inside the {@link GenerationResult}
+     */
+    public DecoratorSpec(Class wrappedType, String decoratorCompleteName, File outputFile) {
+        this(wrappedType, decoratorCompleteName, null, null, outputFile);
+    }
+
+    /**
+     * Describes a decorator having no template class.
+     *
+     * @param wrappedType the class/interface to decorate
+     * @param decoratorCompleteName the name of the class to generate, including
+     * also the package name
+     * @param classLoader the ClassLoader to use for loading the decorated class
+     * @param outputFile the file where write the class bytes; if null the
+     * generated bytes are only returned inside the {@link GenerationResult}
+     */
+    public DecoratorSpec(Class wrappedType, String decoratorCompleteName, ClassLoader classLoader, File outputFile) {
+        this(wrappedType, decoratorCompleteName, null, classLoader, outputFile);
+    }
+
+    /**
+     * Describes a decorator based on a template class.
+     *
+     * @param wrappedType the class/interface to decorate
+     * @param templateType a class to use as a template for building the
+     * decorator
+     * @param outputFile the file where write the class bytes; if null the
+     * generated bytes are only returned inside the {@link GenerationResult}
+     */
+    public DecoratorSpec(Class wrappedType, Class templateType, File outputFile) {
+        this(wrappedType, templateType.getCanonicalName(), templateType, null, outputFile);
+    }
+
+    /**
+     * Describes a decorator based on a template class.
+     *
+     * @param wrappedType the class/interface to decorate
+     * @param templateType a class to use as a template for building the
+     * decorator
+     * @param classLoader the ClassLoader to use for loading the decorated class
+     * @param outputFile the file where write the class bytes; if null the
+     * generated bytes are only returned inside the {@link GenerationResult}
+     */
+    public DecoratorSpec(Class wrappedType, Class templateType, ClassLoader classLoader, File outputFile) {
+        this(wrappedType, templateType.getCanonicalName(), templateType, classLoader, outputFile);
+    }
+
+    private DecoratorSpec(Class wrappedType, String decoratorName, Class templateType, ClassLoader classLoader, File outputFile) {
+        this.wrappedType = wrappedType;
+        this.decoratorName = decoratorName;
+        this.templateType = templateType;
+        this.classLoader = classLoader;
+        this.outputFile = outputFile;
+    }
+
+    public Class getWrappedType() {
+        return wrappedType;
+    }
+
+    public String getDecoratorName() {
+        return decoratorName;
+    }
+
+    public Class getTemplateType() {
+        return templateType;
+    }
+
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    DecoratorGenerator createGenerator() {
+        if (templateType == null) {
+            return new DecoratorGenerator(wrappedType, decoratorName, classLoader);
+        } else {
+            return new DecoratorGenerator(wrappedType, templateType, classLoader);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "decorator " + decoratorName + " of " + wrappedType.getName();
+    }
+}
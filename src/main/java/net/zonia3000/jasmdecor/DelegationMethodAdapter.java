@@ -1,7 +1,7 @@
 package net.zonia3000.jasmdecor;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Type;
 import static org.objectweb.asm.Opcodes.*;
@@ -14,149 +14,192 @@ import static org.objectweb.asm.Opcodes.*;
  */
 public class DelegationMethodAdapter extends MethodVisitor {
 
-    private final String decoratorInternalName;
-    private final Class wrappedType;
-    private final String wrappedInternalName;
-    private final MethodVisitor writer;
-    private final String methodName;
-    private final String descriptor;
+    /**
+     * Bootstrap method of the lambdas created by the generated code.
+     */
+    protected static final Handle LAMBDA_METAFACTORY = new Handle(H_INVOKESTATIC, "java/lang/invoke/LambdaMetafactory", "metafactory",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;"
+            + "Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
+            false);
+
+    /**
+     * Bootstrap method of the instructions getting the target of the
+     * hot-swappable decorators.
+     */
+    private static final Handle HOT_SWAP_BOOTSTRAP = new Handle(H_INVOKESTATIC, Type.getInternalName(HotSwap.class), "bootstrap",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
+            false);
+
+    protected final String decoratorInternalName;
+    protected final String wrappedInternalName;
+    protected final boolean wrappedInterface;
+    protected final MethodVisitor writer;
+    protected final String methodName;
+    protected final String descriptor;
+    private boolean hotSwappable;
+    private String specializedInternalName;
 
     public DelegationMethodAdapter(String wrapperInternalName, Class wrappedType, MethodVisitor writer, String methodName, String descriptor) {
+        this(wrapperInternalName, Type.getInternalName(wrappedType), wrappedType.isInterface(), writer, methodName, descriptor);
+    }
+
+    /**
+     * Used when the wrapped type is known only by name (e.g. during the
+     * annotation processing).
+     */
+    public DelegationMethodAdapter(String wrapperInternalName, String wrappedInternalName, boolean wrappedInterface, MethodVisitor writer, String methodName, String descriptor) {
         super(ASM6); // we don't want to pass the MethodVisitor in the super constructor, otherwise concrete method bodies will be visited
         this.decoratorInternalName = wrapperInternalName;
-        this.wrappedType = wrappedType;
-        this.wrappedInternalName = Type.getInternalName(wrappedType);
+        this.wrappedInternalName = wrappedInternalName;
+        this.wrappedInterface = wrappedInterface;
         this.writer = writer;
         this.methodName = methodName;
         this.descriptor = descriptor;
     }
 
+    /**
+     * Makes the generated code call the current target of the {@link HotSwap}
+     * of the decorator, when one is set, instead of the wrapped field. The
+     * ClassWriter must compute the frames.
+     */
+    public void setHotSwappable(boolean hotSwappable) {
+        this.hotSwappable = hotSwappable;
+    }
+
+    /**
+     * Makes the generated code check if the wrapped instance is exactly of
+     * the specified class and, in that case, call it with
+     * <code>INVOKEVIRTUAL</code> on that class, which the JIT can inline
+     * even when the call through the wrapped type is megamorphic:
+     * <pre>
+     * if (wrapped.getClass() == Impl.class) {
+     *     return ((Impl) wrapped).aMethod(args);
+     * }
+     * return wrapped.aMethod(args);
+     * </pre> The ClassWriter must compute the frames.
+     *
+     * @param specializedInternalName the internal name of a class
+     * implementing/extending the wrapped type, or null
+     */
+    public void setSpecializedTarget(String specializedInternalName) {
+        this.specializedInternalName = specializedInternalName;
+    }
+
     @Override
     public void visitCode() {
-        // put this on the stack
-        writer.visitVarInsn(ALOAD, 0);
-        // get the wrapped field
-        writer.visitFieldInsn(GETFIELD, decoratorInternalName, "wrapped", "L" + wrappedInternalName + ";");
-
-        // put all method arguments on the stack
-        int varIndex = addMethodArgumentsToStack(descriptor);
-        // invoke delegated method
-        writer.visitMethodInsn(wrappedType.isInterface() ? INVOKEINTERFACE : INVOKEVIRTUAL, wrappedInternalName, methodName, descriptor, wrappedType.isInterface());
+        int varIndex = invokeWrapped();
 
         // return
         addReturnInsn(descriptor);
-        writer.visitMaxs(varIndex + 1, varIndex + 1);
+        // the returned long/double can be larger than the arguments
+        int returnSize = Type.getArgumentsAndReturnSizes(descriptor) & 0x03;
+        writer.visitMaxs(Math.max(varIndex + 1, returnSize), varIndex + 1);
     }
 
     /**
-     * Puts all the method arguments on the operand stack extracting them
-     * parsing the method descriptor.
+     * Writes <code>wrapped.aMethod(args)</code>, leaving the returned value
+     * on the stack. Subclasses can write their code around it.
      *
-     * @return the size of the stack
+     * @return the index of the last local variable holding an argument
      */
-    private int addMethodArgumentsToStack(String methodDescriptor) {
-
-        String parametersPart = extractArgumentsPart(methodDescriptor);
-
-        int varIndex = 0;
-        boolean parsingClassNameParam = false;
-        boolean parsingArrayParam = false;
-
-        for (int i = 0; i < parametersPart.length(); i++) {
-            char c = parametersPart.charAt(i);
-            if (parsingClassNameParam) {
-                if (c == ';') { // end of class name
-                    parsingClassNameParam = false;
-                }
-            } else if (parsingArrayParam) {
-                if (c != '[') { // one or more '[', then it ends with the array type
-                    parsingArrayParam = false;
-                    if (c == 'L') {
-                        parsingClassNameParam = true;
-                    }
-                }
-            } else {
-                switch (c) {
-                    case 'L': // start of class name
-                        writer.visitVarInsn(ALOAD, ++varIndex);
-                        parsingClassNameParam = true;
-                        break;
-                    case 'I': // int
-                    case 'B': // byte
-                    case 'S': // short
-                    case 'C': // char
-                    case 'Z': // boolean
-                        writer.visitVarInsn(ILOAD, ++varIndex);
-                        break;
-                    case 'F': // float
-                        writer.visitVarInsn(FLOAD, ++varIndex);
-                        break;
-                    case 'D': // double
-                        writer.visitVarInsn(DLOAD, ++varIndex);
-                        // doubles take 2 position
-                        ++varIndex;
-                        break;
-                    case 'J': // long
-                        writer.visitVarInsn(LLOAD, ++varIndex);
-                        // longs take 2 position
-                        ++varIndex;
-                        break;
-                    case '[': // array
-                        writer.visitVarInsn(ALOAD, ++varIndex);
-                        parsingArrayParam = true;
-                        break;
-                }
-            }
+    protected int invokeWrapped() {
+        if (specializedInternalName != null) {
+            return invokeSpecialized();
         }
+        int varIndex = loadWrappedAndArguments();
+        // invoke delegated method
+        writer.visitMethodInsn(wrappedInterface ? INVOKEINTERFACE : INVOKEVIRTUAL, wrappedInternalName, methodName, descriptor, wrappedInterface);
+        return varIndex;
+    }
+
+    private int invokeSpecialized() {
+        Label other = new Label();
+        Label end = new Label();
+        loadWrapped();
+        writer.visitInsn(DUP);
+        writer.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Object", "getClass", "()Ljava/lang/Class;", false);
+        writer.visitLdcInsn(Type.getObjectType(specializedInternalName));
+        writer.visitJumpInsn(IF_ACMPNE, other);
+        // the exact type is known, so the call is bound statically
+        writer.visitTypeInsn(CHECKCAST, specializedInternalName);
+        addMethodArgumentsToStack(descriptor);
+        writer.visitMethodInsn(INVOKEVIRTUAL, specializedInternalName, methodName, descriptor, false);
+        writer.visitJumpInsn(GOTO, end);
 
+        writer.visitLabel(other);
+        int varIndex = addMethodArgumentsToStack(descriptor);
+        writer.visitMethodInsn(wrappedInterface ? INVOKEINTERFACE : INVOKEVIRTUAL, wrappedInternalName, methodName, descriptor, wrappedInterface);
+        writer.visitLabel(end);
         return varIndex;
     }
 
     /**
-     * Extracts the method arguments from method descriptor (the part inside
-     * parenthesis).
+     * Puts the wrapped instance and all the method arguments on the stack.
+     *
+     * @return the index of the last local variable holding an argument
      */
-    private String extractArgumentsPart(String methodDescriptor) {
-        Pattern pattern = Pattern.compile("[(](.*?)[)]");
-        Matcher matcher = pattern.matcher(methodDescriptor);
-        if (matcher.find()) {
-            return matcher.group(1);
+    protected int loadWrappedAndArguments() {
+        loadWrapped();
+        // put all method arguments on the stack
+        return addMethodArgumentsToStack(descriptor);
+    }
+
+    /**
+     * Puts the wrapped instance on the stack.
+     */
+    protected void loadWrapped() {
+        Label swapped = new Label();
+        if (hotSwappable) {
+            // target = HotSwap.of(decorator).getTarget(), as a constant
+            writer.visitInvokeDynamicInsn("target", "()L" + wrappedInternalName + ";", HOT_SWAP_BOOTSTRAP);
+            writer.visitInsn(DUP);
+            writer.visitJumpInsn(IFNONNULL, swapped);
+            writer.visitInsn(POP);
+        }
+        // put this on the stack
+        writer.visitVarInsn(ALOAD, 0);
+        // get the wrapped field
+        writer.visitFieldInsn(GETFIELD, decoratorInternalName, "wrapped", "L" + wrappedInternalName + ";");
+        if (hotSwappable) {
+            writer.visitLabel(swapped);
+        }
+    }
+
+    /**
+     * Pushes an int constant using the shortest instruction.
+     */
+    protected static void pushInt(MethodVisitor mv, int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
         } else {
-            throw new IllegalStateException("Parameters group not found for method descriptor " + methodDescriptor);
+            mv.visitLdcInsn(value);
         }
     }
 
     /**
-     * Adds a proper return instruction according to original method data type.
+     * Puts all the method arguments on the operand stack, loading them from
+     * the local variables following <code>this</code>.
+     *
+     * @return the index of the last local variable holding an argument
      */
-    private void addReturnInsn(String methodDescriptor) {
-        // the return type is defined after method arguments in the descriptor
-        int returnFirstCharIndex = methodDescriptor.indexOf(")") + 1;
-        char returnFirstChar = methodDescriptor.charAt(returnFirstCharIndex);
-
-        switch (returnFirstChar) {
-            case 'V': // void
-                writer.visitInsn(RETURN);
-                break;
-            case 'I': // int
-            case 'B': // byte
-            case 'S': // short
-            case 'C': // char
-            case 'Z': // boolean
-                writer.visitInsn(IRETURN);
-                break;
-            case 'F': // float
-                writer.visitInsn(FRETURN);
-                break;
-            case 'D': // double
-                writer.visitInsn(DRETURN);
-                break;
-            case 'J': // long
-                writer.visitInsn(LRETURN);
-                break;
-            default: // reference
-                writer.visitInsn(ARETURN);
-                break;
+    private int addMethodArgumentsToStack(String methodDescriptor) {
+        int varIndex = 1;
+        for (Type argumentType : Type.getArgumentTypes(methodDescriptor)) {
+            writer.visitVarInsn(argumentType.getOpcode(ILOAD), varIndex);
+            // longs and doubles take 2 positions
+            varIndex += argumentType.getSize();
         }
+        return varIndex - 1;
+    }
+
+    /**
+     * Adds a proper return instruction according to original method data type.
+     */
+    protected void addReturnInsn(String methodDescriptor) {
+        writer.visitInsn(Type.getReturnType(methodDescriptor).getOpcode(IRETURN));
     }
 }
@@ -0,0 +1,468 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Long-lived server generating decorators on behalf of the CLI clients (see
+ * the <code>--daemon</code> and <code>--client</code> flags), so that build
+ * scripts generating one decorator per call don't pay the JVM startup and
+ * the warm-up of the generation code each time.
+ * <p>
+ * The server listens on a loopback port and reads a request per connection,
+ * as a line of tab separated fields:
+ * <pre>
+ * &lt;token&gt; GENERATE &lt;verification-mode&gt; &lt;classpath&gt; &lt;class-to-decorate&gt; &lt;decorator-name-or-template&gt; &lt;output-file&gt;
+ * &lt;token&gt; STOP
+ * </pre>
+ * Since any local process can connect to the port, the requests must start
+ * with a random token, which the server writes at startup in a file readable
+ * only by its owner (<code>~/.jasmdecor/daemon-&lt;port&gt;.token</code>).
+ * The server answers with a line containing <code>OK</code> followed by the
+ * time spent on the request in microseconds, or <code>ERROR</code> followed by the
+ * reason. The classes of each classpath are loaded by their own ClassLoader
+ * and parsed once in a {@link GeneratorCache}, until a file of the classpath
+ * is modified. The server stops when it receives no request for the idle
+ * timeout.
+ *
+ * @author zonia3000
+ */
+class GenerationDaemon {
+
+    private static final Logger LOG = Logger.getLogger(GenerationDaemon.class.getName());
+
+    static final int DEFAULT_PORT = 47431;
+    static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    // ClassLoaders of the classpaths not used for this time are closed
+    private static final long LOADER_EVICTION_NANOS = TimeUnit.MINUTES.toNanos(10);
+    static final Path DEFAULT_TOKEN_DIRECTORY = Paths.get(System.getProperty("user.home"), ".jasmdecor");
+
+    static final String GENERATE = "GENERATE";
+    static final String STOP = "STOP";
+    static final String OK = "OK";
+    static final String ERROR = "ERROR";
+
+    private final ServerSocket serverSocket;
+    private final long idleTimeoutMillis;
+    private final byte[] token;
+    private final Path tokenFile;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "jasmdecor-daemon");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final GeneratorCache cache = new GeneratorCache();
+    // ClassLoaders by classpath, guarded by the daemon
+    private final Map<String, ClasspathLoader> classLoaders = new HashMap<>();
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private volatile long lastRequestTime = System.nanoTime();
+    private volatile boolean stopped;
+
+    /**
+     * Binds the server socket.
+     *
+     * @param port the port, or 0 for any free port
+     * @param idleTimeoutMillis the time without requests after which the
+     * server stops
+     */
+    GenerationDaemon(int port, long idleTimeoutMillis) throws IOException {
+        this(port, idleTimeoutMillis, DEFAULT_TOKEN_DIRECTORY);
+    }
+
+    /**
+     * Binds the server socket and writes the token file.
+     *
+     * @param tokenDirectory the directory of the token file
+     */
+    GenerationDaemon(int port, long idleTimeoutMillis, Path tokenDirectory) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        byte[] randomBytes = new byte[32];
+        new SecureRandom().nextBytes(randomBytes);
+        String encodedToken = Base64.getUrlEncoder().withoutPadding().encodeToString(randomBytes);
+        this.token = encodedToken.getBytes(StandardCharsets.UTF_8);
+        this.tokenFile = getTokenFile(tokenDirectory, getPort());
+        try {
+            writeToken(tokenFile, encodedToken);
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+    }
+
+    private static Path getTokenFile(Path tokenDirectory, int port) {
+        return tokenDirectory.resolve("daemon-" + port + ".token");
+    }
+
+    /**
+     * Writes the token in a new file that only the owner can read and write.
+     */
+    private static void writeToken(Path tokenFile, String token) throws IOException {
+        Path directory = tokenFile.getParent();
+        boolean posix = directory.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if (posix) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } else {
+            Files.createDirectories(directory);
+        }
+        // the file left by a daemon which didn't stop cleanly is replaced
+        Files.deleteIfExists(tokenFile);
+        if (posix) {
+            Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            File file = Files.createFile(tokenFile).toFile();
+            file.setReadable(false, false);
+            file.setWritable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(true, true);
+        }
+        Files.write(tokenFile, token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Serves the requests until the server is stopped or stays idle for the
+     * timeout.
+     */
+    void run() throws IOException {
+        LOG.log(Level.INFO, "Generation daemon listening on port {0}", String.valueOf(getPort()));
+        serverSocket.setSoTimeout((int) Math.min(idleTimeoutMillis, Integer.MAX_VALUE));
+        try {
+            while (!stopped) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketTimeoutException e) {
+                    long idleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastRequestTime);
+                    if (activeRequests.get() == 0 && idleMillis >= idleTimeoutMillis) {
+                        LOG.log(Level.INFO, "Generation daemon idle for {0} ms, stopping", String.valueOf(idleMillis));
+                        stopped = true;
+                    }
+                    continue;
+                } catch (SocketException e) {
+                    if (stopped) {
+                        // closed by a STOP request
+                        break;
+                    }
+                    throw e;
+                }
+                activeRequests.incrementAndGet();
+                executor.execute(() -> serve(socket));
+            }
+        } finally {
+            stopped = true;
+            serverSocket.close();
+            executor.shutdown();
+            Files.deleteIfExists(tokenFile);
+            synchronized (this) {
+                classLoaders.values().forEach(GenerationDaemon::retire);
+                classLoaders.clear();
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+                BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                Writer writer = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)) {
+            String request = reader.readLine();
+            writer.write(handle(request == null ? "" : request) + "\n");
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to serve a generation request", e);
+        } finally {
+            lastRequestTime = System.nanoTime();
+            activeRequests.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return the response line
+     */
+    String handle(String request) {
+        int tokenEnd = request.indexOf('\t');
+        String requestToken = tokenEnd < 0 ? request : request.substring(0, tokenEnd);
+        // compared in constant time
+        if (!MessageDigest.isEqual(token, requestToken.getBytes(StandardCharsets.UTF_8))) {
+            LOG.log(Level.WARNING, "Rejected a request without the daemon token");
+            return ERROR + " Unauthorized request";
+        }
+        request = request.substring(tokenEnd + 1);
+        String[] fields = request.split("\t", -1);
+        if (STOP.equals(fields[0])) {
+            stop();
+            return OK;
+        }
+        if (!GENERATE.equals(fields[0]) || fields.length != 6) {
+            return ERROR + " Invalid request: " + request;
+        }
+        long start = System.nanoTime();
+        try {
+            generate(VerificationMode.valueOf(fields[1]), fields[2], fields[3], fields[4], new File(fields[5]));
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Unable to generate " + fields[4], e);
+            return ERROR + " " + e;
+        }
+        return OK + " " + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    }
+
+    private void generate(VerificationMode verificationMode, String classpath, String wrappedName, String decoratorName, File outputFile)
+            throws IOException, ClassNotFoundException {
+        ClasspathLoader classLoader = acquireClassLoader(classpath);
+        try {
+            generate(verificationMode, classLoader, wrappedName, decoratorName, outputFile);
+        } finally {
+            releaseClassLoader(classLoader);
+        }
+    }
+
+    private void generate(VerificationMode verificationMode, ClassLoader classLoader, String wrappedName, String decoratorName, File outputFile)
+            throws IOException, ClassNotFoundException {
+        Class wrappedType = Class.forName(wrappedName, false, classLoader);
+        Class templateType;
+        try {
+            templateType = Class.forName(decoratorName, false, classLoader);
+        } catch (ClassNotFoundException e) {
+            templateType = null;
+        }
+        DecoratorGenerator generator = templateType == null
+                ? new DecoratorGenerator(wrappedType, decoratorName, classLoader)
+                : new DecoratorGenerator(wrappedType, templateType, classLoader);
+        generator.setCache(cache);
+        generator.setVerificationMode(verificationMode);
+        generator.writeDecoratorClass(outputFile);
+    }
+
+    /**
+     * Returns the ClassLoader of a classpath, replacing it when a file of the
+     * classpath has been modified since its creation, and closes the
+     * ClassLoaders of the classpaths not used for the eviction time. The
+     * ClassLoader must be released after the generation.
+     */
+    private synchronized ClasspathLoader acquireClassLoader(String classpath) throws IOException {
+        long now = System.nanoTime();
+        classLoaders.values().removeIf(classLoader -> {
+            if (now - classLoader.lastUsed > LOADER_EVICTION_NANOS) {
+                LOG.log(Level.FINE, "Classpath {0} not used recently, closing its ClassLoader", classLoader.classpath);
+                retire(classLoader);
+                return true;
+            }
+            return false;
+        });
+        ClasspathLoader classLoader = classLoaders.get(classpath);
+        if (classLoader != null && classLoader.snapshot.isModified()) {
+            LOG.log(Level.FINE, "Classpath {0} modified, reloading its classes", classpath);
+            // the entries of the previous ClassLoader are discarded by the
+            // cache when it is collected
+            retire(classLoader);
+            classLoader = null;
+        }
+        if (classLoader == null) {
+            classLoader = new ClasspathLoader(classpath, getUrls(classpath), new ClasspathSnapshot(getEntries(classpath)));
+            classLoaders.put(classpath, classLoader);
+        }
+        classLoader.lastUsed = now;
+        classLoader.users++;
+        return classLoader;
+    }
+
+    private synchronized void releaseClassLoader(ClasspathLoader classLoader) {
+        classLoader.users--;
+        if (classLoader.retired && classLoader.users == 0) {
+            close(classLoader);
+        }
+    }
+
+    /**
+     * Closes a ClassLoader no longer returned to new requests, as soon as the
+     * requests still using it end, releasing the handles of its jars.
+     */
+    private static void retire(ClasspathLoader classLoader) {
+        classLoader.retired = true;
+        if (classLoader.users == 0) {
+            close(classLoader);
+        }
+    }
+
+    private static void close(ClasspathLoader classLoader) {
+        try {
+            classLoader.close();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to close the ClassLoader of " + classLoader.classpath, e);
+        }
+    }
+
+    private static List<Path> getEntries(String classpath) {
+        List<Path> entries = new ArrayList<>();
+        for (String entry : classpath.split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                entries.add(Paths.get(entry));
+            }
+        }
+        return entries;
+    }
+
+    private static URL[] getUrls(String classpath) throws IOException {
+        List<Path> entries = getEntries(classpath);
+        URL[] urls = new URL[entries.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = entries.get(i).toUri().toURL();
+        }
+        return urls;
+    }
+
+    void stop() {
+        stopped = true;
+        try {
+            // unblocks the accept
+            serverSocket.close();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to close the daemon socket", e);
+        }
+    }
+
+    /**
+     * Sends a request to a daemon running on the same host, prefixed by the
+     * token read from its token file.
+     *
+     * @return the response line
+     * @throws ConnectException if no daemon is listening on the port
+     */
+    static String send(int port, String request) throws IOException {
+        return send(DEFAULT_TOKEN_DIRECTORY, port, request);
+    }
+
+    static String send(Path tokenDirectory, int port, String request) throws IOException {
+        Path tokenFile = getTokenFile(tokenDirectory, port);
+        if (!Files.exists(tokenFile)) {
+            throw new ConnectException("No daemon token in " + tokenFile);
+        }
+        String token = new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8);
+        return sendLine(port, token + "\t" + request);
+    }
+
+    /**
+     * Sends a line to the daemon as it is.
+     */
+    static String sendLine(int port, String request) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            writer.write(request + "\n");
+            writer.flush();
+            String response = reader.readLine();
+            if (response == null) {
+                throw new IOException("No response from the daemon");
+            }
+            return response;
+        }
+    }
+
+    /**
+     * @return a GENERATE request, resolving the paths against the working
+     * directory of the client
+     */
+    static String generateRequest(VerificationMode verificationMode, String classpath, String wrappedName, String decoratorName, File outputFile) {
+        List<String> absoluteEntries = new ArrayList<>();
+        for (Path entry : getEntries(classpath)) {
+            absoluteEntries.add(entry.toAbsolutePath().toString());
+        }
+        return String.join("\t", GENERATE, verificationMode.name(), String.join(File.pathSeparator, absoluteEntries),
+                wrappedName, decoratorName, outputFile.getAbsolutePath());
+    }
+
+    /**
+     * ClassLoader of a classpath. The other fields are guarded by the daemon.
+     */
+    private static class ClasspathLoader extends URLClassLoader {
+
+        private final String classpath;
+        private final ClasspathSnapshot snapshot;
+        private long lastUsed;
+        // number of requests using the ClassLoader
+        private int users;
+        // true when the ClassLoader must be closed after the last request
+        private boolean retired;
+
+        ClasspathLoader(String classpath, URL[] urls, ClasspathSnapshot snapshot) {
+            super(urls, GenerationDaemon.class.getClassLoader());
+            this.classpath = classpath;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * Modification times of the files and directories of a classpath, taken
+     * when its ClassLoader is created. Checking them doesn't list the
+     * directories again: a modified file changes its own time, while an added
+     * or removed file changes the time of its directory.
+     */
+    static class ClasspathSnapshot {
+
+        private final List<File> files = new ArrayList<>();
+        private final long[] lastModified;
+
+        ClasspathSnapshot(List<Path> entries) throws IOException {
+            for (Path entry : entries) {
+                if (Files.isDirectory(entry)) {
+                    try (Stream<Path> paths = Files.walk(entry)) {
+                        paths.forEach(path -> files.add(path.toFile()));
+                    }
+                } else {
+                    files.add(entry.toFile());
+                }
+            }
+            lastModified = new long[files.size()];
+            for (int i = 0; i < lastModified.length; i++) {
+                lastModified[i] = files.get(i).lastModified();
+            }
+        }
+
+        /**
+         * @return true if a file of the classpath has been added, modified or
+         * removed
+         */
+        boolean isModified() {
+            for (int i = 0; i < lastModified.length; i++) {
+                // 0 for a removed file
+                if (files.get(i).lastModified() != lastModified[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
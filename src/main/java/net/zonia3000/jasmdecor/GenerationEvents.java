@@ -0,0 +1,52 @@
+package net.zonia3000.jasmdecor;
+
+/**
+ * Records the phases of the generation as JDK Flight Recorder events (see
+ * {@link GenerationPhaseEvent}). The event class is loaded only when the JVM
+ * supports JFR, and when the event is not enabled by a recording no event is
+ * created.
+ *
+ * @author zonia3000
+ */
+final class GenerationEvents {
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    private GenerationEvents() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts timing a phase.
+     *
+     * @return the event, or null when JFR is not recording it
+     */
+    static Object begin() {
+        return AVAILABLE ? GenerationPhaseEvent.beginIfEnabled() : null;
+    }
+
+    /**
+     * @return true if the event returned by {@link #begin()} will be
+     * recorded, so that its values have to be computed
+     */
+    static boolean isRecording(Object event) {
+        return event != null;
+    }
+
+    /**
+     * Ends a phase, recording its event if {@link #begin()} returned one.
+     */
+    static void commit(Object event, GenerationPhase phase, String internalName, int methodCount, long inputBytes, long outputBytes) {
+        if (event != null) {
+            GenerationPhaseEvent.commit(event, phase, internalName.replace('/', '.'), methodCount, inputBytes, outputBytes);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package net.zonia3000.jasmdecor;
+
+/**
+ * The phases of the generation of a decorator, timed by
+ * {@link GenerationStats} and recorded as JDK Flight Recorder events.
+ *
+ * @author zonia3000
+ */
+public enum GenerationPhase {
+
+    /**
+     * Resolution of the wrapped type hierarchy and reading of the method
+     * tables of its classes.
+     */
+    HIERARCHY_RESOLUTION,
+    /**
+     * Reading and parsing of a class file. Classes are read by the other
+     * phases, so this time is also part of theirs.
+     */
+    CLASS_READING,
+    /**
+     * Writing of the plain decorator.
+     */
+    EMISSION,
+    /**
+     * Writing of the decorator based on a template, including the fusion of
+     * the templates.
+     */
+    TEMPLATE_MERGE,
+    /**
+     * Verification of the generated class (see {@link VerificationMode}).
+     */
+    VERIFICATION,
+    /**
+     * Writing of the class file.
+     */
+    FILE_WRITE
+}
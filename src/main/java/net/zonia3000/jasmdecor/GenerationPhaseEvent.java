@@ -0,0 +1,64 @@
+package net.zonia3000.jasmdecor;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event of a phase of the generation of a decorator. It
+ * must be referenced only through {@link GenerationEvents}, since JVMs
+ * without JFR can't load it.
+ *
+ * @author zonia3000
+ */
+@Name("net.zonia3000.jasmdecor.GenerationPhase")
+@Label("Decorator Generation Phase")
+@Category("jasmdecor")
+@Description("A phase of the generation of a decorator")
+@StackTrace(false)
+class GenerationPhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Class")
+    @Description("The generated decorator, or the class read")
+    String className;
+
+    @Label("Method Count")
+    int methodCount;
+
+    @Label("Input Size")
+    @DataAmount
+    long inputBytes;
+
+    @Label("Output Size")
+    @DataAmount
+    long outputBytes;
+
+    static Object beginIfEnabled() {
+        GenerationPhaseEvent event = new GenerationPhaseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void commit(Object phaseEvent, GenerationPhase phase, String className, int methodCount, long inputBytes, long outputBytes) {
+        GenerationPhaseEvent event = (GenerationPhaseEvent) phaseEvent;
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = phase.name();
+            event.className = className;
+            event.methodCount = methodCount;
+            event.inputBytes = inputBytes;
+            event.outputBytes = outputBytes;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package net.zonia3000.jasmdecor;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Outcome of the generation of a single decorator inside a batch.
+ *
+ * @author zonia3000
+ */
+public class GenerationResult {
+
+    private final DecoratorSpec spec;
+    private final byte[] classBytes;
+    private final Throwable error;
+    private final GenerationStats stats;
+
+    private CompletableFuture<Void> deferredVerification;
+
+    GenerationResult(DecoratorSpec spec, GenerationStats stats) {
+        this.spec = spec;
+        this.classBytes = stats.getClassBytes();
+        this.error = null;
+        this.stats = stats;
+    }
+
+    GenerationResult(DecoratorSpec spec, Throwable error) {
+        this.spec = spec;
+        this.classBytes = null;
+        this.error = error;
+        this.stats = null;
+    }
+
+    public DecoratorSpec getSpec() {
+        return spec;
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    /**
+     * @return the bytes of the generated class, or null if the generation
+     * failed
+     */
+    public byte[] getClassBytes() {
+        return classBytes;
+    }
+
+    /**
+     * @return the error that caused the failure, or null if the generation was
+     * successful
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * @return the timings of the generation, or null if the generation
+     * failed
+     */
+    public GenerationStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return the asynchronous full verification of the decorator, or null if
+     * the decorator has not been sampled for it (see
+     * {@link BatchVerification}); it completes exceptionally if the decorator
+     * is invalid
+     */
+    public CompletableFuture<Void> getDeferredVerification() {
+        return deferredVerification;
+    }
+
+    void setDeferredVerification(CompletableFuture<Void> deferredVerification) {
+        this.deferredVerification = deferredVerification;
+    }
+}
@@ -0,0 +1,126 @@
+package net.zonia3000.jasmdecor;
+
+import java.util.EnumMap;
+import java.util.Map;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import static org.objectweb.asm.Opcodes.ASM6;
+
+/**
+ * Timings and sizes of the generation of a decorator, returned by
+ * {@link DecoratorGenerator#writeDecoratorClass(java.io.File)}. The classes
+ * found in the {@link GeneratorCache} are not read again, so they are not
+ * counted.
+ *
+ * @author zonia3000
+ */
+public class GenerationStats {
+
+    private final String decoratorName;
+    private final Map<GenerationPhase, Long> phaseTimes = new EnumMap<>(GenerationPhase.class);
+    private long totalTime;
+    private int classesRead;
+    private long bytesRead;
+    private byte[] classBytes;
+    private int methodCount = -1;
+
+    GenerationStats(String decoratorName) {
+        this.decoratorName = decoratorName;
+    }
+
+    void record(GenerationPhase phase, long nanos) {
+        phaseTimes.merge(phase, nanos, Long::sum);
+    }
+
+    void recordClassRead(int size) {
+        classesRead++;
+        bytesRead += size;
+    }
+
+    void addTotalTime(long nanos) {
+        totalTime += nanos;
+    }
+
+    void setClassBytes(byte[] classBytes) {
+        this.classBytes = classBytes;
+    }
+
+    /**
+     * @return the binary name of the generated decorator
+     */
+    public String getDecoratorName() {
+        return decoratorName;
+    }
+
+    /**
+     * @return the nanoseconds spent in the given phase, or 0 if the
+     * generation didn't go through it
+     */
+    public long getTime(GenerationPhase phase) {
+        return phaseTimes.getOrDefault(phase, 0L);
+    }
+
+    /**
+     * @return the nanoseconds spent generating (and writing) the decorator
+     */
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * @return the number of class files read
+     */
+    public int getClassesRead() {
+        return classesRead;
+    }
+
+    /**
+     * @return the total size of the class files read
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public byte[] getClassBytes() {
+        return classBytes;
+    }
+
+    public int getClassSize() {
+        return classBytes.length;
+    }
+
+    /**
+     * @return the number of methods of the generated class
+     */
+    public int getMethodCount() {
+        if (methodCount < 0) {
+            // parsed only when requested
+            methodCount = countMethods(classBytes);
+        }
+        return methodCount;
+    }
+
+    static int countMethods(byte[] classBytes) {
+        int[] count = {0};
+        new ClassReader(classBytes).accept(new ClassVisitor(ASM6) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                count[0]++;
+                return null;
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return count[0];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("GenerationStats{").append(decoratorName)
+                .append(", total=").append(totalTime).append("ns");
+        for (Map.Entry<GenerationPhase, Long> entry : phaseTimes.entrySet()) {
+            sb.append(", ").append(entry.getKey().name().toLowerCase()).append('=').append(entry.getValue()).append("ns");
+        }
+        return sb.append(", classesRead=").append(classesRead).append(", bytesRead=").append(bytesRead)
+                .append(", classSize=").append(classBytes == null ? 0 : classBytes.length).append('}').toString();
+    }
+}
@@ -0,0 +1,291 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.objectweb.asm.ClassReader;
+
+/**
+ * Cache of the parsed classes, of the resolved hierarchies and of the method
+ * tables used during the generation of decorators. A single instance can be
+ * shared between many generators (also from different threads, see
+ * {@link DecoratorGenerator#setCache(GeneratorCache)}) so that classes common
+ * to different hierarchies (e.g. <code>java.lang.Object</code>) are read and
+ * parsed only once.
+ * <p>
+ * Entries are keyed by the ClassLoader (or the {@link ClassBytesSource}) the
+ * classes come from and by class name. ClassLoaders and sources are weakly
+ * referenced, so the entries related to a ClassLoader are discarded when the
+ * ClassLoader is garbage collected. The cache is bounded: when the maximum
+ * number of entries is reached the least recently used one is evicted.
+ *
+ * @author zonia3000
+ */
+public class GeneratorCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /**
+     * Reads a class when it is not available in the cache.
+     */
+    interface ClassReaderLoader {
+
+        ClassReader load(String className) throws IOException;
+    }
+
+    /**
+     * Resolves a hierarchy when it is not available in the cache.
+     */
+    interface HierarchyLoader {
+
+        List<String> load() throws IOException;
+    }
+
+    private final int maxEntries;
+    private final Map<Key, Entry> entries;
+    private final ReferenceQueue<Object> collectedNamespaces = new ReferenceQueue<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public GeneratorCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries the maximum number of classes and hierarchies stored
+     * in the cache
+     */
+    @SuppressWarnings("serial")
+    public GeneratorCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("The cache size must be positive");
+        }
+        this.maxEntries = maxEntries;
+        // access ordered, so the eldest entry is the least recently used
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > GeneratorCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param namespace the ClassLoader or the ClassBytesSource of the class
+     */
+    ClassReader getClassReader(Object namespace, String className, ClassReaderLoader loader) throws IOException {
+        return getEntry(namespace, className, false).getClassReader(className, loader);
+    }
+
+    ClassInfo getClassInfo(Object namespace, String className, ClassReaderLoader loader) throws IOException {
+        return getEntry(namespace, className, false).getClassInfo(className, loader);
+    }
+
+    /**
+     * Stores a class obtained from somewhere else (e.g. captured while the
+     * class was being loaded), so that it is not read again from the
+     * ClassLoader. Classes already stored are not replaced.
+     */
+    void putClassReader(Object namespace, String className, ClassReader classReader) {
+        getEntry(namespace, className, false).putClassReader(classReader);
+    }
+
+    /**
+     * Makes a class stored under the ClassLoader that defined it available
+     * also under a ClassLoader delegating to it, so that the generators
+     * looking the class up from the latter don't read it again.
+     *
+     * @param definingNamespace the ClassLoader that defined the class
+     * @param namespace the ClassLoader the class is visible from
+     */
+    void shareClassReader(Object definingNamespace, Object namespace, String className) {
+        Entry definingEntry;
+        synchronized (this) {
+            expungeCollectedNamespaces();
+            definingEntry = entries.get(new Key(definingNamespace, className, false, null));
+        }
+        ClassReader classReader = definingEntry == null ? null : definingEntry.peekClassReader();
+        if (classReader != null) {
+            putClassReader(namespace, className, classReader);
+        }
+    }
+
+    /**
+     * @param namespace the ClassLoader that defined the wrapped type, or the
+     * ClassBytesSource the hierarchy is read from
+     */
+    List<String> getHierarchy(Object namespace, String className, HierarchyLoader loader) throws IOException {
+        return getEntry(namespace, className, true).getHierarchy(loader);
+    }
+
+    private synchronized Entry getEntry(Object namespace, String className, boolean hierarchy) {
+        expungeCollectedNamespaces();
+        Key key = new Key(namespace, className, hierarchy, collectedNamespaces);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    private void expungeCollectedNamespaces() {
+        Reference<?> ref;
+        while ((ref = collectedNamespaces.poll()) != null) {
+            // a cleared key is equal only to itself
+            entries.remove((Key) ref);
+        }
+    }
+
+    /**
+     * @return the number of lookups of classes, method tables or hierarchies
+     * that have been served from the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups of classes, method tables or hierarchies
+     * that required reading the classes
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of entries removed because the cache was full
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of classes and hierarchies currently stored
+     */
+    public synchronized int size() {
+        expungeCollectedNamespaces();
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "GeneratorCache{size=" + size() + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "}";
+    }
+
+    /**
+     * Values are loaded lazily, holding the lock of the entry, so that the
+     * same class is never read twice concurrently. Entries never reference
+     * Class objects, otherwise they would prevent ClassLoaders from being
+     * collected.
+     */
+    private class Entry {
+
+        private ClassReader classReader;
+        private ClassInfo classInfo;
+        private List<String> hierarchy;
+
+        synchronized ClassReader getClassReader(String className, ClassReaderLoader loader) throws IOException {
+            if (classReader == null) {
+                misses.increment();
+                classReader = loader.load(className);
+            } else {
+                hits.increment();
+            }
+            return classReader;
+        }
+
+        synchronized ClassReader peekClassReader() {
+            return classReader;
+        }
+
+        synchronized void putClassReader(ClassReader classReader) {
+            if (this.classReader == null) {
+                this.classReader = classReader;
+            }
+        }
+
+        synchronized ClassInfo getClassInfo(String className, ClassReaderLoader loader) throws IOException {
+            if (classInfo == null) {
+                misses.increment();
+                if (classReader == null) {
+                    classReader = loader.load(className);
+                }
+                classInfo = ClassInfo.read(classReader);
+            } else {
+                hits.increment();
+            }
+            return classInfo;
+        }
+
+        synchronized List<String> getHierarchy(HierarchyLoader loader) throws IOException {
+            if (hierarchy == null) {
+                misses.increment();
+                hierarchy = loader.load();
+            } else {
+                hits.increment();
+            }
+            return hierarchy;
+        }
+    }
+
+    /**
+     * The null namespace represents the system ClassLoader. Non null
+     * namespaces are weakly referenced and compared by identity.
+     */
+    private static class Key extends WeakReference<Object> {
+
+        private final boolean systemClassLoader;
+        private final String className;
+        private final boolean hierarchy;
+        private final int hash;
+
+        Key(Object namespace, String className, boolean hierarchy, ReferenceQueue<Object> queue) {
+            super(namespace, namespace == null ? null : queue);
+            this.systemClassLoader = namespace == null;
+            this.className = className;
+            this.hierarchy = hierarchy;
+            this.hash = 31 * (31 * System.identityHashCode(namespace) + className.hashCode()) + (hierarchy ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            if (hierarchy != other.hierarchy || !className.equals(other.className)) {
+                return false;
+            }
+            if (systemClassLoader || other.systemClassLoader) {
+                return systemClassLoader == other.systemClassLoader;
+            }
+            Object namespace = get();
+            return namespace != null && namespace == other.get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
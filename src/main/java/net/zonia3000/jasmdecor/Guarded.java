@@ -0,0 +1,42 @@
+package net.zonia3000.jasmdecor;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Makes the decorator generated from the annotated template thread-safe,
+ * running the delegation methods under the read or the write lock of a
+ * <code>StampedLock</code> of the decorator instance. The attributes are the
+ * patterns of a {@link PatternLockingRule}. Methods defined by the template
+ * are not locked.
+ *
+ * @author zonia3000
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Guarded {
+
+    /**
+     * @return the patterns of the methods using optimistic reads
+     */
+    String[] optimisticRead() default {};
+
+    /**
+     * @return the patterns of the methods running under the read lock
+     */
+    String[] read() default {};
+
+    /**
+     * @return the patterns of the methods running under the write lock
+     */
+    String[] write() default {};
+
+    /**
+     * @return the mode of the methods not matching any pattern
+     */
+    LockMode others() default LockMode.WRITE;
+}
@@ -0,0 +1,96 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.IOException;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassTooLargeException;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodTooLargeException;
+import static org.objectweb.asm.Opcodes.ACC_INTERFACE;
+import static org.objectweb.asm.Opcodes.ASM6;
+
+/**
+ * ClassWriter answering the common superclass queries performed while
+ * computing frames (<code>COMPUTE_FRAMES</code>) from the
+ * {@link SupertypeGraph}, instead of loading the classes with
+ * <code>Class.forName</code> like the default implementation does. In this way
+ * the classes are never loaded and types visible only from the ClassLoader of
+ * the generator are resolved too.
+ * <p>
+ * The class must be written through {@link #getClassVisitor()}, so that its
+ * own supertypes are known.
+ *
+ * @author zonia3000
+ */
+class HierarchyClassWriter extends ClassWriter {
+
+    private final SupertypeGraph.Resolver resolver;
+
+    /**
+     * @param flags the ClassWriter flags
+     * @param classBytesSource the source of the classes referenced by the
+     * generated class
+     * @param namespace the ClassLoader or the ClassBytesSource used for
+     * grouping the classes in the graph
+     */
+    HierarchyClassWriter(int flags, ClassBytesSource classBytesSource, Object namespace) {
+        this(null, flags, classBytesSource, namespace);
+    }
+
+    /**
+     * @param classReader the class whose constant pool and unchanged methods
+     * are copied, or null
+     */
+    HierarchyClassWriter(ClassReader classReader, int flags, ClassBytesSource classBytesSource, Object namespace) {
+        super(classReader, flags);
+        this.resolver = SupertypeGraph.getInstance().getResolver(namespace, classBytesSource);
+    }
+
+    /**
+     * @return a visitor forwarding to this writer, which records the header of
+     * the written class (ClassWriter.visit can't be overridden)
+     */
+    ClassVisitor getClassVisitor() {
+        return new ClassVisitor(ASM6, this) {
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                // the class being written is not available from the source
+                resolver.setLocalClass(name, superName, interfaces, (access & ACC_INTERFACE) != 0);
+                super.visit(version, access, name, signature, superName, interfaces);
+            }
+        };
+    }
+
+    /**
+     * Returns the bytes of the written class, failing with a descriptive
+     * error when the class exceeds the limits of the class file format. A
+     * delegation method adds up to 4 constant pool entries (its name and
+     * descriptor, shared with the call of the wrapped method, and the
+     * reference to the wrapped method), so a decorator can't have more than
+     * about 16000 methods.
+     *
+     * @throws IOException if the constant pool or the code of a method are
+     * too large
+     */
+    byte[] toClassBytes() throws IOException {
+        try {
+            return toByteArray();
+        } catch (ClassTooLargeException e) {
+            throw new IOException("Class " + e.getClassName().replace('/', '.') + " too large: its constant pool would have "
+                    + e.getConstantPoolCount() + " entries, while a class file can have at most 65535 of them."
+                    + " Decorate a narrower type of the hierarchy", e);
+        } catch (MethodTooLargeException e) {
+            throw new IOException("Method " + e.getClassName().replace('/', '.') + "." + e.getMethodName() + e.getDescriptor()
+                    + " too large: its code would have " + e.getCodeSize() + " bytes, while a method can have at most 65535 of them", e);
+        }
+    }
+
+    @Override
+    protected String getCommonSuperClass(String type1, String type2) {
+        try {
+            return resolver.getCommonSuperClass(type1, type2);
+        } catch (IOException e) {
+            throw new TypeNotPresentException(type1 + " or " + type2, e);
+        }
+    }
+}
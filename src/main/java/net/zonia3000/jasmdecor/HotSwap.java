@@ -0,0 +1,113 @@
+package net.zonia3000.jasmdecor;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replaces at runtime the instance receiving the calls of all the instances
+ * of a hot-swappable decorator class (see
+ * {@link DecoratorGenerator#setHotSwappable(boolean)}), e.g. for switching a
+ * cache backend or failing over to a stub.
+ * <p>
+ * The delegation methods get the current target through an
+ * <code>invokedynamic</code> instruction linked to a
+ * <code>MutableCallSite</code> returning a constant, so the JIT can inline
+ * the target as if it were a final field until the next swap, which
+ * deoptimizes the compiled callers. When no target is set the decorators
+ * delegate to their own wrapped instance. Swaps are expensive and are meant
+ * to be rare.
+ *
+ * @author zonia3000
+ */
+public class HotSwap {
+
+    private static final ClassValue<HotSwap> HOT_SWAPS = new ClassValue<HotSwap>() {
+        @Override
+        protected HotSwap computeValue(Class<?> decoratorClass) {
+            try {
+                return new HotSwap(decoratorClass, decoratorClass.getDeclaredField("wrapped").getType());
+            } catch (NoSuchFieldException e) {
+                throw new IllegalArgumentException(decoratorClass.getName() + " is not a decorator", e);
+            }
+        }
+    };
+
+    private final Class<?> decoratorClass;
+    private final Class<?> wrappedType;
+    private final MutableCallSite callSite;
+    private final AtomicLong swaps = new AtomicLong();
+    private volatile Object target;
+
+    private HotSwap(Class<?> decoratorClass, Class<?> wrappedType) {
+        this.decoratorClass = decoratorClass;
+        this.wrappedType = wrappedType;
+        this.callSite = new MutableCallSite(MethodHandles.constant(wrappedType, null));
+    }
+
+    /**
+     * Bootstrap method of the <code>invokedynamic</code> instructions of the
+     * generated decorators: all the instructions of a decorator class share
+     * the same call site.
+     */
+    public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type) {
+        return of(lookup.lookupClass()).callSite;
+    }
+
+    /**
+     * @param decoratorClass a hot-swappable decorator class
+     * @return the object switching the target of the decorator instances
+     */
+    public static HotSwap of(Class<?> decoratorClass) {
+        return HOT_SWAPS.get(decoratorClass);
+    }
+
+    /**
+     * Makes all the instances of the decorator delegate to the specified
+     * target, which replaces the previous one.
+     *
+     * @param target the new target, or null for delegating again to the
+     * wrapped instance of each decorator
+     */
+    public synchronized void swap(Object target) {
+        this.target = wrappedType.cast(target);
+        callSite.setTarget(MethodHandles.constant(wrappedType, target));
+        // makes the new target visible to the threads already running the
+        // decorator methods
+        MutableCallSite.syncAll(new MutableCallSite[]{callSite});
+        swaps.incrementAndGet();
+    }
+
+    /**
+     * Makes the decorators delegate again to their own wrapped instances.
+     */
+    public void reset() {
+        swap(null);
+    }
+
+    /**
+     * @return the current target, or null if the decorators delegate to
+     * their wrapped instances
+     */
+    public Object getTarget() {
+        return target;
+    }
+
+    public Class<?> getDecoratorClass() {
+        return decoratorClass;
+    }
+
+    /**
+     * @return the number of swaps, including the resets
+     */
+    public long getSwapCount() {
+        return swaps.get();
+    }
+
+    @Override
+    public String toString() {
+        return "HotSwap{" + decoratorClass.getName() + ", target=" + target + ", swaps=" + getSwapCount() + "}";
+    }
+}
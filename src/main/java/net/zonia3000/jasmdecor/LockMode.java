@@ -0,0 +1,31 @@
+package net.zonia3000.jasmdecor;
+
+/**
+ * How a delegation method of a thread-safe decorator acquires the lock of the
+ * decorator instance (see {@link LockingRule}).
+ *
+ * @author zonia3000
+ */
+public enum LockMode {
+
+    /**
+     * The method is delegated without locking.
+     */
+    NONE,
+    /**
+     * The method runs holding the read lock, together with the other
+     * readers.
+     */
+    READ,
+    /**
+     * The method runs first without locking, validating an optimistic read
+     * stamp of the lock, and again holding the read lock when a writer
+     * interfered. Suitable only for methods without side effects which can't
+     * fail or loop forever on a state being modified.
+     */
+    OPTIMISTIC_READ,
+    /**
+     * The method runs holding the exclusive write lock.
+     */
+    WRITE
+}
@@ -0,0 +1,170 @@
+package net.zonia3000.jasmdecor;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates delegation methods running under the <code>StampedLock</code> of
+ * the decorator instance:
+ * <pre>
+ * long stamp = lock.readLock(); // or writeLock()
+ * try {
+ *     return wrapped.aMethod(args);
+ * } finally {
+ *     lock.unlockRead(stamp); // or unlockWrite(stamp)
+ * }
+ * </pre>
+ * Optimistic reads first try the call without locking:
+ * <pre>
+ * long stamp = lock.tryOptimisticRead();
+ * if (stamp != 0) {
+ *     try {
+ *         result = wrapped.aMethod(args);
+ *         if (lock.validate(stamp)) {
+ *             return result;
+ *         }
+ *     } catch (Throwable t) {
+ *         if (lock.validate(stamp)) {
+ *             throw t;
+ *         }
+ *     }
+ * }
+ * // read lock, as above
+ * </pre>
+ * The branches and the handlers require frames, so the ClassWriter must
+ * compute them. The static methods write the lock field and its
+ * initialization.
+ *
+ * @author zonia3000
+ */
+class LockingMethodAdapter extends DelegationMethodAdapter {
+
+    static final String LOCK_FIELD = "jasmdecor$lock";
+    private static final String LOCK_INTERNAL_NAME = "java/util/concurrent/locks/StampedLock";
+    private static final String LOCK_DESCRIPTOR = "L" + LOCK_INTERNAL_NAME + ";";
+
+    private final LockMode lockMode;
+
+    LockingMethodAdapter(String decoratorInternalName, String wrappedInternalName, boolean wrappedInterface,
+            MethodVisitor writer, String methodName, String descriptor, LockMode lockMode) {
+        super(decoratorInternalName, wrappedInternalName, wrappedInterface, writer, methodName, descriptor);
+        this.lockMode = lockMode;
+    }
+
+    @Override
+    public void visitCode() {
+        // local variables after this and the arguments
+        int stampVar = Type.getArgumentsAndReturnSizes(descriptor) >> 2;
+
+        if (lockMode == LockMode.OPTIMISTIC_READ) {
+            visitOptimisticRead(stampVar);
+        }
+        if (lockMode == LockMode.WRITE) {
+            visitLocked(stampVar, "writeLock", "unlockWrite");
+        } else {
+            visitLocked(stampVar, "readLock", "unlockRead");
+        }
+
+        // computed by the ClassWriter
+        writer.visitMaxs(0, 0);
+    }
+
+    private void visitOptimisticRead(int stampVar) {
+        Type returnType = Type.getReturnType(descriptor);
+        int resultVar = stampVar + 2;
+        int exceptionVar = resultVar + returnType.getSize();
+
+        Label tryStart = new Label();
+        Label tryEnd = new Label();
+        Label handler = new Label();
+        Label locked = new Label();
+        writer.visitTryCatchBlock(tryStart, tryEnd, handler, "java/lang/Throwable");
+
+        loadLock();
+        writer.visitMethodInsn(INVOKEVIRTUAL, LOCK_INTERNAL_NAME, "tryOptimisticRead", "()J", false);
+        writer.visitVarInsn(LSTORE, stampVar);
+        writer.visitVarInsn(LLOAD, stampVar);
+        writer.visitInsn(LCONST_0);
+        writer.visitInsn(LCMP);
+        writer.visitJumpInsn(IFEQ, locked);
+
+        writer.visitLabel(tryStart);
+        invokeWrapped();
+        writer.visitLabel(tryEnd);
+        if (returnType != Type.VOID_TYPE) {
+            writer.visitVarInsn(returnType.getOpcode(ISTORE), resultVar);
+        }
+        validate(stampVar, locked);
+        if (returnType != Type.VOID_TYPE) {
+            writer.visitVarInsn(returnType.getOpcode(ILOAD), resultVar);
+        }
+        addReturnInsn(descriptor);
+
+        // the exception is genuine only if no writer interfered
+        writer.visitLabel(handler);
+        writer.visitVarInsn(ASTORE, exceptionVar);
+        validate(stampVar, locked);
+        writer.visitVarInsn(ALOAD, exceptionVar);
+        writer.visitInsn(ATHROW);
+
+        writer.visitLabel(locked);
+    }
+
+    private void validate(int stampVar, Label invalid) {
+        loadLock();
+        writer.visitVarInsn(LLOAD, stampVar);
+        writer.visitMethodInsn(INVOKEVIRTUAL, LOCK_INTERNAL_NAME, "validate", "(J)Z", false);
+        writer.visitJumpInsn(IFEQ, invalid);
+    }
+
+    private void visitLocked(int stampVar, String lockMethod, String unlockMethod) {
+        Label tryStart = new Label();
+        Label tryEnd = new Label();
+        Label handler = new Label();
+        writer.visitTryCatchBlock(tryStart, tryEnd, handler, null);
+
+        loadLock();
+        writer.visitMethodInsn(INVOKEVIRTUAL, LOCK_INTERNAL_NAME, lockMethod, "()J", false);
+        writer.visitVarInsn(LSTORE, stampVar);
+
+        writer.visitLabel(tryStart);
+        invokeWrapped();
+        writer.visitLabel(tryEnd);
+        unlock(stampVar, unlockMethod);
+        addReturnInsn(descriptor);
+
+        writer.visitLabel(handler);
+        unlock(stampVar, unlockMethod);
+        writer.visitInsn(ATHROW);
+    }
+
+    private void unlock(int stampVar, String unlockMethod) {
+        loadLock();
+        writer.visitVarInsn(LLOAD, stampVar);
+        writer.visitMethodInsn(INVOKEVIRTUAL, LOCK_INTERNAL_NAME, unlockMethod, "(J)V", false);
+    }
+
+    private void loadLock() {
+        writer.visitVarInsn(ALOAD, 0);
+        writer.visitFieldInsn(GETFIELD, decoratorInternalName, LOCK_FIELD, LOCK_DESCRIPTOR);
+    }
+
+    /**
+     * Writes the creation of the lock, to be placed at the end of the
+     * constructors.
+     */
+    static void visitInitialization(MethodVisitor mv, String decoratorInternalName) {
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitTypeInsn(NEW, LOCK_INTERNAL_NAME);
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, LOCK_INTERNAL_NAME, "<init>", "()V", false);
+        mv.visitFieldInsn(PUTFIELD, decoratorInternalName, LOCK_FIELD, LOCK_DESCRIPTOR);
+    }
+
+    static void visitLockField(ClassVisitor cv) {
+        cv.visitField(ACC_PRIVATE + ACC_FINAL + ACC_SYNTHETIC, LOCK_FIELD, LOCK_DESCRIPTOR, null, null).visitEnd();
+    }
+}
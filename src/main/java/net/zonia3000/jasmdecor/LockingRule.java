@@ -0,0 +1,18 @@
+package net.zonia3000.jasmdecor;
+
+/**
+ * Classifies the delegation methods of a thread-safe decorator as readers or
+ * writers (see {@link DecoratorGenerator#setLockingRule(LockingRule)}).
+ *
+ * @author zonia3000
+ */
+@FunctionalInterface
+public interface LockingRule {
+
+    /**
+     * @param name the method name
+     * @param descriptor the method descriptor
+     * @return how the method must acquire the lock
+     */
+    LockMode getLockMode(String name, String descriptor);
+}
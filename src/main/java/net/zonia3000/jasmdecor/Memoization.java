@@ -0,0 +1,60 @@
+package net.zonia3000.jasmdecor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of the cache of a memoized method (see {@link Memoizer}).
+ *
+ * @author zonia3000
+ */
+public class Memoization {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final int maxEntries;
+    private final long expireAfterWrite;
+
+    public Memoization() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries the maximum number of cached results
+     */
+    public Memoization(int maxEntries) {
+        this(maxEntries, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param maxEntries the maximum number of cached results
+     * @param expireAfterWrite the time after which a cached result expires, or
+     * 0 if results never expire
+     * @param unit the unit of the expiration time
+     */
+    public Memoization(int maxEntries, long expireAfterWrite, TimeUnit unit) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("The cache size must be positive");
+        }
+        if (expireAfterWrite < 0) {
+            throw new IllegalArgumentException("The expiration time can't be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.expireAfterWrite = unit.toNanos(expireAfterWrite);
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return the nanoseconds after which a cached result expires, or 0
+     */
+    public long getExpireAfterWrite() {
+        return expireAfterWrite;
+    }
+
+    @Override
+    public String toString() {
+        return "Memoization{maxEntries=" + maxEntries + ", expireAfterWrite=" + expireAfterWrite + "ns}";
+    }
+}
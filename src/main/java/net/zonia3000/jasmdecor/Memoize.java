@@ -0,0 +1,31 @@
+package net.zonia3000.jasmdecor;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a decorated class/interface whose results must be cached
+ * by the generated decorators (see {@link Memoizer}). The method must be pure
+ * and return a value.
+ *
+ * @author zonia3000
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface Memoize {
+
+    /**
+     * @return the maximum number of cached results
+     */
+    int maxEntries() default Memoization.DEFAULT_MAX_ENTRIES;
+
+    /**
+     * @return the milliseconds after which a cached result expires; by
+     * default results never expire
+     */
+    long expireAfterWriteMillis() default 0;
+}
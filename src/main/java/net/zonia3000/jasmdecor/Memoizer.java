@@ -0,0 +1,331 @@
+package net.zonia3000.jasmdecor;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded concurrent cache of the results of a memoized method of a decorator
+ * (see {@link DecoratorGenerator#addMemoizedMethod(String, Memoization)}).
+ * <p>
+ * The cache is split into segments, each one guarded by its own lock. A
+ * segment is an open addressing hash table evicting entries with the CLOCK
+ * algorithm (an approximation of LRU which doesn't reorder the entries on
+ * reads). Methods having a single primitive argument use <code>long</code>
+ * keys stored in primitive arrays, so their lookups never box; the other
+ * methods use their single argument, or the list of their arguments, as key.
+ * Null results are not cached.
+ *
+ * @author zonia3000
+ */
+public class Memoizer {
+
+    private static final int MAX_SEGMENTS = 16;
+    private static final Object NULL_KEY = new Object();
+
+    private final String method;
+    private final long expireAfterWrite;
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Called by the generated decorators.
+     *
+     * @param method the name and descriptor of the memoized method
+     * @param primitiveKeys true if the keys are passed as <code>long</code>
+     * @param maxEntries the maximum number of cached results
+     * @param expireAfterWrite the nanoseconds after which a result expires, or
+     * 0 if results never expire
+     */
+    public Memoizer(String method, boolean primitiveKeys, int maxEntries, long expireAfterWrite) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("The cache size must be positive");
+        }
+        this.method = method;
+        this.expireAfterWrite = expireAfterWrite;
+        int segmentsCount = Integer.highestOneBit(Math.min(MAX_SEGMENTS, Math.max(1, maxEntries / 8)));
+        this.segments = new Segment[segmentsCount];
+        this.segmentMask = segmentsCount - 1;
+        // the remainder is spread on the first segments, so that the total
+        // capacity is exactly maxEntries
+        for (int i = 0; i < segmentsCount; i++) {
+            int segmentCapacity = maxEntries / segmentsCount + (i < maxEntries % segmentsCount ? 1 : 0);
+            segments[i] = new Segment(primitiveKeys, segmentCapacity);
+        }
+    }
+
+    /**
+     * @return the cached result, or null if it is not cached
+     */
+    public Object get(long key) {
+        int hash = hash(key);
+        return record(segments[hash & segmentMask].get(key, null, hash));
+    }
+
+    public void put(long key, Object value) {
+        if (value != null) {
+            int hash = hash(key);
+            segments[hash & segmentMask].put(key, null, hash, value);
+        }
+    }
+
+    /**
+     * @return the cached result, or null if it is not cached
+     */
+    public Object get(Object key) {
+        Object nonNullKey = key == null ? NULL_KEY : key;
+        int hash = hash(nonNullKey.hashCode());
+        return record(segments[hash & segmentMask].get(0, nonNullKey, hash));
+    }
+
+    public void put(Object key, Object value) {
+        if (value != null) {
+            Object nonNullKey = key == null ? NULL_KEY : key;
+            int hash = hash(nonNullKey.hashCode());
+            segments[hash & segmentMask].put(0, nonNullKey, hash, value);
+        }
+    }
+
+    private Object record(Object value) {
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    private static int hash(long key) {
+        return hash((int) (key ^ (key >>> 32)));
+    }
+
+    private static int hash(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @param decoratorClass a decorator class having memoized methods
+     * @return the memoizers of the decorator, by method name and descriptor
+     * (empty if the decorator has no memoized methods)
+     */
+    public static Map<String, Memoizer> of(Class<?> decoratorClass) {
+        Map<String, Memoizer> memoizers = new LinkedHashMap<>();
+        try {
+            Field field = decoratorClass.getDeclaredField(MemoizingMethodAdapter.MEMOIZERS_FIELD);
+            field.setAccessible(true);
+            for (Memoizer memoizer : (Memoizer[]) field.get(null)) {
+                memoizers.put(memoizer.getMethod(), memoizer);
+            }
+        } catch (NoSuchFieldException e) {
+            return Collections.emptyMap();
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return memoizers;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of results removed because the cache was full or
+     * because they were expired
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of cached results (including the expired ones not
+     * yet removed)
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Memoizer{" + method + ", size=" + size() + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "}";
+    }
+
+    /**
+     * Hash table using linear probing, at most half full. Removed entries are
+     * replaced by shifting back the following entries of their cluster, so no
+     * tombstone is needed.
+     */
+    private class Segment {
+
+        // only one of the key arrays is used
+        private final long[] longKeys;
+        private final Object[] objectKeys;
+        private final Object[] values;
+        private final boolean[] referenced;
+        private final long[] writeTimes;
+        private final int capacity;
+        private final int mask;
+
+        private int size;
+        private int clockHand;
+
+        Segment(boolean primitiveKeys, int capacity) {
+            int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+            this.longKeys = primitiveKeys ? new long[tableSize] : null;
+            this.objectKeys = primitiveKeys ? null : new Object[tableSize];
+            this.values = new Object[tableSize];
+            this.referenced = new boolean[tableSize];
+            this.writeTimes = expireAfterWrite > 0 ? new long[tableSize] : null;
+            this.capacity = capacity;
+            this.mask = tableSize - 1;
+        }
+
+        synchronized Object get(long longKey, Object objectKey, int hash) {
+            int index = find(longKey, objectKey, hash);
+            if (values[index] == null) {
+                return null;
+            }
+            if (writeTimes != null && System.nanoTime() - writeTimes[index] >= expireAfterWrite) {
+                remove(index);
+                evictions.increment();
+                return null;
+            }
+            referenced[index] = true;
+            return values[index];
+        }
+
+        synchronized void put(long longKey, Object objectKey, int hash, Object value) {
+            int index = find(longKey, objectKey, hash);
+            if (values[index] == null) {
+                if (size == capacity) {
+                    evict();
+                    // the entries may have been shifted
+                    index = find(longKey, objectKey, hash);
+                }
+                if (longKeys != null) {
+                    longKeys[index] = longKey;
+                } else {
+                    objectKeys[index] = objectKey;
+                }
+                size++;
+            }
+            values[index] = value;
+            referenced[index] = false;
+            if (writeTimes != null) {
+                writeTimes[index] = System.nanoTime();
+            }
+        }
+
+        /**
+         * @return the index of the key, or of the empty slot where it has to
+         * be inserted
+         */
+        private int find(long longKey, Object objectKey, int hash) {
+            int index = (hash >>> 4) & mask;
+            while (values[index] != null) {
+                if (longKeys != null ? longKeys[index] == longKey : objectKeys[index].equals(objectKey)) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        /**
+         * Removes the first entry not referenced since the last pass of the
+         * clock hand, clearing the references of the entries it passes.
+         */
+        private void evict() {
+            while (true) {
+                clockHand = (clockHand + 1) & mask;
+                if (values[clockHand] != null) {
+                    if (!referenced[clockHand]) {
+                        remove(clockHand);
+                        evictions.increment();
+                        return;
+                    }
+                    referenced[clockHand] = false;
+                }
+            }
+        }
+
+        private void remove(int index) {
+            int hole = index;
+            int next = index;
+            while (true) {
+                next = (next + 1) & mask;
+                if (values[next] == null) {
+                    break;
+                }
+                int home = (hashAt(next) >>> 4) & mask;
+                // entries whose home is cyclically in (hole, next] stay there
+                boolean stays = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+                if (!stays) {
+                    move(next, hole);
+                    hole = next;
+                }
+            }
+            values[hole] = null;
+            if (objectKeys != null) {
+                objectKeys[hole] = null;
+            }
+            size--;
+        }
+
+        private int hashAt(int index) {
+            return longKeys != null ? hash(longKeys[index]) : hash(objectKeys[index].hashCode());
+        }
+
+        private void move(int from, int to) {
+            if (longKeys != null) {
+                longKeys[to] = longKeys[from];
+            } else {
+                objectKeys[to] = objectKeys[from];
+            }
+            values[to] = values[from];
+            referenced[to] = referenced[from];
+            if (writeTimes != null) {
+                writeTimes[to] = writeTimes[from];
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void clear() {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = null;
+                if (objectKeys != null) {
+                    objectKeys[i] = null;
+                }
+            }
+            size = 0;
+        }
+    }
+}
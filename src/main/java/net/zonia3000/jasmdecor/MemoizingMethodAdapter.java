@@ -0,0 +1,247 @@
+package net.zonia3000.jasmdecor;
+
+import java.util.List;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates delegation methods caching the results of the wrapped instance in
+ * a {@link Memoizer}:
+ * <pre>
+ * Object cached = MEMOIZERS[memoizerId].get(key);
+ * if (cached != null) {
+ *     return (ReturnType) cached;
+ * }
+ * result = wrapped.aMethod(args);
+ * MEMOIZERS[memoizerId].put(key, result);
+ * return result;
+ * </pre>
+ * The key is a <code>long</code> for methods without arguments or with a
+ * single primitive argument, the argument itself for methods with a single
+ * reference argument and the list of the arguments otherwise. The branches
+ * require frames, so the ClassWriter must compute them. The static methods
+ * write the field holding the memoizers and its initialization.
+ *
+ * @author zonia3000
+ */
+class MemoizingMethodAdapter extends DelegationMethodAdapter {
+
+    static final String MEMOIZERS_FIELD = "jasmdecor$memoizers";
+    private static final String CREATE_MEMOIZERS_METHOD = "jasmdecor$createMemoizers";
+
+    private static final String MEMOIZER_INTERNAL_NAME = Type.getInternalName(Memoizer.class);
+    private static final String MEMOIZERS_DESCRIPTOR = "[" + Type.getDescriptor(Memoizer.class);
+
+    /**
+     * A memoized method of the generated decorator.
+     */
+    static class MemoizedMethod {
+
+        private final String method;
+        private final Memoization memoization;
+        private final boolean primitiveKeys;
+
+        MemoizedMethod(String method, Memoization memoization, boolean primitiveKeys) {
+            this.method = method;
+            this.memoization = memoization;
+            this.primitiveKeys = primitiveKeys;
+        }
+    }
+
+    private final int memoizerId;
+
+    MemoizingMethodAdapter(String decoratorInternalName, String wrappedInternalName, boolean wrappedInterface,
+            MethodVisitor writer, String methodName, String descriptor, int memoizerId) {
+        super(decoratorInternalName, wrappedInternalName, wrappedInterface, writer, methodName, descriptor);
+        this.memoizerId = memoizerId;
+    }
+
+    /**
+     * @return true if the results of the method can be cached
+     */
+    static boolean isMemoizable(String descriptor) {
+        return Type.getReturnType(descriptor) != Type.VOID_TYPE;
+    }
+
+    /**
+     * @return true if the keys of the method are passed as <code>long</code>
+     */
+    static boolean hasPrimitiveKeys(String descriptor) {
+        Type[] argumentTypes = Type.getArgumentTypes(descriptor);
+        return argumentTypes.length == 0 || (argumentTypes.length == 1 && isPrimitive(argumentTypes[0]));
+    }
+
+    private static boolean isPrimitive(Type type) {
+        return type.getSort() != Type.OBJECT && type.getSort() != Type.ARRAY;
+    }
+
+    @Override
+    public void visitCode() {
+        Type[] argumentTypes = Type.getArgumentTypes(descriptor);
+        Type returnType = Type.getReturnType(descriptor);
+        boolean primitiveKeys = hasPrimitiveKeys(descriptor);
+        String keyDescriptor = primitiveKeys ? "J" : "Ljava/lang/Object;";
+
+        // local variables after this and the arguments
+        int keyVar = Type.getArgumentsAndReturnSizes(descriptor) >> 2;
+        int resultVar = keyVar + (primitiveKeys ? 2 : 1);
+
+        loadKey(argumentTypes);
+        writer.visitVarInsn(primitiveKeys ? LSTORE : ASTORE, keyVar);
+
+        // cached result
+        Label miss = new Label();
+        loadMemoizer();
+        writer.visitVarInsn(primitiveKeys ? LLOAD : ALOAD, keyVar);
+        writer.visitMethodInsn(INVOKEVIRTUAL, MEMOIZER_INTERNAL_NAME, "get", "(" + keyDescriptor + ")Ljava/lang/Object;", false);
+        writer.visitInsn(DUP);
+        writer.visitJumpInsn(IFNULL, miss);
+        unbox(returnType);
+        addReturnInsn(descriptor);
+
+        // delegated call
+        writer.visitLabel(miss);
+        writer.visitInsn(POP);
+        invokeWrapped();
+        writer.visitVarInsn(returnType.getOpcode(ISTORE), resultVar);
+        loadMemoizer();
+        writer.visitVarInsn(primitiveKeys ? LLOAD : ALOAD, keyVar);
+        writer.visitVarInsn(returnType.getOpcode(ILOAD), resultVar);
+        box(writer, returnType);
+        writer.visitMethodInsn(INVOKEVIRTUAL, MEMOIZER_INTERNAL_NAME, "put", "(" + keyDescriptor + "Ljava/lang/Object;)V", false);
+        writer.visitVarInsn(returnType.getOpcode(ILOAD), resultVar);
+        addReturnInsn(descriptor);
+
+        // computed by the ClassWriter
+        writer.visitMaxs(0, 0);
+    }
+
+    private void loadMemoizer() {
+        writer.visitFieldInsn(GETSTATIC, decoratorInternalName, MEMOIZERS_FIELD, MEMOIZERS_DESCRIPTOR);
+        pushInt(writer, memoizerId);
+        writer.visitInsn(AALOAD);
+    }
+
+    /**
+     * Puts the key of the call on the stack, without boxing the primitive
+     * arguments when the method has only one.
+     */
+    private void loadKey(Type[] argumentTypes) {
+        if (argumentTypes.length == 0) {
+            writer.visitInsn(LCONST_0);
+        } else if (argumentTypes.length == 1) {
+            Type type = argumentTypes[0];
+            writer.visitVarInsn(type.getOpcode(ILOAD), 1);
+            switch (type.getSort()) {
+                case Type.OBJECT:
+                case Type.ARRAY:
+                case Type.LONG:
+                    break;
+                case Type.FLOAT:
+                    writer.visitMethodInsn(INVOKESTATIC, "java/lang/Float", "floatToIntBits", "(F)I", false);
+                    writer.visitInsn(I2L);
+                    break;
+                case Type.DOUBLE:
+                    writer.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "doubleToLongBits", "(D)J", false);
+                    break;
+                default:
+                    writer.visitInsn(I2L);
+            }
+        } else {
+            pushInt(writer, argumentTypes.length);
+            writer.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+            int varIndex = 1;
+            for (int i = 0; i < argumentTypes.length; i++) {
+                writer.visitInsn(DUP);
+                pushInt(writer, i);
+                writer.visitVarInsn(argumentTypes[i].getOpcode(ILOAD), varIndex);
+                box(writer, argumentTypes[i]);
+                writer.visitInsn(AASTORE);
+                varIndex += argumentTypes[i].getSize();
+            }
+            writer.visitMethodInsn(INVOKESTATIC, "java/util/Arrays", "asList", "([Ljava/lang/Object;)Ljava/util/List;", false);
+        }
+    }
+
+    private void unbox(Type type) {
+        if (!isPrimitive(type)) {
+            writer.visitTypeInsn(CHECKCAST, type.getInternalName());
+            return;
+        }
+        String boxInternalName = getBoxType(type).getInternalName();
+        writer.visitTypeInsn(CHECKCAST, boxInternalName);
+        writer.visitMethodInsn(INVOKEVIRTUAL, boxInternalName, type.getClassName() + "Value", "()" + type.getDescriptor(), false);
+    }
+
+    static void box(MethodVisitor mv, Type type) {
+        if (isPrimitive(type)) {
+            Type boxType = getBoxType(type);
+            mv.visitMethodInsn(INVOKESTATIC, boxType.getInternalName(), "valueOf", "(" + type.getDescriptor() + ")" + boxType.getDescriptor(), false);
+        }
+    }
+
+    private static Type getBoxType(Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+                return Type.getType(Boolean.class);
+            case Type.BYTE:
+                return Type.getType(Byte.class);
+            case Type.CHAR:
+                return Type.getType(Character.class);
+            case Type.SHORT:
+                return Type.getType(Short.class);
+            case Type.INT:
+                return Type.getType(Integer.class);
+            case Type.FLOAT:
+                return Type.getType(Float.class);
+            case Type.LONG:
+                return Type.getType(Long.class);
+            case Type.DOUBLE:
+                return Type.getType(Double.class);
+            default:
+                throw new IllegalArgumentException("Not a primitive type: " + type);
+        }
+    }
+
+    /**
+     * Writes the initialization of the memoizers field, to be placed at the
+     * beginning of the static initializer.
+     */
+    static void visitInitialization(MethodVisitor mv, String decoratorInternalName) {
+        mv.visitMethodInsn(INVOKESTATIC, decoratorInternalName, CREATE_MEMOIZERS_METHOD, "()" + MEMOIZERS_DESCRIPTOR, false);
+        mv.visitFieldInsn(PUTSTATIC, decoratorInternalName, MEMOIZERS_FIELD, MEMOIZERS_DESCRIPTOR);
+    }
+
+    /**
+     * Writes the memoizers field and the method creating the memoizers.
+     *
+     * @param methods the memoized methods, in the order of the memoizer ids
+     */
+    static void visitMemoizersMembers(ClassVisitor cv, List<MemoizedMethod> methods) {
+        cv.visitField(ACC_PRIVATE + ACC_STATIC + ACC_FINAL + ACC_SYNTHETIC, MEMOIZERS_FIELD, MEMOIZERS_DESCRIPTOR, null, null).visitEnd();
+
+        MethodVisitor mv = cv.visitMethod(ACC_PRIVATE + ACC_STATIC + ACC_SYNTHETIC, CREATE_MEMOIZERS_METHOD, "()" + MEMOIZERS_DESCRIPTOR, null, null);
+        mv.visitCode();
+        pushInt(mv, methods.size());
+        mv.visitTypeInsn(ANEWARRAY, MEMOIZER_INTERNAL_NAME);
+        for (int i = 0; i < methods.size(); i++) {
+            MemoizedMethod method = methods.get(i);
+            mv.visitInsn(DUP);
+            pushInt(mv, i);
+            mv.visitTypeInsn(NEW, MEMOIZER_INTERNAL_NAME);
+            mv.visitInsn(DUP);
+            mv.visitLdcInsn(method.method);
+            mv.visitInsn(method.primitiveKeys ? ICONST_1 : ICONST_0);
+            pushInt(mv, method.memoization.getMaxEntries());
+            mv.visitLdcInsn(method.memoization.getExpireAfterWrite());
+            mv.visitMethodInsn(INVOKESPECIAL, MEMOIZER_INTERNAL_NAME, "<init>", "(Ljava/lang/String;ZIJ)V", false);
+            mv.visitInsn(AASTORE);
+        }
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+}
@@ -0,0 +1,131 @@
+package net.zonia3000.jasmdecor;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calls, errors and latency histogram of a method of a decorator generated
+ * with metrics enabled. Counters are striped (LongAdder), so concurrent calls
+ * don't contend on the same memory location, and all of them are allocated
+ * with the decorator class, so recording a call doesn't allocate.
+ * <p>
+ * The latency is recorded only for the sampled calls (see
+ * {@link DecoratorMetrics#setLatencySampling(int)}). The histogram has
+ * {@link #BUCKETS} buckets of exponentially increasing
+ * width: bucket 0 counts the calls shorter than 16 ns, bucket <i>i</i> the
+ * calls lasting between 2<sup>i+3</sup> and 2<sup>i+4</sup> ns and the last
+ * bucket all the longer ones.
+ *
+ * @author zonia3000
+ */
+public class MethodMetrics {
+
+    public static final int BUCKETS = 32;
+
+    private final String method;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalTime = new LongAdder();
+    private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+    MethodMetrics(String method) {
+        this.method = method;
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+    void recordCall() {
+        calls.increment();
+    }
+
+    void recordError() {
+        errors.increment();
+    }
+
+    void recordTime(long elapsed) {
+        totalTime.add(elapsed);
+        histogram[getBucket(elapsed)].increment();
+    }
+
+    static int getBucket(long elapsed) {
+        int bucket = 64 - Long.numberOfLeadingZeros(Math.max(0, elapsed) >>> 4);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * @param bucket the index of a bucket of the histogram
+     * @return the nanoseconds (excluded) up to which the calls are counted in
+     * the bucket, or <code>Long.MAX_VALUE</code> for the last bucket
+     */
+    public static long getBucketUpperBound(int bucket) {
+        if (bucket == BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        return 16L << bucket;
+    }
+
+    /**
+     * @return the method name followed by its descriptor (e.g.
+     * <code>getInt(Ljava/lang/String;)I</code>)
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the number of calls, including the failed ones
+     */
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    /**
+     * @return the number of calls that threw an exception
+     */
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    /**
+     * @return the nanoseconds spent in the sampled calls
+     */
+    public long getTotalTime() {
+        return totalTime.sum();
+    }
+
+    /**
+     * @return the number of calls whose latency has been measured
+     */
+    public long getSampledCallCount() {
+        long count = 0;
+        for (LongAdder bucket : histogram) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * @return the average nanoseconds of the sampled calls
+     */
+    public long getAverageTime() {
+        long count = getSampledCallCount();
+        return count == 0 ? 0 : getTotalTime() / count;
+    }
+
+    /**
+     * @return the number of sampled calls counted in each bucket
+     */
+    public long[] getHistogram() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram[i].sum();
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return "MethodMetrics{" + method + ", calls=" + getCallCount() + ", errors=" + getErrorCount()
+                + ", averageTime=" + getAverageTime() + "ns}";
+    }
+}
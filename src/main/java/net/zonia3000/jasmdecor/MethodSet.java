@@ -0,0 +1,52 @@
+package net.zonia3000.jasmdecor;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Set of methods identified by name and descriptor, used for tracking the
+ * methods already written while visiting the hierarchy. The descriptors are
+ * grouped by method name, so adding and looking up a method doesn't build a
+ * <code>name + descriptor</code> key: the name and descriptor strings read
+ * from the class files are used as they are. Most names have a single
+ * descriptor, which is stored without a nested set.
+ *
+ * @author zonia3000
+ */
+class MethodSet {
+
+    // a descriptor, or the set of descriptors of an overloaded method
+    private final Map<String, Object> descriptorsByName = new HashMap<>();
+
+    /**
+     * @return true if the method wasn't already in the set
+     */
+    @SuppressWarnings("unchecked")
+    boolean add(String name, String descriptor) {
+        Object descriptors = descriptorsByName.putIfAbsent(name, descriptor);
+        if (descriptors == null) {
+            return true;
+        }
+        if (descriptors instanceof String) {
+            if (descriptors.equals(descriptor)) {
+                return false;
+            }
+            Set<String> overloads = new HashSet<>();
+            overloads.add((String) descriptors);
+            overloads.add(descriptor);
+            descriptorsByName.put(name, overloads);
+            return true;
+        }
+        return ((Set<String>) descriptors).add(descriptor);
+    }
+
+    boolean contains(String name, String descriptor) {
+        Object descriptors = descriptorsByName.get(name);
+        if (descriptors instanceof String) {
+            return descriptors.equals(descriptor);
+        }
+        return descriptors != null && ((Set<?>) descriptors).contains(descriptor);
+    }
+}
@@ -0,0 +1,117 @@
+package net.zonia3000.jasmdecor;
+
+import java.util.List;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates delegation methods recording their calls into the
+ * {@link DecoratorMetrics} of the decorator:
+ * <pre>
+ * long start = METRICS.start();
+ * try {
+ *     result = wrapped.aMethod(args);
+ * } catch (Throwable t) {
+ *     METRICS.recordError(methodId, start);
+ *     throw t;
+ * }
+ * METRICS.recordCall(methodId, start);
+ * return result;
+ * </pre>
+ * The exception handler requires frames, so the ClassWriter must compute them.
+ * The static methods write the field holding the metrics and its
+ * initialization.
+ *
+ * @author zonia3000
+ */
+class MetricsMethodAdapter extends DelegationMethodAdapter {
+
+    static final String METRICS_FIELD = "jasmdecor$metrics";
+    private static final String CREATE_METRICS_METHOD = "jasmdecor$createMetrics";
+
+    private static final String METRICS_INTERNAL_NAME = Type.getInternalName(DecoratorMetrics.class);
+    private static final String METRICS_DESCRIPTOR = Type.getDescriptor(DecoratorMetrics.class);
+
+    private final int methodId;
+
+    MetricsMethodAdapter(String decoratorInternalName, String wrappedInternalName, boolean wrappedInterface,
+            MethodVisitor writer, String methodName, String descriptor, int methodId) {
+        super(decoratorInternalName, wrappedInternalName, wrappedInterface, writer, methodName, descriptor);
+        this.methodId = methodId;
+    }
+
+    @Override
+    public void visitCode() {
+        // the first local variable after this and the arguments
+        int startVar = Type.getArgumentsAndReturnSizes(descriptor) >> 2;
+
+        Label tryStart = new Label();
+        Label tryEnd = new Label();
+        Label handler = new Label();
+        writer.visitTryCatchBlock(tryStart, tryEnd, handler, "java/lang/Throwable");
+
+        writer.visitFieldInsn(GETSTATIC, decoratorInternalName, METRICS_FIELD, METRICS_DESCRIPTOR);
+        writer.visitMethodInsn(INVOKEVIRTUAL, METRICS_INTERNAL_NAME, "start", "()J", false);
+        writer.visitVarInsn(LSTORE, startVar);
+
+        writer.visitLabel(tryStart);
+        invokeWrapped();
+        writer.visitLabel(tryEnd);
+        record("recordCall", startVar);
+        addReturnInsn(descriptor);
+
+        writer.visitLabel(handler);
+        record("recordError", startVar);
+        writer.visitInsn(ATHROW);
+
+        // computed by the ClassWriter
+        writer.visitMaxs(0, 0);
+    }
+
+    private void record(String recordMethod, int startVar) {
+        writer.visitFieldInsn(GETSTATIC, decoratorInternalName, METRICS_FIELD, METRICS_DESCRIPTOR);
+        pushInt(writer, methodId);
+        writer.visitVarInsn(LLOAD, startVar);
+        writer.visitMethodInsn(INVOKEVIRTUAL, METRICS_INTERNAL_NAME, recordMethod, "(IJ)V", false);
+    }
+
+    /**
+     * Writes the initialization of the metrics field, to be placed at the
+     * beginning of the static initializer.
+     */
+    static void visitInitialization(MethodVisitor mv, String decoratorInternalName) {
+        mv.visitMethodInsn(INVOKESTATIC, decoratorInternalName, CREATE_METRICS_METHOD, "()" + METRICS_DESCRIPTOR, false);
+        mv.visitFieldInsn(PUTSTATIC, decoratorInternalName, METRICS_FIELD, METRICS_DESCRIPTOR);
+    }
+
+    /**
+     * Writes the metrics field and the method creating the metrics.
+     *
+     * @param methods the name and descriptor of each delegation method, in
+     * the order of the method ids
+     */
+    static void visitMetricsMembers(ClassVisitor cv, String decoratorInternalName, List<String> methods) {
+        cv.visitField(ACC_PRIVATE + ACC_STATIC + ACC_FINAL + ACC_SYNTHETIC, METRICS_FIELD, METRICS_DESCRIPTOR, null, null).visitEnd();
+
+        MethodVisitor mv = cv.visitMethod(ACC_PRIVATE + ACC_STATIC + ACC_SYNTHETIC, CREATE_METRICS_METHOD, "()" + METRICS_DESCRIPTOR, null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(NEW, METRICS_INTERNAL_NAME);
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn(decoratorInternalName.replace('/', '.'));
+        pushInt(mv, methods.size());
+        mv.visitTypeInsn(ANEWARRAY, "java/lang/String");
+        for (int i = 0; i < methods.size(); i++) {
+            mv.visitInsn(DUP);
+            pushInt(mv, i);
+            mv.visitLdcInsn(methods.get(i));
+            mv.visitInsn(AASTORE);
+        }
+        mv.visitMethodInsn(INVOKESPECIAL, METRICS_INTERNAL_NAME, "<init>", "(Ljava/lang/String;[Ljava/lang/String;)V", false);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+}
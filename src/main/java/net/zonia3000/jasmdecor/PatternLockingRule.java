@@ -0,0 +1,97 @@
+package net.zonia3000.jasmdecor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Locking rule matching the methods against lists of patterns. A pattern is a
+ * method name, a method name followed by its descriptor (e.g.
+ * <code>get(I)Ljava/lang/Object;</code>) or a name prefix followed by
+ * <code>*</code> (e.g. <code>get*</code>). Patterns are checked in order
+ * optimistic reads, reads, writes; methods matching none of them use the
+ * default mode.
+ *
+ * @author zonia3000
+ */
+public class PatternLockingRule implements LockingRule {
+
+    private final List<String> optimisticReadMethods = new ArrayList<>();
+    private final List<String> readMethods = new ArrayList<>();
+    private final List<String> writeMethods = new ArrayList<>();
+    private LockMode defaultMode = LockMode.WRITE;
+
+    /**
+     * @return a rule reading with the methods usually not modifying the state
+     * (<code>get*</code>, <code>is*</code>, <code>has*</code>,
+     * <code>contains*</code>, <code>find*</code>, <code>count*</code>,
+     * <code>size</code>, <code>toString</code>, <code>hashCode</code>,
+     * <code>equals</code>) and writing with all the others
+     */
+    public static PatternLockingRule getters() {
+        return new PatternLockingRule()
+                .addReadMethods("get*", "is*", "has*", "contains*", "find*", "count*", "size", "toString", "hashCode", "equals");
+    }
+
+    public PatternLockingRule addOptimisticReadMethods(String... patterns) {
+        add(optimisticReadMethods, patterns);
+        return this;
+    }
+
+    public PatternLockingRule addReadMethods(String... patterns) {
+        add(readMethods, patterns);
+        return this;
+    }
+
+    public PatternLockingRule addWriteMethods(String... patterns) {
+        add(writeMethods, patterns);
+        return this;
+    }
+
+    private static void add(List<String> list, String[] patterns) {
+        for (String pattern : patterns) {
+            list.add(pattern);
+        }
+    }
+
+    /**
+     * @param defaultMode the mode of the methods not matching any pattern
+     */
+    public PatternLockingRule setDefaultMode(LockMode defaultMode) {
+        this.defaultMode = defaultMode;
+        return this;
+    }
+
+    @Override
+    public LockMode getLockMode(String name, String descriptor) {
+        if (matches(optimisticReadMethods, name, descriptor)) {
+            return LockMode.OPTIMISTIC_READ;
+        }
+        if (matches(readMethods, name, descriptor)) {
+            return LockMode.READ;
+        }
+        if (matches(writeMethods, name, descriptor)) {
+            return LockMode.WRITE;
+        }
+        return defaultMode;
+    }
+
+    private static boolean matches(List<String> patterns, String name, String descriptor) {
+        for (String pattern : patterns) {
+            if (pattern.endsWith("*")) {
+                if (name.startsWith(pattern.substring(0, pattern.length() - 1))) {
+                    return true;
+                }
+            } else if (pattern.equals(name) || (pattern.length() == name.length() + descriptor.length()
+                    && pattern.startsWith(name) && pattern.endsWith(descriptor))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "PatternLockingRule{optimisticRead=" + optimisticReadMethods + ", read=" + readMethods
+                + ", write=" + writeMethods + ", default=" + defaultMode + "}";
+    }
+}
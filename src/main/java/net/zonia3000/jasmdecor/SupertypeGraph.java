@@ -0,0 +1,150 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.objectweb.asm.ClassReader;
+import static org.objectweb.asm.Opcodes.ACC_INTERFACE;
+
+/**
+ * Memoized graph of the supertypes of the classes, built from the class file
+ * headers without loading the classes. It is shared by all the generations of
+ * the process and used by {@link HierarchyClassWriter} for computing frames.
+ * <p>
+ * Like in {@link GeneratorCache}, the classes are grouped by the ClassLoader
+ * (or the {@link ClassBytesSource}) they come from, which is weakly
+ * referenced.
+ *
+ * @author zonia3000
+ */
+class SupertypeGraph {
+
+    private static final String OBJECT_INTERNAL_NAME = "java/lang/Object";
+
+    private static final SupertypeGraph INSTANCE = new SupertypeGraph();
+
+    /**
+     * Supertypes of a class, as declared in its header.
+     */
+    private static class Node {
+
+        private final String superName;
+        private final String[] interfaces;
+        private final boolean isInterface;
+
+        Node(String superName, String[] interfaces, boolean isInterface) {
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.isInterface = isInterface;
+        }
+    }
+
+    private final Map<Object, Map<String, Node>> namespaces = Collections.synchronizedMap(new WeakHashMap<>());
+
+    static SupertypeGraph getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param namespace the ClassLoader or the ClassBytesSource of the classes
+     * @param source the source of the classes not yet in the graph
+     * @return a resolver of the classes of the given namespace
+     */
+    Resolver getResolver(Object namespace, ClassBytesSource source) {
+        return new Resolver(namespaces.computeIfAbsent(namespace, n -> new ConcurrentHashMap<>()), source);
+    }
+
+    /**
+     * Resolves the supertypes of the classes of a namespace. A class not
+     * available from the source (e.g. the class being generated) can be added
+     * to a single resolver, without adding it to the shared graph.
+     */
+    static class Resolver {
+
+        private final Map<String, Node> nodes;
+        private final ClassBytesSource source;
+
+        private String localClassName;
+        private Node localClassNode;
+
+        private Resolver(Map<String, Node> nodes, ClassBytesSource source) {
+            this.nodes = nodes;
+            this.source = source;
+        }
+
+        void setLocalClass(String internalName, String superName, String[] interfaces, boolean isInterface) {
+            this.localClassName = internalName;
+            this.localClassNode = new Node(superName, interfaces == null ? new String[]{} : interfaces, isInterface);
+        }
+
+        /**
+         * Returns the common superclass of two classes, with the same
+         * semantics of <code>ClassWriter.getCommonSuperClass</code>: if a type
+         * is assignable to the other one, the latter is returned, otherwise
+         * interfaces are merged to <code>java.lang.Object</code> and classes to
+         * their nearest common superclass.
+         *
+         * @param type1 the internal name of the first class
+         * @param type2 the internal name of the second class
+         * @throws IOException if a class can't be read
+         */
+        String getCommonSuperClass(String type1, String type2) throws IOException {
+            if (isAssignableFrom(type1, type2)) {
+                return type1;
+            }
+            if (isAssignableFrom(type2, type1)) {
+                return type2;
+            }
+            if (getNode(type1).isInterface || getNode(type2).isInterface) {
+                return OBJECT_INTERNAL_NAME;
+            }
+            String superClass = type1;
+            do {
+                superClass = getNode(superClass).superName;
+            } while (!isAssignableFrom(superClass, type2));
+            return superClass;
+        }
+
+        /**
+         * @return true if the type is the same or a supertype of the subtype
+         */
+        private boolean isAssignableFrom(String type, String subtype) throws IOException {
+            if (type.equals(subtype) || OBJECT_INTERNAL_NAME.equals(type)) {
+                return true;
+            }
+            if (OBJECT_INTERNAL_NAME.equals(subtype)) {
+                return false;
+            }
+            Node node = getNode(subtype);
+            if (node.superName != null && isAssignableFrom(type, node.superName)) {
+                return true;
+            }
+            for (String iface : node.interfaces) {
+                if (isAssignableFrom(type, iface)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Node getNode(String internalName) throws IOException {
+            if (internalName.equals(localClassName)) {
+                return localClassNode;
+            }
+            Node node = nodes.get(internalName);
+            if (node == null) {
+                byte[] classBytes = source.getClassBytes(internalName);
+                if (classBytes == null) {
+                    throw new IOException("Class not found: " + internalName.replace('/', '.'));
+                }
+                // only the header is parsed
+                ClassReader classReader = new ClassReader(classBytes);
+                node = new Node(classReader.getSuperName(), classReader.getInterfaces(), (classReader.getAccess() & ACC_INTERFACE) != 0);
+                nodes.putIfAbsent(internalName, node);
+            }
+            return node;
+        }
+    }
+}
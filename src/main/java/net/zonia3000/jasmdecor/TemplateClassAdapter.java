@@ -3,6 +3,7 @@ package net.zonia3000.jasmdecor;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.objectweb.asm.ClassVisitor;
@@ -11,10 +12,13 @@ import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
 import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
 import static org.objectweb.asm.Opcodes.ASM6;
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.RETURN;
 import org.objectweb.asm.Type;
 
 /**
- * ClassVisitor used to merge the template class with the plain decorator class.
+ * ClassVisitor used to merge the template class with the delegation methods
+ * of the plain decorator.
  *
  * @author @zonia3000
  */
@@ -27,16 +31,28 @@ public class TemplateClassAdapter extends ClassVisitor {
 
     // this is used to avoid writing plain decorator methods when they have been
     // defined in the template
-    private final Set<String> visitedMethods;
+    private final MethodSet visitedMethods;
 
     private boolean templateVisited;
 
+    // code to add at the beginning of the template static initializer
+    private Consumer<MethodVisitor> classInitialization;
+    private boolean templateClassInitializer;
+
+    // code to add at the end of the template constructors
+    private Consumer<MethodVisitor> instanceInitialization;
+    private String templateName;
+
     public TemplateClassAdapter(Class wrappedType, ClassWriter cw) {
-        super(ASM6, cw);
+        this(Type.getInternalName(wrappedType), wrappedType.isInterface(), cw);
+    }
+
+    public TemplateClassAdapter(String wrappedInternalName, boolean wrappedInterface, ClassVisitor cv) {
+        super(ASM6, cv);
         interfaces = new HashSet<>();
-        visitedMethods = new HashSet<>();
-        if (wrappedType.isInterface()) {
-            interfaces.add(Type.getInternalName(wrappedType));
+        visitedMethods = new MethodSet();
+        if (wrappedInterface) {
+            interfaces.add(wrappedInternalName);
         }
     }
 
@@ -44,6 +60,30 @@ public class TemplateClassAdapter extends ClassVisitor {
         this.templateVisited = true;
     }
 
+    /**
+     * @param classInitialization writes code that must run at the beginning
+     * of the template static initializer, if the template has one
+     */
+    public void setClassInitialization(Consumer<MethodVisitor> classInitialization) {
+        this.classInitialization = classInitialization;
+    }
+
+    /**
+     * @param instanceInitialization writes code that must run at the end of
+     * the template constructors (excluding the ones calling another
+     * constructor of the template)
+     */
+    public void setInstanceInitialization(Consumer<MethodVisitor> instanceInitialization) {
+        this.instanceInitialization = instanceInitialization;
+    }
+
+    /**
+     * @return true if the template has a static initializer
+     */
+    public boolean hasTemplateClassInitializer() {
+        return templateClassInitializer;
+    }
+
     @Override
     public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
         if (templateVisited && "wrapped".equals(name)) {
@@ -55,6 +95,7 @@ public class TemplateClassAdapter extends ClassVisitor {
     @Override
     public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
         if (!templateVisited) {
+            templateName = name;
             // Add interfaces defined on the template
             addInterfaces(interfaces);
             // visit the template class
@@ -80,14 +121,50 @@ public class TemplateClassAdapter extends ClassVisitor {
 
     @Override
     public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
-        if (visitedMethods.contains(name + descriptor) /* already visited method */
-                || (templateVisited && "<init>".equals(name)) /* constructor */) {
+        if ((templateVisited && "<init>".equals(name)) /* constructor */
+                || !visitedMethods.add(name, descriptor) /* already visited method */) {
             // ignore the method
             return null;
         }
-        visitedMethods.add(name + descriptor);
         // copy the method
-        LOG.log(Level.FINE, "Copying method {0}:{1}", new Object[]{name, descriptor});
-        return super.visitMethod(access, name, descriptor, signature, exceptions);
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.log(Level.FINE, "Copying method {0}:{1}", new Object[]{name, descriptor});
+        }
+        MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+        if (!templateVisited && "<clinit>".equals(name)) {
+            templateClassInitializer = true;
+            if (classInitialization != null && mv != null) {
+                return new MethodVisitor(ASM6, mv) {
+                    @Override
+                    public void visitCode() {
+                        super.visitCode();
+                        classInitialization.accept(mv);
+                    }
+                };
+            }
+        }
+        if (!templateVisited && "<init>".equals(name) && instanceInitialization != null && mv != null) {
+            return new MethodVisitor(ASM6, mv) {
+                private boolean delegating;
+
+                @Override
+                public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                    if (opcode == INVOKESPECIAL && "<init>".equals(name) && owner.equals(templateName)) {
+                        // this(...) call
+                        delegating = true;
+                    }
+                    super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+                }
+
+                @Override
+                public void visitInsn(int opcode) {
+                    if (opcode == RETURN && !delegating) {
+                        instanceInitialization.accept(mv);
+                    }
+                    super.visitInsn(opcode);
+                }
+            };
+        }
+        return mv;
     }
 }
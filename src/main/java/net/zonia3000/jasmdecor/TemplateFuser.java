@@ -0,0 +1,634 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.MultiANewArrayInsnNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.SourceValue;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Merges a stack of templates into a single template, equivalent to
+ * decorating the wrapped instance with each template in turn, the first
+ * template being the outermost one.
+ * <p>
+ * The methods of each template become methods of the fused class: the
+ * outermost definition of a method keeps its name, the others become private
+ * steps named <code>jasmdecor$layer&lt;index&gt;$&lt;name&gt;</code>. A call
+ * on the <code>wrapped</code> field of a template becomes a direct call of
+ * the step of the next template defining the method or, when no inner
+ * template defines it, of a private bridge calling the wrapped instance, so
+ * the layers are linked without interface dispatches. The fields of the
+ * templates are renamed in the same way, except for the <code>wrapped</code>
+ * field which is shared. The constructors taking the wrapped instance and
+ * the static initializers become private steps called by the constructor and
+ * the static initializer of the fused class, starting from the innermost
+ * template.
+ * <p>
+ * A template can be fused only if it extends Object, has a constructor
+ * taking the wrapped instance and uses the <code>wrapped</code> field only
+ * for calling its methods: the field can't be stored, passed or returned,
+ * since the fused layers have no object of their own. Templates having inner
+ * classes referencing them can't be fused either.
+ *
+ * @author zonia3000
+ */
+class TemplateFuser {
+
+    private static final Logger LOG = Logger.getLogger(TemplateFuser.class.getName());
+
+    private static final String OBJECT_INTERNAL_NAME = "java/lang/Object";
+    private static final String WRAPPED_FIELD = "wrapped";
+    private static final String STEP_PREFIX = "jasmdecor$layer";
+    private static final String BRIDGE_PREFIX = "jasmdecor$wrapped$";
+
+    private final String fusedInternalName;
+    private final String wrappedInternalName;
+    private final boolean wrappedInterface;
+    private final List<ClassNode> layers = new ArrayList<>();
+    // layer index by template internal name
+    private final Map<String, Integer> layerIndexes = new HashMap<>();
+    // methods called on the wrapped instance by the innermost layers, by name
+    // followed by the descriptor
+    private final Map<String, String[]> bridges = new LinkedHashMap<>();
+
+    /**
+     * @param fusedInternalName the internal name of the fused template
+     * @param wrappedInternalName the internal name of the wrapped type
+     * @param wrappedInterface true if the wrapped type is an interface
+     * @param templates the templates, from the outermost to the innermost
+     */
+    TemplateFuser(String fusedInternalName, String wrappedInternalName, boolean wrappedInterface, List<ClassReader> templates) {
+        this.fusedInternalName = fusedInternalName;
+        this.wrappedInternalName = wrappedInternalName;
+        this.wrappedInterface = wrappedInterface;
+        for (ClassReader template : templates) {
+            ClassNode layer = new ClassNode(ASM6);
+            // the frames are computed again after the rewriting
+            template.accept(layer, ClassReader.SKIP_FRAMES);
+            layerIndexes.put(layer.name, layers.size());
+            layers.add(layer);
+        }
+    }
+
+    /**
+     * Writes the fused template. Its methods have no frames, so the visitor
+     * must compute them.
+     *
+     * @throws IOException if a template can't be fused
+     */
+    void accept(ClassVisitor cv) throws IOException {
+        LOG.log(Level.FINE, "Fusing templates into {0}", fusedInternalName);
+        int version = V1_8;
+        Set<String> interfaces = new LinkedHashSet<>();
+        for (ClassNode layer : layers) {
+            if (!OBJECT_INTERNAL_NAME.equals(layer.superName)) {
+                throw new IOException("The template " + getName(layer) + " can't be fused, since it doesn't extend Object");
+            }
+            version = Math.max(version, layer.version & 0xFFFF);
+            interfaces.addAll(layer.interfaces);
+        }
+        cv.visit(version, ACC_PUBLIC + ACC_SUPER + ACC_ABSTRACT, fusedInternalName, null, OBJECT_INTERNAL_NAME,
+                interfaces.toArray(new String[interfaces.size()]));
+        visitAnnotations(cv);
+
+        cv.visitField(ACC_PRIVATE + ACC_FINAL, WRAPPED_FIELD, "L" + wrappedInternalName + ";", null, null).visitEnd();
+
+        // the bodies are rewritten before renaming any method, since the
+        // calls are resolved by the original names
+        List<MethodNode> fusedMethods = new ArrayList<>();
+        List<String> fusedNames = new ArrayList<>();
+        List<Integer> fusedAccesses = new ArrayList<>();
+        boolean classInitializer = false;
+        for (int i = 0; i < layers.size(); i++) {
+            ClassNode layer = layers.get(i);
+            boolean constructor = false;
+            for (MethodNode method : layer.methods) {
+                if ((method.access & ACC_ABSTRACT) != 0) {
+                    // implemented by an inner template or delegated
+                    continue;
+                }
+                if ("<init>".equals(method.name)) {
+                    if (!("(L" + wrappedInternalName + ";)V").equals(method.desc)) {
+                        continue;
+                    }
+                    fusedNames.add(getStepName(i, "init"));
+                    fusedAccesses.add(ACC_PRIVATE);
+                    constructor = true;
+                } else if ("<clinit>".equals(method.name)) {
+                    fusedNames.add(getStepName(i, "clinit"));
+                    fusedAccesses.add(ACC_PRIVATE + ACC_STATIC);
+                    classInitializer = true;
+                } else {
+                    MethodRef step = getStep(i, method);
+                    int visibility = step.opcode == INVOKEVIRTUAL ? ACC_PUBLIC : ACC_PRIVATE;
+                    fusedNames.add(step.name);
+                    fusedAccesses.add((method.access & ~(ACC_PUBLIC | ACC_PROTECTED | ACC_PRIVATE | ACC_FINAL)) | visibility);
+                }
+                rewrite(i, method);
+                fusedMethods.add(method);
+            }
+            if (!constructor) {
+                throw new IOException("The template " + getName(layer) + " can't be fused, since it has no constructor taking the wrapped instance");
+            }
+        }
+
+        for (int i = 0; i < layers.size(); i++) {
+            for (FieldNode field : layers.get(i).fields) {
+                if (!WRAPPED_FIELD.equals(field.name)) {
+                    int access = (field.access & ~(ACC_PUBLIC | ACC_PROTECTED)) | ACC_PRIVATE;
+                    if (field.value == null) {
+                        // assigned by the constructor and static initializer
+                        // steps, which are not initialization methods
+                        access &= ~ACC_FINAL;
+                    }
+                    cv.visitField(access, getStepName(i, field.name), remap(field.desc), null, field.value).visitEnd();
+                }
+            }
+        }
+        for (int i = 0; i < fusedMethods.size(); i++) {
+            MethodNode method = fusedMethods.get(i);
+            method.name = fusedNames.get(i);
+            method.access = fusedAccesses.get(i);
+            method.desc = remap(method.desc);
+            if ((method.access & ACC_PUBLIC) == 0) {
+                method.signature = null;
+            }
+            method.accept(cv);
+        }
+
+        for (String[] bridge : bridges.values()) {
+            visitBridge(cv, bridge[0], bridge[1]);
+        }
+        visitConstructor(cv);
+        if (classInitializer) {
+            visitClassInitializer(cv, fusedNames);
+        }
+        cv.visitEnd();
+    }
+
+    /**
+     * Copies the class annotations (e.g. {@link Guarded}) of the templates,
+     * the outer ones taking precedence.
+     */
+    private void visitAnnotations(ClassVisitor cv) {
+        Set<String> descriptors = new HashSet<>();
+        for (ClassNode layer : layers) {
+            visitAnnotations(cv, layer.visibleAnnotations, true, descriptors);
+            visitAnnotations(cv, layer.invisibleAnnotations, false, descriptors);
+        }
+    }
+
+    private static void visitAnnotations(ClassVisitor cv, List<AnnotationNode> annotations, boolean visible, Set<String> descriptors) {
+        if (annotations != null) {
+            for (AnnotationNode annotation : annotations) {
+                if (descriptors.add(annotation.desc)) {
+                    annotation.accept(cv.visitAnnotation(annotation.desc, visible));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the method called by the innermost layer defining a method,
+     * which delegates to the wrapped instance.
+     */
+    private void visitBridge(ClassVisitor cv, String name, String descriptor) {
+        MethodVisitor mv = cv.visitMethod(ACC_PRIVATE + ACC_SYNTHETIC, BRIDGE_PREFIX + name, descriptor, null, null);
+        mv.visitCode();
+        new DelegationMethodAdapter(fusedInternalName, wrappedInternalName, wrappedInterface, mv, name, descriptor).visitCode();
+        mv.visitEnd();
+    }
+
+    /**
+     * Sets the wrapped field, then runs the constructors of the templates
+     * from the innermost, like nested decorators.
+     */
+    private void visitConstructor(ClassVisitor cv) {
+        String descriptor = "(L" + wrappedInternalName + ";)V";
+        MethodVisitor mv = cv.visitMethod(ACC_PUBLIC, "<init>", descriptor, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, OBJECT_INTERNAL_NAME, "<init>", "()V", false);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitFieldInsn(PUTFIELD, fusedInternalName, WRAPPED_FIELD, "L" + wrappedInternalName + ";");
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitMethodInsn(INVOKESPECIAL, fusedInternalName, getStepName(i, "init"), descriptor, false);
+        }
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(2, 2);
+        mv.visitEnd();
+    }
+
+    private void visitClassInitializer(ClassVisitor cv, List<String> fusedNames) {
+        MethodVisitor mv = cv.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+        mv.visitCode();
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            String name = getStepName(i, "clinit");
+            if (fusedNames.contains(name)) {
+                mv.visitMethodInsn(INVOKESTATIC, fusedInternalName, name, "()V", false);
+            }
+        }
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Rewrites the instructions of a method of a template, linking it to the
+     * other layers of the fused class.
+     */
+    private void rewrite(int layerIndex, MethodNode method) throws IOException {
+        ClassNode layer = layers.get(layerIndex);
+        WrappedUsage usage = analyze(layer, method);
+        boolean constructor = "<init>".equals(method.name);
+
+        // the local variables of the template type are no more valid
+        method.localVariables = null;
+
+        ListIterator<AbstractInsnNode> iterator = method.instructions.iterator();
+        while (iterator.hasNext()) {
+            AbstractInsnNode insn = iterator.next();
+            if (insn instanceof FieldInsnNode) {
+                FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+                if (layer.name.equals(fieldInsn.owner)) {
+                    if (WRAPPED_FIELD.equals(fieldInsn.name)) {
+                        if (fieldInsn.getOpcode() == GETFIELD) {
+                            // this is the receiver of the next layer
+                            iterator.remove();
+                        } else if (constructor && fieldInsn.getOpcode() == PUTFIELD) {
+                            // the fused constructor sets the shared field
+                            iterator.set(new InsnNode(POP2));
+                        } else {
+                            throw cantFuse(layer, method, "it modifies the wrapped field");
+                        }
+                    } else {
+                        fieldInsn.owner = fusedInternalName;
+                        fieldInsn.name = getStepName(layerIndex, fieldInsn.name);
+                        fieldInsn.desc = remap(fieldInsn.desc);
+                    }
+                } else {
+                    checkReference(layer, method, fieldInsn.desc);
+                }
+            } else if (insn instanceof MethodInsnNode) {
+                MethodInsnNode methodInsn = (MethodInsnNode) insn;
+                if (usage.superCalls.contains(insn)) {
+                    // the fused constructor calls the super constructor
+                    iterator.set(new InsnNode(POP));
+                } else if (usage.wrappedCalls.contains(insn)) {
+                    setTarget(methodInsn, resolve(layerIndex + 1, methodInsn.name, methodInsn.desc));
+                } else if (layer.name.equals(methodInsn.owner)) {
+                    if ("<init>".equals(methodInsn.name)) {
+                        throw cantFuse(layer, method, "it creates instances of the template");
+                    } else if (methodInsn.getOpcode() == INVOKESTATIC) {
+                        setTarget(methodInsn, resolveStatic(layer, method, methodInsn.name, methodInsn.desc));
+                    } else if (isFinalObjectMethod(methodInsn.name)) {
+                        methodInsn.owner = fusedInternalName;
+                    } else {
+                        setTarget(methodInsn, resolve(layerIndex, methodInsn.name, methodInsn.desc));
+                    }
+                } else {
+                    checkReference(layer, method, methodInsn.desc);
+                }
+            } else if (insn instanceof InvokeDynamicInsnNode) {
+                InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+                indy.desc = remap(indy.desc);
+                for (int i = 0; i < indy.bsmArgs.length; i++) {
+                    indy.bsmArgs[i] = remap(layer, method, indy.bsmArgs[i]);
+                }
+            } else if (insn instanceof TypeInsnNode) {
+                TypeInsnNode typeInsn = (TypeInsnNode) insn;
+                if (insn.getOpcode() == NEW && layerIndexes.containsKey(typeInsn.desc)) {
+                    throw cantFuse(layer, method, "it creates instances of a template");
+                }
+                typeInsn.desc = layerIndexes.containsKey(typeInsn.desc) ? fusedInternalName : remap(typeInsn.desc);
+            } else if (insn instanceof LdcInsnNode) {
+                LdcInsnNode ldc = (LdcInsnNode) insn;
+                ldc.cst = remap(layer, method, ldc.cst);
+            } else if (insn instanceof MultiANewArrayInsnNode) {
+                MultiANewArrayInsnNode multiANewArray = (MultiANewArrayInsnNode) insn;
+                multiANewArray.desc = remap(multiANewArray.desc);
+            }
+        }
+    }
+
+    private static void setTarget(MethodInsnNode methodInsn, MethodRef target) {
+        methodInsn.setOpcode(target.opcode);
+        methodInsn.owner = target.owner;
+        methodInsn.name = target.name;
+        methodInsn.itf = false;
+    }
+
+    /**
+     * Finds the method called on a layer: the step of the first template from
+     * that layer defining it or, if none does, the bridge to the wrapped
+     * instance.
+     */
+    private MethodRef resolve(int layerIndex, String name, String descriptor) {
+        for (int i = layerIndex; i < layers.size(); i++) {
+            MethodNode method = findMethod(layers.get(i), name, descriptor);
+            if (method != null && (method.access & (ACC_ABSTRACT | ACC_STATIC)) == 0
+                    && ((method.access & ACC_PRIVATE) == 0 || i == layerIndex)) {
+                return getStep(i, method);
+            }
+        }
+        bridges.putIfAbsent(name + descriptor, new String[]{name, descriptor});
+        return new MethodRef(INVOKESPECIAL, fusedInternalName, BRIDGE_PREFIX + name);
+    }
+
+    /**
+     * @return true for the Object methods which are never delegated
+     */
+    private static boolean isFinalObjectMethod(String name) {
+        return "getClass".equals(name) || "notify".equals(name) || "notifyAll".equals(name) || "wait".equals(name);
+    }
+
+    /**
+     * Finds a static method of a layer.
+     */
+    private MethodRef resolveStatic(ClassNode layer, MethodNode caller, String name, String descriptor) throws IOException {
+        int layerIndex = layerIndexes.get(layer.name);
+        MethodNode method = findMethod(layer, name, descriptor);
+        if (method == null || (method.access & ACC_STATIC) == 0) {
+            throw cantFuse(layer, caller, "it calls the inherited static method " + name);
+        }
+        return getStep(layerIndex, method);
+    }
+
+    private MethodRef getStep(int layerIndex, MethodNode method) {
+        if ((method.access & ACC_STATIC) != 0) {
+            return new MethodRef(INVOKESTATIC, fusedInternalName, getStepName(layerIndex, method.name));
+        }
+        if ((method.access & ACC_PRIVATE) == 0 && isOutermostDefinition(layerIndex, method)) {
+            return new MethodRef(INVOKEVIRTUAL, fusedInternalName, method.name);
+        }
+        return new MethodRef(INVOKESPECIAL, fusedInternalName, getStepName(layerIndex, method.name));
+    }
+
+    private boolean isOutermostDefinition(int layerIndex, MethodNode method) {
+        for (int i = 0; i < layerIndex; i++) {
+            MethodNode outer = findMethod(layers.get(i), method.name, method.desc);
+            if (outer != null && (outer.access & (ACC_ABSTRACT | ACC_PRIVATE | ACC_STATIC)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static MethodNode findMethod(ClassNode layer, String name, String descriptor) {
+        for (MethodNode method : layer.methods) {
+            if (method.name.equals(name) && method.desc.equals(descriptor)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private static String getStepName(int layerIndex, String name) {
+        return STEP_PREFIX + layerIndex + "$" + name;
+    }
+
+    /**
+     * Replaces the references to the templates in a descriptor.
+     */
+    private String remap(String descriptor) {
+        for (String template : layerIndexes.keySet()) {
+            descriptor = descriptor.replace("L" + template + ";", "L" + fusedInternalName + ";");
+        }
+        return descriptor;
+    }
+
+    private Object remap(ClassNode layer, MethodNode method, Object constant) throws IOException {
+        if (constant instanceof Type) {
+            Type type = (Type) constant;
+            if (type.getSort() == Type.OBJECT && layerIndexes.containsKey(type.getInternalName())) {
+                return Type.getObjectType(fusedInternalName);
+            }
+            return Type.getType(remap(type.getDescriptor()));
+        }
+        if (constant instanceof Handle) {
+            Handle handle = (Handle) constant;
+            Integer handleLayer = layerIndexes.get(handle.getOwner());
+            if (handleLayer == null) {
+                return new Handle(handle.getTag(), handle.getOwner(), handle.getName(), remap(handle.getDesc()), handle.isInterface());
+            }
+            if (handle.getTag() < H_INVOKEVIRTUAL || handle.getTag() == H_NEWINVOKESPECIAL) {
+                throw cantFuse(layer, method, "it has a method handle of a field or a constructor");
+            }
+            MethodRef target = handle.getTag() == H_INVOKESTATIC
+                    ? resolveStatic(layers.get(handleLayer), method, handle.getName(), handle.getDesc())
+                    : resolve(handleLayer, handle.getName(), handle.getDesc());
+            int tag = target.opcode == INVOKESTATIC ? H_INVOKESTATIC : target.opcode == INVOKESPECIAL ? H_INVOKESPECIAL : H_INVOKEVIRTUAL;
+            return new Handle(tag, target.owner, target.name, remap(handle.getDesc()), false);
+        }
+        return constant;
+    }
+
+    /**
+     * Other classes (e.g. inner classes) can't reference the templates, since
+     * they are replaced by the fused class.
+     */
+    private void checkReference(ClassNode layer, MethodNode method, String descriptor) throws IOException {
+        if (!remap(descriptor).equals(descriptor)) {
+            throw cantFuse(layer, method, "another class references the template");
+        }
+    }
+
+    /**
+     * Finds the calls on the wrapped field and the super constructor calls,
+     * checking that the wrapped field is used only as a call receiver.
+     */
+    private WrappedUsage analyze(ClassNode layer, MethodNode method) throws IOException {
+        WrappedUsage usage = new WrappedUsage(layer.name, method);
+        try {
+            new Analyzer<>(usage).analyze(layer.name, method);
+        } catch (AnalyzerException e) {
+            throw new IOException("Unable to analyze " + getName(layer) + "." + method.name, e);
+        }
+        if (usage.illegalUsage != null) {
+            throw cantFuse(layer, method, usage.illegalUsage);
+        }
+        return usage;
+    }
+
+    private static IOException cantFuse(ClassNode layer, MethodNode method, String reason) {
+        return new IOException("The template " + getName(layer) + " can't be fused, since " + reason + " (method " + method.name + ")");
+    }
+
+    private static String getName(ClassNode layer) {
+        return layer.name.replace('/', '.');
+    }
+
+    private static class MethodRef {
+
+        private final int opcode;
+        private final String owner;
+        private final String name;
+
+        MethodRef(int opcode, String owner, String name) {
+            this.opcode = opcode;
+            this.owner = owner;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Tracks the values read from the wrapped field through the data-flow
+     * analysis of a method.
+     */
+    private static class WrappedUsage extends SourceInterpreter {
+
+        private final String templateName;
+        private final boolean constructor;
+        private final boolean staticMethod;
+
+        // instructions pushing this (its loads and their copies)
+        private final Set<AbstractInsnNode> thisSources = new HashSet<>();
+        private final Set<AbstractInsnNode> wrappedCalls = new HashSet<>();
+        private final Set<AbstractInsnNode> superCalls = new HashSet<>();
+        private String illegalUsage;
+
+        WrappedUsage(String templateName, MethodNode method) {
+            super(ASM6);
+            this.templateName = templateName;
+            this.constructor = "<init>".equals(method.name);
+            this.staticMethod = (method.access & ACC_STATIC) != 0;
+        }
+
+        private boolean isWrapped(SourceValue value) {
+            for (AbstractInsnNode insn : value.insns) {
+                if (insn.getOpcode() == GETFIELD && templateName.equals(((FieldInsnNode) insn).owner)
+                        && WRAPPED_FIELD.equals(((FieldInsnNode) insn).name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isOnlyWrapped(SourceValue value) {
+            for (AbstractInsnNode insn : value.insns) {
+                if (insn.getOpcode() != GETFIELD || !WRAPPED_FIELD.equals(((FieldInsnNode) insn).name)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isThis(SourceValue value) {
+            if (staticMethod || value.insns.isEmpty()) {
+                return false;
+            }
+            return thisSources.containsAll(value.insns);
+        }
+
+        private void check(SourceValue value, String reason) {
+            if (isWrapped(value)) {
+                illegalUsage = reason;
+            }
+        }
+
+        @Override
+        public SourceValue copyOperation(AbstractInsnNode insn, SourceValue value) {
+            check(value, "it copies the wrapped instance");
+            if (insn.getOpcode() == ASTORE && ((VarInsnNode) insn).var == 0 && !staticMethod) {
+                illegalUsage = "it replaces this";
+            }
+            if ((insn.getOpcode() == ALOAD && ((VarInsnNode) insn).var == 0 && !staticMethod)
+                    || (insn.getOpcode() >= DUP && insn.getOpcode() <= SWAP && isThis(value))) {
+                thisSources.add(insn);
+            }
+            return super.copyOperation(insn, value);
+        }
+
+        @Override
+        public SourceValue unaryOperation(AbstractInsnNode insn, SourceValue value) {
+            check(value, "it uses the wrapped instance as a value");
+            if (insn.getOpcode() == GETFIELD && templateName.equals(((FieldInsnNode) insn).owner) && !isThis(value)) {
+                illegalUsage = "it reads the fields of another instance";
+            }
+            return super.unaryOperation(insn, value);
+        }
+
+        @Override
+        public SourceValue binaryOperation(AbstractInsnNode insn, SourceValue value1, SourceValue value2) {
+            check(value1, "it uses the wrapped instance as a value");
+            check(value2, "it uses the wrapped instance as a value");
+            if (insn.getOpcode() == PUTFIELD && templateName.equals(((FieldInsnNode) insn).owner) && !isThis(value1)) {
+                illegalUsage = "it writes the fields of another instance";
+            }
+            return super.binaryOperation(insn, value1, value2);
+        }
+
+        @Override
+        public SourceValue ternaryOperation(AbstractInsnNode insn, SourceValue value1, SourceValue value2, SourceValue value3) {
+            check(value1, "it uses the wrapped instance as a value");
+            check(value2, "it uses the wrapped instance as a value");
+            check(value3, "it uses the wrapped instance as a value");
+            return super.ternaryOperation(insn, value1, value2, value3);
+        }
+
+        @Override
+        public SourceValue naryOperation(AbstractInsnNode insn, List<? extends SourceValue> values) {
+            int firstArgument = 0;
+            if (insn instanceof MethodInsnNode && insn.getOpcode() != INVOKESTATIC) {
+                MethodInsnNode methodInsn = (MethodInsnNode) insn;
+                SourceValue receiver = values.get(0);
+                if (isWrapped(receiver)) {
+                    if (isOnlyWrapped(receiver) && !"<init>".equals(methodInsn.name)) {
+                        wrappedCalls.add(insn);
+                    } else {
+                        illegalUsage = "it uses the wrapped instance as a value";
+                    }
+                } else if (templateName.equals(methodInsn.owner) && !isThis(receiver)) {
+                    illegalUsage = "it calls the methods of another instance";
+                } else if (constructor && "<init>".equals(methodInsn.name) && OBJECT_INTERNAL_NAME.equals(methodInsn.owner)
+                        && isThis(receiver)) {
+                    superCalls.add(insn);
+                }
+                firstArgument = 1;
+            }
+            for (int i = firstArgument; i < values.size(); i++) {
+                check(values.get(i), "it passes the wrapped instance as an argument");
+            }
+            return super.naryOperation(insn, values);
+        }
+
+        @Override
+        public void returnOperation(AbstractInsnNode insn, SourceValue value, SourceValue expected) {
+            check(value, "it returns the wrapped instance");
+            super.returnOperation(insn, value, expected);
+        }
+    }
+}
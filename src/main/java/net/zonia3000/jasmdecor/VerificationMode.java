@@ -0,0 +1,24 @@
+package net.zonia3000.jasmdecor;
+
+/**
+ * How much a generated decorator is verified before being returned.
+ *
+ * @author zonia3000
+ */
+public enum VerificationMode {
+
+    /**
+     * The generated class is not verified.
+     */
+    NONE,
+    /**
+     * Single pass check of the instructions and of the descriptors of the
+     * generated class, without data-flow analysis.
+     */
+    STRUCTURAL,
+    /**
+     * Data-flow analysis of the whole generated class, using ASM
+     * CheckClassAdapter. This is the default.
+     */
+    FULL
+}
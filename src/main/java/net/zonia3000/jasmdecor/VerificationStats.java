@@ -0,0 +1,60 @@
+package net.zonia3000.jasmdecor;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number and duration of the verifications performed for each
+ * {@link VerificationMode}, useful for choosing the mode to use in each
+ * environment. A single instance can be shared between many generators (see
+ * {@link DecoratorGenerator#setVerificationStats(VerificationStats)}).
+ *
+ * @author zonia3000
+ */
+public class VerificationStats {
+
+    private final Map<VerificationMode, LongAdder> counts = new EnumMap<>(VerificationMode.class);
+    private final Map<VerificationMode, LongAdder> times = new EnumMap<>(VerificationMode.class);
+
+    public VerificationStats() {
+        for (VerificationMode mode : VerificationMode.values()) {
+            counts.put(mode, new LongAdder());
+            times.put(mode, new LongAdder());
+        }
+    }
+
+    void record(VerificationMode mode, long nanos) {
+        counts.get(mode).increment();
+        times.get(mode).add(nanos);
+    }
+
+    /**
+     * @return the number of classes verified with the given mode
+     */
+    public long getCount(VerificationMode mode) {
+        return counts.get(mode).sum();
+    }
+
+    /**
+     * @return the nanoseconds spent verifying classes with the given mode
+     */
+    public long getTotalTime(VerificationMode mode) {
+        return times.get(mode).sum();
+    }
+
+    /**
+     * @return the average nanoseconds spent verifying a class with the given
+     * mode, or 0 if no class has been verified
+     */
+    public long getAverageTime(VerificationMode mode) {
+        long count = getCount(mode);
+        return count == 0 ? 0 : getTotalTime(mode) / count;
+    }
+
+    @Override
+    public String toString() {
+        return "VerificationStats{structural=" + getCount(VerificationMode.STRUCTURAL) + "/" + getAverageTime(VerificationMode.STRUCTURAL)
+                + "ns, full=" + getCount(VerificationMode.FULL) + "/" + getAverageTime(VerificationMode.FULL) + "ns}";
+    }
+}
@@ -0,0 +1,150 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import net.zonia3000.jasmdecor.model.Iface;
+import net.zonia3000.jasmdecor.model.WrappedImpl;
+import net.zonia3000.jasmdecor.template.AsyncDecorator;
+import net.zonia3000.jasmdecor.template.AsyncIface;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the decorators offloading the delegated calls to an Executor.
+ *
+ * @author zonia3000
+ */
+public class AsyncTest {
+
+    @Test
+    public void testVoidMethods() throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(Iface.class, "test.AsyncPlainDecorator");
+        generator.addAsyncMethod("doAction");
+        generator.addAsyncMethod("variousDataTypes");
+        Class<?> decoratorClass = new BytesClassLoader().define("test.AsyncPlainDecorator", generator.generateDecoratorClass());
+
+        List<String> calls = new ArrayList<>();
+        Iface decorator = (Iface) decoratorClass.getConstructor(Iface.class).newInstance(new WrappedImpl() {
+            @Override
+            public void variousDataTypes(byte b1, short s1, int[] a1, int[][] a2, String[][] a3, boolean b, float f, char c, long l) {
+                synchronized (calls) {
+                    calls.add(Thread.currentThread().getName() + " " + b1 + s1 + a1[0] + a3[0][0] + b + f + c + l);
+                }
+            }
+        });
+
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "async-test"));
+        try {
+            AsyncOffloader offloader = AsyncOffloader.of(decoratorClass);
+            offloader.setExecutor(executor);
+
+            // WrappedImpl throws an exception, which is not propagated
+            decorator.doAction();
+            decorator.variousDataTypes((byte) 1, (short) 2, new int[]{3}, null, new String[][]{{"a"}}, true, 4.5f, 'c', 6L);
+
+            assertTrue(offloader.awaitPendingTasks(5, TimeUnit.SECONDS));
+            assertEquals(2, offloader.getSubmittedCount());
+            assertEquals(1, offloader.getFailedCount());
+            assertEquals(0, offloader.getPendingCount());
+            assertEquals(1, calls.size());
+            assertEquals("async-test 123atrue4.5c6", calls.get(0));
+        } finally {
+            executor.shutdown();
+        }
+
+        // synchronous methods are unchanged
+        assertEquals(WrappedImpl.STRING_VALUE, decorator.getString());
+    }
+
+    @Test
+    public void testCompanionMethods() throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(Iface.class, AsyncDecorator.class);
+        generator.addAsyncMethod("getInt(Ljava/lang/String;)I");
+        generator.addAsyncMethod("getString");
+        generator.setMetricsEnabled(true);
+        Class<?> decoratorClass = new BytesClassLoader().define(AsyncDecorator.class.getName(), generator.generateDecoratorClass());
+
+        Iface decorator = (Iface) decoratorClass.getConstructor(Iface.class).newInstance(new WrappedImpl() {
+            @Override
+            public String getString() {
+                throw new IllegalStateException("getString");
+            }
+        });
+
+        assertEquals(WrappedImpl.INT_VALUE, decorator.getInt("a"));
+        CompletableFuture<Integer> result = ((AsyncIface) decorator).getIntAsync("a");
+        assertEquals(Integer.valueOf(WrappedImpl.INT_VALUE), result.get(5, TimeUnit.SECONDS));
+
+        // companion not declared by the template interfaces
+        @SuppressWarnings("unchecked")
+        CompletableFuture<String> failure = (CompletableFuture<String>) decoratorClass.getMethod("getStringAsync").invoke(decorator);
+        try {
+            failure.get(5, TimeUnit.SECONDS);
+            fail("Exception not propagated");
+        } catch (ExecutionException e) {
+            assertEquals("getString", e.getCause().getMessage());
+        }
+
+        // the synchronous methods still record metrics
+        assertEquals(1, DecoratorMetrics.of(decoratorClass).getMethodMetrics("getInt(Ljava/lang/String;)I").getCallCount());
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        AsyncOffloader offloader = new AsyncOffloader("test.Backpressure", 1);
+        List<Runnable> queued = new ArrayList<>();
+        offloader.setExecutor(task -> {
+            synchronized (queued) {
+                queued.add(task);
+            }
+        });
+
+        offloader.execute(() -> {
+        });
+        assertEquals(1, offloader.getPendingCount());
+
+        CountDownLatch submitted = new CountDownLatch(1);
+        Thread caller = new Thread(() -> {
+            offloader.execute(() -> {
+            });
+            submitted.countDown();
+        });
+        caller.start();
+        while (offloader.getBlockedCount() == 0) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, submitted.getCount());
+
+        // completing the first call unblocks the second one
+        synchronized (queued) {
+            queued.get(0).run();
+        }
+        assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        caller.join();
+        assertEquals(2, offloader.getSubmittedCount());
+        assertEquals(1, offloader.getPendingCount());
+    }
+
+    @Test
+    public void testDefaultExecutor() throws Exception {
+        AsyncOffloader offloader = new AsyncOffloader("test.Default", AsyncOffloader.DEFAULT_MAX_PENDING_TASKS);
+        CompletableFuture<Object> result = offloader.submit(() -> {
+            throw new IOException("failure");
+        });
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail("Exception not propagated");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertTrue(offloader.awaitPendingTasks(5, TimeUnit.SECONDS));
+        assertEquals(1, offloader.getFailedCount());
+    }
+}
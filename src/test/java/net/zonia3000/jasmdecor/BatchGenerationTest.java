@@ -0,0 +1,61 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+import net.zonia3000.jasmdecor.model.ConcreteWrapped;
+import net.zonia3000.jasmdecor.model.Iface;
+import net.zonia3000.jasmdecor.model.WrappedImpl;
+import net.zonia3000.jasmdecor.template.AbstractDecorator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the generation of multiple decorators in a single batch.
+ *
+ * @author zonia3000
+ */
+public class BatchGenerationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testGenerateAll() throws Exception {
+        ClassLoader classLoader = BatchGenerationTest.class.getClassLoader();
+        File plainFile = folder.newFile("BatchPlain.class");
+
+        List<DecoratorSpec> specs = Arrays.asList(
+                new DecoratorSpec(Iface.class, "BatchPlain", classLoader, plainFile),
+                new DecoratorSpec(ConcreteWrapped.class, "BatchConcrete", classLoader, null),
+                // the wrapped type is not visible from this ClassLoader
+                new DecoratorSpec(Iface.class, "BatchFailing", new URLClassLoader(new URL[0], null), null),
+                new DecoratorSpec(Iface.class, AbstractDecorator.class, classLoader, null)
+        );
+
+        List<GenerationResult> results = DecoratorGenerator.generateAll(specs);
+
+        assertEquals(specs.size(), results.size());
+        for (int i = 0; i < specs.size(); i++) {
+            assertSame(specs.get(i), results.get(i).getSpec());
+        }
+
+        assertTrue(results.get(0).isSuccessful());
+        assertTrue(plainFile.length() > 0);
+        assertTrue(results.get(1).isSuccessful());
+        assertFalse(results.get(2).isSuccessful());
+        assertNotNull(results.get(2).getError());
+        assertNull(results.get(2).getClassBytes());
+        assertTrue(results.get(3).isSuccessful());
+
+        Iface wrapped = new WrappedImpl();
+        Class<?> decoratorClass = new BytesClassLoader(classLoader)
+                .define("BatchPlain", results.get(0).getClassBytes());
+        Iface decorator = (Iface) decoratorClass.getConstructor(Iface.class).newInstance(wrapped);
+        assertEquals(wrapped.getString(), decorator.getString());
+    }
+}
@@ -0,0 +1,118 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.Flushable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import net.zonia3000.jasmdecor.model.Repository;
+import net.zonia3000.jasmdecor.template.BatchingRepository;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the decorators collecting single item calls into bulk calls.
+ *
+ * @author zonia3000
+ */
+public class BatchingTest {
+
+    @Test
+    public void testBatches() throws Exception {
+        RecordingRepository wrapped = new RecordingRepository();
+        Repository decorator = newDecorator(wrapped);
+
+        decorator.save("a");
+        decorator.save("b");
+        assertTrue(wrapped.batches.isEmpty());
+        decorator.save("c");
+        decorator.save("d");
+        assertEquals(Arrays.asList(Arrays.asList("a", "b", "c")), wrapped.batches);
+
+        ((Flushable) decorator).flush();
+        assertEquals(Arrays.asList(Arrays.asList("a", "b", "c"), Arrays.asList("d")), wrapped.batches);
+
+        // bulk calls are still delegated
+        decorator.saveAll(Arrays.asList("e"));
+        assertEquals(3, wrapped.batches.size());
+
+        CallBatcher batcher = CallBatcher.of(decorator).get("save");
+        assertEquals(2, batcher.getBatchCount());
+        assertEquals(4, batcher.getBatchedCallCount());
+        assertEquals(1, batcher.getSizeFlushCount());
+        assertEquals(1, batcher.getExplicitFlushCount());
+        assertEquals(2, batcher.getAverageBatchSize(), 0);
+        assertEquals(0, batcher.getPendingCount());
+    }
+
+    @Test
+    public void testDelayedFlush() throws Exception {
+        RecordingRepository wrapped = new RecordingRepository();
+        Repository decorator = newDecorator(wrapped);
+
+        decorator.delete(1);
+        decorator.delete(2);
+        CallBatcher batcher = CallBatcher.of(decorator).get("delete");
+        for (int i = 0; i < 500 && batcher.getBatchCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, batcher.getDelayFlushCount());
+        synchronized (wrapped) {
+            assertEquals(Arrays.asList(1, 2), wrapped.deleted);
+        }
+    }
+
+    @Test
+    public void testFailedBatch() throws Exception {
+        Repository decorator = newDecorator(new RecordingRepository() {
+            @Override
+            public void saveAll(List<String> items) {
+                throw new IllegalStateException("saveAll");
+            }
+        });
+        decorator.save("a");
+        decorator.save("b");
+        try {
+            decorator.save("c");
+            fail("Exception not propagated");
+        } catch (IllegalStateException e) {
+            assertEquals("saveAll", e.getMessage());
+        }
+        Map<String, CallBatcher> batchers = CallBatcher.of(decorator);
+        assertEquals(2, batchers.size());
+        assertEquals(1, batchers.get("save").getFailedBatchCount());
+        assertEquals(0, batchers.get("save").getPendingCount());
+    }
+
+    private static Repository newDecorator(Repository wrapped) throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(Repository.class, BatchingRepository.class);
+        Class<?> decoratorClass = new BytesClassLoader().define(BatchingRepository.class.getName(), generator.generateDecoratorClass());
+        return (Repository) decoratorClass.getConstructor(Repository.class).newInstance(wrapped);
+    }
+
+    private static class RecordingRepository implements Repository {
+
+        private final List<List<String>> batches = new ArrayList<>();
+        private final List<Integer> deleted = new ArrayList<>();
+
+        @Override
+        public void save(String item) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void saveAll(List<String> items) {
+            batches.add(items);
+        }
+
+        @Override
+        public void delete(int id) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public synchronized void deleteAll(List<Integer> ids) {
+            deleted.addAll(ids);
+        }
+    }
+}
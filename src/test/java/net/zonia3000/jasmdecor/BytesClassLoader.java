@@ -0,0 +1,22 @@
+package net.zonia3000.jasmdecor;
+
+/**
+ * ClassLoader used by the tests for defining the generated classes directly
+ * from their bytes.
+ *
+ * @author zonia3000
+ */
+class BytesClassLoader extends ClassLoader {
+
+    BytesClassLoader() {
+        this(BytesClassLoader.class.getClassLoader());
+    }
+
+    BytesClassLoader(ClassLoader parent) {
+        super(parent);
+    }
+
+    Class<?> define(String name, byte[] bytes) {
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,44 @@
+package net.zonia3000.jasmdecor;
+
+import net.zonia3000.jasmdecor.model.Iface;
+import net.zonia3000.jasmdecor.model.WrappedImpl;
+import net.zonia3000.jasmdecor.template.AnnotatedDecorator;
+import net.zonia3000.jasmdecor.template.ReversedComparable;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the decorator generated by the annotation processor while compiling
+ * the test classes.
+ *
+ * @author zonia3000
+ */
+public class DecorateProcessorTest {
+
+    @Test
+    public void testGeneratedDecorator() throws Exception {
+        Class<?> decoratorClass = Class.forName(AnnotatedDecorator.class.getName() + "Impl");
+        assertEquals(AnnotatedDecorator.class, decoratorClass.getSuperclass());
+
+        WrappedImpl wrapped = new WrappedImpl();
+        Iface decorator = (Iface) decoratorClass.getConstructor(Iface.class).newInstance(wrapped);
+
+        // overridden by the template
+        assertEquals(AnnotatedDecorator.NEW_VALUE, decorator.getString());
+        // delegated
+        assertEquals(WrappedImpl.INT_VALUE, decorator.getInt("foo"));
+        assertEquals(wrapped.getLong(), decorator.getLong());
+        assertEquals(wrapped.toString(), decorator.toString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGenericInterface() throws Exception {
+        Class<?> decoratorClass = Class.forName(ReversedComparable.class.getName() + "Impl");
+        // only the template bridge method takes an Object
+        assertEquals(ReversedComparable.class, decoratorClass.getMethod("compareTo", Object.class).getDeclaringClass());
+
+        Comparable<Object> decorator = (Comparable<Object>) decoratorClass.getConstructor(Comparable.class).newInstance("a");
+        assertEquals(1, decorator.compareTo("b"));
+    }
+}
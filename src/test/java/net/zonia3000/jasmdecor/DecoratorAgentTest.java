@@ -0,0 +1,119 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Function;
+import net.zonia3000.jasmdecor.model.Iface;
+import net.zonia3000.jasmdecor.model.SuperIface;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the agent transformer without installing it, using a ClassLoader that
+ * passes the loaded classes to the transformer like the JVM does.
+ *
+ * @author zonia3000
+ */
+public class DecoratorAgentTest {
+
+    @Test
+    public void testCapturedClassesAreUsed() throws Exception {
+        DecoratorAgent agent = new DecoratorAgent(Collections.singletonList(Iface.class.getName()), new GeneratorCache());
+        TransformingClassLoader classLoader = new TransformingClassLoader(agent,
+                DecoratorAgentTest.class.getClassLoader(), Iface.class.getName(), SuperIface.class.getName());
+
+        Class<?> iface = classLoader.loadClass(Iface.class.getName());
+
+        assertTrue(agent.getCaptureTimes().containsKey(Iface.class.getName()));
+        assertTrue(agent.getCaptureTimes().containsKey(SuperIface.class.getName()));
+        // the decorator is generated only when requested
+        assertTrue(agent.getGenerationTimes().isEmpty());
+
+        // the ClassLoader doesn't expose the class files, so the decorator can
+        // be generated only from the captured bytes
+        Function<Object, Object> factory = getFactory(agent, iface);
+        assertNotNull(factory);
+        assertTrue(agent.getGenerationTimes().containsKey(Iface.class.getName()));
+        assertSame(factory, getFactory(agent, iface));
+    }
+
+    @Test
+    public void testSupertypeCapturedByParentClassLoader() throws Exception {
+        GeneratorCache cache = new GeneratorCache();
+        DecoratorAgent agent = new DecoratorAgent(Collections.singletonList(Iface.class.getName()), cache);
+        TransformingClassLoader parent = new TransformingClassLoader(agent,
+                DecoratorAgentTest.class.getClassLoader(), SuperIface.class.getName());
+        TransformingClassLoader child = new TransformingClassLoader(agent, parent, Iface.class.getName());
+
+        Class<?> iface = child.loadClass(Iface.class.getName());
+        assertSame(parent, iface.getInterfaces()[0].getClassLoader());
+        assertTrue(agent.getCaptureTimes().containsKey(SuperIface.class.getName()));
+
+        // SuperIface is stored under the parent ClassLoader, but neither of
+        // them exposes the class files
+        assertNotNull(getFactory(agent, iface));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Function<Object, Object> getFactory(DecoratorAgent agent, Class<?> type) throws IOException {
+        return agent.getFactory((Class<Object>) type);
+    }
+
+    /**
+     * Defines the given classes, delegating the other ones to the parent.
+     */
+    private static class TransformingClassLoader extends ClassLoader {
+
+        private final DecoratorAgent agent;
+        private final Set<String> definedClasses;
+
+        TransformingClassLoader(DecoratorAgent agent, ClassLoader parent, String... definedClasses) {
+            super(parent);
+            this.agent = agent;
+            this.definedClasses = new HashSet<>(Arrays.asList(definedClasses));
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!definedClasses.contains(name)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loadedClass = findLoadedClass(name);
+                if (loadedClass == null) {
+                    byte[] classBytes = readClass(name);
+                    agent.transform(this, name.replace('.', '/'), null, null, classBytes);
+                    loadedClass = defineClass(name, classBytes, 0, classBytes.length);
+                }
+                return loadedClass;
+            }
+        }
+
+        @Override
+        public InputStream getResourceAsStream(String name) {
+            if (name.startsWith("net/zonia3000/jasmdecor/model/")) {
+                return null;
+            }
+            return super.getResourceAsStream(name);
+        }
+
+        private byte[] readClass(String name) throws ClassNotFoundException {
+            try (InputStream in = DecoratorAgentTest.class.getClassLoader().getResourceAsStream(name.replace('.', '/') + ".class");
+                    ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+                byte[] buffer = new byte[1024];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package net.zonia3000.jasmdecor;
+
+import java.lang.invoke.MethodHandle;
+import java.util.function.Function;
+import net.zonia3000.jasmdecor.model.ConcreteWrapped;
+import net.zonia3000.jasmdecor.model.Iface;
+import net.zonia3000.jasmdecor.model.WrappedImpl;
+import net.zonia3000.jasmdecor.template.AbstractDecorator;
+import net.zonia3000.jasmdecor.template.ConcreteDecorator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the decorators generated at runtime.
+ *
+ * @author zonia3000
+ */
+public class DecoratorFactoryTest {
+
+    @Test
+    public void testPlainDecorator() throws Exception {
+        DecoratorFactory decoratorFactory = new DecoratorFactory();
+
+        Function<Iface, Iface> factory = decoratorFactory.getFactory(Iface.class);
+        assertSame(factory, decoratorFactory.getFactory(Iface.class));
+
+        Iface wrapped = new WrappedImpl();
+        Iface decorator = factory.apply(wrapped);
+        assertNotSame(wrapped, decorator);
+        assertEquals(wrapped.getString(), decorator.getString());
+        assertEquals(wrapped.getInt(null), decorator.getInt(null));
+    }
+
+    @Test
+    public void testConcreteWrapped() throws Exception {
+        ConcreteWrapped wrapped = new ConcreteWrapped();
+        ConcreteWrapped decorator = new DecoratorFactory().getFactory(ConcreteWrapped.class).apply(wrapped);
+        decorator.doAction();
+        assertTrue(wrapped.isActionDone());
+    }
+
+    @Test
+    public void testTemplate() throws Exception {
+        DecoratorFactory decoratorFactory = new DecoratorFactory();
+        Iface decorator = decoratorFactory.getFactory(Iface.class, AbstractDecorator.class).apply(new WrappedImpl());
+        assertEquals(AbstractDecorator.NEW_VALUE, decorator.getInt(null));
+        assertEquals(WrappedImpl.STRING_VALUE, decorator.getString());
+    }
+
+    @Test
+    public void testConstructorWithAdditionalParameters() throws Throwable {
+        DecoratorFactory decoratorFactory = new DecoratorFactory();
+
+        MethodHandle constructor = decoratorFactory.getConstructor(Iface.class, ConcreteDecorator.class, Iface.class, String.class);
+        Iface decorator = (Iface) constructor.invoke((Iface) new WrappedImpl(), "foo");
+        assertEquals(ConcreteDecorator.NEW_VALUE, decorator.getString());
+        assertEquals(WrappedImpl.INT_VALUE, decorator.getInt(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFactoryWithoutWrappedConstructor() throws Exception {
+        new DecoratorFactory().getFactory(Iface.class, ConcreteDecorator.class);
+    }
+}
@@ -23,6 +23,7 @@ public class DecoratorGeneratorTest {
         Iface decorator = (Iface) Class.forName("NoTemplate").getConstructor(Iface.class).newInstance(wrapped);
         assertEquals(wrapped.getString(), decorator.getString());
         assertEquals(wrapped.getInt(null), decorator.getInt(null));
+        assertEquals(wrapped.getLong(), decorator.getLong());
         testExceptionInAction(decorator);
     }
 
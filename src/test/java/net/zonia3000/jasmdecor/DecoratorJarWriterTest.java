@@ -0,0 +1,118 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import net.zonia3000.jasmdecor.model.ConcreteWrapped;
+import net.zonia3000.jasmdecor.model.Iface;
+import net.zonia3000.jasmdecor.template.AbstractDecorator;
+import net.zonia3000.jasmdecor.template.AnnotatedDecorator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the generation of decorators inside a jar.
+ *
+ * @author zonia3000
+ */
+public class DecoratorJarWriterTest {
+
+    private static final ClassLoader CLASS_LOADER = DecoratorJarWriterTest.class.getClassLoader();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSpecFile() throws Exception {
+        Path specFile = folder.newFile("specs.txt").toPath();
+        Files.write(specFile, Arrays.asList(
+                "# decorators used by the tests",
+                Iface.class.getName() + " jar.PlainDecorator",
+                "",
+                ConcreteWrapped.class.getName() + " jar.ConcreteDecorator",
+                Iface.class.getName() + " " + AbstractDecorator.class.getName()
+        ), StandardCharsets.UTF_8);
+
+        DecoratorJarWriter jarWriter = new DecoratorJarWriter(CLASS_LOADER, new GeneratorCache());
+        List<DecoratorSpec> specs = jarWriter.readSpecs(specFile);
+        assertEquals(3, specs.size());
+
+        File outputJar = folder.newFile("decorators.jar");
+        List<GenerationResult> results = jarWriter.write(specs, outputJar.toPath());
+        for (GenerationResult result : results) {
+            assertTrue(result.isSuccessful());
+        }
+
+        try (ZipFile zipFile = new ZipFile(outputJar)) {
+            assertNotNull(zipFile.getEntry("jar/PlainDecorator.class"));
+            assertNotNull(zipFile.getEntry("jar/ConcreteDecorator.class"));
+            assertNotNull(zipFile.getEntry("net/zonia3000/jasmdecor/template/AbstractDecorator.class"));
+            assertEquals(3, zipFile.size());
+        }
+    }
+
+    @Test
+    public void testDuplicatedSpecsAndOrder() throws Exception {
+        DecoratorJarWriter jarWriter = new DecoratorJarWriter(CLASS_LOADER, new GeneratorCache());
+        List<DecoratorSpec> specs = Arrays.asList(
+                new DecoratorSpec(Iface.class, "jar.B", null),
+                new DecoratorSpec(Iface.class, AbstractDecorator.class, null),
+                new DecoratorSpec(ConcreteWrapped.class, "jar.B", null),
+                new DecoratorSpec(Iface.class, "jar.A", null),
+                new DecoratorSpec(Iface.class, AbstractDecorator.class, null));
+
+        File outputJar = folder.newFile("decorators.jar");
+        List<GenerationResult> results = jarWriter.write(specs, outputJar.toPath());
+
+        // the first spec of each name is kept
+        assertEquals(3, results.size());
+        assertSame(specs.get(0), results.get(0).getSpec());
+        assertSame(specs.get(1), results.get(1).getSpec());
+        assertSame(specs.get(3), results.get(2).getSpec());
+        List<String> entryNames = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(outputJar)) {
+            zipFile.stream().forEach(entry -> entryNames.add(entry.getName()));
+        }
+        assertEquals(Arrays.asList("jar/B.class", "net/zonia3000/jasmdecor/template/AbstractDecorator.class", "jar/A.class"), entryNames);
+    }
+
+    @Test
+    public void testScanTemplates() throws Exception {
+        Path templatesJar = folder.newFile("templates.jar").toPath();
+        try (OutputStream out = Files.newOutputStream(templatesJar);
+                ZipOutputStream zip = new ZipOutputStream(out)) {
+            addClass(zip, AnnotatedDecorator.class);
+            addClass(zip, AbstractDecorator.class);
+        }
+
+        DecoratorJarWriter jarWriter = new DecoratorJarWriter(CLASS_LOADER, new GeneratorCache());
+        List<DecoratorSpec> specs = jarWriter.scanTemplates(templatesJar);
+        assertEquals(1, specs.size());
+        assertSame(AnnotatedDecorator.class, specs.get(0).getTemplateType());
+        assertSame(Iface.class, specs.get(0).getWrappedType());
+    }
+
+    private void addClass(ZipOutputStream zip, Class type) throws Exception {
+        String entryName = type.getName().replace('.', '/') + ".class";
+        zip.putNextEntry(new ZipEntry(entryName));
+        try (InputStream in = CLASS_LOADER.getResourceAsStream(entryName)) {
+            byte[] buffer = new byte[1024];
+            int nRead;
+            while ((nRead = in.read(buffer)) != -1) {
+                zip.write(buffer, 0, nRead);
+            }
+        }
+        zip.closeEntry();
+    }
+}
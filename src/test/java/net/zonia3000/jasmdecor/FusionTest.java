@@ -0,0 +1,170 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import net.zonia3000.jasmdecor.model.Iface;
+import net.zonia3000.jasmdecor.model.WrappedImpl;
+import net.zonia3000.jasmdecor.template.LeakingDecorator;
+import net.zonia3000.jasmdecor.template.PrefixingDecorator;
+import net.zonia3000.jasmdecor.template.SuffixingDecorator;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import static org.junit.Assert.*;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Tests the decorators merging a stack of templates.
+ *
+ * @author zonia3000
+ */
+public class FusionTest {
+
+    // the static fields of the templates are copied into the fused class
+    public static final List<String> CREATED = new ArrayList<>();
+
+    @Test
+    public void testFusedTemplates() throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(Iface.class, "test.FusedDecorator",
+                Arrays.asList(PrefixingDecorator.class, SuffixingDecorator.class));
+        Class<?> decoratorClass = new BytesClassLoader().define("test.FusedDecorator", generator.generateDecoratorClass());
+
+        CREATED.clear();
+        Iface decorator = (Iface) decoratorClass.getConstructor(Iface.class).newInstance(new WrappedImpl());
+        // the inner layers are created first
+        assertEquals(Arrays.asList("suffixing", "prefixing"), CREATED);
+
+        // both layers run, each one with its own state
+        assertEquals("a:" + WrappedImpl.STRING_VALUE + ":1", decorator.getString());
+        assertEquals("a:" + WrappedImpl.STRING_VALUE + ":2", decorator.getString());
+        assertEquals(2, decoratorClass.getMethod("getCalls").invoke(decorator));
+
+        // defined only by the inner layer
+        assertEquals(WrappedImpl.INT_VALUE * 2, decorator.getInt("a"));
+        // the outer layer calls the inner one, then itself
+        assertEquals(WrappedImpl.LONG_VALUE + WrappedImpl.INT_VALUE * 2, decorator.getLong());
+        // delegated
+        try {
+            decorator.doAction();
+            fail("Exception expected");
+        } catch (IOException e) {
+        }
+
+        assertEquals(Arrays.asList("net.zonia3000.jasmdecor.model.Iface", "net.zonia3000.jasmdecor.model.SuperIface",
+                "java.lang.Object", PrefixingDecorator.class.getName(), SuffixingDecorator.class.getName()),
+                generator.getInputClassNames());
+    }
+
+    @Test
+    public void testFusedWithMetrics() throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(Iface.class, "test.FusedMeteredDecorator",
+                Arrays.asList(SuffixingDecorator.class, PrefixingDecorator.class));
+        generator.setMetricsEnabled(true);
+        Class<?> decoratorClass = new BytesClassLoader().define("test.FusedMeteredDecorator", generator.generateDecoratorClass());
+        Iface decorator = (Iface) decoratorClass.getConstructor(Iface.class).newInstance(new WrappedImpl());
+
+        // the order of the layers is reversed
+        assertEquals("a:" + WrappedImpl.STRING_VALUE + ":1", decorator.getString());
+        // only the delegated methods are metered
+        try {
+            decorator.doAction();
+            fail("Exception expected");
+        } catch (IOException e) {
+        }
+        MethodMetrics methodMetrics = DecoratorMetrics.of(decoratorClass).getMethodMetrics("doAction()V");
+        assertEquals(1, methodMetrics.getCallCount());
+        assertEquals(1, methodMetrics.getErrorCount());
+        assertNull(DecoratorMetrics.of(decoratorClass).getMethodMetrics("getString()Ljava/lang/String;"));
+    }
+
+    @Test
+    public void testTemplateFromChildClassLoader() throws Exception {
+        TemplateClassLoader templateClassLoader = new TemplateClassLoader("test.ChildTemplate", childTemplate());
+        Class<?> childTemplate = templateClassLoader.loadClass("test.ChildTemplate");
+
+        // the child template is visible only from its ClassLoader
+        DecoratorGenerator generator = new DecoratorGenerator(Iface.class, "test.ChildFusedDecorator",
+                Arrays.asList(childTemplate, SuffixingDecorator.class), templateClassLoader);
+        Class<?> decoratorClass = new BytesClassLoader(templateClassLoader).define("test.ChildFusedDecorator", generator.generateDecoratorClass());
+        Iface decorator = (Iface) decoratorClass.getConstructor(Iface.class).newInstance(new WrappedImpl());
+
+        assertEquals("child:" + WrappedImpl.STRING_VALUE + ":1", decorator.getString());
+    }
+
+    /**
+     * A template prefixing the string returned by the wrapped instance.
+     */
+    private static byte[] childTemplate() {
+        String iface = Type.getInternalName(Iface.class);
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_8, ACC_PUBLIC + ACC_ABSTRACT + ACC_SUPER, "test/ChildTemplate", null, "java/lang/Object", new String[]{iface});
+        cw.visitField(ACC_PRIVATE + ACC_FINAL, "wrapped", "L" + iface + ";", null, null).visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "(L" + iface + ";)V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitFieldInsn(PUTFIELD, "test/ChildTemplate", "wrapped", "L" + iface + ";");
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC, "getString", "()Ljava/lang/String;", null, null);
+        mv.visitCode();
+        mv.visitLdcInsn("child:");
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, "test/ChildTemplate", "wrapped", "L" + iface + ";");
+        mv.visitMethodInsn(INVOKEINTERFACE, iface, "getString", "()Ljava/lang/String;", true);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;", false);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    @Test(expected = IOException.class)
+    public void testWrappedUsedAsValue() throws Exception {
+        new DecoratorGenerator(Iface.class, "test.LeakingFusedDecorator",
+                Arrays.asList(PrefixingDecorator.class, LeakingDecorator.class)).generateDecoratorClass();
+    }
+
+    /**
+     * Defines a single class, also exposing its class file.
+     */
+    private static class TemplateClassLoader extends ClassLoader {
+
+        private final String className;
+        private final byte[] classBytes;
+
+        TemplateClassLoader(String className, byte[] classBytes) {
+            super(FusionTest.class.getClassLoader());
+            this.className = className;
+            this.classBytes = classBytes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            if (!className.equals(name)) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, classBytes, 0, classBytes.length);
+        }
+
+        @Override
+        public InputStream getResourceAsStream(String name) {
+            if (name.equals(className.replace('.', '/') + ".class")) {
+                return new ByteArrayInputStream(classBytes);
+            }
+            return super.getResourceAsStream(name);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.File;
+import java.net.ConnectException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.List;
+import net.zonia3000.jasmdecor.model.Iface;
+import net.zonia3000.jasmdecor.template.MetricsDecorator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the generation of decorators requested to the daemon.
+ *
+ * @author zonia3000
+ */
+public class GenerationDaemonTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRequests() throws Exception {
+        Path tokenDirectory = folder.getRoot().toPath().resolve("tokens");
+        GenerationDaemon daemon = new GenerationDaemon(0, 60000, tokenDirectory);
+        Thread thread = start(daemon);
+
+        // the classes of an empty classpath are read by the daemon ClassLoader
+        File plainFile = new File(folder.getRoot(), "PlainDecorator.class");
+        String response = GenerationDaemon.send(tokenDirectory, daemon.getPort(), GenerationDaemon.generateRequest(VerificationMode.FULL, "",
+                Iface.class.getName(), "daemon.PlainDecorator", plainFile));
+        assertTrue(response, response.matches("OK \\d+"));
+        assertTrue(plainFile.length() > 0);
+
+        File templateFile = new File(folder.getRoot(), "MetricsDecorator.class");
+        response = GenerationDaemon.send(tokenDirectory, daemon.getPort(), GenerationDaemon.generateRequest(VerificationMode.STRUCTURAL, "",
+                Iface.class.getName(), MetricsDecorator.class.getName(), templateFile));
+        assertTrue(response, response.startsWith("OK "));
+        assertTrue(templateFile.length() > 0);
+
+        response = GenerationDaemon.send(tokenDirectory, daemon.getPort(), GenerationDaemon.generateRequest(VerificationMode.FULL, "",
+                "not.Existing", "daemon.NotExistingDecorator", new File(folder.getRoot(), "NotExisting.class")));
+        assertTrue(response, response.startsWith("ERROR java.lang.ClassNotFoundException"));
+        assertTrue(GenerationDaemon.send(tokenDirectory, daemon.getPort(), "WRONG").startsWith("ERROR"));
+
+        assertEquals("OK", GenerationDaemon.send(tokenDirectory, daemon.getPort(), GenerationDaemon.STOP));
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+        try {
+            GenerationDaemon.send(tokenDirectory, daemon.getPort(), GenerationDaemon.STOP);
+            fail("Exception expected");
+        } catch (ConnectException e) {
+        }
+    }
+
+    @Test
+    public void testIdleTimeout() throws Exception {
+        GenerationDaemon daemon = new GenerationDaemon(0, 100, folder.getRoot().toPath());
+        Thread thread = start(daemon);
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+    }
+
+    @Test
+    public void testRequestsWithoutToken() throws Exception {
+        Path tokenDirectory = folder.getRoot().toPath();
+        GenerationDaemon daemon = new GenerationDaemon(0, 60000, tokenDirectory);
+        Thread thread = start(daemon);
+
+        Path tokenFile = tokenDirectory.resolve("daemon-" + daemon.getPort() + ".token");
+        if (tokenDirectory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile)));
+        }
+
+        File outputFile = new File(folder.getRoot(), "Unauthorized.class");
+        String request = GenerationDaemon.generateRequest(VerificationMode.FULL, "", Iface.class.getName(), "daemon.Unauthorized", outputFile);
+        assertEquals("ERROR Unauthorized request", GenerationDaemon.sendLine(daemon.getPort(), request));
+        assertEquals("ERROR Unauthorized request", GenerationDaemon.sendLine(daemon.getPort(), "wrong\t" + request));
+        assertEquals("ERROR Unauthorized request", GenerationDaemon.sendLine(daemon.getPort(), GenerationDaemon.STOP));
+        assertFalse(outputFile.exists());
+        assertTrue(thread.isAlive());
+
+        assertEquals("OK", GenerationDaemon.send(tokenDirectory, daemon.getPort(), GenerationDaemon.STOP));
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+        assertFalse(Files.exists(tokenFile));
+    }
+
+    @Test
+    public void testClasspathSnapshot() throws Exception {
+        File classes = folder.newFolder("classes");
+        File classFile = new File(classes, "A.class");
+        assertTrue(classFile.createNewFile());
+        File jar = new File(folder.getRoot(), "lib.jar");
+        assertTrue(jar.createNewFile());
+        List<Path> entries = Arrays.asList(classes.toPath(), jar.toPath());
+
+        assertFalse(new GenerationDaemon.ClasspathSnapshot(entries).isModified());
+
+        GenerationDaemon.ClasspathSnapshot snapshot = new GenerationDaemon.ClasspathSnapshot(entries);
+        assertTrue(classFile.setLastModified(classFile.lastModified() - 10000));
+        assertTrue(snapshot.isModified());
+
+        snapshot = new GenerationDaemon.ClasspathSnapshot(entries);
+        File pkg = new File(classes, "pkg");
+        assertTrue(pkg.mkdir());
+        assertTrue(classes.setLastModified(classes.lastModified() - 10000));
+        assertTrue(snapshot.isModified());
+
+        snapshot = new GenerationDaemon.ClasspathSnapshot(entries);
+        assertTrue(new File(pkg, "B.class").createNewFile());
+        assertTrue(pkg.setLastModified(pkg.lastModified() - 10000));
+        assertTrue(snapshot.isModified());
+
+        snapshot = new GenerationDaemon.ClasspathSnapshot(entries);
+        assertTrue(jar.delete());
+        assertTrue(snapshot.isModified());
+    }
+
+    private static Thread start(GenerationDaemon daemon) {
+        Thread thread = new Thread(() -> {
+            try {
+                daemon.run();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
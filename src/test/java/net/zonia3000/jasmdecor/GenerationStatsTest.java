@@ -0,0 +1,86 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import net.zonia3000.jasmdecor.model.Iface;
+import net.zonia3000.jasmdecor.template.MetricsDecorator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the timings of the generation phases and their Flight Recorder
+ * events.
+ *
+ * @author zonia3000
+ */
+public class GenerationStatsTest {
+
+    private static final String EVENT_NAME = "net.zonia3000.jasmdecor.GenerationPhase";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteStats() throws Exception {
+        File file = folder.newFile("StatsDecorator.class");
+        GenerationStats stats = new DecoratorGenerator(Iface.class, "test.StatsDecorator").writeDecoratorClass(file);
+
+        assertEquals("test.StatsDecorator", stats.getDecoratorName());
+        assertArrayEquals(Files.readAllBytes(file.toPath()), stats.getClassBytes());
+        assertEquals(file.length(), stats.getClassSize());
+        // the constructor and the delegation methods of Iface and Object
+        assertTrue(stats.getMethodCount() > 6);
+        // Iface, SuperIface and Object
+        assertEquals(3, stats.getClassesRead());
+        assertTrue(stats.getBytesRead() > 0);
+
+        for (GenerationPhase phase : new GenerationPhase[]{GenerationPhase.HIERARCHY_RESOLUTION, GenerationPhase.CLASS_READING,
+            GenerationPhase.EMISSION, GenerationPhase.VERIFICATION, GenerationPhase.FILE_WRITE}) {
+            assertTrue(phase.name(), stats.getTime(phase) > 0);
+        }
+        assertEquals(0, stats.getTime(GenerationPhase.TEMPLATE_MERGE));
+        assertTrue(stats.getTotalTime() >= stats.getTime(GenerationPhase.EMISSION) + stats.getTime(GenerationPhase.FILE_WRITE));
+    }
+
+    @Test
+    public void testFlightRecorderEvents() throws Exception {
+        Path recordingFile = folder.getRoot().toPath().resolve("generation.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(EVENT_NAME);
+            recording.start();
+            DecoratorGenerator generator = new DecoratorGenerator(Iface.class, MetricsDecorator.class);
+            generator.setVerificationMode(VerificationMode.STRUCTURAL);
+            generator.generateDecoratorClass();
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+        Set<String> phases = new HashSet<>();
+        for (RecordedEvent event : events) {
+            if (EVENT_NAME.equals(event.getEventType().getName())) {
+                phases.add(event.getString("phase"));
+                if ("TEMPLATE_MERGE".equals(event.getString("phase"))) {
+                    assertEquals(MetricsDecorator.class.getName(), event.getString("className"));
+                    assertTrue(event.getInt("methodCount") > 0);
+                    assertTrue(event.getLong("outputBytes") > 0);
+                } else if ("CLASS_READING".equals(event.getString("phase"))) {
+                    assertTrue(event.getLong("inputBytes") > 0);
+                }
+            }
+        }
+        assertTrue(phases.toString(), phases.contains("HIERARCHY_RESOLUTION"));
+        assertTrue(phases.toString(), phases.contains("CLASS_READING"));
+        assertTrue(phases.toString(), phases.contains("TEMPLATE_MERGE"));
+        assertTrue(phases.toString(), phases.contains("VERIFICATION"));
+    }
+}
@@ -0,0 +1,87 @@
+package net.zonia3000.jasmdecor;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import net.zonia3000.jasmdecor.model.ConcreteWrapped;
+import net.zonia3000.jasmdecor.model.Iface;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the cache shared between generators.
+ *
+ * @author zonia3000
+ */
+public class GeneratorCacheTest {
+
+    private static final ClassLoader CLASS_LOADER = GeneratorCacheTest.class.getClassLoader();
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        GeneratorCache cache = new GeneratorCache();
+
+        generate(Iface.class, "CachedDecorator1", CLASS_LOADER, cache);
+        long misses = cache.getMissCount();
+        assertTrue(misses > 0);
+
+        // the second generation reads everything from the cache
+        generate(Iface.class, "CachedDecorator2", CLASS_LOADER, cache);
+        assertEquals(misses, cache.getMissCount());
+        assertTrue(cache.getHitCount() > 0);
+    }
+
+    @Test
+    public void testClassInfoMiss() throws Exception {
+        GeneratorCache cache = new GeneratorCache();
+        ClassBytesSource source = ClassBytesSource.fromClassLoader(CLASS_LOADER);
+        String className = Type.getInternalName(Iface.class);
+        GeneratorCache.ClassReaderLoader loader = name -> new ClassReader(source.getClassBytes(name));
+
+        cache.getClassReader(source, className, loader);
+        assertEquals(1, cache.getMissCount());
+
+        // the method table is built from the cached reader, but it is a miss
+        cache.getClassInfo(source, className, loader);
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+
+        cache.getClassInfo(source, className, loader);
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        GeneratorCache cache = new GeneratorCache(2);
+
+        generate(Iface.class, "EvictedDecorator", CLASS_LOADER, cache);
+        generate(ConcreteWrapped.class, "EvictedDecorator", CLASS_LOADER, cache);
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void testCollectedClassLoader() throws Exception {
+        GeneratorCache cache = new GeneratorCache();
+
+        URL testClasses = GeneratorCacheTest.class.getProtectionDomain().getCodeSource().getLocation();
+        generate(Iface.class, "CollectedDecorator", new URLClassLoader(new URL[]{testClasses}, null), cache);
+
+        // only the hierarchy entry remains, because it is related to the
+        // ClassLoader of Iface
+        for (int i = 0; i < 10 && cache.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1, cache.size());
+    }
+
+    private void generate(Class wrappedType, String name, ClassLoader classLoader, GeneratorCache cache) throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(wrappedType, name, classLoader);
+        generator.setCache(cache);
+        generator.generateDecoratorClass();
+    }
+}
@@ -0,0 +1,108 @@
+package net.zonia3000.jasmdecor;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.MethodNode;
+import static org.junit.Assert.*;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Tests the resolution of the common superclasses from the class files.
+ *
+ * @author zonia3000
+ */
+public class HierarchyClassWriterTest {
+
+    private static final String CONCRETE_WRAPPED = "net/zonia3000/jasmdecor/model/ConcreteWrapped";
+    private static final String WRAPPED_SUPER_CLASS = "net/zonia3000/jasmdecor/model/WrappedSuperClass";
+    private static final String WRAPPED_IMPL = "net/zonia3000/jasmdecor/model/WrappedImpl";
+    private static final String SUPER_IFACE = "net/zonia3000/jasmdecor/model/SuperIface";
+    private static final String IFACE = "net/zonia3000/jasmdecor/model/Iface";
+
+    @Test
+    public void testCommonSuperClass() {
+        ClassBytesSource source = ClassBytesSource.fromClassLoader(getClass().getClassLoader());
+        TestClassWriter classWriter = new TestClassWriter(source);
+
+        assertEquals(WRAPPED_SUPER_CLASS, classWriter.getCommonSuperClass(CONCRETE_WRAPPED, WRAPPED_SUPER_CLASS));
+        assertEquals(WRAPPED_SUPER_CLASS, classWriter.getCommonSuperClass(WRAPPED_SUPER_CLASS, CONCRETE_WRAPPED));
+        assertEquals("java/lang/Object", classWriter.getCommonSuperClass(CONCRETE_WRAPPED, WRAPPED_IMPL));
+        assertEquals(SUPER_IFACE, classWriter.getCommonSuperClass(SUPER_IFACE, WRAPPED_IMPL));
+        assertEquals(IFACE, classWriter.getCommonSuperClass(WRAPPED_IMPL, IFACE));
+        assertEquals("java/lang/Object", classWriter.getCommonSuperClass(IFACE, CONCRETE_WRAPPED));
+    }
+
+    /**
+     * The classes exist only as bytes, so they can't be resolved by the
+     * default ClassWriter. The frames of a method merging them are computed
+     * anyway.
+     */
+    @Test
+    public void testClassesNotLoadable() throws Exception {
+        Map<String, byte[]> classes = new HashMap<>();
+        classes.put("test/Base", writeClass("test/Base", "java/lang/Object"));
+        classes.put("test/Left", writeClass("test/Left", "test/Base"));
+        classes.put("test/Right", writeClass("test/Right", "test/Base"));
+        ClassBytesSource source = classes::get;
+
+        HierarchyClassWriter classWriter = new HierarchyClassWriter(ClassWriter.COMPUTE_FRAMES, source, source);
+        ClassVisitor cv = classWriter.getClassVisitor();
+        cv.visit(V1_8, ACC_PUBLIC + ACC_SUPER, "test/Chooser", null, "java/lang/Object", null);
+        MethodVisitor mv = cv.visitMethod(ACC_PUBLIC + ACC_STATIC, "choose", "(Z)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        Label right = new Label();
+        Label end = new Label();
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitJumpInsn(IFEQ, right);
+        mv.visitInsn(ACONST_NULL);
+        mv.visitTypeInsn(CHECKCAST, "test/Left");
+        mv.visitJumpInsn(GOTO, end);
+        mv.visitLabel(right);
+        mv.visitInsn(ACONST_NULL);
+        mv.visitTypeInsn(CHECKCAST, "test/Right");
+        mv.visitLabel(end);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cv.visitEnd();
+
+        ClassNode classNode = new ClassNode();
+        new ClassReader(classWriter.toByteArray()).accept(classNode, 0);
+        MethodNode method = classNode.methods.get(0);
+        FrameNode mergeFrame = null;
+        for (int i = 0; i < method.instructions.size(); i++) {
+            if (method.instructions.get(i) instanceof FrameNode) {
+                mergeFrame = (FrameNode) method.instructions.get(i);
+            }
+        }
+        assertNotNull(mergeFrame);
+        assertEquals("test/Base", mergeFrame.stack.get(0));
+    }
+
+    private byte[] writeClass(String name, String superName) {
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(V1_8, ACC_PUBLIC + ACC_SUPER, name, null, superName, null);
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    private static class TestClassWriter extends HierarchyClassWriter {
+
+        TestClassWriter(ClassBytesSource source) {
+            super(0, source, source);
+        }
+
+        @Override
+        public String getCommonSuperClass(String type1, String type2) {
+            return super.getCommonSuperClass(type1, type2);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package net.zonia3000.jasmdecor;
+
+import net.zonia3000.jasmdecor.model.Iface;
+import net.zonia3000.jasmdecor.model.WrappedImpl;
+import net.zonia3000.jasmdecor.template.MetricsDecorator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the decorators whose target can be replaced at runtime.
+ *
+ * @author zonia3000
+ */
+public class HotSwapTest {
+
+    @Test
+    public void testPlainDecorator() throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(Iface.class, "test.HotSwapPlainDecorator");
+        generator.setHotSwappable(true);
+        // the target is also used by the methods recording metrics
+        generator.setMetricsEnabled(true);
+        Class<?> decoratorClass = new BytesClassLoader().define("test.HotSwapPlainDecorator", generator.generateDecoratorClass());
+        Iface decorator1 = (Iface) decoratorClass.getConstructor(Iface.class).newInstance(new WrappedImpl());
+        Iface decorator2 = (Iface) decoratorClass.getConstructor(Iface.class).newInstance(new StubImpl("stub2"));
+
+        assertEquals(WrappedImpl.STRING_VALUE, decorator1.getString());
+        assertEquals("stub2", decorator2.getString());
+
+        HotSwap hotSwap = HotSwap.of(decoratorClass);
+        assertNull(hotSwap.getTarget());
+        hotSwap.swap(new StubImpl("swapped"));
+        assertEquals("swapped", decorator1.getString());
+        assertEquals("swapped", decorator2.getString());
+        assertEquals(42, decorator1.getInt("a"));
+        assertEquals(42L, decorator2.getLong());
+
+        hotSwap.reset();
+        assertEquals(WrappedImpl.STRING_VALUE, decorator1.getString());
+        assertEquals("stub2", decorator2.getString());
+        assertEquals(2, hotSwap.getSwapCount());
+        assertEquals(6, DecoratorMetrics.of(decoratorClass).getMethodMetrics("getString()Ljava/lang/String;").getCallCount());
+
+        try {
+            hotSwap.swap("not an Iface");
+            fail("Exception expected");
+        } catch (ClassCastException e) {
+        }
+    }
+
+    @Test
+    public void testTemplate() throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(Iface.class, MetricsDecorator.class);
+        generator.setHotSwappable(true);
+        Class<?> decoratorClass = new BytesClassLoader().define(MetricsDecorator.class.getName(), generator.generateDecoratorClass());
+        Iface decorator = (Iface) decoratorClass.getConstructor(Iface.class).newInstance(new WrappedImpl());
+
+        HotSwap.of(decoratorClass).swap(new StubImpl("swapped"));
+        assertEquals("swapped", decorator.getString());
+        // methods defined by the template are unchanged
+        assertEquals(-WrappedImpl.LONG_VALUE, decorator.getLong());
+    }
+
+    private static class StubImpl extends WrappedImpl {
+
+        private final String value;
+
+        StubImpl(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String getString() {
+            return value;
+        }
+
+        @Override
+        public int getInt(String fooParam) {
+            return 42;
+        }
+
+        @Override
+        public long getLong() {
+            return 42L;
+        }
+    }
+}
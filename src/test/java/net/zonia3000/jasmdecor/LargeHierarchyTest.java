@@ -0,0 +1,124 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.IOException;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import static org.junit.Assert.*;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Tests the generation of decorators of interfaces having thousands of
+ * methods.
+ *
+ * @author zonia3000
+ */
+public class LargeHierarchyTest {
+
+    private static final String WIDE_INTERFACE = "test/WideInterface";
+
+    // each method name has two overloads
+    private static final String[] DESCRIPTORS = {
+        "(IJ)J", "(DLjava/lang/String;[I)D", "()V", "(Ljava/lang/Object;)Ljava/lang/Object;"
+    };
+
+    @Test
+    public void testWideInterface() throws Exception {
+        int methods = 4000;
+        byte[] interfaceBytes = wideInterface(methods);
+        DecoratorGenerator generator = new DecoratorGenerator(WIDE_INTERFACE, "test.WideDecorator", source(interfaceBytes));
+        byte[] decoratorBytes = generator.generateDecoratorClass();
+
+        // the delegation methods, the constructor and the Object methods
+        assertTrue(GenerationStats.countMethods(decoratorBytes) > methods);
+
+        BytesClassLoader classLoader = new BytesClassLoader();
+        Class<?> wideInterface = classLoader.define("test.WideInterface", interfaceBytes);
+        Class<?> decoratorClass = classLoader.define("test.WideDecorator", decoratorBytes);
+        Object wrapped = classLoader.define("test.WideImpl", wideImplementation(methods)).newInstance();
+        Object decorator = decoratorClass.getConstructor(wideInterface).newInstance(wrapped);
+
+        assertEquals(5L, decoratorClass.getMethod("m0", int.class, long.class).invoke(decorator, 2, 3L));
+        assertEquals(7.5, decoratorClass.getMethod("m0", double.class, String.class, int[].class).invoke(decorator, 0.5, "abcd", new int[3]));
+        assertEquals("value", decoratorClass.getMethod("m1999", Object.class).invoke(decorator, "value"));
+        decoratorClass.getMethod("m1999").invoke(decorator);
+    }
+
+    @Test
+    public void testClassTooLarge() throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(WIDE_INTERFACE, "test.TooLargeDecorator", source(wideInterface(30000)));
+        try {
+            generator.generateDecoratorClass();
+            fail("Exception expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Class test.TooLargeDecorator too large"));
+        }
+    }
+
+    private static byte[] wideInterface(int methods) {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_8, ACC_PUBLIC + ACC_ABSTRACT + ACC_INTERFACE, WIDE_INTERFACE, null, "java/lang/Object", null);
+        for (int i = 0; i < methods; i++) {
+            cw.visitMethod(ACC_PUBLIC + ACC_ABSTRACT, "m" + (i / 2), DESCRIPTORS[i % DESCRIPTORS.length], null, null).visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Implements the methods of the wide interface summing their arguments or
+     * returning the argument.
+     */
+    private static byte[] wideImplementation(int methods) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_8, ACC_PUBLIC, "test/WideImpl", null, "java/lang/Object", new String[]{WIDE_INTERFACE});
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        for (int i = 0; i < methods; i++) {
+            mv = cw.visitMethod(ACC_PUBLIC, "m" + (i / 2), DESCRIPTORS[i % DESCRIPTORS.length], null, null);
+            mv.visitCode();
+            switch (i % DESCRIPTORS.length) {
+                case 0:
+                    mv.visitVarInsn(ILOAD, 1);
+                    mv.visitInsn(I2L);
+                    mv.visitVarInsn(LLOAD, 2);
+                    mv.visitInsn(LADD);
+                    mv.visitInsn(LRETURN);
+                    break;
+                case 1:
+                    mv.visitVarInsn(DLOAD, 1);
+                    mv.visitVarInsn(ALOAD, 3);
+                    mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "length", "()I", false);
+                    mv.visitInsn(I2D);
+                    mv.visitInsn(DADD);
+                    mv.visitVarInsn(ALOAD, 4);
+                    mv.visitInsn(ARRAYLENGTH);
+                    mv.visitInsn(I2D);
+                    mv.visitInsn(DADD);
+                    mv.visitInsn(DRETURN);
+                    break;
+                case 2:
+                    mv.visitInsn(RETURN);
+                    break;
+                default:
+                    mv.visitVarInsn(ALOAD, 1);
+                    mv.visitInsn(ARETURN);
+                    break;
+            }
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static ClassBytesSource source(byte[] interfaceBytes) {
+        ClassBytesSource classLoaderSource = ClassBytesSource.fromClassLoader(LargeHierarchyTest.class.getClassLoader());
+        return internalName -> WIDE_INTERFACE.equals(internalName) ? interfaceBytes : classLoaderSource.getClassBytes(internalName);
+    }
+}
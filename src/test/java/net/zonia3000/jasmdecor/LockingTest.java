@@ -0,0 +1,173 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import net.zonia3000.jasmdecor.model.Counter;
+import net.zonia3000.jasmdecor.template.GuardedCounter;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the decorators running the delegation methods under a read/write
+ * lock.
+ *
+ * @author zonia3000
+ */
+public class LockingTest {
+
+    private static final int THREADS = 4;
+    private static final int INCREMENTS = 20000;
+
+    @Test(timeout = 60000)
+    public void testPlainDecorator() throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(Counter.class, "test.LockingPlainDecorator");
+        generator.setLockingRule(PatternLockingRule.getters());
+        Class<?> decoratorClass = new BytesClassLoader().define("test.LockingPlainDecorator", generator.generateDecoratorClass());
+        Counter decorator = (Counter) decoratorClass.getConstructor(Counter.class).newInstance(new UnsafeCounter());
+
+        runConcurrently(decorator);
+        assertEquals(THREADS * INCREMENTS, decorator.get());
+        assertFalse(decorator.isZero());
+
+        // the lock is released when the wrapped instance throws an exception
+        try {
+            decorator.fail();
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+        }
+        decorator.increment();
+        assertEquals(THREADS * INCREMENTS + 1, decorator.get());
+    }
+
+    @Test(timeout = 60000)
+    public void testGuardedTemplate() throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(Counter.class, GuardedCounter.class);
+        Class<?> decoratorClass = new BytesClassLoader().define(GuardedCounter.class.getName(), generator.generateDecoratorClass());
+        Counter decorator = (Counter) decoratorClass.getConstructor(Counter.class).newInstance(new UnsafeCounter());
+
+        runConcurrently(decorator);
+        // template methods use the locked delegation methods
+        decoratorClass.getMethod("incrementTwice").invoke(decorator);
+        assertEquals(THREADS * INCREMENTS + 2, decorator.get());
+
+        try {
+            decorator.fail();
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+        }
+        decorator.increment();
+        assertEquals(THREADS * INCREMENTS + 3, decorator.get());
+    }
+
+    @Test
+    public void testUnlockableModes() throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(Counter.class, "test.LockingMemoizedDecorator");
+        generator.setLockingRule(PatternLockingRule.getters());
+        generator.addMemoizedMethod("get", new Memoization());
+        assertGenerationFails(generator, "The method get()J can't be both locked and memoized");
+
+        generator = new DecoratorGenerator(Counter.class, "test.LockingAsyncDecorator");
+        generator.setLockingRule(PatternLockingRule.getters());
+        generator.addAsyncMethod("increment");
+        assertGenerationFails(generator, "The method increment()V can't be both locked and asynchronous");
+
+        generator = new DecoratorGenerator(Counter.class, "test.LockingMetricsDecorator");
+        generator.setLockingRule(PatternLockingRule.getters());
+        generator.setMetricsEnabled(true);
+        assertGenerationFails(generator, "The locked method increment()V can't record metrics");
+
+        // the memoized method is excluded from the locking
+        generator = new DecoratorGenerator(Counter.class, "test.LockingUnlockedMemoizedDecorator");
+        generator.setLockingRule(new PatternLockingRule().addWriteMethods("increment").setDefaultMode(LockMode.NONE));
+        generator.addMemoizedMethod("get", new Memoization());
+        assertNotNull(generator.generateDecoratorClass());
+    }
+
+    private static void assertGenerationFails(DecoratorGenerator generator, String message) {
+        try {
+            generator.generateDecoratorClass();
+            fail("Exception expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    @Test
+    public void testPatternLockingRule() {
+        PatternLockingRule rule = new PatternLockingRule()
+                .addOptimisticReadMethods("get()J")
+                .addReadMethods("get*", "size")
+                .setDefaultMode(LockMode.NONE);
+        assertEquals(LockMode.OPTIMISTIC_READ, rule.getLockMode("get", "()J"));
+        assertEquals(LockMode.READ, rule.getLockMode("get", "(I)J"));
+        assertEquals(LockMode.READ, rule.getLockMode("getName", "()Ljava/lang/String;"));
+        assertEquals(LockMode.READ, rule.getLockMode("size", "()I"));
+        assertEquals(LockMode.NONE, rule.getLockMode("sizeOf", "()I"));
+        assertEquals(LockMode.WRITE, PatternLockingRule.getters().getLockMode("increment", "()V"));
+    }
+
+    /**
+     * Increments and reads the counter from many threads, checking that the
+     * reads never see a value going back.
+     */
+    private static void runConcurrently(Counter counter) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS * 2);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < INCREMENTS; i++) {
+                        counter.increment();
+                    }
+                }));
+                futures.add(executor.submit(() -> {
+                    long last = 0;
+                    for (int i = 0; i < INCREMENTS; i++) {
+                        long value = counter.get();
+                        assertTrue(value >= last);
+                        last = value;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Counter losing increments when called concurrently.
+     */
+    private static class UnsafeCounter implements Counter {
+
+        private long value;
+
+        @Override
+        public void increment() {
+            long current = value;
+            Thread.yield();
+            value = current + 1;
+        }
+
+        @Override
+        public long get() {
+            return value;
+        }
+
+        @Override
+        public boolean isZero() {
+            return value == 0;
+        }
+
+        @Override
+        public void fail() {
+            throw new IllegalStateException("Failure");
+        }
+    }
+}
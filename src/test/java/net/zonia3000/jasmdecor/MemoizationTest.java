@@ -0,0 +1,182 @@
+package net.zonia3000.jasmdecor;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.zonia3000.jasmdecor.model.Iface;
+import net.zonia3000.jasmdecor.model.MemoizedIface;
+import net.zonia3000.jasmdecor.model.WrappedImpl;
+import net.zonia3000.jasmdecor.template.MetricsDecorator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the decorators caching the results of the wrapped instance.
+ *
+ * @author zonia3000
+ */
+public class MemoizationTest {
+
+    @Test
+    public void testPlainDecorator() throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(Iface.class, "test.MemoizingPlainDecorator");
+        generator.addMemoizedMethod("getInt", new Memoization());
+        generator.addMemoizedMethod("getLong()J", new Memoization());
+        // void methods are delegated without caching
+        generator.addMemoizedMethod("doAction", new Memoization());
+        Class<?> decoratorClass = new BytesClassLoader().define("test.MemoizingPlainDecorator", generator.generateDecoratorClass());
+        CountingWrapped wrapped = new CountingWrapped();
+        Iface decorator = (Iface) decoratorClass.getConstructor(Iface.class).newInstance(wrapped);
+
+        assertEquals(WrappedImpl.INT_VALUE, decorator.getInt("a"));
+        assertEquals(WrappedImpl.INT_VALUE, decorator.getInt("a"));
+        assertEquals(WrappedImpl.INT_VALUE, decorator.getInt("b"));
+        assertEquals(WrappedImpl.INT_VALUE, decorator.getInt(null));
+        assertEquals(WrappedImpl.INT_VALUE, decorator.getInt(null));
+        assertEquals(3, wrapped.getIntCalls.get());
+
+        assertEquals(WrappedImpl.LONG_VALUE, decorator.getLong());
+        assertEquals(WrappedImpl.LONG_VALUE, decorator.getLong());
+        assertEquals(1, wrapped.getLongCalls.get());
+
+        Map<String, Memoizer> memoizers = Memoizer.of(decoratorClass);
+        assertEquals(2, memoizers.size());
+        Memoizer getInt = memoizers.get("getInt(Ljava/lang/String;)I");
+        assertEquals(2, getInt.getHitCount());
+        assertEquals(3, getInt.getMissCount());
+        assertEquals(3, getInt.size());
+        assertEquals(1, memoizers.get("getLong()J").getHitCount());
+    }
+
+    @Test
+    public void testAnnotatedMethods() throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(MemoizedIface.class, "test.MemoizingAnnotatedDecorator");
+        Class<?> decoratorClass = new BytesClassLoader().define("test.MemoizingAnnotatedDecorator", generator.generateDecoratorClass());
+        AtomicInteger calls = new AtomicInteger();
+        MemoizedIface decorator = (MemoizedIface) decoratorClass.getConstructor(MemoizedIface.class).newInstance(new MemoizedIface() {
+            @Override
+            public int square(int value) {
+                calls.incrementAndGet();
+                return value * value;
+            }
+
+            @Override
+            public double half(double value) {
+                calls.incrementAndGet();
+                return value / 2;
+            }
+
+            @Override
+            public String repeat(String value, int times) {
+                calls.incrementAndGet();
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < times; i++) {
+                    sb.append(value);
+                }
+                return sb.toString();
+            }
+
+            @Override
+            public String notMemoized(String value) {
+                calls.incrementAndGet();
+                return value;
+            }
+        });
+
+        assertEquals(9, decorator.square(3));
+        assertEquals(9, decorator.square(-3));
+        assertEquals(9, decorator.square(3));
+        assertEquals(1.5, decorator.half(3), 0);
+        assertEquals(1.5, decorator.half(3), 0);
+        assertEquals("abab", decorator.repeat("ab", 2));
+        assertEquals("ababab", decorator.repeat("ab", 3));
+        assertEquals("abab", decorator.repeat("ab", 2));
+        assertEquals("x", decorator.notMemoized("x"));
+        assertEquals("x", decorator.notMemoized("x"));
+        assertEquals(7, calls.get());
+
+        Map<String, Memoizer> memoizers = Memoizer.of(decoratorClass);
+        assertEquals(3, memoizers.size());
+        assertEquals(1, memoizers.get("repeat(Ljava/lang/String;I)Ljava/lang/String;").getHitCount());
+        assertFalse(memoizers.containsKey("notMemoized(Ljava/lang/String;)Ljava/lang/String;"));
+
+        // maxEntries = 2
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i * i, decorator.square(i));
+        }
+        Memoizer square = memoizers.get("square(I)I");
+        assertTrue(square.size() <= 2);
+        assertTrue(square.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void testTemplateWithMetrics() throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(Iface.class, MetricsDecorator.class);
+        generator.setMetricsEnabled(true);
+        generator.addMemoizedMethod("getInt", new Memoization());
+        // defined by the template
+        generator.addMemoizedMethod("getLong", new Memoization());
+        Class<?> decoratorClass = new BytesClassLoader().define(MetricsDecorator.class.getName(), generator.generateDecoratorClass());
+        CountingWrapped wrapped = new CountingWrapped();
+        Iface decorator = (Iface) decoratorClass.getConstructor(Iface.class).newInstance(wrapped);
+
+        assertEquals(WrappedImpl.INT_VALUE, decorator.getInt("a"));
+        assertEquals(WrappedImpl.INT_VALUE, decorator.getInt("a"));
+        assertEquals(1, wrapped.getIntCalls.get());
+        assertEquals(-WrappedImpl.LONG_VALUE, decorator.getLong());
+        assertEquals(WrappedImpl.STRING_VALUE, decorator.getString());
+
+        Map<String, Memoizer> memoizers = Memoizer.of(decoratorClass);
+        assertEquals(1, memoizers.size());
+        assertEquals(1, memoizers.get("getInt(Ljava/lang/String;)I").getHitCount());
+        // memoized methods are not measured
+        DecoratorMetrics metrics = DecoratorMetrics.of(decoratorClass);
+        assertNull(metrics.getMethodMetrics("getInt(Ljava/lang/String;)I"));
+        assertEquals(1, metrics.getMethodMetrics("getString()Ljava/lang/String;").getCallCount());
+    }
+
+    @Test
+    public void testEviction() {
+        Memoizer memoizer = new Memoizer("m(J)J", true, 100, 0);
+        for (long i = 0; i < 1000; i++) {
+            assertNull(memoizer.get(i));
+            memoizer.put(i, (Object) i);
+        }
+        assertTrue(memoizer.size() <= 100);
+        assertEquals(1000 - memoizer.size(), memoizer.getEvictionCount());
+        // the last result is never evicted by the following insertions
+        assertEquals(999L, memoizer.get(999L));
+
+        memoizer.clear();
+        assertEquals(0, memoizer.size());
+        assertNull(memoizer.get(999L));
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        Memoization memoization = new Memoization(10, 1, TimeUnit.MILLISECONDS);
+        Memoizer memoizer = new Memoizer("m(Ljava/lang/String;)I", false, memoization.getMaxEntries(), memoization.getExpireAfterWrite());
+        memoizer.put("a", (Object) 1);
+        Thread.sleep(5);
+        assertNull(memoizer.get("a"));
+        assertEquals(1, memoizer.getEvictionCount());
+    }
+
+    private static class CountingWrapped extends WrappedImpl {
+
+        private final AtomicInteger getIntCalls = new AtomicInteger();
+        private final AtomicInteger getLongCalls = new AtomicInteger();
+
+        @Override
+        public int getInt(String fooParam) {
+            getIntCalls.incrementAndGet();
+            return super.getInt(fooParam);
+        }
+
+        @Override
+        public long getLong() {
+            getLongCalls.incrementAndGet();
+            return super.getLong();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import javax.management.ObjectName;
+import net.zonia3000.jasmdecor.model.Iface;
+import net.zonia3000.jasmdecor.model.WrappedImpl;
+import net.zonia3000.jasmdecor.template.MetricsDecorator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the decorators recording metrics.
+ *
+ * @author zonia3000
+ */
+public class MetricsTest {
+
+    @Test
+    public void testPlainDecorator() throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(Iface.class, "test.MetricsPlainDecorator");
+        generator.setMetricsEnabled(true);
+        Class<?> decoratorClass = new BytesClassLoader().define("test.MetricsPlainDecorator", generator.generateDecoratorClass());
+        Iface decorator = (Iface) decoratorClass.getConstructor(Iface.class).newInstance(new WrappedImpl());
+
+        assertEquals(WrappedImpl.STRING_VALUE, decorator.getString());
+        assertEquals(WrappedImpl.STRING_VALUE, decorator.getString());
+        assertEquals(WrappedImpl.LONG_VALUE, decorator.getLong());
+        try {
+            decorator.doAction();
+            fail("Exception not propagated");
+        } catch (IOException e) {
+            // thrown by WrappedImpl
+        }
+
+        DecoratorMetrics metrics = DecoratorMetrics.of(decoratorClass);
+        assertEquals("test.MetricsPlainDecorator", metrics.getDecoratorName());
+
+        MethodMetrics getString = metrics.getMethodMetrics("getString()Ljava/lang/String;");
+        assertEquals(2, getString.getCallCount());
+        assertEquals(0, getString.getErrorCount());
+        assertEquals(2, sum(getString.getHistogram()));
+        assertTrue(getString.getTotalTime() > 0);
+
+        assertEquals(1, metrics.getMethodMetrics("getLong()J").getCallCount());
+
+        MethodMetrics doAction = metrics.getMethodMetrics("doAction()V");
+        assertEquals(1, doAction.getCallCount());
+        assertEquals(1, doAction.getErrorCount());
+
+        assertEquals(0, metrics.getMethodMetrics("getInt(Ljava/lang/String;)I").getCallCount());
+        assertEquals(Long.valueOf(2), metrics.getCallCounts().get("getString()Ljava/lang/String;"));
+
+        ObjectName name = metrics.registerMBean();
+        try {
+            assertEquals("test.MetricsPlainDecorator", ManagementFactory.getPlatformMBeanServer().getAttribute(name, "DecoratorName"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTemplateWithStaticInitializer() throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(Iface.class, MetricsDecorator.class);
+        generator.setMetricsEnabled(true);
+        Class<?> decoratorClass = new BytesClassLoader().define(MetricsDecorator.class.getName(), generator.generateDecoratorClass());
+        Iface decorator = (Iface) decoratorClass.getConstructor(Iface.class).newInstance(new WrappedImpl());
+
+        assertEquals(-WrappedImpl.LONG_VALUE, decorator.getLong());
+        assertEquals(WrappedImpl.INT_VALUE, decorator.getInt("a"));
+
+        // the template static initializer has been executed too
+        List<String> created = (List<String>) decoratorClass.getField("CREATED").get(null);
+        assertEquals(1, created.size());
+
+        DecoratorMetrics metrics = DecoratorMetrics.of(decoratorClass);
+        // methods defined by the template are not measured
+        assertNull(metrics.getMethodMetrics("getLong()J"));
+        assertEquals(1, metrics.getMethodMetrics("getInt(Ljava/lang/String;)I").getCallCount());
+    }
+
+    @Test
+    public void testLatencySampling() {
+        DecoratorMetrics metrics = new DecoratorMetrics("test.Sampled", new String[]{"m()V"});
+        metrics.setLatencySampling(4);
+        for (int i = 0; i < 1000; i++) {
+            metrics.recordCall(0, metrics.start());
+        }
+        MethodMetrics methodMetrics = metrics.getMethodMetrics("m()V");
+        assertEquals(1000, methodMetrics.getCallCount());
+        assertTrue(methodMetrics.getSampledCallCount() > 0);
+        assertTrue(methodMetrics.getSampledCallCount() < 1000);
+        assertEquals(methodMetrics.getSampledCallCount(), sum(methodMetrics.getHistogram()));
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+        assertEquals(0, MethodMetrics.getBucket(0));
+        assertEquals(0, MethodMetrics.getBucket(15));
+        assertEquals(1, MethodMetrics.getBucket(16));
+        assertEquals(1, MethodMetrics.getBucket(31));
+        assertEquals(2, MethodMetrics.getBucket(32));
+        assertEquals(MethodMetrics.BUCKETS - 1, MethodMetrics.getBucket(Long.MAX_VALUE));
+        for (int i = 0; i < MethodMetrics.BUCKETS - 1; i++) {
+            assertEquals(i, MethodMetrics.getBucket(MethodMetrics.getBucketUpperBound(i) - 1));
+            assertEquals(i + 1, MethodMetrics.getBucket(MethodMetrics.getBucketUpperBound(i)));
+        }
+    }
+
+    private static long sum(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+}
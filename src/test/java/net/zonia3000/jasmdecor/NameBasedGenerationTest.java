@@ -0,0 +1,71 @@
+package net.zonia3000.jasmdecor;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import net.zonia3000.jasmdecor.model.Iface;
+import net.zonia3000.jasmdecor.model.WrappedImpl;
+import net.zonia3000.jasmdecor.template.AnnotatedDecorator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the generation of decorators from class names, reading the classes
+ * from a {@link ClassBytesSource}.
+ *
+ * @author zonia3000
+ */
+public class NameBasedGenerationTest {
+
+    private static final String IFACE = "net/zonia3000/jasmdecor/model/Iface";
+
+    @Test
+    public void testWrappedTypesAreNotLoaded() throws Exception {
+        URL testClasses = NameBasedGenerationTest.class.getProtectionDomain().getCodeSource().getLocation();
+        try (InspectableClassLoader classLoader = new InspectableClassLoader(testClasses)) {
+            DecoratorGenerator generator = new DecoratorGenerator(IFACE, "test.NameBasedDecorator",
+                    ClassBytesSource.fromClassLoader(classLoader));
+            generator.setCache(new GeneratorCache());
+
+            byte[] classBytes = generator.generateDecoratorClass();
+
+            assertNotNull(classBytes);
+            assertFalse(classLoader.isLoaded(Iface.class.getName()));
+            assertFalse(classLoader.isLoaded("net.zonia3000.jasmdecor.model.SuperIface"));
+        }
+    }
+
+    @Test
+    public void testSameHierarchyOfClassBasedGeneration() throws Exception {
+        ClassBytesSource source = ClassBytesSource.fromClassLoader(getClass().getClassLoader());
+
+        DecoratorGenerator nameBasedGenerator = new DecoratorGenerator(IFACE, "test.NameBasedDecorator", source);
+        DecoratorGenerator classBasedGenerator = new DecoratorGenerator(Iface.class, "test.NameBasedDecorator");
+
+        assertEquals(classBasedGenerator.getInputClassNames(), nameBasedGenerator.getInputClassNames());
+        assertArrayEquals(classBasedGenerator.generateDecoratorClass(), nameBasedGenerator.generateDecoratorClass());
+    }
+
+    @Test
+    public void testTemplate() throws Exception {
+        ClassBytesSource source = ClassBytesSource.fromClassLoader(getClass().getClassLoader());
+
+        DecoratorGenerator generator = new DecoratorGenerator(source, IFACE, "net/zonia3000/jasmdecor/template/AnnotatedDecorator");
+        byte[] classBytes = generator.generateDecoratorClass();
+
+        Class<?> decoratorClass = new BytesClassLoader().define(AnnotatedDecorator.class.getName(), classBytes);
+        Iface decorator = (Iface) decoratorClass.getConstructor(Iface.class).newInstance(new WrappedImpl());
+        assertEquals(AnnotatedDecorator.NEW_VALUE, decorator.getString());
+        assertEquals(WrappedImpl.LONG_VALUE, decorator.getLong());
+    }
+
+    private static class InspectableClassLoader extends URLClassLoader {
+
+        InspectableClassLoader(URL classes) {
+            super(new URL[]{classes}, null);
+        }
+
+        boolean isLoaded(String name) {
+            return findLoadedClass(name) != null;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package net.zonia3000.jasmdecor;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import net.zonia3000.jasmdecor.model.Iface;
+import net.zonia3000.jasmdecor.model.WrappedImpl;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the decorators specialized for an implementation of the wrapped type.
+ *
+ * @author zonia3000
+ */
+public class SpecializationTest {
+
+    @Test
+    public void testSpecializedDecorator() throws Exception {
+        DecoratorGenerator generator = new DecoratorGenerator(Iface.class, "test.SpecializedDecorator");
+        generator.setSpecializedTarget(WrappedImpl.class);
+        // the specialized call is also used by the methods recording metrics
+        generator.setMetricsEnabled(true);
+        byte[] classBytes = generator.generateDecoratorClass();
+        Class<?> decoratorClass = new BytesClassLoader().define("test.SpecializedDecorator", classBytes);
+
+        Set<String> specializedCalls = getCalls(classBytes, Opcodes.INVOKEVIRTUAL, "net/zonia3000/jasmdecor/model/WrappedImpl");
+        assertTrue(specializedCalls.contains("getString()Ljava/lang/String;"));
+        assertTrue(specializedCalls.contains("doAction()V"));
+        // the other implementations are still called through the interface
+        assertTrue(getCalls(classBytes, Opcodes.INVOKEINTERFACE, "net/zonia3000/jasmdecor/model/Iface").contains("getString()Ljava/lang/String;"));
+
+        Iface decorator = (Iface) decoratorClass.getConstructor(Iface.class).newInstance(new WrappedImpl());
+        assertEquals(WrappedImpl.STRING_VALUE, decorator.getString());
+        assertEquals(WrappedImpl.LONG_VALUE, decorator.getLong());
+        try {
+            decorator.doAction();
+            fail("Exception expected");
+        } catch (IOException e) {
+        }
+
+        // not exactly the specialized class
+        Iface other = (Iface) decoratorClass.getConstructor(Iface.class).newInstance(new WrappedImpl() {
+            @Override
+            public String getString() {
+                return "other";
+            }
+        });
+        assertEquals("other", other.getString());
+        assertEquals(WrappedImpl.INT_VALUE, other.getInt("a"));
+
+        MethodMetrics metrics = DecoratorMetrics.of(decoratorClass).getMethodMetrics("getString()Ljava/lang/String;");
+        assertEquals(2, metrics.getCallCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTargetNotImplementingWrappedType() {
+        new DecoratorGenerator(Iface.class, "test.InvalidSpecializedDecorator").setSpecializedTarget(String.class);
+    }
+
+    /**
+     * @return the name and descriptor of the methods called with the
+     * specified instruction on the specified owner
+     */
+    private static Set<String> getCalls(byte[] classBytes, int opcode, String owner) {
+        Set<String> calls = new HashSet<>();
+        new ClassReader(classBytes).accept(new ClassVisitor(Opcodes.ASM6) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                return new MethodVisitor(Opcodes.ASM6) {
+                    @Override
+                    public void visitMethodInsn(int insnOpcode, String insnOwner, String insnName, String insnDescriptor, boolean itf) {
+                        if (insnOpcode == opcode && insnOwner.equals(owner)) {
+                            calls.add(insnName + insnDescriptor);
+                        }
+                    }
+                };
+            }
+        }, 0);
+        return calls;
+    }
+}
@@ -0,0 +1,58 @@
+package net.zonia3000.jasmdecor;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+import net.zonia3000.jasmdecor.model.Iface;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Stress test checking that decorators generated in unloadable mode are
+ * unloaded together with the ClassLoader of the decorated types.
+ *
+ * @author zonia3000
+ */
+public class UnloadableDecoratorsTest {
+
+    private static final int CYCLES = 2000;
+
+    // each cycle loads Iface, SuperIface, the decorator and its factory
+    private static final int MAX_LOADED_CLASSES_GROWTH = 1000;
+
+    @Test
+    public void testClassesAreUnloaded() throws Exception {
+        ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+        URL testClasses = UnloadableDecoratorsTest.class.getProtectionDomain().getCodeSource().getLocation();
+
+        DecoratorFactory decoratorFactory = new DecoratorFactory(new GeneratorCache(), true);
+
+        gc();
+        long initialLoadedClasses = classLoading.getLoadedClassCount();
+        long initialUnloadedClasses = classLoading.getUnloadedClassCount();
+
+        for (int i = 0; i < CYCLES; i++) {
+            // simulates a plugin
+            try (URLClassLoader pluginClassLoader = new URLClassLoader(new URL[]{testClasses}, null)) {
+                Class<?> pluginIface = pluginClassLoader.loadClass(Iface.class.getName());
+                assertNotNull(decoratorFactory.getFactory(pluginIface));
+            }
+            if (i % 500 == 0) {
+                gc();
+            }
+        }
+
+        gc();
+        long loadedClassesGrowth = classLoading.getLoadedClassCount() - initialLoadedClasses;
+        assertTrue("Too many loaded classes: " + loadedClassesGrowth, loadedClassesGrowth < MAX_LOADED_CLASSES_GROWTH);
+        assertTrue(classLoading.getUnloadedClassCount() - initialUnloadedClasses > CYCLES);
+    }
+
+    private void gc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+    }
+}
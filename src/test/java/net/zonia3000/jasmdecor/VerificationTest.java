@@ -0,0 +1,105 @@
+package net.zonia3000.jasmdecor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import net.zonia3000.jasmdecor.model.ConcreteWrapped;
+import net.zonia3000.jasmdecor.model.Iface;
+import net.zonia3000.jasmdecor.template.AbstractDecorator;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import static org.junit.Assert.*;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Tests the verification modes of the generated decorators.
+ *
+ * @author zonia3000
+ */
+public class VerificationTest {
+
+    @Test
+    public void testVerificationModes() throws Exception {
+        VerificationStats stats = new VerificationStats();
+        byte[] reference = new DecoratorGenerator(Iface.class, AbstractDecorator.class).generateDecoratorClass();
+
+        for (VerificationMode mode : VerificationMode.values()) {
+            DecoratorGenerator generator = new DecoratorGenerator(Iface.class, AbstractDecorator.class);
+            generator.setVerificationMode(mode);
+            generator.setVerificationStats(stats);
+            assertArrayEquals(reference, generator.generateDecoratorClass());
+        }
+
+        assertEquals(0, stats.getCount(VerificationMode.NONE));
+        assertEquals(1, stats.getCount(VerificationMode.STRUCTURAL));
+        assertEquals(1, stats.getCount(VerificationMode.FULL));
+        assertTrue(stats.getTotalTime(VerificationMode.FULL) > 0);
+    }
+
+    @Test
+    public void testStructuralCheckFailure() {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_8, ACC_PUBLIC + ACC_SUPER, "Invalid", null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "invalid", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Object", "hashCode", "not a descriptor", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+        cw.visitEnd();
+
+        try {
+            DecoratorGenerator.checkClassStructure(cw.toByteArray());
+            fail("Invalid class accepted");
+        } catch (RuntimeException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSampledVerification() throws Exception {
+        ClassLoader classLoader = VerificationTest.class.getClassLoader();
+        List<DecoratorSpec> specs = Arrays.asList(
+                new DecoratorSpec(Iface.class, "SampledPlain", classLoader, null),
+                new DecoratorSpec(ConcreteWrapped.class, "SampledConcrete", classLoader, null),
+                new DecoratorSpec(Iface.class, AbstractDecorator.class, classLoader, null)
+        );
+
+        BatchVerification verification = new BatchVerification();
+        verification.setMode(VerificationMode.STRUCTURAL);
+        verification.setFullVerificationRate(1);
+        verification.setAsync(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<GenerationResult> results = DecoratorGenerator.generateAll(specs, executor, new GeneratorCache(), verification);
+            for (GenerationResult result : results) {
+                assertTrue(result.isSuccessful());
+                result.getDeferredVerification().join();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        VerificationStats stats = verification.getStats();
+        assertEquals(specs.size(), stats.getCount(VerificationMode.STRUCTURAL));
+        assertEquals(specs.size(), stats.getCount(VerificationMode.FULL));
+    }
+
+    @Test
+    public void testSamplingRate() {
+        BatchVerification verification = new BatchVerification();
+        verification.setMode(VerificationMode.NONE);
+        verification.setFullVerificationRate(0.25);
+        int sampled = 0;
+        for (int i = 0; i < 100; i++) {
+            if (verification.isSampled(i)) {
+                sampled++;
+            }
+        }
+        assertEquals(25, sampled);
+    }
+}
@@ -0,0 +1,18 @@
+package net.zonia3000.jasmdecor.model;
+
+/**
+ * Interface having readers and writers, used for testing the thread-safe
+ * decorators.
+ *
+ * @author zonia3000
+ */
+public interface Counter {
+
+    void increment();
+
+    long get();
+
+    boolean isZero();
+
+    void fail();
+}
@@ -13,6 +13,8 @@ public interface Iface extends SuperIface {
 
     int getInt(String fooParam);
 
+    long getLong();
+
     void variousDataTypes(byte b1, short s1, int[] a1, int[][] a2, String[][] a3, boolean b, float f, char c, long l);
 
     default String defaultMethod(int a, int b, int c) throws IOException {
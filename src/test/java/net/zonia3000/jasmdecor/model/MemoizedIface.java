@@ -0,0 +1,23 @@
+package net.zonia3000.jasmdecor.model;
+
+import net.zonia3000.jasmdecor.Memoize;
+
+/**
+ * Interface having memoized methods, used for testing the keys built from
+ * different kinds of arguments.
+ *
+ * @author zonia3000
+ */
+public interface MemoizedIface {
+
+    @Memoize(maxEntries = 2)
+    int square(int value);
+
+    @Memoize
+    double half(double value);
+
+    @Memoize
+    String repeat(String value, int times);
+
+    String notMemoized(String value);
+}
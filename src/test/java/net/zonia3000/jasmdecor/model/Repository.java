@@ -0,0 +1,20 @@
+package net.zonia3000.jasmdecor.model;
+
+import java.util.List;
+
+/**
+ * Interface having single item and bulk methods, used for testing the
+ * batching decorators.
+ *
+ * @author zonia3000
+ */
+public interface Repository {
+
+    void save(String item);
+
+    void saveAll(List<String> items);
+
+    void delete(int id);
+
+    void deleteAll(List<Integer> ids);
+}
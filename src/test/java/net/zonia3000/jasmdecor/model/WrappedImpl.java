@@ -11,6 +11,7 @@ public class WrappedImpl implements Iface {
 
     public static final String STRING_VALUE = "WrappedImpl value";
     public static final int INT_VALUE = 3;
+    public static final long LONG_VALUE = 7L;
 
     @Override
     public String getString() {
@@ -22,6 +23,11 @@ public class WrappedImpl implements Iface {
         return INT_VALUE;
     }
 
+    @Override
+    public long getLong() {
+        return LONG_VALUE;
+    }
+
     @Override
     public void doAction() throws IOException {
         throw new IOException();
@@ -0,0 +1,27 @@
+package net.zonia3000.jasmdecor.template;
+
+import net.zonia3000.jasmdecor.Decorate;
+import net.zonia3000.jasmdecor.model.Iface;
+
+/**
+ * Template annotated with the decorated type, used for testing the scan of
+ * jars.
+ *
+ * @author zonia3000
+ */
+@Decorate(Iface.class)
+public abstract class AnnotatedDecorator implements Iface {
+
+    public static final String NEW_VALUE = "AnnotatedDecorator new value";
+
+    private final Iface wrapped;
+
+    public AnnotatedDecorator(Iface wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    @Override
+    public String getString() {
+        return NEW_VALUE;
+    }
+}
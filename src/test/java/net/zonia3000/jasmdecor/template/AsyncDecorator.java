@@ -0,0 +1,17 @@
+package net.zonia3000.jasmdecor.template;
+
+import net.zonia3000.jasmdecor.model.Iface;
+
+/**
+ * Template implementing the companion interface of the asynchronous methods.
+ *
+ * @author zonia3000
+ */
+public abstract class AsyncDecorator implements Iface, AsyncIface {
+
+    private final Iface wrapped;
+
+    public AsyncDecorator(Iface wrapped) {
+        this.wrapped = wrapped;
+    }
+}
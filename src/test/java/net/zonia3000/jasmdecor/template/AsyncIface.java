@@ -0,0 +1,14 @@
+package net.zonia3000.jasmdecor.template;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Companion interface exposing the asynchronous methods generated for
+ * {@link AsyncDecorator}.
+ *
+ * @author zonia3000
+ */
+public interface AsyncIface {
+
+    CompletableFuture<Integer> getIntAsync(String fooParam);
+}
@@ -0,0 +1,30 @@
+package net.zonia3000.jasmdecor.template;
+
+import java.io.Flushable;
+import java.util.List;
+import net.zonia3000.jasmdecor.BatchTarget;
+import net.zonia3000.jasmdecor.model.Repository;
+
+/**
+ * Template collecting the single item calls into bulk calls.
+ *
+ * @author zonia3000
+ */
+public abstract class BatchingRepository implements Repository, Flushable {
+
+    private final Repository wrapped;
+
+    public BatchingRepository(Repository wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    @BatchTarget(value = "save", maxSize = 3, maxDelayMillis = 0)
+    protected void saveBatch(List<String> items) {
+        wrapped.saveAll(items);
+    }
+
+    @BatchTarget(value = "delete", maxSize = 100, maxDelayMillis = 10)
+    private void deleteBatch(List<Integer> ids) {
+        wrapped.deleteAll(ids);
+    }
+}
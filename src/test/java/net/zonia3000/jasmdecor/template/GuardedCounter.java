@@ -0,0 +1,25 @@
+package net.zonia3000.jasmdecor.template;
+
+import net.zonia3000.jasmdecor.Guarded;
+import net.zonia3000.jasmdecor.LockMode;
+import net.zonia3000.jasmdecor.model.Counter;
+
+/**
+ * Template making a Counter thread-safe, reading its value optimistically.
+ *
+ * @author zonia3000
+ */
+@Guarded(optimisticRead = "get", read = "is*", others = LockMode.WRITE)
+public abstract class GuardedCounter implements Counter {
+
+    private final Counter wrapped;
+
+    public GuardedCounter(Counter wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    public void incrementTwice() {
+        increment();
+        increment();
+    }
+}
@@ -0,0 +1,21 @@
+package net.zonia3000.jasmdecor.template;
+
+import net.zonia3000.jasmdecor.model.Iface;
+
+/**
+ * Template exposing its wrapped instance, which can't be fused.
+ *
+ * @author zonia3000
+ */
+public abstract class LeakingDecorator implements Iface {
+
+    private final Iface wrapped;
+
+    public LeakingDecorator(Iface wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    public Iface getWrapped() {
+        return wrapped;
+    }
+}
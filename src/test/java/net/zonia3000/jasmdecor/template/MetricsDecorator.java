@@ -0,0 +1,28 @@
+package net.zonia3000.jasmdecor.template;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.zonia3000.jasmdecor.model.Iface;
+
+/**
+ * Template having a static initializer, used for testing the initialization
+ * of the metrics.
+ *
+ * @author zonia3000
+ */
+public abstract class MetricsDecorator implements Iface {
+
+    public static final List<String> CREATED = new ArrayList<>();
+
+    private final Iface wrapped;
+
+    public MetricsDecorator(Iface wrapped) {
+        this.wrapped = wrapped;
+        CREATED.add(wrapped.getString());
+    }
+
+    @Override
+    public long getLong() {
+        return -wrapped.getLong();
+    }
+}
@@ -0,0 +1,36 @@
+package net.zonia3000.jasmdecor.template;
+
+import net.zonia3000.jasmdecor.FusionTest;
+import net.zonia3000.jasmdecor.model.Iface;
+
+/**
+ * Outer template of a fused decorator.
+ *
+ * @author zonia3000
+ */
+public abstract class PrefixingDecorator implements Iface {
+
+    private final Iface wrapped;
+    private int calls;
+
+    public PrefixingDecorator(Iface wrapped) {
+        this.wrapped = wrapped;
+        FusionTest.CREATED.add("prefixing");
+    }
+
+    @Override
+    public String getString() {
+        calls++;
+        return "a:" + wrapped.getString();
+    }
+
+    @Override
+    public long getLong() {
+        // calls the inner layers, not this method again
+        return wrapped.getLong() + getInt("b");
+    }
+
+    public int getCalls() {
+        return calls;
+    }
+}
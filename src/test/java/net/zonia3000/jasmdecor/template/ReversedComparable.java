@@ -0,0 +1,24 @@
+package net.zonia3000.jasmdecor.template;
+
+import net.zonia3000.jasmdecor.Decorate;
+
+/**
+ * Template implementing a generic interface, used for testing that the
+ * annotation processor doesn't override its bridge methods.
+ *
+ * @author zonia3000
+ */
+@Decorate(Comparable.class)
+public abstract class ReversedComparable implements Comparable<String> {
+
+    private final Comparable<String> wrapped;
+
+    public ReversedComparable(Comparable<String> wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    @Override
+    public int compareTo(String other) {
+        return -wrapped.compareTo(other);
+    }
+}
@@ -0,0 +1,41 @@
+package net.zonia3000.jasmdecor.template;
+
+import java.util.function.IntSupplier;
+import net.zonia3000.jasmdecor.FusionTest;
+import net.zonia3000.jasmdecor.model.Iface;
+
+/**
+ * Inner template of a fused decorator.
+ *
+ * @author zonia3000
+ */
+public abstract class SuffixingDecorator implements Iface {
+
+    private final Iface wrapped;
+    private int calls;
+
+    public SuffixingDecorator(Iface wrapped) {
+        this.wrapped = wrapped;
+        FusionTest.CREATED.add("suffixing");
+    }
+
+    @Override
+    public String getString() {
+        calls++;
+        return suffix(wrapped.getString());
+    }
+
+    @Override
+    public int getInt(String fooParam) {
+        IntSupplier doubled = () -> wrapped.getInt(fooParam) * 2;
+        return doubled.getAsInt();
+    }
+
+    private String suffix(String value) {
+        return value + ":" + calls;
+    }
+
+    public int getCalls() {
+        return calls;
+    }
+}